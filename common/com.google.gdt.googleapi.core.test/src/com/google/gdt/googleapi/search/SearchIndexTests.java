@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.googleapi.search;
+
+import com.google.gdt.googleapi.core.ApiDirectoryItem;
+import com.google.gdt.googleapi.core.ApiDirectoryListing;
+import com.google.gdt.googleapi.core.ApiInfoImpl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for {@link SearchIndex}, including a comparison with scanning the
+ * fields of every item over a directory of several thousand APIs.
+ */
+public class SearchIndexTests {
+
+  private static final String[] WORDS = {
+      "analytics", "calendar", "contacts", "maps", "translate", "buzz",
+      "latitude", "moderator", "shopping", "storage", "prediction", "tasks",
+      "urlshortener", "books", "blogger", "orkut", "picasa", "youtube",
+      "search", "feed", "data", "export", "query", "geocoding", "places",
+      "directions", "elevation", "static", "street", "view", "chart",
+      "spreadsheet", "document", "presentation", "drawing", "site", "group",
+      "domain", "provisioning", "reporting", "audit", "migration", "email",
+      "settings", "test", "tester", "testing", "testament"};
+
+  private static ApiDirectoryItem createItem(String id, String displayName,
+      String description, String label) {
+    ApiInfoImpl info = new ApiInfoImpl(id).withName(id).withVersion("v1").withDisplayName(
+        displayName).withDescription(description).withPublisher("Google");
+    if (label != null) {
+      info.addLabel(label);
+    }
+    return new ApiDirectoryItem(info);
+  }
+
+  private static List<ApiDirectoryItem> naiveSearch(ApiDirectoryItem[] items,
+      String query) {
+    List<ApiDirectoryItem> matches = new ArrayList<ApiDirectoryItem>();
+    for (ApiDirectoryItem item : items) {
+      for (Term term : SearchTokenizer.queryToTerms(query)) {
+        String text = term.getText();
+        if (contains(item.getDisplayName(), text)
+            || contains(item.getName(), text)
+            || contains(item.getDescription(), text)
+            || contains(item.getPublisher(), text)
+            || contains(item.getVersion(), text)) {
+          matches.add(item);
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Returns the items with a word which starts with one of the terms of the
+   * query, which are the items the index should find.
+   */
+  private static Set<ApiDirectoryItem> prefixSearch(ApiDirectoryItem[] items,
+      String query) {
+    Collection<Term> terms = SearchTokenizer.queryToTerms(query);
+    Set<ApiDirectoryItem> matches = new HashSet<ApiDirectoryItem>();
+    for (ApiDirectoryItem item : items) {
+      List<String> fields = new ArrayList<String>(Arrays.asList(
+          item.getDisplayName(), item.getName(), item.getDescription(),
+          item.getPublisher(), item.getVersion()));
+      fields.addAll(Arrays.asList(item.getLabels()));
+      if (hasWordStartingWith(fields, terms)) {
+        matches.add(item);
+      }
+    }
+    return matches;
+  }
+
+  private static boolean hasWordStartingWith(List<String> fields,
+      Collection<Term> terms) {
+    for (String field : fields) {
+      if (field == null) {
+        continue;
+      }
+      for (Term word : SearchTokenizer.queryToTerms(field)) {
+        for (Term term : terms) {
+          if (word.getText().startsWith(term.getText())) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean contains(String value, String text) {
+    return value != null && value.toLowerCase().contains(text);
+  }
+
+  private ApiDirectoryItem calendar;
+
+  private ApiDirectoryItem maps;
+
+  private ApiDirectoryItem tester;
+
+  private SearchIndex<ApiDirectoryItem> index;
+
+  @Test
+  public void testLargeDirectory() {
+    Random random = new Random(5935);
+    List<ApiDirectoryItem> entries = new ArrayList<ApiDirectoryItem>();
+    for (int i = 0; i < 5000; i++) {
+      StringBuilder description = new StringBuilder();
+      for (int j = 0; j < 30; j++) {
+        description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      entries.add(createItem("api" + i, WORDS[random.nextInt(WORDS.length)]
+          + " " + WORDS[random.nextInt(WORDS.length)] + " " + i,
+          description.toString(), null));
+    }
+    ApiDirectoryListing listing = new ApiDirectoryListing();
+    listing.setItems(entries);
+    ApiDirectoryItem[] items = listing.getItems();
+
+    SearchIndex<ApiDirectoryItem> largeIndex = new SearchIndex<ApiDirectoryItem>();
+    for (ApiDirectoryItem item : items) {
+      SearchIndex.addApiInfo(largeIndex, item, item);
+    }
+    Assert.assertEquals(5000, largeIndex.size());
+
+    // Each keystroke of a few queries, as typed into the search box
+    List<String> queries = new ArrayList<String>();
+    for (String query : new String[] {
+        "geocoding", "street view", "urlshort", "provisioning"}) {
+      for (int i = 1; i <= query.length(); i++) {
+        queries.add(query.substring(0, i));
+      }
+    }
+
+    for (String query : queries) {
+      List<ApiDirectoryItem> results = largeIndex.search(query);
+      Assert.assertEquals(results.size(), new HashSet<ApiDirectoryItem>(
+          results).size());
+      Assert.assertEquals(query, prefixSearch(items, query),
+          new HashSet<ApiDirectoryItem>(results));
+
+      // Words are only matched by prefix, so the index never finds more than
+      // scanning every field for the query
+      Assert.assertTrue(query, naiveSearch(items, query).containsAll(results));
+    }
+    Assert.assertEquals(naiveSearch(items, "geocoding").size(),
+        largeIndex.search("geocoding").size());
+
+    // The APIs with the word in their display name are ranked first
+    List<ApiDirectoryItem> results = largeIndex.search("geocoding");
+    boolean inDisplayName = true;
+    for (ApiDirectoryItem item : results) {
+      boolean itemInDisplayName = contains(item.getDisplayName(), "geocoding");
+      Assert.assertTrue(inDisplayName || !itemInDisplayName);
+      inDisplayName = itemInDisplayName;
+    }
+  }
+
+  @Test
+  public void testMatchesPrefixes() {
+    Assert.assertEquals(listOf(maps, calendar), index.search("map"));
+    Assert.assertEquals(listOf(calendar), index.search("CALEN"));
+    Assert.assertTrue(index.search("lendar").isEmpty());
+  }
+
+  @Test
+  public void testMatchesWildcards() {
+    Assert.assertEquals(listOf(tester), index.search("test?r"));
+    Assert.assertEquals(listOf(tester), index.search("test*"));
+    Assert.assertEquals(listOf(calendar), index.search("*endar"));
+    Assert.assertTrue(index.search("test?").isEmpty());
+  }
+
+  @Test
+  public void testQueryWithoutTermsMatchesAll() {
+    Assert.assertEquals(3, index.search("").size());
+    Assert.assertEquals(3, index.search("!@#").size());
+  }
+
+  @Test
+  public void testRanksMatches() {
+    // The display name counts for more than the description
+    Assert.assertEquals(listOf(maps, calendar), index.search("maps"));
+
+    // Matching more terms counts for more than where they are matched
+    Assert.assertEquals(listOf(calendar, maps, tester),
+        index.search("maps events tester"));
+  }
+
+  @Before
+  public void setUp() {
+    maps = createItem("maps", "Google Maps", "Static maps for your pages",
+        "labs");
+    calendar = createItem("calendar", "Calendar",
+        "Add events, with directions from maps", null);
+    tester = createItem("tester", "Tester", "A tester for APIs", null);
+
+    index = new SearchIndex<ApiDirectoryItem>();
+    SearchIndex.addApiInfo(index, maps, maps);
+    SearchIndex.addApiInfo(index, calendar, calendar);
+    SearchIndex.addApiInfo(index, tester, tester);
+  }
+
+  private List<ApiDirectoryItem> listOf(ApiDirectoryItem... items) {
+    List<ApiDirectoryItem> list = new ArrayList<ApiDirectoryItem>();
+    for (ApiDirectoryItem item : items) {
+      list.add(item);
+    }
+    return list;
+  }
+}
@@ -42,4 +42,21 @@ public class SearchQueryTokenizerTests {
     Collection<Term> t5 = SearchTokenizer.queryToTerms("!@#$%^&");
     Assert.assertTrue(t5.size() == 0);
   }
+
+  @Test
+  public void testSearchQueryTokenizerWithWildcards() {
+    Collection<Term> t1 = SearchTokenizer.queryToTermsWithWildcards("test*1 test?2");
+    Assert.assertEquals(2, t1.size());
+    Assert.assertTrue(t1.contains(new Term("test*1")));
+    Assert.assertTrue(t1.contains(new Term("test?2")));
+    Assert.assertTrue(new Term("test*1").hasWildcards());
+
+    Collection<Term> t2 = SearchTokenizer.queryToTermsWithWildcards("Maps, *lytics");
+    Assert.assertEquals(2, t2.size());
+    Assert.assertTrue(t2.contains(new Term("maps")));
+    Assert.assertFalse(new Term("maps").hasWildcards());
+
+    Collection<Term> t3 = SearchTokenizer.queryToTermsWithWildcards("* ? !@#$%^&");
+    Assert.assertEquals(0, t3.size());
+  }
 }
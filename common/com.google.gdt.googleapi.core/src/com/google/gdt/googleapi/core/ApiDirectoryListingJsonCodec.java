@@ -23,15 +23,19 @@ import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import org.joda.time.LocalDate;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
 import java.net.MalformedURLException;
@@ -243,6 +247,79 @@ public class ApiDirectoryListingJsonCodec {
     return retval;
   }
 
+  /**
+   * Decodes a listing from a stream, one item at a time rather than building a
+   * tree for the whole document. An item whose JSON is the same as that of an
+   * item in decodedItems is reused rather than decoded again; on return,
+   * decodedItems holds just the items of this listing, keyed by their JSON.
+   * 
+   * @param in the serialized listing
+   * @param baseURL the URL relative links are resolved against
+   * @param decodedItems the items decoded from an earlier copy of the listing
+   *          with the same base URL
+   * @throws IOException if the stream cannot be read or is not well-formed
+   * @throws JsonParseException if the listing has an unexpected structure
+   */
+  public ApiDirectoryListing toApiDirectoryListing(Reader in, URL baseURL,
+      Map<String, ApiDirectoryItem> decodedItems) throws IOException {
+    JsonReader reader = new JsonReader(in);
+    JsonParser parser = new JsonParser();
+    String kind = null;
+    List<ApiDirectoryItem> entries = new LinkedList<ApiDirectoryItem>();
+    Map<String, ApiDirectoryItem> listingItems = new HashMap<String, ApiDirectoryItem>();
+
+    try {
+      baseURLThreadLocal.set(baseURL);
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("kind".equals(name) && reader.peek() == JsonToken.STRING) {
+          kind = reader.nextString();
+        } else if ("items".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            JsonElement item = parser.parse(reader);
+            if (!item.isJsonObject()) {
+              continue;
+            }
+
+            String itemJson = item.toString();
+            ApiDirectoryItem entry = decodedItems.get(itemJson);
+            if (entry == null) {
+              ApiInfoImpl apiInfo = gson.fromJson(item, ApiInfoImpl.class);
+              entry = (apiInfo != null ? new ApiDirectoryItem(apiInfo) : null);
+            }
+            if (entry != null) {
+              entries.add(entry);
+              listingItems.put(itemJson, entry);
+            }
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } catch (IllegalStateException e) {
+      // Thrown by the reader when a value is not of the expected type
+      throw new JsonParseException(e);
+    } finally {
+      baseURLThreadLocal.set(null);
+    }
+
+    ApiDirectoryListing listing = new ApiDirectoryListing();
+    if (DIRECTORY_LIST_TYPE_KEY.equals(kind)) {
+      listing.setItems(entries);
+    } else {
+      listing.setItems(new LinkedList<ApiDirectoryItem>());
+      listingItems.clear();
+    }
+
+    decodedItems.clear();
+    decodedItems.putAll(listingItems);
+    return listing;
+  }
+
   public ApiDirectoryListing toApiDirectoryListing(String json, URL baseURL) {
     ApiDirectoryListing retval = null;
     try {
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.googleapi.search;
+
+import com.google.gdt.googleapi.core.ReadableApiInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * An inverted index from the words in the fields of a set of items to the
+ * items, so a search query is answered by looking up its terms rather than by
+ * scanning every field of every item.
+ * 
+ * A term matches the words it is a prefix of, and a term with wildcards
+ * matches the words it matches as a whole. Items are ranked by the number of
+ * terms they match, then by how well they match them: a match in the display
+ * name counts for more than one in the description, and a whole word counts
+ * for more than a prefix.
+ * 
+ * The index is built by adding the fields of each item, and is then only read,
+ * so it may be shared across threads once built.
+ * 
+ * @param <T> the type of the indexed items
+ */
+public class SearchIndex<T> {
+
+  public static final String FIELD_DESCRIPTION = "description";
+
+  public static final String FIELD_DISPLAY_NAME = "displayName";
+
+  public static final String FIELD_LABEL = "label";
+
+  public static final String FIELD_NAME = "name";
+
+  public static final String FIELD_PUBLISHER = "publisher";
+
+  public static final String FIELD_VERSION = "version";
+
+  private static final Map<String, Integer> FIELD_WEIGHTS = new HashMap<String, Integer>();
+
+  static {
+    FIELD_WEIGHTS.put(FIELD_DISPLAY_NAME, 8);
+    FIELD_WEIGHTS.put(FIELD_NAME, 8);
+    FIELD_WEIGHTS.put(FIELD_LABEL, 4);
+    FIELD_WEIGHTS.put(FIELD_PUBLISHER, 2);
+    FIELD_WEIGHTS.put(FIELD_VERSION, 2);
+    FIELD_WEIGHTS.put(FIELD_DESCRIPTION, 1);
+  }
+
+  /**
+   * Adds the searchable fields of the API to the index.
+   */
+  public static <T> void addApiInfo(SearchIndex<T> index, T item,
+      ReadableApiInfo info) {
+    index.add(item, FIELD_DISPLAY_NAME, info.getDisplayName());
+    index.add(item, FIELD_NAME, info.getName());
+    index.add(item, FIELD_DESCRIPTION, info.getDescription());
+    index.add(item, FIELD_PUBLISHER, info.getPublisher());
+    for (String label : info.getLabels()) {
+      index.add(item, FIELD_LABEL, label);
+    }
+    index.add(item, FIELD_VERSION, info.getVersion());
+  }
+
+  private static int getFieldWeight(String field) {
+    Integer weight = FIELD_WEIGHTS.get(field);
+    return weight != null ? weight : 1;
+  }
+
+  /**
+   * Returns a regular expression matching the words the term matches.
+   */
+  private static Pattern toPattern(String text) {
+    StringBuilder regex = new StringBuilder();
+    int literalStart = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '*' || c == '?') {
+        if (i > literalStart) {
+          regex.append(Pattern.quote(text.substring(literalStart, i)));
+        }
+        regex.append(c == '*' ? ".*" : ".");
+        literalStart = i + 1;
+      }
+    }
+    if (text.length() > literalStart) {
+      regex.append(Pattern.quote(text.substring(literalStart)));
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  private final List<T> items = new ArrayList<T>();
+
+  /**
+   * The position of each item in {@link #items}.
+   */
+  private final Map<T, Integer> itemIds = new IdentityHashMap<T, Integer>();
+
+  /**
+   * For each word, the positions of the items with the word in one of their
+   * fields, each followed by the weight of the most important of those
+   * fields. The first element is the number of elements in use after it, and
+   * the array grows by doubling.
+   */
+  private final SortedMap<String, int[]> postings = new TreeMap<String, int[]>();
+
+  /**
+   * Indexes the words of a field of the item. An item may be added several
+   * times with different fields.
+   * 
+   * @param item the item
+   * @param field the name of the field, which determines how much a match in
+   *          it counts for
+   * @param value the value of the field, which may be null
+   */
+  public void add(T item, String field, String value) {
+    Integer itemId = itemIds.get(item);
+    if (itemId == null) {
+      itemId = items.size();
+      items.add(item);
+      itemIds.put(item, itemId);
+    }
+
+    if (value == null) {
+      return;
+    }
+
+    int weight = getFieldWeight(field);
+    for (Term word : SearchTokenizer.queryToTerms(value)) {
+      int[] wordPostings = postings.get(word.getText());
+      if (wordPostings == null) {
+        postings.put(word.getText(), new int[] {2, itemId, weight});
+        continue;
+      }
+
+      int end = wordPostings[0] + 1;
+      if (wordPostings[end - 2] == itemId) {
+        // Another field of the same item
+        if (wordPostings[end - 1] < weight) {
+          wordPostings[end - 1] = weight;
+        }
+        continue;
+      }
+
+      if (end + 2 > wordPostings.length) {
+        int[] newPostings = new int[wordPostings.length * 2 + 1];
+        System.arraycopy(wordPostings, 0, newPostings, 0, end);
+        wordPostings = newPostings;
+        postings.put(word.getText(), wordPostings);
+      }
+      wordPostings[end] = itemId;
+      wordPostings[end + 1] = weight;
+      wordPostings[0] += 2;
+    }
+  }
+
+  /**
+   * Returns whether the item has been added to the index.
+   */
+  public boolean contains(T item) {
+    return itemIds.containsKey(item);
+  }
+
+  /**
+   * Returns the items matching the query, best match first. All items match a
+   * query without terms.
+   */
+  public List<T> search(String query) {
+    return search(SearchTokenizer.queryToTermsWithWildcards(query));
+  }
+
+  /**
+   * Returns the items matching any of the terms, best match first. All items
+   * match an empty collection of terms.
+   */
+  public List<T> search(Collection<Term> terms) {
+    if (terms.isEmpty()) {
+      return Collections.unmodifiableList(items);
+    }
+
+    // The number of terms each item matches, and the sum of their weights
+    final int[] matchedTerms = new int[items.size()];
+    final int[] weights = new int[items.size()];
+    int[] termWeights = new int[items.size()];
+    List<Integer> matchingIds = new ArrayList<Integer>();
+    for (Term term : terms) {
+      Arrays.fill(termWeights, 0);
+      matchTerm(term, termWeights);
+      for (int id = 0; id < termWeights.length; id++) {
+        if (termWeights[id] > 0) {
+          if (matchedTerms[id]++ == 0) {
+            matchingIds.add(id);
+          }
+          weights[id] += termWeights[id];
+        }
+      }
+    }
+
+    Collections.sort(matchingIds, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        if (matchedTerms[a] != matchedTerms[b]) {
+          return matchedTerms[b] - matchedTerms[a];
+        }
+        if (weights[a] != weights[b]) {
+          return weights[b] - weights[a];
+        }
+        return a - b;
+      }
+    });
+
+    List<T> matches = new ArrayList<T>(matchingIds.size());
+    for (Integer id : matchingIds) {
+      matches.add(items.get(id));
+    }
+    return matches;
+  }
+
+  /**
+   * Returns the number of items in the index.
+   */
+  public int size() {
+    return items.size();
+  }
+
+  /**
+   * Sets the weight with which the term matches each item it matches, by the
+   * position of the item.
+   */
+  private void matchTerm(Term term, int[] termWeights) {
+    String text = term.getText();
+    if (text == null || text.length() == 0) {
+      return;
+    }
+
+    Pattern pattern = null;
+    String literalPrefix = text;
+    if (term.hasWildcards()) {
+      pattern = toPattern(text);
+      int wildcard = text.length();
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) == '*' || text.charAt(i) == '?') {
+          wildcard = i;
+          break;
+        }
+      }
+      literalPrefix = text.substring(0, wildcard);
+    }
+
+    // The words the term can match are the ones starting with its literal
+    // prefix, which are next to each other in the sorted postings
+    for (Map.Entry<String, int[]> entry : postings.tailMap(literalPrefix).entrySet()) {
+      String word = entry.getKey();
+      if (!word.startsWith(literalPrefix)) {
+        break;
+      }
+
+      int multiplier;
+      if (pattern != null) {
+        if (!pattern.matcher(word).matches()) {
+          continue;
+        }
+        multiplier = 2;
+      } else {
+        // A whole word counts for more than a prefix
+        multiplier = (word.length() == text.length() ? 2 : 1);
+      }
+
+      int[] wordPostings = entry.getValue();
+      for (int i = 1; i < wordPostings[0] + 1; i += 2) {
+        int weight = wordPostings[i + 1] * multiplier;
+        if (termWeights[wordPostings[i]] < weight) {
+          termWeights[wordPostings[i]] = weight;
+        }
+      }
+    }
+  }
+}
@@ -29,6 +29,24 @@ public class SearchTokenizer {
     return (new SearchTokenizer(query)).getTerms();
   }
 
+  /**
+   * Turns a search query into terms which keep the wildcards '*' and '?', so
+   * "test*1 test?" gives the terms "test*1" and "test?".
+   */
+  public static Collection<Term> queryToTermsWithWildcards(String query) {
+    return (new SearchTokenizer(query)).getTermsWithWildcards();
+  }
+
+  private static boolean isWildcards(String segment) {
+    for (int i = 0; i < segment.length(); i++) {
+      char c = segment.charAt(i);
+      if (c != '*' && c != '?') {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private final String searchQuery;
 
   public SearchTokenizer(String searchQuery) {
@@ -50,4 +68,38 @@ public class SearchTokenizer {
     }
     return terms;
   }
+
+  /**
+   * Returns the terms, joining each word to the wildcards and words directly
+   * next to it.
+   */
+  public Collection<Term> getTermsWithWildcards() {
+    List<Term> terms = new ArrayList<Term>();
+    StringBuilder term = new StringBuilder();
+    boolean hasWord = false;
+    BreakIterator bi = BreakIterator.getWordInstance();
+    bi.setText(searchQuery);
+    int start = bi.first();
+    int end = start;
+    while ((end = bi.next()) != BreakIterator.DONE) {
+      String segment = searchQuery.substring(start, end);
+      if (Character.isLetterOrDigit(segment.charAt(0))) {
+        term.append(segment);
+        hasWord = true;
+      } else if (isWildcards(segment)) {
+        term.append(segment);
+      } else {
+        if (hasWord) {
+          terms.add(new Term(term.toString()));
+        }
+        term.setLength(0);
+        hasWord = false;
+      }
+      start = end;
+    }
+    if (hasWord) {
+      terms.add(new Term(term.toString()));
+    }
+    return terms;
+  }
 }
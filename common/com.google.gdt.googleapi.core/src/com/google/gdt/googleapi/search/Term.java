@@ -19,7 +19,9 @@ package com.google.gdt.googleapi.search;
  * by converting it to lower case.
  * 
  * Any sequence of characters can act as a search term, but typically this type
- * represents a word (e.g. "Maps" normalized to "maps").
+ * represents a word (e.g. "Maps" normalized to "maps"). A term may contain the
+ * wildcards '*', matching any sequence of characters, and '?', matching any
+ * single character.
  */
 public class Term {
   private final String text;
@@ -53,6 +55,13 @@ public class Term {
     return text;
   }
 
+  /**
+   * Returns whether the term contains the wildcards '*' or '?'.
+   */
+  public boolean hasWildcards() {
+    return text != null && (text.indexOf('*') != -1 || text.indexOf('?') != -1);
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
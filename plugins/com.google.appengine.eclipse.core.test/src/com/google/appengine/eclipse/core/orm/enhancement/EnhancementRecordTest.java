@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.appengine.eclipse.core.orm.enhancement;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests the {@link EnhancementRecord} class.
+ */
+public class EnhancementRecordTest extends TestCase {
+
+  private static final String PROJECT_NAME = "project";
+
+  private File directory;
+
+  private File entityClass;
+
+  private Set<String> paths;
+
+  private EnhancementRecord record;
+
+  private File utilityClass;
+
+  public void testAlreadyEnhancedClassesAreSkipped() throws IOException {
+    write(entityClass, "entity implements javax/jdo/spi/PersistenceCapable");
+    assertEquals(Collections.singleton(utilityClass.getPath()), record.filter(
+        PROJECT_NAME, paths));
+  }
+
+  public void testChangedClassesAreEnhanced() throws IOException {
+    record.recordEnhanced(PROJECT_NAME, paths);
+    write(entityClass, "entity recompiled");
+    assertEquals(Collections.singleton(entityClass.getPath()), record.filter(
+        PROJECT_NAME, paths));
+
+    record.clear(PROJECT_NAME);
+    assertEquals(paths, record.filter(PROJECT_NAME, paths));
+  }
+
+  public void testNewClassesAreEnhanced() {
+    assertEquals(paths, record.filter(PROJECT_NAME, paths));
+  }
+
+  public void testRecordedClassesAreSkipped() {
+    record.recordEnhanced(PROJECT_NAME, paths);
+    assertTrue(record.filter(PROJECT_NAME, paths).isEmpty());
+
+    // Other projects have their own record
+    assertEquals(paths, record.filter("other", paths));
+  }
+
+  public void testRemovedProjectsAreForgotten() {
+    record.recordEnhanced(PROJECT_NAME, paths);
+    record.saveRecord();
+    record.remove(PROJECT_NAME);
+    assertEquals(paths, record.filter(PROJECT_NAME, paths));
+
+    // The saved record is gone too
+    record = new EnhancementRecord(new File(directory, "record"));
+    assertEquals(paths, record.filter(PROJECT_NAME, paths));
+  }
+
+  public void testRetainForgetsOtherClasses() {
+    record.recordEnhanced(PROJECT_NAME, paths);
+    record.retain(PROJECT_NAME, Collections.singleton(utilityClass.getPath()));
+    assertEquals(Collections.singleton(entityClass.getPath()), record.filter(
+        PROJECT_NAME, paths));
+  }
+
+  public void testSaveAndReload() {
+    record.recordEnhanced(PROJECT_NAME, Collections.singleton(
+        utilityClass.getPath()));
+    record.saveRecord();
+
+    record = new EnhancementRecord(new File(directory, "record"));
+    assertEquals(Collections.singleton(entityClass.getPath()), record.filter(
+        PROJECT_NAME, paths));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("enhancementRecord", "");
+    directory.delete();
+    directory.mkdir();
+
+    entityClass = new File(directory, "Entity.class");
+    write(entityClass, "entity");
+    utilityClass = new File(directory, "Utility.class");
+    write(utilityClass, "utility");
+    paths = new HashSet<String>(Arrays.asList(entityClass.getPath(),
+        utilityClass.getPath()));
+
+    record = new EnhancementRecord(new File(directory, "record"));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File recordDirectory = new File(directory, "record");
+    if (recordDirectory.exists()) {
+      for (File file : recordDirectory.listFiles()) {
+        file.delete();
+      }
+      recordDirectory.delete();
+    }
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  private void write(File file, String contents) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(contents.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+}
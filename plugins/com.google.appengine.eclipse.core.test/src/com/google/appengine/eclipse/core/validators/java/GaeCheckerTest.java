@@ -262,6 +262,35 @@ public class GaeCheckerTest extends TestCase {
     testHelper.delete();
   }
 
+  /**
+   * Tests that checking the same unit again reuses the white-list verdicts.
+   */
+  public void testCheckReusesVerdicts() throws CoreException {
+    SimpleTestHelper testHelper = new SimpleTestHelper(true);
+    GaeSdk sdk = GaeProject.create(testHelper.javaProject.getProject()).getSdk();
+
+    List<? extends CategorizedProblem> expected = getExpectedProblems(testHelper.unitName);
+    assertProblemsEqual(expected, GaeChecker.check(
+        (CompilationUnit) testHelper.ast, testHelper.javaProject));
+    WhiteListVerdictCache.ProjectVerdicts verdicts = WhiteListVerdictCache.INSTANCE.getVerdicts(
+        testHelper.javaProject, sdk);
+    int size = verdicts.size();
+    assertTrue(size > 0);
+
+    assertProblemsEqual(expected, GaeChecker.check(
+        (CompilationUnit) testHelper.ast, testHelper.javaProject));
+    assertSame(verdicts, WhiteListVerdictCache.INSTANCE.getVerdicts(
+        testHelper.javaProject, sdk));
+    assertEquals(size, verdicts.size());
+
+    // Removing the project forgets its verdicts
+    WhiteListVerdictCache.INSTANCE.remove(testHelper.javaProject.getElementName());
+    assertNotSame(verdicts, WhiteListVerdictCache.INSTANCE.getVerdicts(
+        testHelper.javaProject, sdk));
+
+    testHelper.delete();
+  }
+
   /**
    * Test method for {@link GaeChecker#check(CompilationUnit, IJavaProject)}
    * when there is not a valid GAE SDK.
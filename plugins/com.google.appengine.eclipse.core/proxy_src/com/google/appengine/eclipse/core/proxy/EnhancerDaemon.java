@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.appengine.eclipse.core.proxy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the DataNucleus enhancer repeatedly in one JVM, so each enhancement
+ * does not pay for starting a JVM and loading the enhancer.
+ * <p>
+ * The enhancer's main class is given as the argument; only the daemon itself is
+ * on the daemon's own classpath. Each request is read from standard input as
+ * a line holding the enhancer's classpath, then the enhancer's arguments, one
+ * per line, followed by an empty line. The classpath is not passed on the
+ * command line, which may be too short for it.
+ * <p>
+ * The jars on the enhancer's classpath, DataNucleus among them, are loaded by
+ * a class loader which is kept until they change. The folders on it, which
+ * hold the project's classes, are loaded by a new child of that class loader
+ * for each request, so the enhancer sees the current versions of the
+ * project's classes rather than the ones an earlier request loaded.
+ * <p>
+ * The enhancer's output goes to standard output and error as usual, and when
+ * it is done a line starting with {@link #DONE_PREFIX} and followed by its exit
+ * status is written to standard output. The daemon exits when standard input
+ * is closed.
+ * <p>
+ * This class runs outside of Eclipse, so it may only depend on the JRE.
+ */
+public class EnhancerDaemon {
+
+  /**
+   * Thrown instead of exiting the JVM when the enhancer tries to exit.
+   */
+  @SuppressWarnings("serial")
+  private static class ExitException extends SecurityException {
+    private final int status;
+
+    public ExitException(int status) {
+      super("The enhancer exited with status " + status);
+      this.status = status;
+    }
+  }
+
+  public static final String DONE_PREFIX = "#enhancer-done ";
+
+  private static volatile boolean enhancing;
+
+  /**
+   * Loads the jars on the enhancer's classpath.
+   */
+  private static ClassLoader jarLoader;
+
+  /**
+   * The jars {@link #jarLoader} loads, with their modification times.
+   */
+  private static List<String> jarLoaderEntries;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("Usage: EnhancerDaemon <enhancer main class>");
+      System.exit(1);
+    }
+
+    String enhancerMainClass = args[0];
+
+    // The enhancer may exit when it is done, which would end the daemon
+    System.setSecurityManager(new SecurityManager() {
+      @Override
+      public void checkExit(int status) {
+        if (enhancing) {
+          throw new ExitException(status);
+        }
+      }
+
+      @Override
+      public void checkPermission(Permission perm) {
+        // Everything else is allowed
+      }
+
+      @Override
+      public void checkPermission(Permission perm, Object context) {
+        // Everything else is allowed
+      }
+    });
+
+    BufferedReader in = new BufferedReader(new InputStreamReader(System.in,
+        "UTF-8"));
+    List<String> request;
+    while ((request = readRequest(in)) != null) {
+      // A request without a classpath cannot be served
+      int status = (request.isEmpty() ? 1 : enhance(enhancerMainClass,
+          request.get(0), request.subList(1, request.size())));
+      System.err.flush();
+      System.out.println(DONE_PREFIX + status);
+      System.out.flush();
+    }
+
+    System.exit(0);
+  }
+
+  private static int enhance(String enhancerMainClass,
+      String enhancerClasspath, List<String> enhancerArgs) {
+    Thread currentThread = Thread.currentThread();
+    ClassLoader contextLoader = currentThread.getContextClassLoader();
+
+    enhancing = true;
+    try {
+      // The enhancer sees the same classpath as when it is run on its own
+      System.setProperty("java.class.path", enhancerClasspath);
+      ClassLoader enhancerLoader = createEnhancerLoader(enhancerClasspath);
+      currentThread.setContextClassLoader(enhancerLoader);
+
+      Method enhancerMain = Class.forName(enhancerMainClass, true,
+          enhancerLoader).getMethod("main", String[].class);
+      enhancerMain.invoke(null,
+          (Object) enhancerArgs.toArray(new String[enhancerArgs.size()]));
+      return 0;
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof ExitException) {
+        return ((ExitException) e.getCause()).status;
+      }
+      e.getCause().printStackTrace();
+      return 1;
+    } catch (Exception e) {
+      // The enhancer could not be loaded
+      e.printStackTrace();
+      return 1;
+    } finally {
+      currentThread.setContextClassLoader(contextLoader);
+      enhancing = false;
+    }
+  }
+
+  /**
+   * Returns a class loader for the folders on the classpath, whose parent loads
+   * the jars on it. The parent is reused for as long as the jars do not change.
+   */
+  private static ClassLoader createEnhancerLoader(String classpath)
+      throws MalformedURLException {
+    List<URL> jarURLs = new ArrayList<URL>();
+    List<String> jarEntries = new ArrayList<String>();
+    List<URL> folderURLs = new ArrayList<URL>();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      if (entry.length() == 0) {
+        continue;
+      }
+
+      File file = new File(entry);
+      if (file.isDirectory()) {
+        folderURLs.add(file.toURI().toURL());
+      } else {
+        jarURLs.add(file.toURI().toURL());
+        jarEntries.add(entry + '@' + file.lastModified());
+      }
+    }
+
+    if (!jarEntries.equals(jarLoaderEntries)) {
+      // Bypass the daemon's class loader, so the enhancer only sees its own
+      // classpath
+      jarLoader = new URLClassLoader(jarURLs.toArray(new URL[jarURLs.size()]),
+          ClassLoader.getSystemClassLoader().getParent());
+      jarLoaderEntries = jarEntries;
+    }
+    return new URLClassLoader(folderURLs.toArray(new URL[folderURLs.size()]),
+        jarLoader);
+  }
+
+  /**
+   * Returns the lines of the next request, the classpath first, or
+   * <code>null</code> if there are no more requests.
+   */
+  private static List<String> readRequest(BufferedReader in)
+      throws IOException {
+    List<String> request = new ArrayList<String>();
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (line.length() == 0) {
+        return request;
+      }
+      request.add(line);
+    }
+    return null;
+  }
+
+}
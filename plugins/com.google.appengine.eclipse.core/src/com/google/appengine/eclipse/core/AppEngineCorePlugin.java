@@ -14,10 +14,13 @@
  *******************************************************************************/
 package com.google.appengine.eclipse.core;
 
+import com.google.appengine.eclipse.core.orm.enhancement.EnhancementRecord;
+import com.google.appengine.eclipse.core.orm.enhancement.EnhancerJob;
 import com.google.appengine.eclipse.core.resources.GaeImages;
 import com.google.appengine.eclipse.core.sdk.AppEngineBridge;
 import com.google.appengine.eclipse.core.sdk.AppEngineUpdateWebInfFolderCommand;
 import com.google.appengine.eclipse.core.sdk.GaeSdk;
+import com.google.appengine.eclipse.core.validators.java.WhiteListVerdictCache;
 import com.google.gdt.eclipse.core.AbstractGooglePlugin;
 import com.google.gdt.eclipse.core.PluginProperties;
 import com.google.gdt.eclipse.core.sdk.Sdk;
@@ -174,11 +177,16 @@ public class AppEngineCorePlugin extends AbstractGooglePlugin {
     extractAppEngineToolsApiJar();
 
     webInfFolderUpdater.start();
+    WhiteListVerdictCache.INSTANCE.start();
+    EnhancementRecord.start();
   }
 
   @Override
   public void stop(BundleContext context) throws Exception {
+    WhiteListVerdictCache.INSTANCE.stop();
     webInfFolderUpdater.stop();
+    EnhancerJob.stopEnhancerProcesses();
+    EnhancementRecord.stop();
 
     plugin = null;
     super.stop(context);
@@ -32,7 +32,6 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
@@ -135,20 +134,30 @@ public class AutoEnhancer extends IncrementalProjectBuilder {
     IResourceDelta delta = getDelta(getProject());
     if (kind == IncrementalProjectBuilder.FULL_BUILD || delta == null) {
       pathsToEnhance = computeEnhancementPathsForFullBuild();
+
+      // Forget the class files which are gone or no longer enhanced
+      EnhancementRecord.getInstance().retain(project.getName(), pathsToEnhance);
     } else {
       pathsToEnhance = computeEnhancementPathsForIncrementalBuild(delta);
     }
 
+    // Leave out the classes which have not changed since they were enhanced
+    pathsToEnhance = EnhancementRecord.getInstance().filter(project.getName(),
+        pathsToEnhance);
+
     if (!pathsToEnhance.isEmpty()) {
-      Job job = new EnhancerJob(javaProject, pathsToEnhance);
-      job.setPriority(Job.SHORT);
-      job.setRule(ResourcesPlugin.getWorkspace().getRoot());
-      job.schedule();
+      EnhancerJob.enhance(javaProject, pathsToEnhance);
     }
 
     return null;
   }
 
+  @Override
+  protected void clean(IProgressMonitor monitor) throws CoreException {
+    // The Java builder deletes the class files, so every class is new again
+    EnhancementRecord.getInstance().clear(getProject().getName());
+  }
+
   private String computeEnhancementPathFromClassFile(IResource classFile) {
     return classFile.getLocation().toOSString();
   }
@@ -0,0 +1,398 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.appengine.eclipse.core.orm.enhancement;
+
+import com.google.appengine.eclipse.core.AppEngineCorePlugin;
+import com.google.appengine.eclipse.core.AppEngineCorePluginLog;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaCore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Records the class files each project's enhancer has processed, so classes
+ * which have not changed since are not sent to the enhancer again.
+ * 
+ * An entry is a hash of a class file's contents right after enhancement. A
+ * class file which still has those contents is up to date: either it is the
+ * enhanced class, or the enhancer left it alone because it is not persistent.
+ * Class files which have already been enhanced are recognized without an
+ * entry too, so a full build after an interrupted enhancement only enhances
+ * the classes which were not reached.
+ * 
+ * The record is saved in the plugin's state location when the plugin stops. A
+ * project's record is cleared when the project is cleaned, and deleted when
+ * the project is deleted or renamed.
+ */
+public final class EnhancementRecord {
+
+  private static final String DIGEST_ALGORITHM = "MD5";
+
+  /**
+   * DataNucleus makes every class it enhances implement this interface, so a
+   * class file which refers to it has been enhanced.
+   */
+  private static final byte[] ENHANCED_MARKER = getBytes("javax/jdo/spi/PersistenceCapable");
+
+  private static EnhancementRecord INSTANCE;
+
+  private static final int MAGIC = 0x47454e52; // "GENR"
+
+  private static final String RECORD_DIRECTORY = "enhancementRecord";
+
+  private static final String RECORD_FILE_SUFFIX = ".record";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final int VERSION = 1;
+
+  public static synchronized EnhancementRecord getInstance() {
+    // Lazily create the record; each project is loaded on first use
+    if (INSTANCE == null) {
+      INSTANCE = new EnhancementRecord(
+          AppEngineCorePlugin.getDefault().getStateLocation().append(
+              RECORD_DIRECTORY).toFile());
+    }
+    return INSTANCE;
+  }
+
+  /**
+   * Starts listening for the projects which are deleted or renamed.
+   */
+  public static synchronized void start() {
+    JavaCore.addElementChangedListener(getInstance().projectRemovalListener,
+        ElementChangedEvent.POST_CHANGE);
+  }
+
+  /**
+   * Stops listening for changes to the projects, and saves the record.
+   */
+  public static synchronized void stop() {
+    if (INSTANCE != null) {
+      JavaCore.removeElementChangedListener(INSTANCE.projectRemovalListener);
+      INSTANCE.saveRecord();
+    }
+  }
+
+  /**
+   * Returns whether the class file has been enhanced by DataNucleus.
+   */
+  static boolean isEnhanced(byte[] classFileContents) {
+    int lastStart = classFileContents.length - ENHANCED_MARKER.length;
+    outer : for (int i = 0; i <= lastStart; i++) {
+      for (int j = 0; j < ENHANCED_MARKER.length; j++) {
+        if (classFileContents[i + j] != ENHANCED_MARKER[j]) {
+          continue outer;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support MD5
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] getBytes(String string) {
+    try {
+      return string.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      // Every Java platform is required to support UTF-8
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] readContents(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream contents = new ByteArrayOutputStream(
+          (int) file.length());
+      byte[] buffer = new byte[8192];
+      int bytesRead;
+      while ((bytesRead = in.read(buffer)) != -1) {
+        contents.write(buffer, 0, bytesRead);
+      }
+      return contents.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  private final File directory;
+
+  private final Set<String> dirtyProjects = new HashSet<String>();
+
+  /**
+   * Deletes the record of each project which is deleted or renamed.
+   */
+  private final IElementChangedListener projectRemovalListener = new IElementChangedListener() {
+    public void elementChanged(ElementChangedEvent event) {
+      for (IJavaElementDelta delta : event.getDelta().getAffectedChildren()) {
+        IJavaElement element = delta.getElement();
+        if (element.getElementType() == IJavaElement.JAVA_PROJECT
+            && delta.getKind() == IJavaElementDelta.REMOVED) {
+          remove(element.getElementName());
+        }
+      }
+    }
+  };
+
+  /**
+   * The hashes of the enhanced class files, by file system path, by project
+   * name.
+   */
+  private final Map<String, Map<String, byte[]>> projects = new HashMap<String, Map<String, byte[]>>();
+
+  /**
+   * @param directory the directory holding a record file for each project
+   */
+  EnhancementRecord(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Forgets the class files of a project, so all of them are sent to the
+   * enhancer unless they have already been enhanced.
+   */
+  public synchronized void clear(String projectName) {
+    projects.put(projectName, new HashMap<String, byte[]>());
+    dirtyProjects.add(projectName);
+  }
+
+  /**
+   * Returns the class files which need to be enhanced, leaving out those which
+   * have already been enhanced or have not changed since the enhancer last
+   * processed them.
+   * 
+   * @param projectName the project which contains the class files
+   * @param classFilePaths the file system paths of the class files
+   */
+  public Set<String> filter(String projectName, Set<String> classFilePaths) {
+    Set<String> pathsToEnhance = new LinkedHashSet<String>();
+    for (String classFilePath : classFilePaths) {
+      byte[] contents;
+      try {
+        contents = readContents(new File(classFilePath));
+      } catch (IOException e) {
+        // Let the enhancer report the problem
+        pathsToEnhance.add(classFilePath);
+        continue;
+      }
+
+      if (isEnhanced(contents)) {
+        continue;
+      }
+
+      byte[] recordedHash;
+      synchronized (this) {
+        recordedHash = getEntries(projectName).get(classFilePath);
+      }
+      if (recordedHash == null
+          || !Arrays.equals(recordedHash, createDigest().digest(contents))) {
+        pathsToEnhance.add(classFilePath);
+      }
+    }
+    return pathsToEnhance;
+  }
+
+  /**
+   * Records the contents of class files which the enhancer has successfully
+   * processed.
+   * 
+   * @param projectName the project which contains the class files
+   * @param classFilePaths the file system paths of the class files
+   */
+  public void recordEnhanced(String projectName,
+      Collection<String> classFilePaths) {
+    Map<String, byte[]> hashes = new HashMap<String, byte[]>();
+    for (String classFilePath : classFilePaths) {
+      try {
+        hashes.put(classFilePath, createDigest().digest(
+            readContents(new File(classFilePath))));
+      } catch (IOException e) {
+        // Not recorded, so it will be enhanced again
+      }
+    }
+
+    synchronized (this) {
+      Map<String, byte[]> entries = getEntries(projectName);
+      for (String classFilePath : classFilePaths) {
+        entries.remove(classFilePath);
+      }
+      entries.putAll(hashes);
+      dirtyProjects.add(projectName);
+    }
+  }
+
+  /**
+   * Forgets a project and deletes its saved record.
+   */
+  public synchronized void remove(String projectName) {
+    projects.remove(projectName);
+    dirtyProjects.remove(projectName);
+    File recordFile = getRecordFile(projectName);
+    if (recordFile.exists() && !recordFile.delete()) {
+      AppEngineCorePluginLog.logWarning("Could not delete " + recordFile);
+    }
+  }
+
+  /**
+   * Forgets the class files of a project other than the given ones, such as
+   * those which have been deleted.
+   * 
+   * @param projectName the project which contains the class files
+   * @param classFilePaths the file system paths of the class files to keep
+   */
+  public synchronized void retain(String projectName,
+      Collection<String> classFilePaths) {
+    if (getEntries(projectName).keySet().retainAll(classFilePaths)) {
+      dirtyProjects.add(projectName);
+    }
+  }
+
+  synchronized void saveRecord() {
+    for (String projectName : dirtyProjects) {
+      try {
+        writeProject(projectName, projects.get(projectName));
+      } catch (IOException e) {
+        AppEngineCorePluginLog.logError(e,
+            "Could not save the enhancement record for {0}", projectName);
+      }
+    }
+    dirtyProjects.clear();
+  }
+
+  private Map<String, byte[]> getEntries(String projectName) {
+    Map<String, byte[]> entries = projects.get(projectName);
+    if (entries == null) {
+      entries = readProject(projectName);
+      projects.put(projectName, entries);
+    }
+    return entries;
+  }
+
+  private File getRecordFile(String projectName) {
+    return new File(directory, projectName + RECORD_FILE_SUFFIX);
+  }
+
+  private Map<String, byte[]> readProject(String projectName) {
+    Map<String, byte[]> entries = new HashMap<String, byte[]>();
+    File recordFile = getRecordFile(projectName);
+    if (!recordFile.exists()) {
+      return entries;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+          recordFile)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        // Written by a different version of the plugin; start over
+        return entries;
+      }
+
+      int entryCount = in.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        String classFilePath = in.readUTF();
+        byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        entries.put(classFilePath, hash);
+      }
+    } catch (IOException e) {
+      // A record we cannot read only costs some enhancement
+      AppEngineCorePluginLog.logWarning(e,
+          "Could not read the enhancement record for " + projectName);
+      entries.clear();
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Ignore
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Writes a project's entries to a temporary file which then replaces the
+   * record file, so an interrupted write never leaves a partial record behind.
+   */
+  private void writeProject(String projectName, Map<String, byte[]> entries)
+      throws IOException {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+
+    File recordFile = getRecordFile(projectName);
+    File tempFile = new File(directory, projectName + TEMP_FILE_SUFFIX);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(tempFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+      for (Entry<String, byte[]> entry : entries.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeByte(entry.getValue().length);
+        out.write(entry.getValue());
+      }
+    } finally {
+      out.close();
+    }
+
+    // File.renameTo will not replace an existing file on all platforms
+    if (recordFile.exists() && !recordFile.delete()) {
+      tempFile.delete();
+      throw new IOException("Could not replace " + recordFile);
+    }
+    if (!tempFile.renameTo(recordFile)) {
+      throw new IOException("Could not rename " + tempFile + " to "
+          + recordFile);
+    }
+  }
+
+}
@@ -15,28 +15,39 @@
 package com.google.appengine.eclipse.core.orm.enhancement;
 
 import com.google.appengine.eclipse.core.AppEngineCorePlugin;
+import com.google.appengine.eclipse.core.AppEngineCorePluginLog;
 import com.google.appengine.eclipse.core.properties.GaeProjectProperties;
+import com.google.appengine.eclipse.core.sdk.AppEngineBridgeFactory;
 import com.google.gdt.eclipse.core.ProcessUtilities;
 import com.google.gdt.eclipse.core.console.MessageConsoleUtilities;
 import com.google.gdt.eclipse.core.extensions.ExtensionQuery;
 
 import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.ui.console.MessageConsole;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Job that performs a datanucleus enhancement on a set <code>.class</code>
- * files.
+ * files. The enhancement runs in the project's {@link EnhancerProcess}, and
+ * the files from builds which happen while a job is waiting to run are
+ * enhanced by that job.
  */
 public class EnhancerJob extends WorkspaceJob {
 
@@ -54,6 +65,50 @@ public class EnhancerJob extends WorkspaceJob {
 
   private static final String DATANUCLEUS_VERSION_ARG = "-enhancerVersion";
 
+  /**
+   * How long a job waits before running, so the files from builds in quick
+   * succession are enhanced together.
+   */
+  private static final long BATCH_DELAY_MS = 250;
+
+  /**
+   * The jobs which have not started running yet, by project name.
+   */
+  private static final Map<String, EnhancerJob> pendingJobs = new HashMap<String, EnhancerJob>();
+
+  /**
+   * Schedules the enhancement of the files. If a job for the project has not
+   * started running yet, the files are added to it instead.
+   * 
+   * @param javaProject the project which contains the files
+   * @param pathsToEnhance the file system paths of the class files
+   */
+  public static void enhance(IJavaProject javaProject,
+      Set<String> pathsToEnhance) {
+    String projectName = javaProject.getElementName();
+    synchronized (pendingJobs) {
+      EnhancerJob job = pendingJobs.get(projectName);
+      if (job != null) {
+        job.pathsToEnhance.addAll(pathsToEnhance);
+        return;
+      }
+
+      job = new EnhancerJob(javaProject, pathsToEnhance);
+      pendingJobs.put(projectName, job);
+      job.setPriority(Job.SHORT);
+      // Enhancement only touches the project's own output folders
+      job.setRule(javaProject.getProject());
+      job.schedule(BATCH_DELAY_MS);
+    }
+  }
+
+  /**
+   * Stops the enhancer processes. Called when the plugin stops.
+   */
+  public static void stopEnhancerProcesses() {
+    EnhancerProcess.stopAll();
+  }
+
   private static List<String> buildClasspath(IJavaProject javaProject)
       throws CoreException {
 
@@ -73,23 +128,64 @@ public class EnhancerJob extends WorkspaceJob {
 
   private final IJavaProject javaProject;
 
+  /**
+   * Guarded by {@link #pendingJobs} until the job starts running.
+   */
   private final Set<String> pathsToEnhance;
 
-  public EnhancerJob(IJavaProject javaProject, Set<String> pathsToEnhance) {
+  private EnhancerJob(IJavaProject javaProject, Set<String> pathsToEnhance) {
     super(NAME);
     this.javaProject = javaProject;
-    this.pathsToEnhance = pathsToEnhance;
+    this.pathsToEnhance = new HashSet<String>(pathsToEnhance);
   }
 
   @Override
   public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
+    List<String> paths;
+    synchronized (pendingJobs) {
+      // Files from later builds go to a new job from now on
+      if (pendingJobs.get(javaProject.getElementName()) == this) {
+        pendingJobs.remove(javaProject.getElementName());
+      }
+      paths = new ArrayList<String>(pathsToEnhance);
+    }
+
+    // Add the input files
+    List<String> enhancerArgs = new ArrayList<String>(paths);
+
+    // Add the datanucleus version number if it is not empty.
+    String datanucleusVersion = GaeProjectProperties.getGaeDatanucleusVersion(
+        javaProject.getProject());
+    if (datanucleusVersion != null && datanucleusVersion.length() > 0) {
+      enhancerArgs.add(DATANUCLEUS_VERSION_ARG);
+      enhancerArgs.add(datanucleusVersion);
+    }
 
     List<String> classpath = buildClasspath(javaProject);
+    String javaExecutable = ProcessUtilities.computeJavaExecutableFullyQualifiedPath(javaProject);
+
+    MessageConsole messageConsole = MessageConsoleUtilities.getMessageConsole(
+        javaProject.getElementName() + " - Datanucleus Enhancement", null);
+
+    IPath projectLocation = javaProject.getProject().getLocation();
 
     try {
+      try {
+        int status = enhanceInEnhancerProcess(javaExecutable, classpath,
+            projectLocation.toFile(), enhancerArgs, messageConsole);
+        recordEnhanced(status, paths);
+        return Status.OK_STATUS;
+      } catch (IOException e) {
+        AppEngineCorePluginLog.logWarning(e,
+            "Could not enhance in a running enhancer process, starting a new one");
+      } catch (CoreException e) {
+        AppEngineCorePluginLog.logWarning(e,
+            "Could not find the enhancer process's classes, starting a new one");
+      }
+
       List<String> commands = new ArrayList<String>();
       // Add the path to the java executable
-      commands.add(ProcessUtilities.computeJavaExecutableFullyQualifiedPath(javaProject));
+      commands.add(javaExecutable);
 
       // Add the classpath
       commands.add("-cp");
@@ -98,24 +194,12 @@ public class EnhancerJob extends WorkspaceJob {
       // Add the main class
       commands.add(MAINCLASS);
 
-      // Add the input files
-      commands.addAll(pathsToEnhance);
-
-      // Add the datanucleus version number if it is not empty.
-      String datanucleusVersion = GaeProjectProperties.getGaeDatanucleusVersion(
-          javaProject.getProject());
-      if (datanucleusVersion != null && !datanucleusVersion.isEmpty()) {
-        commands.add(DATANUCLEUS_VERSION_ARG);
-        commands.add(datanucleusVersion);
-      }
-
-      MessageConsole messageConsole = MessageConsoleUtilities.getMessageConsole(
-          javaProject.getElementName() + " - Datanucleus Enhancement", null);
+      // Add the input files and the datanucleus version
+      commands.addAll(enhancerArgs);
 
-      IPath projectLocation = javaProject.getProject().getLocation();
-
-      ProcessUtilities.launchProcessAndActivateOnError(commands,
+      int status = ProcessUtilities.launchProcessAndActivateOnError(commands,
           projectLocation.toFile(), messageConsole);
+      recordEnhanced(status, paths);
 
     } catch (IOException e) {
       throw new CoreException(new Status(IStatus.ERROR,
@@ -127,4 +211,57 @@ public class EnhancerJob extends WorkspaceJob {
     return Status.OK_STATUS;
   }
 
+  /**
+   * Enhances in the project's enhancer process. Only appengine-sdk-proxy.jar
+   * is on the process's classpath. The enhancer's classpath is sent with each
+   * request rather than on the command line, which may be too short for it.
+   * The daemon keeps the jars on it loaded, and loads the project's output
+   * folders anew for each request, so the project's changed classes are never
+   * stale.
+   */
+  private int enhanceInEnhancerProcess(String javaExecutable,
+      List<String> classpath, File workingDir, List<String> enhancerArgs,
+      MessageConsole messageConsole) throws CoreException, IOException {
+    List<String> commands = new ArrayList<String>();
+    commands.add(javaExecutable);
+    commands.add("-cp");
+    commands.add(getProxyClasspathEntry().getAbsolutePath());
+    commands.add(EnhancerProcess.DAEMON_MAINCLASS);
+    commands.add(MAINCLASS);
+
+    int status = EnhancerProcess.getProcess(javaProject.getProject()).enhance(
+        commands, workingDir, ProcessUtilities.buildClasspathString(classpath),
+        enhancerArgs, messageConsole);
+    if (status != 0) {
+      messageConsole.activate();
+    }
+    return status;
+  }
+
+  /**
+   * Returns appengine-sdk-proxy.jar, or the proxy_bin folder when the plugin
+   * runs in development mode, as a file which can go on a classpath.
+   */
+  private File getProxyClasspathEntry() throws CoreException, IOException {
+    URL proxyURL = FileLocator.toFileURL(
+        AppEngineBridgeFactory.getProxyJarURL());
+    File proxyFile = new File(proxyURL.getPath());
+    if (!proxyFile.exists()) {
+      throw new CoreException(new Status(IStatus.ERROR,
+          AppEngineCorePlugin.PLUGIN_ID, "Unable to find " + proxyFile));
+    }
+    return proxyFile;
+  }
+
+  /**
+   * Records the class files once the enhancer has processed them, so they are
+   * not sent to it again until they change.
+   */
+  private void recordEnhanced(int status, List<String> paths) {
+    if (status == 0) {
+      EnhancementRecord.getInstance().recordEnhanced(
+          javaProject.getElementName(), paths);
+    }
+  }
+
 }
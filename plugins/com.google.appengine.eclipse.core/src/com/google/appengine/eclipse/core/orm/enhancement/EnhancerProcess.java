@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.appengine.eclipse.core.orm.enhancement;
+
+import com.google.appengine.eclipse.core.AppEngineCorePluginLog;
+import com.google.gdt.eclipse.core.ProcessUtilities;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.ui.console.MessageConsole;
+import org.eclipse.ui.console.MessageConsoleStream;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JVM kept running for a project to enhance its classes, so each enhancement
+ * does not pay for starting a JVM and loading the enhancer. The JVM runs the
+ * EnhancerDaemon from appengine-sdk-proxy.jar, which reads requests from its
+ * standard input, each with the enhancer's classpath. It is restarted when the
+ * command used to launch it changes, for instance because the project's JRE
+ * changed.
+ */
+final class EnhancerProcess {
+
+  /**
+   * The main class of the daemon, which is loaded from appengine-sdk-proxy.jar
+   * and so cannot be referenced directly.
+   */
+  static final String DAEMON_MAINCLASS = "com.google.appengine.eclipse.core.proxy.EnhancerDaemon";
+
+  /**
+   * Starts the line which ends the output of a request. This must match
+   * EnhancerDaemon.DONE_PREFIX.
+   */
+  private static final String DONE_PREFIX = "#enhancer-done ";
+
+  private static final Map<String, EnhancerProcess> processes = new HashMap<String, EnhancerProcess>();
+
+  /**
+   * Stops the process of a project when it is closed or deleted.
+   */
+  private static final IResourceChangeListener projectListener = new IResourceChangeListener() {
+    public void resourceChanged(IResourceChangeEvent event) {
+      IResource resource = event.getResource();
+      if (resource != null && resource.getType() == IResource.PROJECT) {
+        stop(resource.getName());
+      }
+    }
+  };
+
+  private static boolean listening;
+
+  /**
+   * Returns the process for the project, which is started when it is first
+   * asked to enhance.
+   */
+  static EnhancerProcess getProcess(IProject project) {
+    synchronized (processes) {
+      if (!listening) {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(
+            projectListener,
+            IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+        listening = true;
+      }
+
+      EnhancerProcess process = processes.get(project.getName());
+      if (process == null) {
+        process = new EnhancerProcess();
+        processes.put(project.getName(), process);
+      }
+      return process;
+    }
+  }
+
+  /**
+   * Stops the processes of all projects.
+   */
+  static void stopAll() {
+    List<EnhancerProcess> stoppedProcesses;
+    synchronized (processes) {
+      if (listening) {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+            projectListener);
+        listening = false;
+      }
+
+      stoppedProcesses = new ArrayList<EnhancerProcess>(processes.values());
+      processes.clear();
+    }
+
+    for (EnhancerProcess process : stoppedProcesses) {
+      process.stop();
+    }
+  }
+
+  private static void stop(String projectName) {
+    EnhancerProcess process;
+    synchronized (processes) {
+      process = processes.remove(projectName);
+    }
+
+    if (process != null) {
+      process.stop();
+    }
+  }
+
+  private MessageConsoleStream errStream;
+
+  private Thread errorPump;
+
+  private List<String> launchCommands;
+
+  private MessageConsoleStream outStream;
+
+  private Process process;
+
+  private Writer requestWriter;
+
+  private BufferedReader responseReader;
+
+  private EnhancerProcess() {
+  }
+
+  /**
+   * Enhances the classes, starting or restarting the process if needed. The
+   * enhancer's output goes to the console.
+   * 
+   * @param launchCommands the commands which launch the daemon
+   * @param workingDir the working directory of the daemon
+   * @param enhancerClasspath the enhancer's classpath
+   * @param enhancerArgs the arguments for the enhancer
+   * @param messageConsole the console for the enhancer's output
+   * @return the enhancer's exit status
+   * @throws IOException if the process could not be started or stopped while
+   *           enhancing, in which case it will be started again for the next
+   *           request
+   */
+  synchronized int enhance(List<String> launchCommands, File workingDir,
+      String enhancerClasspath, List<String> enhancerArgs,
+      MessageConsole messageConsole) throws IOException {
+    if (process != null
+        && (!launchCommands.equals(this.launchCommands) || !isRunning())) {
+      stop();
+    }
+
+    if (process == null) {
+      start(launchCommands, workingDir, messageConsole);
+    }
+
+    try {
+      requestWriter.write(enhancerClasspath);
+      requestWriter.write('\n');
+      for (String arg : enhancerArgs) {
+        requestWriter.write(arg);
+        requestWriter.write('\n');
+      }
+      requestWriter.write('\n');
+      requestWriter.flush();
+
+      String line;
+      while ((line = responseReader.readLine()) != null) {
+        if (line.startsWith(DONE_PREFIX)) {
+          return Integer.parseInt(line.substring(DONE_PREFIX.length()).trim());
+        }
+        outStream.println(line);
+      }
+      throw new IOException("The enhancer process exited unexpectedly");
+    } catch (IOException e) {
+      stop();
+      throw e;
+    } catch (NumberFormatException e) {
+      stop();
+      throw new IOException("Unexpected response from the enhancer process: "
+          + e.getMessage());
+    }
+  }
+
+  private boolean isRunning() {
+    try {
+      process.exitValue();
+      return false;
+    } catch (IllegalThreadStateException e) {
+      return true;
+    }
+  }
+
+  private void start(List<String> launchCommands, File workingDir,
+      MessageConsole messageConsole) throws IOException {
+    process = ProcessUtilities.startProcess(launchCommands, workingDir);
+    this.launchCommands = launchCommands;
+
+    requestWriter = new BufferedWriter(new OutputStreamWriter(
+        process.getOutputStream(), "UTF-8"));
+    responseReader = new BufferedReader(new InputStreamReader(
+        process.getInputStream()));
+
+    outStream = messageConsole.newMessageStream();
+    outStream.setActivateOnWrite(false);
+    errStream = messageConsole.newMessageStream();
+    errStream.setActivateOnWrite(true);
+
+    final BufferedReader errorReader = new BufferedReader(
+        new InputStreamReader(process.getErrorStream()));
+    final MessageConsoleStream finalErrStream = errStream;
+    errorPump = new Thread(new Runnable() {
+      public void run() {
+        try {
+          String line;
+          while ((line = errorReader.readLine()) != null) {
+            finalErrStream.println(line);
+          }
+        } catch (IOException e) {
+          // The process was stopped
+        }
+      }
+    }, "DataNucleus Enhancer Error Pump");
+    errorPump.setDaemon(true);
+    errorPump.start();
+  }
+
+  private synchronized void stop() {
+    if (process == null) {
+      return;
+    }
+
+    try {
+      // The daemon exits once it has no more requests
+      requestWriter.close();
+    } catch (IOException e) {
+      // Destroyed below anyway
+    }
+    ProcessUtilities.cleanupProcess(process);
+
+    try {
+      errorPump.join(1000);
+      outStream.close();
+      errStream.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      AppEngineCorePluginLog.logError(e);
+    }
+
+    process = null;
+    launchCommands = null;
+    requestWriter = null;
+    responseReader = null;
+    errorPump = null;
+    outStream = null;
+    errStream = null;
+  }
+
+}
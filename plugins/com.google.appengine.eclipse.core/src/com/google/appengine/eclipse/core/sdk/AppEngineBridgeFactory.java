@@ -25,6 +25,7 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -121,6 +122,45 @@ public class AppEngineBridgeFactory {
     return createBridge(sdkLocation, apiToolsJar, false);
   }
 
+  /**
+   * Returns the location of appengine-sdk-proxy.jar, which holds the classes
+   * that are loaded alongside an App Engine SDK rather than by the plugin.
+   * 
+   * @throws CoreException if the jar cannot be found
+   * @throws IOException if the location cannot be resolved
+   */
+  public static URL getProxyJarURL() throws CoreException, IOException {
+    URL bridgeJarURL = null;
+
+    if (AppEngineCorePlugin.getDefault().inDevelopmentMode()) {
+      /*
+       * This is a bit of hack that allows the bridge implementation to work
+       * when we're running the plugin in development mode. In this case, we
+       * set the classloader to load classes directly from the plugin's output
+       * folder.
+       */
+      bridgeJarURL = FileLocator.find(
+          AppEngineCorePlugin.getDefault().getBundle(),
+          new Path("proxy_bin"), (Map<?, ?>) null);
+    } else {
+      /*
+       * Note that we reference the copy of the jar that exists in the
+       * plugin's state location. The copy was done during GaePlugin.start().
+       */
+      bridgeJarURL = AppEngineCorePlugin.getDefault().getStateLocation().append(
+          AppEngineBridge.APPENGINE_PROXY_JAR_NAME).toFile().toURI().toURL();
+    }
+
+    if (bridgeJarURL == null) {
+      throw new CoreException(StatusUtilities.newErrorStatus(
+          ("Unable to locate " + AppEngineBridge.APPENGINE_PROXY_JAR_NAME
+              + " at the root of " + AppEngineCorePlugin.PLUGIN_ID),
+          AppEngineCorePlugin.PLUGIN_ID));
+    }
+
+    return FileLocator.resolve(bridgeJarURL);
+  }
+
   /**
    * Creates an AppEnginge bridge.
    * 
@@ -133,35 +173,7 @@ public class AppEngineBridgeFactory {
       File apiToolsJar, boolean doSetSdkRoot) throws CoreException {
 
     try {
-      URL bridgeJarURL = null;
-
-      if (AppEngineCorePlugin.getDefault().inDevelopmentMode()) {
-        /*
-         * This is a bit of hack that allows the bridge implementation to work
-         * when we're running the plugin in development mode. In this case, we
-         * set the classloader to load classes directly from the plugin's output
-         * folder.
-         */
-        bridgeJarURL = FileLocator.find(
-            AppEngineCorePlugin.getDefault().getBundle(),
-            new Path("proxy_bin"), (Map<?, ?>) null);
-      } else {
-        /*
-         * Note that we reference the copy of the jar that exists in the
-         * plugin's state location. The copy was done during GaePlugin.start().
-         */
-        bridgeJarURL = AppEngineCorePlugin.getDefault().getStateLocation().append(
-            AppEngineBridge.APPENGINE_PROXY_JAR_NAME).toFile().toURI().toURL();
-      }
-
-      if (bridgeJarURL == null) {
-        throw new CoreException(StatusUtilities.newErrorStatus(
-            ("Unable to locate " + AppEngineBridge.APPENGINE_PROXY_JAR_NAME
-                + " at the root of " + AppEngineCorePlugin.PLUGIN_ID),
-            AppEngineCorePlugin.PLUGIN_ID));
-      }
-
-      URL resolvedBridgeJarURL = FileLocator.resolve(bridgeJarURL);
+      URL resolvedBridgeJarURL = getProxyJarURL();
       URLClassLoader bridgeClassLoader = new URLClassLoader(new URL[]{
           apiToolsJar.toURI().toURL(), resolvedBridgeJarURL},
           AppEngineBridgeFactory.class.getClassLoader());
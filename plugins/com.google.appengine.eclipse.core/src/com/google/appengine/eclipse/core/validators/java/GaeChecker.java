@@ -20,11 +20,7 @@ import com.google.appengine.eclipse.core.resources.GaeProject;
 import com.google.appengine.eclipse.core.sdk.GaeSdk;
 
 import org.eclipse.core.resources.IProject;
-import org.eclipse.jdt.core.IClasspathEntry;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.IPackageFragmentRoot;
-import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.compiler.CategorizedProblem;
 import org.eclipse.jdt.core.dom.ASTNode;
@@ -35,11 +31,9 @@ import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.ImportDeclaration;
 import org.eclipse.jdt.core.dom.PackageDeclaration;
 import org.eclipse.jdt.core.dom.SimpleName;
-import org.eclipse.jdt.launching.JavaRuntime;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Checks that only Google App Engine supported JRE types are used by a
@@ -67,38 +61,17 @@ public class GaeChecker {
    */
   private static class GaeValidationVisitor extends ASTVisitor {
 
-    /**
-     * Returns <code>true</code> if the type is part of the JRE,
-     * <code>false</code> otherwise.
-     * 
-     * @throws JavaModelException
-     */
-    private static boolean isJreType(IType type) throws JavaModelException {
-      IPackageFragmentRoot packageFragmentRoot = getPackageFragmentRoot(type);
-      if (packageFragmentRoot != null) {
-        IClasspathEntry cpEntry = packageFragmentRoot.getRawClasspathEntry();
-        if (cpEntry.getEntryKind() == IClasspathEntry.CPE_CONTAINER
-            && cpEntry.getPath().segment(0).equals(JavaRuntime.JRE_CONTAINER)) {
-          return true;
-        }
-      }
-
-      return false;
-    }
-
-    private final IJavaProject javaProject;
-
     private final List<CategorizedProblem> problems;
 
-    private final Set<String> whiteList;
+    private final WhiteListVerdictCache.ProjectVerdicts verdicts;
 
     GaeValidationVisitor(GaeProject gaeProject,
         List<CategorizedProblem> problems) {
-      this.javaProject = gaeProject.getJavaProject();
       this.problems = problems;
       GaeSdk sdk = gaeProject.getSdk();
       assert (sdk != null);
-      this.whiteList = sdk.getWhiteList();
+      this.verdicts = WhiteListVerdictCache.INSTANCE.getVerdicts(
+          gaeProject.getJavaProject(), sdk);
     }
 
     @Override
@@ -156,23 +129,7 @@ public class GaeChecker {
           return;
         }
 
-        IType type = javaProject.findType(erasureBinding.getQualifiedName());
-        if (type == null) {
-          // Ignore types that cannot be found
-          return;
-        }
-
-        if (!type.isBinary()) {
-          // Ignore source types
-          return;
-        }
-
-        if (!isJreType(type)) {
-          // Ignore types that are not part of the JRE.
-          return;
-        }
-
-        if (!whiteList.contains(type.getFullyQualifiedName())) {
+        if (!verdicts.isSupported(erasureBinding.getQualifiedName())) {
           // It is an error to use a JRE type that is not included in the
           // white-list.
           CategorizedProblem problem = AppEngineJavaProblem.createUnsupportedTypeError(
@@ -214,9 +171,4 @@ public class GaeChecker {
     }
     return problems;
   }
-
-  private static IPackageFragmentRoot getPackageFragmentRoot(
-      IJavaElement element) {
-    return (IPackageFragmentRoot) element.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
-  }
 }
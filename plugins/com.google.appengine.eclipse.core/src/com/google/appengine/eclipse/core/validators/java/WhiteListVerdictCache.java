@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.appengine.eclipse.core.validators.java;
+
+import com.google.appengine.eclipse.core.sdk.GaeSdk;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.launching.JavaRuntime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers, for each project, whether the types referenced by its code may be
+ * used on App Engine, so {@link GaeChecker} looks each type up once rather
+ * than once per reference. The verdicts are shared by reconciling and
+ * building, and are forgotten when the project's classpath changes or it is
+ * closed or removed, or when it uses a different SDK.
+ */
+public final class WhiteListVerdictCache {
+
+  /**
+   * The verdicts for the types referenced by one project.
+   */
+  static final class ProjectVerdicts {
+
+    private final IJavaProject javaProject;
+
+    private final IPath sdkLocation;
+
+    /**
+     * Whether each type may be used, by qualified name.
+     */
+    private final ConcurrentMap<String, Boolean> verdicts = new ConcurrentHashMap<String, Boolean>();
+
+    private final Set<String> whiteList;
+
+    private ProjectVerdicts(IJavaProject javaProject, GaeSdk sdk) {
+      this.javaProject = javaProject;
+      this.sdkLocation = sdk.getInstallationPath();
+      this.whiteList = Collections.unmodifiableSet(new HashSet<String>(
+          sdk.getWhiteList()));
+    }
+
+    /**
+     * Returns whether the type may be used on App Engine: it is not a JRE
+     * type, or it is on the SDK's white-list. Types which cannot be found
+     * may be used, since they are reported by the compiler.
+     * 
+     * @param qualifiedName the qualified name of the type's erasure
+     */
+    public boolean isSupported(String qualifiedName) throws JavaModelException {
+      Boolean verdict = verdicts.get(qualifiedName);
+      if (verdict == null) {
+        verdict = computeVerdict(qualifiedName);
+        verdicts.put(qualifiedName, verdict);
+      }
+      return verdict;
+    }
+
+    int size() {
+      return verdicts.size();
+    }
+
+    private Boolean computeVerdict(String qualifiedName)
+        throws JavaModelException {
+      IType type = javaProject.findType(qualifiedName);
+      if (type == null) {
+        // Ignore types that cannot be found
+        return Boolean.TRUE;
+      }
+
+      if (!type.isBinary()) {
+        // Ignore source types
+        return Boolean.TRUE;
+      }
+
+      if (!isJreType(type)) {
+        // Ignore types that are not part of the JRE.
+        return Boolean.TRUE;
+      }
+
+      return whiteList.contains(type.getFullyQualifiedName());
+    }
+  }
+
+  public static final WhiteListVerdictCache INSTANCE = new WhiteListVerdictCache();
+
+  /**
+   * Returns <code>true</code> if the type is part of the JRE,
+   * <code>false</code> otherwise.
+   * 
+   * @throws JavaModelException
+   */
+  private static boolean isJreType(IType type) throws JavaModelException {
+    IPackageFragmentRoot packageFragmentRoot = (IPackageFragmentRoot) type.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+    if (packageFragmentRoot != null) {
+      IClasspathEntry cpEntry = packageFragmentRoot.getRawClasspathEntry();
+      if (cpEntry.getEntryKind() == IClasspathEntry.CPE_CONTAINER
+          && cpEntry.getPath().segment(0).equals(JavaRuntime.JRE_CONTAINER)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private final IElementChangedListener elementChangedListener = new IElementChangedListener() {
+    public void elementChanged(ElementChangedEvent event) {
+      for (IJavaElementDelta delta : event.getDelta().getAffectedChildren()) {
+        IJavaElement element = delta.getElement();
+        if (element.getElementType() != IJavaElement.JAVA_PROJECT) {
+          continue;
+        }
+
+        int flags = delta.getFlags();
+        if (delta.getKind() == IJavaElementDelta.REMOVED
+            || (flags & (IJavaElementDelta.F_CLASSPATH_CHANGED
+                | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED | IJavaElementDelta.F_CLOSED)) != 0) {
+          remove(element.getElementName());
+        }
+      }
+    }
+  };
+
+  /**
+   * The verdicts by project name.
+   */
+  private final Map<String, ProjectVerdicts> projects = new HashMap<String, ProjectVerdicts>();
+
+  private WhiteListVerdictCache() {
+  }
+
+  /**
+   * Returns the verdicts for the types referenced by the project, which uses
+   * the given SDK.
+   */
+  public ProjectVerdicts getVerdicts(IJavaProject javaProject, GaeSdk sdk) {
+    String projectName = javaProject.getElementName();
+    synchronized (projects) {
+      ProjectVerdicts verdicts = projects.get(projectName);
+      if (verdicts == null
+          || !sdk.getInstallationPath().equals(verdicts.sdkLocation)) {
+        verdicts = new ProjectVerdicts(javaProject, sdk);
+        projects.put(projectName, verdicts);
+      }
+      return verdicts;
+    }
+  }
+
+  /**
+   * Starts listening for classpath changes.
+   */
+  public void start() {
+    JavaCore.addElementChangedListener(elementChangedListener);
+  }
+
+  /**
+   * Stops listening for changes, and forgets all verdicts.
+   */
+  public void stop() {
+    JavaCore.removeElementChangedListener(elementChangedListener);
+
+    synchronized (projects) {
+      projects.clear();
+    }
+  }
+
+  void remove(String projectName) {
+    synchronized (projects) {
+      projects.remove(projectName);
+    }
+  }
+
+}
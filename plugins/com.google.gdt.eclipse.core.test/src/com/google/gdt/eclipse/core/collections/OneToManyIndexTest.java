@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.eclipse.core.collections;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests {@link OneToManyIndex} and its overlays.
+ */
+public class OneToManyIndexTest extends TestCase {
+
+  private static <T> Set<T> setOf(T... items) {
+    return new HashSet<T>(Arrays.asList(items));
+  }
+
+  private OneToManyIndex<String, Integer> index;
+
+  public void testIndex() {
+    assertEquals(setOf(1, 2), index.getElements("a"));
+    assertEquals(setOf("a", "b"), index.getKeys(2));
+    assertEquals(setOf("a", "b"), index.keys());
+    assertEquals(setOf(1, 2, 3), index.elements());
+
+    index.removeKey("a");
+    assertFalse(index.hasKey("a"));
+    assertEquals(setOf("b"), index.getKeys(2));
+    assertEquals(Collections.emptySet(), index.getKeys(1));
+
+    index.removeElement(2);
+    assertFalse(index.hasElement(2));
+    assertEquals(setOf(3), index.getElements("b"));
+  }
+
+  public void testManyToManyOverlay() {
+    ManyToManyIndex<String, Integer> base = new ManyToManyIndex<String, Integer>();
+    base.addLeftToRight("a", 1);
+
+    ManyToManyIndex<String, Integer> overlay = ManyToManyIndex.createOverlay(base);
+    overlay.addLeftToRight("b", 1);
+    overlay.removeLeftElement("a");
+
+    assertEquals(setOf("b"), overlay.getLeftElements(1));
+    assertEquals(setOf("a"), base.getLeftElements(1));
+  }
+
+  public void testOverlayClear() {
+    OneToManyIndex<String, Integer> overlay = OneToManyIndex.createOverlay(index);
+    overlay.clear();
+    assertTrue(overlay.keys().isEmpty());
+    assertFalse(overlay.hasKey("a"));
+
+    overlay.addElement("a", 4);
+    assertEquals(setOf(4), overlay.getElements("a"));
+    assertEquals(setOf(1, 2), index.getElements("a"));
+  }
+
+  public void testOverlayKeepsModifications() {
+    OneToManyIndex<String, Integer> overlay = OneToManyIndex.createOverlay(index);
+
+    overlay.addElement("a", 3);
+    overlay.addElement("c", 4);
+    overlay.removeKey("b");
+    assertEquals(setOf(1, 2, 3), overlay.getElements("a"));
+    assertEquals(setOf("a"), overlay.getKeys(3));
+    assertEquals(setOf("a"), overlay.getKeys(2));
+    assertFalse(overlay.hasKey("b"));
+    assertEquals(setOf("a", "c"), overlay.keys());
+    assertEquals(setOf(1, 2, 3, 4), overlay.elements());
+
+    overlay.removeElement(1);
+    assertFalse(overlay.hasElement(1));
+    assertEquals(setOf(2, 3), overlay.getElements("a"));
+
+    overlay.putElements("a", setOf(5));
+    assertEquals(setOf(5), overlay.getElements("a"));
+    assertEquals(Collections.emptySet(), overlay.getKeys(2));
+
+    // The underlying index is unchanged
+    assertEquals(setOf(1, 2), index.getElements("a"));
+    assertEquals(setOf(2, 3), index.getElements("b"));
+    assertEquals(setOf("a", "b"), index.getKeys(2));
+    assertFalse(index.hasKey("c"));
+  }
+
+  public void testOverlayReadsThrough() {
+    OneToManyIndex<String, Integer> overlay = OneToManyIndex.createOverlay(index);
+    assertEquals(setOf(1, 2), overlay.getElements("a"));
+    assertEquals(setOf("a", "b"), overlay.getKeys(2));
+    assertTrue(overlay.hasKey("b"));
+    assertTrue(overlay.hasElement(3));
+
+    // Changes to what the overlay has not modified show through
+    index.addElement("c", 4);
+    assertEquals(setOf(4), overlay.getElements("c"));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    index = new OneToManyIndex<String, Integer>();
+    index.addElement("a", 1);
+    index.addElement("a", 2);
+    index.addElement("b", 2);
+    index.addElement("b", 3);
+  }
+
+}
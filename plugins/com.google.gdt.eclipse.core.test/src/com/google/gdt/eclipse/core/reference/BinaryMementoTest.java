@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.eclipse.core.reference;
+
+import com.google.gdt.eclipse.core.ProjectTestUtilities;
+import com.google.gdt.eclipse.core.reference.location.ClasspathRelativeFileReferenceLocation;
+import com.google.gdt.eclipse.core.reference.location.LogicalJavaElementReferenceLocation;
+import com.google.gdt.eclipse.core.reference.logicaljavamodel.LogicalType;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.ui.IMemento;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests the {@link BinaryMemento} class.
+ */
+public class BinaryMementoTest extends TestCase {
+
+  private static final String PROJECT_NAME = "BinaryMementoTest";
+
+  private static BinaryMemento saveAndLoad(BinaryMemento memento)
+      throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    memento.save(out);
+    return BinaryMemento.createReadRoot(new ByteArrayInputStream(
+        out.toByteArray()));
+  }
+
+  public void testInvalidStream() throws Exception {
+    try {
+      BinaryMemento.createReadRoot(new ByteArrayInputStream(
+          "<xml/>".getBytes()));
+      fail("Expected PersistenceException");
+    } catch (PersistenceException e) {
+      // Expected
+    }
+  }
+
+  public void testPersistReferences() throws Exception {
+    IProject project = ProjectTestUtilities.createProject(PROJECT_NAME);
+    try {
+      Set<IReference> references = new HashSet<IReference>();
+      for (int i = 0; i < 100; i++) {
+        references.add(new Reference(new ClasspathRelativeFileReferenceLocation(
+            new Path("com/example/client/Widget" + i + ".ui.xml")),
+            new LogicalJavaElementReferenceLocation(new LogicalType(
+                "com.example.client.Widget" + i)), project));
+      }
+
+      BinaryMemento memento = BinaryMemento.createWriteRoot("root");
+      ReferenceManagerPersister.persist(references, memento);
+      assertEquals(references,
+          ReferenceManagerPersister.load(saveAndLoad(memento)));
+    } finally {
+      ProjectTestUtilities.deleteProject(PROJECT_NAME);
+    }
+  }
+
+  public void testSaveAndLoad() throws Exception {
+    BinaryMemento memento = BinaryMemento.createWriteRoot("root");
+    memento.putString("name", "value");
+    memento.putInteger("count", 42);
+    memento.putTextData("text");
+    for (int i = 0; i < 3; i++) {
+      IMemento child = memento.createChild("child", "id" + i);
+      child.putString("name", "value");
+    }
+    memento.createChild("other");
+
+    BinaryMemento loaded = saveAndLoad(memento);
+    assertEquals("root", loaded.getType());
+    assertEquals("value", loaded.getString("name"));
+    assertEquals(Integer.valueOf(42), loaded.getInteger("count"));
+    assertEquals("text", loaded.getTextData());
+    assertNull(loaded.getString("missing"));
+
+    IMemento[] children = loaded.getChildren("child");
+    assertEquals(3, children.length);
+    for (int i = 0; i < children.length; i++) {
+      assertEquals("id" + i, children[i].getID());
+      assertEquals("value", children[i].getString("name"));
+      assertNull(children[i].getTextData());
+    }
+    assertNotNull(loaded.getChild("other"));
+    assertEquals(4, loaded.getChildren().length);
+  }
+
+}
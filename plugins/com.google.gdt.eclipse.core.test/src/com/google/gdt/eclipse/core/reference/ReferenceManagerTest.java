@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.eclipse.core.reference;
+
+import com.google.gdt.eclipse.core.JavaProjectTestUtilities;
+import com.google.gdt.eclipse.core.ProjectTestUtilities;
+import com.google.gdt.eclipse.core.reference.location.AbstractReferenceLocation;
+import com.google.gdt.eclipse.core.reference.location.ClasspathRelativeFileReferenceLocation;
+import com.google.gdt.eclipse.core.reference.location.IMatchable;
+import com.google.gdt.eclipse.core.reference.location.IReferenceLocation;
+import com.google.gdt.eclipse.core.reference.location.LogicalJavaElementReferenceLocation;
+import com.google.gdt.eclipse.core.reference.location.ReferenceLocationType;
+import com.google.gdt.eclipse.core.reference.logicaljavamodel.LogicalPackage;
+import com.google.gdt.eclipse.core.reference.logicaljavamodel.LogicalType;
+import com.google.gdt.eclipse.core.reference.logicaljavamodel.UiBinderImportReferenceType;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests the {@link ReferenceManager} class.
+ */
+public class ReferenceManagerTest extends TestCase {
+
+  /**
+   * A location which cannot be indexed, matching a single element.
+   */
+  private static class UnindexedLocation extends AbstractReferenceLocation
+      implements IMatchable {
+    private final Object element;
+
+    public UnindexedLocation(Object element) {
+      this.element = element;
+    }
+
+    public boolean matches(Object obj) {
+      return element.equals(obj);
+    }
+  }
+
+  private static final EnumSet<ReferenceLocationType> SOURCE = EnumSet.of(ReferenceLocationType.SOURCE);
+
+  private static final EnumSet<ReferenceLocationType> TARGET = EnumSet.of(ReferenceLocationType.TARGET);
+
+  private static final String PROJECT_NAME = "ReferenceManagerTest";
+
+  private static final String TYPE_NAME = "com.example.client.Foo";
+
+  private static IReferenceLocation createTypeLocation(String typeName) {
+    return new LogicalJavaElementReferenceLocation(new LogicalType(typeName));
+  }
+
+  private static IReferenceLocation createUiXmlLocation() {
+    return new ClasspathRelativeFileReferenceLocation(new Path(
+        "com/example/client/Foo.ui.xml"));
+  }
+
+  private ICompilationUnit cu;
+
+  private IProject project;
+
+  private ReferenceManager referenceManager;
+
+  private IType type;
+
+  public void testGetReferencesWithMatchingJavaElement() {
+    IReference reference = addReference(createUiXmlLocation(),
+        createTypeLocation(TYPE_NAME));
+    addReference(createUiXmlLocation(),
+        createTypeLocation("com.example.client.Bar"));
+    addReference(createUiXmlLocation(),
+        new LogicalJavaElementReferenceLocation(new LogicalPackage(
+            "com.example.client")));
+
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(type,
+        TARGET), reference);
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(type,
+        SOURCE));
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(
+        type.getType("Inner"), TARGET));
+  }
+
+  public void testGetReferencesWithMatchingResource() {
+    IReference reference = addReference(createTypeLocation(TYPE_NAME),
+        new ClasspathRelativeFileReferenceLocation(new Path(
+            "com/example/client/Foo.java")));
+    addReference(createTypeLocation(TYPE_NAME),
+        new ClasspathRelativeFileReferenceLocation(new Path(
+            "com/example/shared/Foo.java")));
+
+    assertMatches(referenceManager.getReferencesWithMatchingResource(
+        cu.getResource(), TARGET), reference);
+    assertMatches(referenceManager.getReferencesWithMatchingResource(
+        cu.getResource(), SOURCE));
+  }
+
+  public void testLookupAmongManyReferences() {
+    final int referenceCount = 100000;
+
+    for (int i = 0; i < referenceCount; i++) {
+      addReference(createUiXmlLocation(), createTypeLocation(TYPE_NAME + i));
+    }
+    IReference reference = addReference(createUiXmlLocation(),
+        createTypeLocation(TYPE_NAME));
+
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(type,
+        TARGET), reference);
+  }
+
+  public void testRemoveReference() {
+    IReference reference = addReference(createUiXmlLocation(),
+        createTypeLocation(TYPE_NAME));
+    // Adding an equal reference again must not leave a stale index entry
+    addReference(createUiXmlLocation(), createTypeLocation(TYPE_NAME));
+
+    referenceManager.removeReference(reference);
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(type,
+        TARGET));
+  }
+
+  public void testRemoveSourceReferences() {
+    addReference(createUiXmlLocation(), createTypeLocation(TYPE_NAME));
+    addReference(createUiXmlLocation(), new UnindexedLocation(type));
+
+    referenceManager.removeSourceReferences(project);
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(type,
+        TARGET));
+  }
+
+  public void testUiBinderImportMatchesCompilationUnit() {
+    IReference reference = addReference(createUiXmlLocation(),
+        new LogicalJavaElementReferenceLocation(
+            new UiBinderImportReferenceType(TYPE_NAME + "$Inner")));
+
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(cu,
+        TARGET), reference);
+  }
+
+  public void testUnindexedLocation() {
+    IReference reference = addReference(createUiXmlLocation(),
+        new UnindexedLocation(type));
+
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(type,
+        TARGET), reference);
+    assertMatches(referenceManager.getReferencesWithMatchingJavaElement(
+        type.getType("Inner"), TARGET));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    IJavaProject javaProject = JavaProjectTestUtilities.createJavaProject(PROJECT_NAME);
+    project = javaProject.getProject();
+    cu = JavaProjectTestUtilities.createCompilationUnit(javaProject,
+        TYPE_NAME, "package com.example.client;\n"
+            + "public class Foo {\n" + "  public class Inner {}\n" + "}\n");
+    type = cu.getType("Foo");
+    referenceManager = new ReferenceManager();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ProjectTestUtilities.deleteProject(PROJECT_NAME);
+  }
+
+  private IReference addReference(IReferenceLocation sourceLocation,
+      IReferenceLocation targetLocation) {
+    IReference reference = new Reference(sourceLocation, targetLocation,
+        project);
+    referenceManager.addReference(reference);
+    return reference;
+  }
+
+  private void assertMatches(Set<IReference> actual, IReference... expected) {
+    List<IReference> expectedReferences = new ArrayList<IReference>();
+    for (IReference reference : expected) {
+      expectedReferences.add(reference);
+    }
+    assertEquals(expectedReferences.size(), actual.size());
+    assertTrue(actual.containsAll(expectedReferences));
+  }
+
+}
@@ -36,6 +36,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -433,13 +434,36 @@ public class ProcessUtilities {
         processReceiver);
   }
 
+  /**
+   * Starts the process specified in the commands without waiting for it. The
+   * caller is responsible for consuming the process' output, and for cleaning
+   * it up with {@link #cleanupProcess(Process)}.
+   * 
+   * @param commands commands to pass to the {@link ProcessBuilder}
+   * @param workingDir directory to use as the working directory
+   * @return the started process
+   * 
+   * @throws IOException
+   */
+  public static Process startProcess(List<String> commands, File workingDir)
+      throws IOException {
+    List<String> commandArgs = new ArrayList<String>(commands);
+    ProcessBuilder pb = new ProcessBuilder(commandArgs);
+    pb.directory(workingDir);
+
+    moveClasspathArgToEnvironmentVariable(commandArgs, pb);
+
+    pb.redirectErrorStream(false);
+    return pb.start();
+  }
+
   /**
    * Closes the process' input stream, output stream, and error stream, and
    * finally destroys the process by calling <code>destroy()</code>.
    * 
    * @param p the process to cleanup
    */
-  private static void cleanupProcess(Process p) {
+  public static void cleanupProcess(Process p) {
     if (p == null) {
       return;
     }
@@ -51,6 +51,7 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -180,11 +181,18 @@ public class ResourceUtils {
       fos = new FileOutputStream(destFile);
       fis = new FileInputStream(sourceFile);
 
-      byte[] buf = new byte[4096];
-      int numRead;
-
-      while ((numRead = fis.read(buf)) >= 0) {
-        fos.write(buf, 0, numRead);
+      // Let the OS move the bytes rather than copying them through a buffer
+      FileChannel source = fis.getChannel();
+      FileChannel dest = fos.getChannel();
+      long size = source.size();
+      long position = 0;
+      while (position < size) {
+        long transferred = source.transferTo(position, size - position, dest);
+        if (transferred <= 0) {
+          // The source file was truncated while being copied
+          break;
+        }
+        position += transferred;
       }
     } finally {
       try {
@@ -29,6 +29,17 @@ import java.util.Set;
  */
 public class ManyToManyIndex<L, R> {
 
+  /**
+   * Returns an overlay of the index, which reads through to it but keeps its
+   * own modifications to itself (see {@link OneToManyIndex}).
+   */
+  public static <L, R> ManyToManyIndex<L, R> createOverlay(
+      ManyToManyIndex<L, R> base) {
+    return new ManyToManyIndex<L, R>(
+        OneToManyIndex.createOverlay(base.leftIndex),
+        OneToManyIndex.createOverlay(base.rightIndex));
+  }
+
   private final OneToManyIndex<L, R> leftIndex;
 
   private final OneToManyIndex<R, L> rightIndex;
@@ -38,9 +49,10 @@ public class ManyToManyIndex<L, R> {
     this.rightIndex = new OneToManyIndex<R, L>();
   }
 
-  public ManyToManyIndex(ManyToManyIndex<L, R> original) {
-    this.leftIndex = new OneToManyIndex<L, R>(original.leftIndex);
-    this.rightIndex = new OneToManyIndex<R, L>(original.rightIndex);
+  private ManyToManyIndex(OneToManyIndex<L, R> leftIndex,
+      OneToManyIndex<R, L> rightIndex) {
+    this.leftIndex = leftIndex;
+    this.rightIndex = rightIndex;
   }
 
   public void addLeftToRight(L key, R element) {
@@ -33,6 +33,13 @@ import java.util.Set;
  * if an element is added which already exists, it is a no-op. Lookup is equally
  * fast from either direction (i.e. key to elements vs. element to keys).
  * <p>
+ * An overlay of an index (see {@link #createOverlay(OneToManyIndex)}) starts
+ * out with the same contents, but keeps its own modifications to itself. It
+ * only stores the keys and elements which it has modified, so creating one is
+ * cheap however large the underlying index is. Lookups of anything it has not
+ * modified read through to the underlying index, so they see its current
+ * contents rather than a snapshot.
+ * <p>
  * This class is fully thread-safe.
  * 
  * @param <K> the type of the key objects
@@ -40,19 +47,40 @@ import java.util.Set;
  */
 public class OneToManyIndex<K, E> {
 
+  /**
+   * Returns an overlay of the index, which reads through to it but keeps its
+   * own modifications to itself.
+   */
+  public static <K, E> OneToManyIndex<K, E> createOverlay(
+      OneToManyIndex<K, E> base) {
+    return new OneToManyIndex<K, E>(base);
+  }
+
+  /**
+   * The index this is an overlay of, or <code>null</code>.
+   */
+  private final OneToManyIndex<K, E> base;
+
+  /**
+   * Whether this overlay has been cleared, which hides the underlying index.
+   */
+  private boolean baseCleared;
+
+  /*
+   * In an overlay, index and reverseIndex only contain the keys and elements
+   * which have been modified, and a key or element which has been removed maps
+   * to null.
+   */
   private final Map<K, Set<E>> index = new HashMap<K, Set<E>>();
 
   private final Map<E, Set<K>> reverseIndex = new HashMap<E, Set<K>>();
 
   public OneToManyIndex() {
+    this.base = null;
   }
 
-  public OneToManyIndex(OneToManyIndex<K, E> original) {
-    synchronized (this) {
-      for (K key : original.keys()) {
-        putElements(key, original.getElements(key));
-      }
-    }
+  private OneToManyIndex(OneToManyIndex<K, E> base) {
+    this.base = base;
   }
 
   /**
@@ -60,22 +88,10 @@ public class OneToManyIndex<K, E> {
    */
   public void addElement(K key, E element) {
     synchronized (this) {
-      // If the key is already indexed, just add this element to its set
-      if (index.containsKey(key)) {
-        index.get(key).add(element);
-      } else {
-        // Otherwise, insert a new key in the index with this element
-        Set<E> elements = new HashSet<E>(Collections.singleton(element));
-        index.put(key, elements);
-      }
+      getModifiableElements(key).add(element);
 
       // Update the reverse index in the same way
-      if (reverseIndex.containsKey(element)) {
-        reverseIndex.get(element).add(key);
-      } else {
-        Set<K> keys = new HashSet<K>(Collections.singleton(key));
-        reverseIndex.put(element, keys);
-      }
+      getModifiableKeys(element).add(key);
     }
   }
 
@@ -83,6 +99,7 @@ public class OneToManyIndex<K, E> {
     synchronized (this) {
       index.clear();
       reverseIndex.clear();
+      baseCleared = true;
     }
   }
 
@@ -91,7 +108,13 @@ public class OneToManyIndex<K, E> {
    */
   public Set<E> elements() {
     synchronized (this) {
-      return new HashSet<E>(reverseIndex.keySet());
+      if (!isBaseVisible()) {
+        return new HashSet<E>(reverseIndex.keySet());
+      }
+
+      Set<E> elements = base.elements();
+      applyModifications(reverseIndex, elements);
+      return elements;
     }
   }
 
@@ -107,6 +130,9 @@ public class OneToManyIndex<K, E> {
       if (elements != null) {
         return new HashSet<E>(elements);
       }
+      if (isBaseVisible() && !index.containsKey(key)) {
+        return base.getElements(key);
+      }
       return Collections.emptySet();
     }
   }
@@ -120,19 +146,28 @@ public class OneToManyIndex<K, E> {
       if (keys != null) {
         return new HashSet<K>(keys);
       }
+      if (isBaseVisible() && !reverseIndex.containsKey(element)) {
+        return base.getKeys(element);
+      }
       return Collections.emptySet();
     }
   }
 
   public boolean hasElement(E element) {
     synchronized (this) {
-      return reverseIndex.containsKey(element);
+      if (reverseIndex.containsKey(element)) {
+        return reverseIndex.get(element) != null;
+      }
+      return isBaseVisible() && base.hasElement(element);
     }
   }
 
   public boolean hasKey(K key) {
     synchronized (this) {
-      return index.containsKey(key);
+      if (index.containsKey(key)) {
+        return index.get(key) != null;
+      }
+      return isBaseVisible() && base.hasKey(key);
     }
   }
 
@@ -141,7 +176,13 @@ public class OneToManyIndex<K, E> {
    */
   public Set<K> keys() {
     synchronized (this) {
-      return new HashSet<K>(index.keySet());
+      if (!isBaseVisible()) {
+        return new HashSet<K>(index.keySet());
+      }
+
+      Set<K> keys = base.keys();
+      applyModifications(index, keys);
+      return keys;
     }
   }
 
@@ -166,26 +207,86 @@ public class OneToManyIndex<K, E> {
 
   public void removeElement(E element) {
     synchronized (this) {
-      // Remove from the main index
-      for (Set<E> elements : index.values()) {
-        elements.remove(element);
+      // Remove from the main index; the reverse index says which keys map to
+      // the element
+      for (K key : getKeys(element)) {
+        getModifiableElements(key).remove(element);
       }
 
       // Remove from the reverse index
-      reverseIndex.remove(element);
+      if (isBaseVisible()) {
+        reverseIndex.put(element, null);
+      } else {
+        reverseIndex.remove(element);
+      }
     }
   }
 
   public void removeKey(K key) {
     synchronized (this) {
+      // Remove from the reverse index; the main index says which elements the
+      // key maps to
+      for (E element : getElements(key)) {
+        getModifiableKeys(element).remove(key);
+      }
+
       // Remove from the main index
-      index.remove(key);
+      if (isBaseVisible()) {
+        index.put(key, null);
+      } else {
+        index.remove(key);
+      }
+    }
+  }
 
-      // Remove from the reverse index
-      for (Set<K> keys : reverseIndex.values()) {
-        keys.remove(key);
+  /**
+   * Adds the modified entries which are present to the set, and removes the
+   * ones which have been removed.
+   */
+  private <T> void applyModifications(Map<T, ?> modifications, Set<T> set) {
+    for (Map.Entry<T, ?> entry : modifications.entrySet()) {
+      if (entry.getValue() != null) {
+        set.add(entry.getKey());
+      } else {
+        set.remove(entry.getKey());
       }
     }
   }
 
-}
\ No newline at end of file
+  /**
+   * Returns the set of elements for the key which this index owns, creating it
+   * (from the underlying index, in an overlay) if necessary.
+   */
+  private Set<E> getModifiableElements(K key) {
+    Set<E> elements = index.get(key);
+    if (elements == null) {
+      elements = new HashSet<E>();
+      if (isBaseVisible() && !index.containsKey(key)) {
+        elements.addAll(base.getElements(key));
+      }
+      index.put(key, elements);
+    }
+    return elements;
+  }
+
+  /**
+   * Returns the set of keys for the element which this index owns, creating it
+   * (from the underlying index, in an overlay) if necessary.
+   */
+  private Set<K> getModifiableKeys(E element) {
+    Set<K> keys = reverseIndex.get(element);
+    if (keys == null) {
+      keys = new HashSet<K>();
+      if (isBaseVisible() && !reverseIndex.containsKey(element)) {
+        keys.addAll(base.getKeys(element));
+      }
+      reverseIndex.put(element, keys);
+    }
+    return keys;
+  }
+
+  private boolean isBaseVisible() {
+    return base != null && !baseCleared;
+  }
+
+}
@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.eclipse.core.reference;
+
+import org.eclipse.ui.IMemento;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link IMemento} that is saved in a compact, versioned binary format
+ * instead of XML, so the same persist and load code can be used with either.
+ * <p>
+ * Every string in the memento tree (types, keys, values and text data) is
+ * written once to a shared string table, and the tree refers to the strings by
+ * index. Persisted models tend to repeat the same keys, class names, project
+ * names and path prefixes many times, which the table stores once.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class BinaryMemento implements IMemento {
+
+  private static final String ENCODING = "UTF-8";
+
+  private static final int MAGIC = 0x47424d4d; // "GBMM"
+
+  private static final int NO_TEXT = -1;
+
+  private static final int VERSION = 1;
+
+  /**
+   * Reads a memento tree written by {@link #save(OutputStream)}. The stream is
+   * not closed.
+   * 
+   * @throws PersistenceException if the stream does not contain a memento of a
+   *           known version
+   */
+  public static BinaryMemento createReadRoot(InputStream inputStream)
+      throws IOException, PersistenceException {
+    DataInputStream in = new DataInputStream(inputStream);
+    if (in.readInt() != MAGIC) {
+      throw new PersistenceException("Not a binary memento");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new PersistenceException("Unknown binary memento version "
+          + version);
+    }
+
+    String[] strings = new String[readVarInt(in)];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] bytes = new byte[readVarInt(in)];
+      in.readFully(bytes);
+      strings[i] = new String(bytes, ENCODING);
+    }
+
+    return read(in, strings);
+  }
+
+  /**
+   * Creates the root of a memento tree that will be saved.
+   */
+  public static BinaryMemento createWriteRoot(String type) {
+    return new BinaryMemento(type);
+  }
+
+  private static BinaryMemento read(DataInputStream in, String[] strings)
+      throws IOException, PersistenceException {
+    BinaryMemento memento = new BinaryMemento(readString(in, strings));
+
+    int attributeCount = readVarInt(in);
+    for (int i = 0; i < attributeCount; i++) {
+      String key = readString(in, strings);
+      memento.attributes.put(key, readString(in, strings));
+    }
+
+    int textIndex = readVarInt(in) - 1;
+    if (textIndex != NO_TEXT) {
+      memento.textData = getString(strings, textIndex);
+    }
+
+    int childCount = readVarInt(in);
+    for (int i = 0; i < childCount; i++) {
+      memento.children.add(read(in, strings));
+    }
+
+    return memento;
+  }
+
+  private static byte[] getBytes(String string) throws IOException {
+    try {
+      return string.getBytes(ENCODING);
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is always supported
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  private static String getString(String[] strings, int index)
+      throws PersistenceException {
+    if (index < 0 || index >= strings.length) {
+      throw new PersistenceException("Invalid string table index " + index);
+    }
+    return strings[index];
+  }
+
+  private static String readString(DataInputStream in, String[] strings)
+      throws IOException, PersistenceException {
+    return getString(strings, readVarInt(in));
+  }
+
+  /**
+   * Reads a non-negative integer written by {@link #writeVarInt}.
+   */
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable-length integer");
+  }
+
+  /**
+   * Writes a non-negative integer in as few bytes as possible, seven bits at a
+   * time. Most indices and counts fit in one or two bytes.
+   */
+  private static void writeVarInt(DataOutputStream out, int value)
+      throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+
+  private final List<BinaryMemento> children = new ArrayList<BinaryMemento>();
+
+  private String textData;
+
+  private final String type;
+
+  private BinaryMemento(String type) {
+    this.type = type;
+  }
+
+  public IMemento copyChild(IMemento child) {
+    BinaryMemento copy = (BinaryMemento) createChild(child.getType());
+    copy.putMemento(child);
+    return copy;
+  }
+
+  public IMemento createChild(String childType) {
+    BinaryMemento child = new BinaryMemento(childType);
+    children.add(child);
+    return child;
+  }
+
+  public IMemento createChild(String childType, String id) {
+    IMemento child = createChild(childType);
+    child.putString(TAG_ID, id);
+    return child;
+  }
+
+  public String[] getAttributeKeys() {
+    return attributes.keySet().toArray(new String[attributes.size()]);
+  }
+
+  public Boolean getBoolean(String key) {
+    String value = attributes.get(key);
+    return value != null ? Boolean.valueOf(value) : null;
+  }
+
+  public IMemento getChild(String childType) {
+    for (BinaryMemento child : children) {
+      if (child.type.equals(childType)) {
+        return child;
+      }
+    }
+    return null;
+  }
+
+  public IMemento[] getChildren() {
+    return children.toArray(new IMemento[children.size()]);
+  }
+
+  public IMemento[] getChildren(String childType) {
+    List<IMemento> matchingChildren = new ArrayList<IMemento>();
+    for (BinaryMemento child : children) {
+      if (child.type.equals(childType)) {
+        matchingChildren.add(child);
+      }
+    }
+    return matchingChildren.toArray(new IMemento[matchingChildren.size()]);
+  }
+
+  public Float getFloat(String key) {
+    String value = attributes.get(key);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Float.valueOf(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  public String getID() {
+    return attributes.get(TAG_ID);
+  }
+
+  public Integer getInteger(String key) {
+    String value = attributes.get(key);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  public String getString(String key) {
+    return attributes.get(key);
+  }
+
+  public String getTextData() {
+    return textData;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public void putBoolean(String key, boolean value) {
+    attributes.put(key, String.valueOf(value));
+  }
+
+  public void putFloat(String key, float value) {
+    attributes.put(key, String.valueOf(value));
+  }
+
+  public void putInteger(String key, int value) {
+    attributes.put(key, String.valueOf(value));
+  }
+
+  public void putMemento(IMemento memento) {
+    for (String key : memento.getAttributeKeys()) {
+      putString(key, memento.getString(key));
+    }
+
+    String text = memento.getTextData();
+    if (text != null) {
+      putTextData(text);
+    }
+
+    for (IMemento child : memento.getChildren()) {
+      copyChild(child);
+    }
+  }
+
+  public void putString(String key, String value) {
+    if (value == null) {
+      return;
+    }
+    attributes.put(key, value);
+  }
+
+  public void putTextData(String data) {
+    textData = data;
+  }
+
+  /**
+   * Writes this memento tree to the stream. The stream is flushed but not
+   * closed.
+   */
+  public void save(OutputStream outputStream) throws IOException {
+    Map<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
+    collectStrings(stringTable);
+
+    DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+
+    writeVarInt(out, stringTable.size());
+    for (String string : stringTable.keySet()) {
+      byte[] bytes = getBytes(string);
+      writeVarInt(out, bytes.length);
+      out.write(bytes);
+    }
+
+    write(out, stringTable);
+    out.flush();
+  }
+
+  private void collectStrings(Map<String, Integer> stringTable) {
+    intern(stringTable, type);
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      intern(stringTable, attribute.getKey());
+      intern(stringTable, attribute.getValue());
+    }
+    if (textData != null) {
+      intern(stringTable, textData);
+    }
+    for (BinaryMemento child : children) {
+      child.collectStrings(stringTable);
+    }
+  }
+
+  private void intern(Map<String, Integer> stringTable, String string) {
+    if (!stringTable.containsKey(string)) {
+      stringTable.put(string, stringTable.size());
+    }
+  }
+
+  private void write(DataOutputStream out, Map<String, Integer> stringTable)
+      throws IOException {
+    writeVarInt(out, stringTable.get(type));
+
+    writeVarInt(out, attributes.size());
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      writeVarInt(out, stringTable.get(attribute.getKey()));
+      writeVarInt(out, stringTable.get(attribute.getValue()));
+    }
+
+    // Shift the text index by one so a missing text is written as zero
+    int textIndex = (textData != null ? stringTable.get(textData) : NO_TEXT);
+    writeVarInt(out, textIndex + 1);
+
+    writeVarInt(out, children.size());
+    for (BinaryMemento child : children) {
+      child.write(out, stringTable);
+    }
+  }
+
+}
@@ -14,8 +14,10 @@
  *******************************************************************************/
 package com.google.gdt.eclipse.core.reference;
 
+import com.google.gdt.eclipse.core.reference.location.IIndexableMatchable;
 import com.google.gdt.eclipse.core.reference.location.IMatchable;
 import com.google.gdt.eclipse.core.reference.location.IReferenceLocation;
+import com.google.gdt.eclipse.core.reference.location.MatchKeys;
 import com.google.gdt.eclipse.core.reference.location.ReferenceLocationType;
 
 import org.eclipse.core.resources.IProject;
@@ -29,10 +31,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Provides reference tracking across arbitrary resources. Clients should add
@@ -45,6 +50,11 @@ import java.util.Set;
  * on its instance. This ensures client listeners only receive relevant
  * callbacks for the references they are interested in.
  * <p>
+ * References are indexed by the keys of their {@link IIndexableMatchable}
+ * locations, so looking up the references matching an element only tests the
+ * candidates sharing one of its keys (see {@link MatchKeys}) and the locations
+ * that cannot be indexed, instead of every reference being tracked.
+ * <p>
  * This class is fully thread-safe. The reference model (IReference and
  * IReferenceLocation implementations) are also thread-safe.
  */
@@ -81,23 +91,95 @@ public class ReferenceManager {
     return referenceManager;
   }
 
+  private static void addCandidates(Map<String, Set<IReference>> index,
+      Set<IReference> unindexed, Set<String> keys, Set<IReference> candidates) {
+    for (String key : keys) {
+      Set<IReference> keyReferences = index.get(key);
+      if (keyReferences != null) {
+        candidates.addAll(keyReferences);
+      }
+    }
+    candidates.addAll(unindexed);
+  }
+
+  /**
+   * Returns the index keys of the location, or <code>null</code> if it must be
+   * tested against every element.
+   */
+  private static Set<String> getMatchKeys(IReferenceLocation location) {
+    return (location instanceof IIndexableMatchable)
+        ? ((IIndexableMatchable) location).getMatchKeys() : null;
+  }
+
+  private static <K> void put(Map<K, Set<IReference>> map, K key,
+      IReference reference) {
+    Set<IReference> keyReferences = map.get(key);
+    if (keyReferences == null) {
+      keyReferences = new HashSet<IReference>();
+      map.put(key, keyReferences);
+    }
+    keyReferences.add(reference);
+  }
+
+  private static <K> void remove(Map<K, Set<IReference>> map, K key,
+      IReference reference) {
+    Set<IReference> keyReferences = map.get(key);
+    if (keyReferences != null && keyReferences.remove(reference)
+        && keyReferences.isEmpty()) {
+      map.remove(key);
+    }
+  }
+
   private final ElementChangeListener elementChangeListener;
 
   /**
    * The client listeners to be notified when a resource in a reference changes.
    * <p>
-   * See {@link #references} for warnings on thread-safety.
+   * If using an iterator from this list, synchronize on this instance.
    */
   private final List<ReferenceChangeListener> listeners;
 
+  /**
+   * Guards {@link #references} and the indices below. Do not let the lock
+   * escape from this class (e.g. do not callback clients or match locations
+   * while holding the lock, do not return the guarded collections, etc.)
+   */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Incremented each time a reference is added or removed.
+   */
+  private long modificationCount;
+
   /**
    * The set of all references being tracked.
-   * <p>
-   * If using an iterator from this set, synchronize on this instance. Do not
-   * let the lock escape from this class (e.g. do not callback clients while
-   * holding the lock, do not return this instance, etc.)
    */
-  private final Set<IReference> references;
+  private final Set<IReference> references = new HashSet<IReference>();
+
+  /**
+   * The references by the project containing their source.
+   */
+  private final Map<IProject, Set<IReference>> referencesByProject = new HashMap<IProject, Set<IReference>>();
+
+  /**
+   * The references by the match keys of their source location.
+   */
+  private final Map<String, Set<IReference>> sourceIndex = new HashMap<String, Set<IReference>>();
+
+  /**
+   * The references by the match keys of their target location.
+   */
+  private final Map<String, Set<IReference>> targetIndex = new HashMap<String, Set<IReference>>();
+
+  /**
+   * The references whose source location is matchable, but cannot be indexed.
+   */
+  private final Set<IReference> unindexedSources = new HashSet<IReference>();
+
+  /**
+   * The references whose target location is matchable, but cannot be indexed.
+   */
+  private final Set<IReference> unindexedTargets = new HashSet<IReference>();
 
   /**
    * The listener to track changes to resources in reference.
@@ -106,13 +188,20 @@ public class ReferenceManager {
 
   public ReferenceManager() {
     this.listeners = Collections.synchronizedList(new ArrayList<ReferenceChangeListener>());
-    this.references = Collections.synchronizedSet(new HashSet<IReference>());
     this.resourceChangeListener = new ResourceChangeListener(this);
     this.elementChangeListener = new ElementChangeListener(this);
   }
 
   public void addReference(IReference reference) {
-    references.add(reference);
+    lock.writeLock().lock();
+    try {
+      if (references.add(reference)) {
+        index(reference);
+        modificationCount++;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   public void addReferencedResourceChangeListener(
@@ -120,6 +209,20 @@ public class ReferenceManager {
     listeners.add(listener);
   }
 
+  /**
+   * Returns a number which changes whenever a reference is added or removed,
+   * allowing clients to tell whether the references need to be persisted
+   * again.
+   */
+  public long getModificationCount() {
+    lock.readLock().lock();
+    try {
+      return modificationCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
   public Set<IReference> getReferencesWithMatchingJavaElement(
       IJavaElement element, EnumSet<ReferenceLocationType> locationTypes) {
     return getReferences(element, locationTypes);
@@ -140,15 +243,26 @@ public class ReferenceManager {
   public void persist(IMemento memento) {
     HashSet<IReference> copiedReferences;
 
-    synchronized (references) {
+    lock.readLock().lock();
+    try {
       copiedReferences = new HashSet<IReference>(references);
+    } finally {
+      lock.readLock().unlock();
     }
 
     ReferenceManagerPersister.persist(copiedReferences, memento);
   }
 
   public void removeReference(IReference reference) {
-    references.remove(reference);
+    lock.writeLock().lock();
+    try {
+      if (references.remove(reference)) {
+        unindex(reference);
+        modificationCount++;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   public void removeReferencedResourceChangeListener(
@@ -158,8 +272,16 @@ public class ReferenceManager {
 
   public void removeReferences(
       Collection<? extends IReference> referencesToRemove) {
-    for (IReference reference : referencesToRemove) {
-      removeReference(reference);
+    lock.writeLock().lock();
+    try {
+      for (IReference reference : referencesToRemove) {
+        if (references.remove(reference)) {
+          unindex(reference);
+          modificationCount++;
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
     }
   }
 
@@ -167,10 +289,20 @@ public class ReferenceManager {
    * Removes all references whose source is contained inside the given project.
    */
   public void removeSourceReferences(IProject project) {
-    for (IReference reference : getSafeReferences()) {
-      if (reference.getSourceProject().equals(project)) {
-        removeReference(reference);
+    lock.writeLock().lock();
+    try {
+      Set<IReference> projectReferences = referencesByProject.get(project);
+      if (projectReferences == null) {
+        return;
       }
+
+      for (IReference reference : new ArrayList<IReference>(projectReferences)) {
+        references.remove(reference);
+        unindex(reference);
+        modificationCount++;
+      }
+    } finally {
+      lock.writeLock().unlock();
     }
   }
 
@@ -202,17 +334,35 @@ public class ReferenceManager {
 
   private Set<IReference> getReferences(Object elementToMatch,
       EnumSet<ReferenceLocationType> locationTypes) {
+    boolean matchTarget = locationTypes.contains(ReferenceLocationType.TARGET);
+    boolean matchSource = locationTypes.contains(ReferenceLocationType.SOURCE);
+    Set<String> keys = MatchKeys.getKeys(elementToMatch);
+
+    Set<IReference> candidates = new HashSet<IReference>();
+    lock.readLock().lock();
+    try {
+      if (matchTarget) {
+        addCandidates(targetIndex, unindexedTargets, keys, candidates);
+      }
+      if (matchSource) {
+        addCandidates(sourceIndex, unindexedSources, keys, candidates);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    // Matching may hit the workspace, so it is done outside of the lock
     Set<IReference> matchingReferences = new HashSet<IReference>();
-    for (IReference reference : getSafeReferences()) {
+    for (IReference reference : candidates) {
       if (reference.getSourceProject().isOpen()) {
         IReferenceLocation targetLocation = reference.getTargetLocation();
         IReferenceLocation sourceLocation = reference.getSourceLocation();
 
-        boolean targetLocationMatches = locationTypes.contains(ReferenceLocationType.TARGET)
+        boolean targetLocationMatches = matchTarget
             && (targetLocation instanceof IMatchable)
             && ((IMatchable) targetLocation).matches(elementToMatch);
 
-        boolean sourceLocationMatches = locationTypes.contains(ReferenceLocationType.SOURCE)
+        boolean sourceLocationMatches = matchSource
             && (sourceLocation instanceof IMatchable)
             && ((IMatchable) sourceLocation).matches(elementToMatch);
 
@@ -224,9 +374,55 @@ public class ReferenceManager {
     return matchingReferences;
   }
 
-  private List<IReference> getSafeReferences() {
-    synchronized (references) {
-      return new ArrayList<IReference>(references);
+  /**
+   * Adds the reference to the indices. The caller must hold the write lock.
+   */
+  private void index(IReference reference) {
+    put(referencesByProject, reference.getSourceProject(), reference);
+    index(reference, reference.getSourceLocation(), sourceIndex,
+        unindexedSources);
+    index(reference, reference.getTargetLocation(), targetIndex,
+        unindexedTargets);
+  }
+
+  private void index(IReference reference, IReferenceLocation location,
+      Map<String, Set<IReference>> index, Set<IReference> unindexed) {
+    if (!(location instanceof IMatchable)) {
+      // Never matches anything
+      return;
+    }
+
+    Set<String> keys = getMatchKeys(location);
+    if (keys == null) {
+      unindexed.add(reference);
+    } else {
+      for (String key : keys) {
+        put(index, key, reference);
+      }
+    }
+  }
+
+  /**
+   * Removes the reference from the indices. The caller must hold the write
+   * lock.
+   */
+  private void unindex(IReference reference) {
+    remove(referencesByProject, reference.getSourceProject(), reference);
+    unindex(reference, reference.getSourceLocation(), sourceIndex,
+        unindexedSources);
+    unindex(reference, reference.getTargetLocation(), targetIndex,
+        unindexedTargets);
+  }
+
+  private void unindex(IReference reference, IReferenceLocation location,
+      Map<String, Set<IReference>> index, Set<IReference> unindexed) {
+    Set<String> keys = getMatchKeys(location);
+    if (keys == null) {
+      unindexed.remove(reference);
+    } else {
+      for (String key : keys) {
+        remove(index, key, reference);
+      }
     }
   }
 
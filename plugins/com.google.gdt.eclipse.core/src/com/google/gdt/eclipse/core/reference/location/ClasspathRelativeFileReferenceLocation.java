@@ -23,13 +23,16 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * Tracks a reference to a resource that is relative to the classpath.
  * <p>
  * This class is thread-safe due to its immutability.
  */
 public final class ClasspathRelativeFileReferenceLocation extends
-    AbstractReferenceLocation implements IMatchable {
+    AbstractReferenceLocation implements IIndexableMatchable {
 
   private final IPath classpathRelativePath;
 
@@ -51,6 +54,15 @@ public final class ClasspathRelativeFileReferenceLocation extends
     return classpathRelativePath;
   }
 
+  /**
+   * A resource can only match if its name is the last segment of this path.
+   */
+  public Set<String> getMatchKeys() {
+    String fileName = classpathRelativePath.lastSegment();
+    return fileName != null
+        ? Collections.singleton(MatchKeys.forFile(fileName)) : null;
+  }
+
   @Override
   public int hashCode() {
     return classpathRelativePath.hashCode();
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.eclipse.core.reference.location;
+
+import java.util.Set;
+
+/**
+ * A matchable that can be found through an index instead of being tested
+ * against every object it might match.
+ * <p>
+ * Implementors return keys built with {@link MatchKeys}. For every object this
+ * matches, at least one of its keys must also be among the keys
+ * {@link MatchKeys#getKeys(Object)} returns for that object.
+ */
+public interface IIndexableMatchable extends IMatchable {
+
+  /**
+   * Returns the index keys of the objects this may match, or <code>null</code>
+   * if this cannot be indexed and must be tested against every object.
+   */
+  Set<String> getMatchKeys();
+}
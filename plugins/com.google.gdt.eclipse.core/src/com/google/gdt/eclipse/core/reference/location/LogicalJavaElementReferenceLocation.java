@@ -16,13 +16,15 @@ package com.google.gdt.eclipse.core.reference.location;
 
 import com.google.gdt.eclipse.core.reference.logicaljavamodel.ILogicalJavaElement;
 
+import java.util.Set;
+
 /**
  * Tracks a reference to/from a logical Java element.
  * <p>
  * This class is thread-safe due to its immutability.
  */
 public final class LogicalJavaElementReferenceLocation extends
-    AbstractReferenceLocation implements IMatchable {
+    AbstractReferenceLocation implements IIndexableMatchable {
 
   private final ILogicalJavaElement logicalJavaElement;
 
@@ -45,6 +47,11 @@ public final class LogicalJavaElementReferenceLocation extends
     return logicalJavaElement;
   }
 
+  public Set<String> getMatchKeys() {
+    return (logicalJavaElement instanceof IIndexableMatchable)
+        ? ((IIndexableMatchable) logicalJavaElement).getMatchKeys() : null;
+  }
+
   @Override
   public int hashCode() {
     return logicalJavaElement.hashCode();
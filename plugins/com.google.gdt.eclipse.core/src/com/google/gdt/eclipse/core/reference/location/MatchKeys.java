@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.eclipse.core.reference.location;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IPackageDeclaration;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Builds the index keys shared by {@link IIndexableMatchable}s and the objects
+ * they are matched against. A key only narrows the candidates down; the
+ * candidates are still checked with {@link IMatchable#matches(Object)}.
+ */
+public final class MatchKeys {
+
+  private static final String COMPILATION_UNIT_PREFIX = "cu:";
+
+  private static final String FILE_PREFIX = "file:";
+
+  private static final String PACKAGE_PREFIX = "package:";
+
+  private static final String TYPE_PREFIX = "type:";
+
+  /**
+   * Returns the key of compilation units whose top-level type has the given
+   * fully-qualified name.
+   */
+  public static String forCompilationUnit(String topLevelTypeName) {
+    return COMPILATION_UNIT_PREFIX + topLevelTypeName;
+  }
+
+  /**
+   * Returns the key of resources with the given name.
+   */
+  public static String forFile(String fileName) {
+    return FILE_PREFIX + fileName;
+  }
+
+  /**
+   * Returns the key of packages with the given name.
+   */
+  public static String forPackage(String packageName) {
+    return PACKAGE_PREFIX + packageName;
+  }
+
+  /**
+   * Returns the key of types with the given fully-qualified name, using '$' as
+   * the enclosing type separator.
+   */
+  public static String forType(String fullyQualifiedTypeName) {
+    return TYPE_PREFIX + fullyQualifiedTypeName;
+  }
+
+  /**
+   * Returns the keys of an object that reference locations are matched
+   * against. An object without keys cannot match any indexed location.
+   */
+  public static Set<String> getKeys(Object obj) {
+    String key = null;
+    if (obj instanceof IType) {
+      key = forType(((IType) obj).getFullyQualifiedName('$'));
+    } else if (obj instanceof IPackageFragment) {
+      key = forPackage(((IPackageFragment) obj).getElementName());
+    } else if (obj instanceof ICompilationUnit) {
+      key = getCompilationUnitKey((ICompilationUnit) obj);
+    } else if (obj instanceof IResource) {
+      key = forFile(((IResource) obj).getName());
+    }
+
+    return (key != null ? Collections.singleton(key)
+        : Collections.<String> emptySet());
+  }
+
+  private static String getCompilationUnitKey(ICompilationUnit cu) {
+    // Use the declared package, like the locations matching compilation units
+    IPackageDeclaration[] packageDeclarations;
+    try {
+      packageDeclarations = cu.getPackageDeclarations();
+    } catch (JavaModelException e) {
+      return null;
+    }
+    if (packageDeclarations.length == 0) {
+      return null;
+    }
+
+    String cuName = cu.getElementName();
+    int dot = cuName.indexOf('.');
+    String typeName = (dot == -1 ? cuName : cuName.substring(0, dot));
+    return forCompilationUnit(packageDeclarations[0].getElementName() + "."
+        + typeName);
+  }
+
+  private MatchKeys() {
+  }
+
+}
@@ -14,14 +14,21 @@
  *******************************************************************************/
 package com.google.gdt.eclipse.core.reference.logicaljavamodel;
 
+import com.google.gdt.eclipse.core.reference.location.IIndexableMatchable;
+import com.google.gdt.eclipse.core.reference.location.MatchKeys;
+
 import org.eclipse.jdt.core.IPackageFragment;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * Represents a package in the logical Java model.
  * <p>
  * This class is thread-safe due to its immutability.
  */
-public final class LogicalPackage implements ILogicalJavaElement {
+public final class LogicalPackage implements ILogicalJavaElement,
+    IIndexableMatchable {
 
   private final String packageName;
 
@@ -39,6 +46,10 @@ public final class LogicalPackage implements ILogicalJavaElement {
     return packageName.equals(other.packageName);
   }
 
+  public Set<String> getMatchKeys() {
+    return Collections.singleton(MatchKeys.forPackage(packageName));
+  }
+
   public String getPackageName() {
     return packageName;
   }
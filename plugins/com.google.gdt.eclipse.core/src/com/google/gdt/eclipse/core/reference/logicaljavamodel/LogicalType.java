@@ -15,11 +15,16 @@
 package com.google.gdt.eclipse.core.reference.logicaljavamodel;
 
 import com.google.gdt.eclipse.core.JavaUtilities;
+import com.google.gdt.eclipse.core.reference.location.IIndexableMatchable;
+import com.google.gdt.eclipse.core.reference.location.MatchKeys;
 
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * Represents a type in the logical Java model.
  * <p>
@@ -27,7 +32,8 @@ import org.eclipse.jdt.core.JavaModelException;
  * <p>
  * This class is thread-safe due to its immutability.
  */
-public class LogicalType implements ILogicalJavaElement {
+public class LogicalType implements ILogicalJavaElement,
+    IIndexableMatchable {
 
   protected final LogicalPackage logicalPackage;
 
@@ -73,6 +79,10 @@ public class LogicalType implements ILogicalJavaElement {
     return javaProject.findType(getFullyQualifiedName().replace('$', '.'));
   }
 
+  public Set<String> getMatchKeys() {
+    return Collections.singleton(MatchKeys.forType(getFullyQualifiedName()));
+  }
+
   public String getTypeName() {
     return typeName;
   }
@@ -15,11 +15,16 @@
 package com.google.gdt.eclipse.core.reference.logicaljavamodel;
 
 
+import com.google.gdt.eclipse.core.reference.location.MatchKeys;
+
 import org.eclipse.jdt.core.IPackageDeclaration;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.internal.core.CompilationUnit;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * When a ui.xml file has a dependency on a class through a <ui:import> tag,
  * the ElementChangeListener gets passed instances of CompilationUnit instead
@@ -37,6 +42,16 @@ public class UiBinderImportReferenceType extends LogicalType {
     super(fullyQualifiedTypeName);
   }
   
+  /**
+   * Also matches the compilation unit of the outermost enclosing type.
+   */
+  @Override
+  public Set<String> getMatchKeys() {
+    Set<String> keys = new HashSet<String>(super.getMatchKeys());
+    keys.add(MatchKeys.forCompilationUnit(getOutermostTypeName()));
+    return keys;
+  }
+
   @Override
   public boolean matches(Object javaElement) {
     
@@ -49,15 +64,10 @@ public class UiBinderImportReferenceType extends LogicalType {
       // eclipse gives a CompilationUnit instead of an IType, so this
       // logic is needed for this case.
 
-      String enclosingClassName = getFullyQualifiedName();
-      
       // if this LogicalType represents an inner class, we want only the outermost
       // enclosing class, because the given CompilationUnit represents a 
       // java file, and hence an outermost class
-      int dollarIndex = enclosingClassName.indexOf('$');
-      if (dollarIndex != -1) {
-        enclosingClassName = enclosingClassName.substring(0, dollarIndex); 
-      }
+      String enclosingClassName = getOutermostTypeName();
       
       CompilationUnit cu = ((CompilationUnit) javaElement);
       
@@ -82,5 +92,14 @@ public class UiBinderImportReferenceType extends LogicalType {
 
     return false;
   }
+
+  private String getOutermostTypeName() {
+    String enclosingClassName = getFullyQualifiedName();
+    int dollarIndex = enclosingClassName.indexOf('$');
+    if (dollarIndex != -1) {
+      enclosingClassName = enclosingClassName.substring(0, dollarIndex);
+    }
+    return enclosingClassName;
+  }
   
 }
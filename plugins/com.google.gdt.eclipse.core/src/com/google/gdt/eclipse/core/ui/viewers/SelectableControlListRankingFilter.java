@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.eclipse.core.ui.viewers;
+
+import java.util.Comparator;
+
+/**
+ * A filter which also ranks the elements it lets through, so a
+ * SelectableControlListViewer shows the best matches first.
+ * 
+ * @param <T> The type of element provided by the content provider.
+ */
+public interface SelectableControlListRankingFilter<T> extends
+    SelectableControlListContentFilter<T> {
+
+  /**
+   * Returns the order in which to show the elements the filter lets through.
+   * 
+   * @return a comparator ranking better matches first, or null to keep the
+   *         order of the content provider
+   */
+  Comparator<T> getRanking();
+}
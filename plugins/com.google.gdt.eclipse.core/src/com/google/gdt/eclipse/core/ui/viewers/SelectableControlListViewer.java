@@ -26,6 +26,8 @@ import org.eclipse.swt.widgets.Composite;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -130,6 +132,14 @@ public class SelectableControlListViewer<T, C extends SelectableControl> {
             filteredElements.add(filteredElement);
           }
         }
+
+        if (filter instanceof SelectableControlListRankingFilter<?>) {
+          Comparator<T> ranking = ((SelectableControlListRankingFilter<T>) filter).getRanking();
+          if (ranking != null) {
+            // The sort is stable, so equal matches keep the provider's order
+            Collections.sort(filteredElements, ranking);
+          }
+        }
       }
     }
     displayElements = filteredElements;
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gdt.eclipse.managedapis;
+
+import com.google.gdt.eclipse.managedapis.impl.RemoteApiDirectory;
+import com.google.gdt.googleapi.core.ApiDirectoryListing;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that the {@link RemoteApiDirectory} fetches the listing
+ * conditionally, and serves its cached copy, against a local stand-in for the
+ * API directory.
+ */
+public class RemoteApiDirectoryCacheTest {
+
+  /**
+   * Serves SampleApiList.json with an entity tag, or a 304 to requests which
+   * already have it.
+   */
+  private class DirectoryStandIn extends Thread {
+
+    private final ServerSocket serverSocket;
+
+    private DirectoryStandIn() throws IOException {
+      serverSocket = new ServerSocket(0);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          Socket socket = serverSocket.accept();
+          try {
+            respond(socket);
+          } finally {
+            socket.close();
+          }
+        }
+      } catch (IOException e) {
+        // The stand-in has been stopped
+      }
+    }
+
+    private String getLink() {
+      return "http://localhost:" + serverSocket.getLocalPort() + "/5935";
+    }
+
+    private void respond(Socket socket) throws IOException {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), "US-ASCII"));
+      String entityTag = null;
+      String line;
+      while ((line = reader.readLine()) != null && line.length() > 0) {
+        if (line.toLowerCase().startsWith("if-none-match:")) {
+          entityTag = line.substring("if-none-match:".length()).trim();
+        }
+      }
+      requestEntityTags.add(String.valueOf(entityTag));
+
+      OutputStream out = socket.getOutputStream();
+      if (ENTITY_TAG.equals(entityTag)) {
+        out.write(("HTTP/1.1 304 Not Modified\r\nETag: " + ENTITY_TAG
+            + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+      } else {
+        out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n"
+            + "ETag: " + ENTITY_TAG + "\r\nContent-Length: " + listing.length
+            + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+        out.write(listing);
+      }
+      out.flush();
+    }
+
+    private void shutdown() throws IOException {
+      serverSocket.close();
+    }
+  }
+
+  private static final String ENTITY_TAG = "\"v1\"";
+
+  private File cacheDirectory;
+
+  private long currentTime;
+
+  private byte[] listing;
+
+  private final List<String> requestEntityTags = Collections.synchronizedList(new ArrayList<String>());
+
+  private DirectoryStandIn standIn;
+
+  private final TimeProvider timeProvider = new TimeProvider() {
+    public long getCurrentTime() {
+      return currentTime;
+    }
+  };
+
+  @Test
+  public void fetchesListingConditionally() throws InterruptedException {
+    RemoteApiDirectory directory = createDirectory();
+    assertEquals(Status.OK_STATUS, directory.run(new NullProgressMonitor()));
+    ApiDirectoryListing fetched = directory.getApiDirectoryListing();
+    assertNotNull(fetched);
+    assertEquals(11, fetched.getItems().length);
+    assertEquals(1, requestEntityTags.size());
+    assertEquals("null", requestEntityTags.get(0));
+
+    // Until the listing expires it is not fetched again
+    assertEquals(Status.OK_STATUS, directory.run(new NullProgressMonitor()));
+    assertEquals(1, requestEntityTags.size());
+
+    // Once it has, it is served while the directory is asked in the
+    // background, which answers that it has not changed
+    currentTime += ManagedApiPlugin.API_DIRECTORY_CACHE_TTL + 1;
+    assertEquals(Status.OK_STATUS, directory.run(new NullProgressMonitor()));
+    assertSame(fetched, directory.getApiDirectoryListing());
+    Job.getJobManager().join(directory, null);
+    assertEquals(2, requestEntityTags.size());
+    assertEquals(ENTITY_TAG, requestEntityTags.get(1));
+    assertSame(fetched, directory.getApiDirectoryListing());
+  }
+
+  @Test
+  public void servesCachedListingOffline() throws IOException,
+      InterruptedException {
+    assertEquals(Status.OK_STATUS,
+        createDirectory().run(new NullProgressMonitor()));
+    String link = standIn.getLink();
+    standIn.shutdown();
+
+    // The copy in the cache directory is served without asking the directory
+    RemoteApiDirectory directory = createDirectory(link);
+    assertNull(directory.getApiDirectoryListing());
+    assertTrue(directory.loadCachedListing());
+    assertEquals(11, directory.getApiDirectoryListing().getItems().length);
+    assertEquals(Status.OK_STATUS, directory.run(new NullProgressMonitor()));
+    assertEquals(1, requestEntityTags.size());
+
+    // It is still served once it has expired, if the directory is unreachable
+    currentTime += ManagedApiPlugin.API_DIRECTORY_CACHE_TTL + 1;
+    assertEquals(Status.OK_STATUS, directory.run(new NullProgressMonitor()));
+    Job.getJobManager().join(directory, null);
+    assertEquals(Status.OK_STATUS, directory.getStatus());
+    assertEquals(11, directory.getApiDirectoryListing().getItems().length);
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    InputStream in = getClass().getResourceAsStream("SampleApiList.json");
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        out.write(buffer, 0, n);
+      }
+      listing = out.toByteArray();
+    } finally {
+      in.close();
+    }
+
+    cacheDirectory = File.createTempFile("apiDirectoryCache", "");
+    cacheDirectory.delete();
+    cacheDirectory.mkdir();
+
+    currentTime = System.currentTimeMillis();
+
+    standIn = new DirectoryStandIn();
+    standIn.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    standIn.shutdown();
+
+    for (File file : cacheDirectory.listFiles()) {
+      file.delete();
+    }
+    cacheDirectory.delete();
+  }
+
+  private RemoteApiDirectory createDirectory() {
+    return createDirectory(standIn.getLink());
+  }
+
+  private RemoteApiDirectory createDirectory(String link) {
+    RemoteApiDirectory directory = new RemoteApiDirectory(link);
+    directory.setTimeProvider(timeProvider);
+    directory.setCacheDirectory(cacheDirectory);
+    return directory;
+  }
+
+}
@@ -37,6 +37,7 @@ import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.jdt.core.JavaCore;
 import org.osgi.framework.BundleContext;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
@@ -86,6 +87,8 @@ public class ManagedApiPlugin extends AbstractGooglePlugin {
 
   public static final long API_DIRECTORY_CACHE_TTL = 4 * 60 * 60 * 1000; // 4HRS
 
+  public static final String API_DIRECTORY_CACHE_FOLDER_NAME = "api_directory";
+
   public static final long CHECK_MANAGED_APIS_FREQ = 2 * 60 * 60 * 1000;// 2 HRS
 
   public static final boolean DO_DELETES = false;
@@ -211,6 +214,13 @@ public class ManagedApiPlugin extends AbstractGooglePlugin {
 
     loadExtensions();
 
+    // Keep the last copy of the API directory, so it is available straight
+    // away on the next startup and when the directory cannot be reached
+    File apiDirectoryCache = new File(getStateLocation().toFile(),
+        API_DIRECTORY_CACHE_FOLDER_NAME);
+    apiDirectoryCache.mkdir();
+    apiDirectory.setCacheDirectory(apiDirectoryCache);
+
     registryChangeListener = new IRegistryChangeListener() {
       public void registryChanged(IRegistryChangeEvent event) {
         loadExtensions();
@@ -17,6 +17,7 @@ package com.google.gdt.eclipse.managedapis.directory;
 import com.google.gdt.eclipse.managedapis.ManagedApi;
 import com.google.gdt.googleapi.core.ApiDirectoryItem;
 import com.google.gdt.googleapi.search.Match;
+import com.google.gdt.googleapi.search.SearchIndex;
 import com.google.gdt.googleapi.search.Searchable;
 import com.google.gdt.googleapi.search.Term;
 
@@ -63,6 +64,19 @@ public class ManagedApiEntry implements Searchable {
     }
   }
 
+  /**
+   * Adds the fields which are searched by {@link #match(Term[])} to the index.
+   */
+  public void addToIndex(SearchIndex<ManagedApiEntry> index) {
+    index.add(this, SearchIndex.FIELD_DISPLAY_NAME, getDisplayName());
+    index.add(this, SearchIndex.FIELD_DESCRIPTION, getDescription());
+    index.add(this, SearchIndex.FIELD_PUBLISHER, getPublisher());
+    for (String label : getDirectoryEntryLabels()) {
+      index.add(this, SearchIndex.FIELD_LABEL, label);
+    }
+    index.add(this, SearchIndex.FIELD_VERSION, getDirectoryEntryVersion());
+  }
+
   /**
    * Access the description.
    */
@@ -15,6 +15,7 @@
 package com.google.gdt.eclipse.managedapis.impl;
 
 import com.google.gdt.eclipse.managedapis.ManagedApiPlugin;
+import com.google.gdt.googleapi.core.ApiDirectoryItem;
 import com.google.gdt.googleapi.core.ApiDirectoryListing;
 import com.google.gdt.googleapi.core.ApiDirectoryListingJsonCodec;
 import com.google.gson.JsonParseException;
@@ -23,6 +24,12 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Map;
+
 /**
  * Reads a directory listing in raw format (JSON) and produces a listing of
  * objects.
@@ -31,6 +38,9 @@ public class ApiDirectoryListingParser {
   private ApiDirectoryListingJsonCodec codec = new ApiDirectoryListingJsonCodec();
   private ApiDirectoryListing listing;
   private String serializedListing;
+  private InputStream listingStream;
+  private URL baseURL;
+  private Map<String, ApiDirectoryItem> decodedItems;
 
   /**
    * Provides access to the listing following a call to run().
@@ -49,10 +59,18 @@ public class ApiDirectoryListingParser {
   public IStatus run(IProgressMonitor monitor) {
     IStatus jobStatus = Status.OK_STATUS;
     try {
-      listing = codec.toApiDirectoryListing(serializedListing, null);
+      if (listingStream != null) {
+        listing = codec.toApiDirectoryListing(new InputStreamReader(
+            listingStream, "UTF-8"), baseURL, decodedItems);
+      } else {
+        listing = codec.toApiDirectoryListing(serializedListing, null);
+      }
     } catch (JsonParseException e) {
       jobStatus = new Status(Status.ERROR, ManagedApiPlugin.PLUGIN_ID,
           "Malformed Listing", e);
+    } catch (IOException e) {
+      jobStatus = new Status(Status.ERROR, ManagedApiPlugin.PLUGIN_ID,
+          "Malformed Listing", e);
     }
     return jobStatus;
   }
@@ -65,4 +83,21 @@ public class ApiDirectoryListingParser {
   public void setSerializedListing(String serializedListing) {
     this.serializedListing = serializedListing;
   }
+
+  /**
+   * Inject a stream of the serialized listing to parse, instead of the raw
+   * listing. The listing is decoded as it is read, reusing the items in
+   * decodedItems which have not changed; decodedItems is updated to hold the
+   * items of the parsed listing.
+   * 
+   * @param listingStream the UTF-8 encoded listing, which is not closed.
+   * @param baseURL the URL relative links are resolved against.
+   * @param decodedItems the items decoded from an earlier copy of the listing.
+   */
+  public void setListingStream(InputStream listingStream, URL baseURL,
+      Map<String, ApiDirectoryItem> decodedItems) {
+    this.listingStream = listingStream;
+    this.baseURL = baseURL;
+    this.decodedItems = decodedItems;
+  }
 }
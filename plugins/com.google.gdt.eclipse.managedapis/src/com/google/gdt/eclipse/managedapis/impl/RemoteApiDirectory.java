@@ -18,23 +18,44 @@ import com.google.gdt.eclipse.managedapis.ManagedApiLogger;
 import com.google.gdt.eclipse.managedapis.ManagedApiPlugin;
 import com.google.gdt.eclipse.managedapis.TimeProvider;
 import com.google.gdt.eclipse.managedapis.directory.ApiDirectory;
+import com.google.gdt.googleapi.core.ApiDirectoryItem;
 import com.google.gdt.googleapi.core.ApiDirectoryListing;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Access a remote (URL specified) API directory.
  * 
+ * The listing is fetched with a conditional GET, so it is only downloaded and
+ * decoded again when it has changed. If a cache directory is set, the last
+ * copy of the listing is kept there and served at startup, and whenever the
+ * directory cannot be reached. Once the listing has expired it is still served
+ * right away while it is fetched again in the background.
+ * 
  * The suppression of restriction warnings addresses the use of IResponse in the
  * org.eclipse.update.internal.core.connection package. Consider creating an
  * equivalent in a more available package.
@@ -44,13 +65,29 @@ public class RemoteApiDirectory implements ApiDirectory {
 
   class ApiDirectoryListingLinkReader {
 
-    private String listing = null;
+    private String entityTag;
+
+    private long lastModified;
+
+    private boolean modified = true;
+
+    public String getEntityTag() {
+      return entityTag;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
 
-    public String getListing() {
-      return listing;
+    /**
+     * Returns whether the listing has changed since it was last fetched; if
+     * not, nothing was written to the output.
+     */
+    public boolean isModified() {
+      return modified;
     }
 
-    public IStatus run(IProgressMonitor monitor) {
+    public IStatus run(OutputStream output, IProgressMonitor monitor) {
       IStatus jobStatus = Status.OK_STATUS;
 
       InputStream input = null;
@@ -58,26 +95,39 @@ public class RemoteApiDirectory implements ApiDirectory {
       try {
         directoryUrl = new URL(directoryLink);
         URLConnection connection = directoryUrl.openConnection();
-        input = directoryUrl.openStream();
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (listingEntityTag != null) {
+          connection.setRequestProperty("If-None-Match", listingEntityTag);
+        }
+        if (listingLastModified > 0L) {
+          connection.setIfModifiedSince(listingLastModified);
+        }
+
+        if (connection instanceof HttpURLConnection
+            && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+          modified = false;
+          return jobStatus;
+        }
 
-        long totalBytesRead = 0L;
-        long contentLength = connection.getContentLength();
+        input = connection.getInputStream();
+        entityTag = connection.getHeaderField("ETag");
+        lastModified = connection.getLastModified();
+
+        int contentLength = connection.getContentLength();
         monitor.beginTask("Downloading " + directoryUrl.toString(),
-            (int) contentLength);
+            contentLength > 0 ? contentLength : IProgressMonitor.UNKNOWN);
 
         int n = 0;
-        byte[] buffer = new byte[1024];
+        byte[] buffer = new byte[8192];
         while (-1 != (n = input.read(buffer))) {
           output.write(buffer, 0, n);
-          totalBytesRead += n;
-          monitor.worked((int) totalBytesRead);
+          monitor.worked(n);
           if (monitor.isCanceled()) {
             jobStatus = Status.CANCEL_STATUS;
             break;
           }
         }
-        listing = output.toString();
       } catch (MalformedURLException e) {
         jobStatus = new Status(Status.ERROR, ManagedApiPlugin.PLUGIN_ID,
             "Malformed URL: "
@@ -90,20 +140,33 @@ public class RemoteApiDirectory implements ApiDirectory {
                     : "null"), e);
       } finally {
         monitor.done();
+        close(input, "Error closing input stream from remote directory");
       }
 
-      closeInputStream(input);
       return jobStatus;
     }
+  }
 
-    private void closeInputStream(InputStream input) {
-      if (input != null) {
-        try {
-          input.close();
-        } catch (IOException e) {
-          ManagedApiLogger.warn(e,
-              "Error closing input stream from remote directory");
-        }
+  /**
+   * How long to keep serving a cached listing, without trying the directory
+   * again, once it could not be reached.
+   */
+  static final long OFFLINE_RETRY_INTERVAL = 10 * 60 * 1000; // 10 MINS
+
+  private static final int CONNECT_TIMEOUT = 15 * 1000;
+
+  private static final String CACHED_LISTING_FILE_NAME = "listing.json";
+
+  private static final String CACHED_LISTING_PROPERTIES_FILE_NAME = "listing.properties";
+
+  private static final int READ_TIMEOUT = 60 * 1000;
+
+  private static void close(Closeable closeable, String message) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        ManagedApiLogger.warn(e, message);
       }
     }
   }
@@ -112,7 +175,7 @@ public class RemoteApiDirectory implements ApiDirectory {
 
   private String directoryLink;
 
-  private ApiDirectoryListing remoteApiDirectoryListing;
+  private volatile ApiDirectoryListing remoteApiDirectoryListing;
 
   private TimeProvider timeProvider = new TimeProvider() {
     public long getCurrentTime() {
@@ -122,14 +185,65 @@ public class RemoteApiDirectory implements ApiDirectory {
 
   private long expirationTimestamp = 0L;
 
+  /**
+   * Where the last copy of the listing is kept, or null if it is only kept in
+   * memory.
+   */
+  private File cacheDirectory;
+
+  /**
+   * Whether the cache directory has been read since the link was set.
+   */
+  private boolean cacheDirectoryRead = false;
+
+  /**
+   * The items of the current listing, by their JSON, so the ones which have
+   * not changed are reused when the listing is decoded again.
+   */
+  private final Map<String, ApiDirectoryItem> decodedItems = new HashMap<String, ApiDirectoryItem>();
+
+  /**
+   * Held while the listing is fetched or read from the cache directory; the
+   * listing, its validators and the decoded items are only changed while it
+   * is held.
+   */
+  private final ReentrantLock fetchLock = new ReentrantLock();
+
+  private String listingEntityTag;
+
+  private long listingLastModified = 0L;
+
+  /**
+   * Fetches the listing again once it has expired, while the expired listing
+   * keeps being served.
+   */
+  private final Job revalidationJob = new Job("Update the API directory") {
+    @Override
+    public boolean belongsTo(Object family) {
+      return family == RemoteApiDirectory.this;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+      fetchLock.lock();
+      try {
+        return fetchListing(monitor);
+      } finally {
+        fetchLock.unlock();
+      }
+    }
+  };
+
   public RemoteApiDirectory() {
+    revalidationJob.setSystem(true);
   }
 
   public RemoteApiDirectory(String link) {
+    this();
     setDirectoryLink(link);
   }
 
-  public void flagAsDirty() {
+  public synchronized void flagAsDirty() {
     if (status == Status.OK_STATUS) {
       status = STATUS_DIRTY;
     }
@@ -139,7 +253,7 @@ public class RemoteApiDirectory implements ApiDirectory {
     return remoteApiDirectoryListing;
   }
 
-  public IStatus getStatus() {
+  public synchronized IStatus getStatus() {
     if (status == Status.OK_STATUS
         && timeProvider.getCurrentTime() > expirationTimestamp) {
       status = STATUS_DIRTY;
@@ -147,7 +261,90 @@ public class RemoteApiDirectory implements ApiDirectory {
     return status;
   }
 
+  /**
+   * Serves the copy of the listing in the cache directory, if there is one and
+   * no listing has been fetched yet. The copy is served until it expires, as
+   * if it had just been fetched at the time it was saved.
+   * 
+   * @return whether a listing is available
+   */
+  public boolean loadCachedListing() {
+    fetchLock.lock();
+    try {
+      if (remoteApiDirectoryListing == null && !cacheDirectoryRead) {
+        cacheDirectoryRead = true;
+        readCachedListing();
+      }
+      return remoteApiDirectoryListing != null;
+    } finally {
+      fetchLock.unlock();
+    }
+  }
+
   public IStatus run(IProgressMonitor monitor) {
+    if (!fetchLock.tryLock()) {
+      if (remoteApiDirectoryListing != null) {
+        // Serve the listing we have rather than wait for the fetch under way
+        return Status.OK_STATUS;
+      }
+      fetchLock.lock();
+    }
+
+    try {
+      loadCachedListing();
+      if (remoteApiDirectoryListing != null && isExpired()) {
+        // Serve the expired listing rather than wait for it to be fetched
+        revalidationJob.schedule();
+        return Status.OK_STATUS;
+      }
+      return fetchListing(monitor);
+    } finally {
+      fetchLock.unlock();
+    }
+  }
+
+  /**
+   * Sets the directory in which the last copy of the listing is kept.
+   */
+  public void setCacheDirectory(File cacheDirectory) {
+    fetchLock.lock();
+    try {
+      this.cacheDirectory = cacheDirectory;
+      cacheDirectoryRead = false;
+    } finally {
+      fetchLock.unlock();
+    }
+  }
+
+  public void setDirectoryLink(String directoryLink) {
+    fetchLock.lock();
+    try {
+      if (this.directoryLink != null
+          && !this.directoryLink.equals(directoryLink)) {
+        // Forget the listing from the old link
+        remoteApiDirectoryListing = null;
+        decodedItems.clear();
+        listingEntityTag = null;
+        listingLastModified = 0L;
+        cacheDirectoryRead = false;
+        synchronized (this) {
+          status = STATUS_UNINITIALIZED;
+        }
+      }
+      this.directoryLink = directoryLink;
+    } finally {
+      fetchLock.unlock();
+    }
+  }
+
+  public void setTimeProvider(TimeProvider tp) {
+    this.timeProvider = tp;
+  }
+
+  /**
+   * Fetches the listing if it has expired, unless it has not changed.
+   */
+  private IStatus fetchListing(IProgressMonitor monitor) {
     IStatus localStatus = getStatus();
     if (localStatus == Status.OK_STATUS) {
       return localStatus;
@@ -158,39 +355,191 @@ public class RemoteApiDirectory implements ApiDirectory {
 
       ApiDirectoryListingLinkReader reader = new ApiDirectoryListingLinkReader();
 
-      jobStatus = reader.run(submon.newChild(80));
-      if (submon.isCanceled()) {
-        return Status.CANCEL_STATUS;
+      File downloadFile = null;
+      OutputStream output = null;
+      ByteArrayOutputStream bytes = null;
+      try {
+        if (cacheDirectory != null && cacheDirectory.isDirectory()) {
+          downloadFile = new File(cacheDirectory, CACHED_LISTING_FILE_NAME
+              + ".tmp");
+          output = new FileOutputStream(downloadFile);
+        } else {
+          bytes = new ByteArrayOutputStream();
+          output = bytes;
+        }
+        jobStatus = reader.run(output, submon.newChild(80));
+      } catch (IOException e) {
+        jobStatus = new Status(Status.ERROR, ManagedApiPlugin.PLUGIN_ID,
+            "Could not create " + downloadFile, e);
+      } finally {
+        close(output, "Error closing downloaded directory listing");
       }
-      if (!Status.OK_STATUS.equals(jobStatus)) {
+
+      try {
+        if (submon.isCanceled()) {
+          return Status.CANCEL_STATUS;
+        }
+        if (!Status.OK_STATUS.equals(jobStatus)) {
+          return serveOffline(jobStatus);
+        }
+
+        if (!reader.isModified()) {
+          // The listing is as it was when last fetched
+          markFetched();
+          writeCachedListingProperties();
+          submon.done();
+          return jobStatus;
+        }
+
+        InputStream listingStream = null;
+        ApiDirectoryListingParser parser = new ApiDirectoryListingParser();
+        try {
+          listingStream = (downloadFile != null ? new BufferedInputStream(
+              new FileInputStream(downloadFile)) : new ByteArrayInputStream(
+              bytes.toByteArray()));
+          parser.setListingStream(listingStream, null, decodedItems);
+          jobStatus = parser.run(submon.newChild(20));
+        } catch (IOException e) {
+          jobStatus = new Status(Status.ERROR, ManagedApiPlugin.PLUGIN_ID,
+              "Could not read " + downloadFile, e);
+        } finally {
+          close(listingStream, "Error closing downloaded directory listing");
+        }
+        if (submon.isCanceled()) {
+          return Status.CANCEL_STATUS;
+        }
+        if (!Status.OK_STATUS.equals(jobStatus)) {
+          return jobStatus;
+        }
+        remoteApiDirectoryListing = parser.getListing();
+        listingEntityTag = reader.getEntityTag();
+        listingLastModified = reader.getLastModified();
+        submon.done();
+
+        markFetched();
+        if (downloadFile != null) {
+          File cachedListingFile = new File(cacheDirectory,
+              CACHED_LISTING_FILE_NAME);
+          cachedListingFile.delete();
+          if (downloadFile.renameTo(cachedListingFile)) {
+            writeCachedListingProperties();
+          }
+        }
         return jobStatus;
+      } finally {
+        if (downloadFile != null) {
+          downloadFile.delete();
+        }
+      }
+    }
+  }
+
+  private synchronized boolean isExpired() {
+    return timeProvider.getCurrentTime() > expirationTimestamp;
+  }
+
+  private synchronized void markFetched() {
+    expirationTimestamp = timeProvider.getCurrentTime()
+        + ManagedApiPlugin.API_DIRECTORY_CACHE_TTL;
+    status = Status.OK_STATUS;
+  }
+
+  /**
+   * Reads the listing saved in the cache directory, if it was fetched from
+   * the current link.
+   */
+  private void readCachedListing() {
+    assert fetchLock.isHeldByCurrentThread();
+
+    if (cacheDirectory == null) {
+      return;
+    }
+
+    File propertiesFile = new File(cacheDirectory,
+        CACHED_LISTING_PROPERTIES_FILE_NAME);
+    File listingFile = new File(cacheDirectory, CACHED_LISTING_FILE_NAME);
+    if (!propertiesFile.isFile() || !listingFile.isFile()) {
+      return;
+    }
+
+    InputStream input = null;
+    try {
+      Properties properties = new Properties();
+      input = new FileInputStream(propertiesFile);
+      properties.load(input);
+      input.close();
+      if (!directoryLink.equals(properties.getProperty("link"))) {
+        return;
       }
 
       ApiDirectoryListingParser parser = new ApiDirectoryListingParser();
-      parser.setSerializedListing(reader.getListing());
-      jobStatus = parser.run(submon.newChild(20));
-      if (submon.isCanceled()) {
-        return Status.CANCEL_STATUS;
-      }
-      if (!Status.OK_STATUS.equals(jobStatus)) {
-        return jobStatus;
+      input = new BufferedInputStream(new FileInputStream(listingFile));
+      parser.setListingStream(input, null, decodedItems);
+      if (!Status.OK_STATUS.equals(parser.run(new NullProgressMonitor()))) {
+        return;
       }
+
       remoteApiDirectoryListing = parser.getListing();
-      submon.done();
+      listingEntityTag = properties.getProperty("etag");
+      listingLastModified = Long.parseLong(properties.getProperty(
+          "lastModified", "0"));
+      long fetched = Long.parseLong(properties.getProperty("fetched", "0"));
+      synchronized (this) {
+        expirationTimestamp = fetched
+            + ManagedApiPlugin.API_DIRECTORY_CACHE_TTL;
+        status = Status.OK_STATUS;
+      }
+    } catch (IOException e) {
+      ManagedApiLogger.warn(e, "Could not read the cached API directory");
+    } catch (NumberFormatException e) {
+      ManagedApiLogger.warn(e, "Could not read the cached API directory");
+    } finally {
+      close(input, "Error closing the cached API directory");
+    }
+  }
 
-      expirationTimestamp = timeProvider.getCurrentTime()
-          + ManagedApiPlugin.API_DIRECTORY_CACHE_TTL;
-      status = jobStatus;
+  /**
+   * Keeps serving the listing which was last fetched, if there is one, when
+   * the directory cannot be reached.
+   */
+  private synchronized IStatus serveOffline(IStatus jobStatus) {
+    if (remoteApiDirectoryListing == null
+        || jobStatus.getSeverity() != IStatus.ERROR) {
       return jobStatus;
     }
-  }
 
-  public void setDirectoryLink(String directoryLink) {
-    this.directoryLink = directoryLink;
+    ManagedApiLogger.info(jobStatus.getException(), jobStatus.getMessage()
+        + "; using the cached API directory");
+    expirationTimestamp = timeProvider.getCurrentTime()
+        + OFFLINE_RETRY_INTERVAL;
+    status = Status.OK_STATUS;
+    return status;
   }
 
-  public void setTimeProvider(TimeProvider tp) {
-    this.timeProvider = tp;
+  private void writeCachedListingProperties() {
+    if (cacheDirectory == null || !cacheDirectory.isDirectory()) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    properties.setProperty("link", directoryLink);
+    if (listingEntityTag != null) {
+      properties.setProperty("etag", listingEntityTag);
+    }
+    properties.setProperty("lastModified", Long.toString(listingLastModified));
+    properties.setProperty("fetched",
+        Long.toString(timeProvider.getCurrentTime()));
+
+    OutputStream output = null;
+    try {
+      output = new FileOutputStream(new File(cacheDirectory,
+          CACHED_LISTING_PROPERTIES_FILE_NAME));
+      properties.store(output, null);
+    } catch (IOException e) {
+      ManagedApiLogger.warn(e, "Could not save the cached API directory");
+    } finally {
+      close(output, "Error closing the cached API directory");
+    }
   }
 
 }
@@ -16,45 +16,103 @@ package com.google.gdt.eclipse.managedapis.ui;
 
 import com.google.gdt.eclipse.core.ui.viewers.BaseChangeListener;
 import com.google.gdt.eclipse.core.ui.viewers.ChangeListener;
-import com.google.gdt.eclipse.core.ui.viewers.SelectableControlListContentFilter;
+import com.google.gdt.eclipse.core.ui.viewers.SelectableControlListRankingFilter;
 import com.google.gdt.eclipse.managedapis.directory.ManagedApiEntry;
-import com.google.gdt.googleapi.search.Match;
+import com.google.gdt.googleapi.search.SearchIndex;
 import com.google.gdt.googleapi.search.SearchTokenizer;
 import com.google.gdt.googleapi.search.Term;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * SearchFilter filters APIs using a search query using naive search match
- * rules.
+ * SearchFilter filters APIs using a search query. The entries of the current
+ * listing are looked up in a {@link SearchIndex}, which is built once for the
+ * listing, and are shown best match first. Terms match the words they are a
+ * prefix of, and terms with wildcards the words they match as a whole.
  */
 public class ApiSearchFilter extends BaseChangeListener<ChangeListener>
-    implements SelectableControlListContentFilter<ManagedApiEntry> {
+    implements SelectableControlListRankingFilter<ManagedApiEntry> {
 
   private List<Term> searchTerms = new ArrayList<Term>();
 
+  private volatile SearchIndex<ManagedApiEntry> index;
+
+  /**
+   * The rank of each entry in {@link #matchesIndex} which matches the search
+   * terms, best match first.
+   */
+  private Map<ManagedApiEntry, Integer> matches;
+
+  private SearchIndex<ManagedApiEntry> matchesIndex;
+
+  private final Comparator<ManagedApiEntry> ranking = new Comparator<ManagedApiEntry>() {
+    public int compare(ManagedApiEntry a, ManagedApiEntry b) {
+      return getRank(a) - getRank(b);
+    }
+  };
+
   public ManagedApiEntry apply(ManagedApiEntry element) {
     if (searchTerms.size() > 0) {
-      Term[] terms = searchTerms.toArray(new Term[searchTerms.size()]);
-      Match[] matches = element.match(terms);
-      if (matches != null && matches.length >= 1) {
+      SearchIndex<ManagedApiEntry> currentIndex = index;
+      if (currentIndex != null
+          && getMatches(currentIndex).containsKey(element)) {
         return element;
-      } else {
-        return null;
       }
+      return null;
     } else {
       return element;
     }
   }
 
+  public Comparator<ManagedApiEntry> getRanking() {
+    return searchTerms.size() > 0 ? ranking : null;
+  }
+
+  /**
+   * Indexes the entries of a new listing. This may be called from any thread.
+   */
+  public void setEntries(Collection<ManagedApiEntry> entries) {
+    SearchIndex<ManagedApiEntry> newIndex = new SearchIndex<ManagedApiEntry>();
+    for (ManagedApiEntry entry : entries) {
+      entry.addToIndex(newIndex);
+    }
+    index = newIndex;
+  }
+
   public void setSearchQuery(String searchQuery) {
     List<Term> newSearchTerms = new ArrayList<Term>();
-    newSearchTerms.addAll(SearchTokenizer.queryToTerms(searchQuery));
+    newSearchTerms.addAll(SearchTokenizer.queryToTermsWithWildcards(searchQuery));
     if (!newSearchTerms.equals(searchTerms)) {
       searchTerms = newSearchTerms;
+      matchesIndex = null;
       fireChangeEvent();
     }
   }
 
+  private Map<ManagedApiEntry, Integer> getMatches(
+      SearchIndex<ManagedApiEntry> currentIndex) {
+    if (matchesIndex != currentIndex) {
+      matches = new IdentityHashMap<ManagedApiEntry, Integer>();
+      for (ManagedApiEntry entry : currentIndex.search(searchTerms)) {
+        matches.put(entry, matches.size());
+      }
+      matchesIndex = currentIndex;
+    }
+    return matches;
+  }
+
+  /**
+   * Returns the position of the entry in the search results, or
+   * {@link Integer#MAX_VALUE} if it does not match.
+   */
+  private int getRank(ManagedApiEntry entry) {
+    Integer rank = (matches != null ? matches.get(entry) : null);
+    return rank != null ? rank : Integer.MAX_VALUE;
+  }
+
 }
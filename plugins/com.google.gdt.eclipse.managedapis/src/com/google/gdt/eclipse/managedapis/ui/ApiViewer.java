@@ -217,6 +217,7 @@ public class ApiViewer {
     }
 
     listing = managedApiListingSource.getManagedApiListing();
+    searchFilter.setEntries(listing.getEntries());
 
     Display.getDefault().asyncExec(new Runnable() {
       public void run() {
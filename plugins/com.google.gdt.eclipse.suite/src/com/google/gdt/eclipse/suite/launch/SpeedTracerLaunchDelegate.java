@@ -62,10 +62,13 @@ import org.eclipse.jdt.launching.JavaLaunchDelegate;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.swt.widgets.Display;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -319,9 +322,12 @@ public class SpeedTracerLaunchDelegate extends JavaLaunchDelegate {
 
     File warOutFolder = warOutLocation.toFile();
     File symbolManifestFile = SymbolManifestGenerator.getSymbolManifestFile(warOutFolder);
-    String symbolManifestContents = generator.generate();
-
-    ResourceUtils.writeToFile(symbolManifestFile, symbolManifestContents);
+    Writer out = new BufferedWriter(new FileWriter(symbolManifestFile));
+    try {
+      generator.generate(out);
+    } finally {
+      out.close();
+    }
   }
   
   private void performGwtCompile(IProject project, File extraDir,
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.modules;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests the {@link JarModuleCatalog} class.
+ */
+public class JarModuleCatalogTest extends TestCase {
+
+  private File catalogFile;
+
+  private File directory;
+
+  private File jar;
+
+  public void testChangedJarIsRescanned() throws IOException {
+    JarModuleCatalog catalog = new JarModuleCatalog(catalogFile);
+    catalog.getModulePaths(jar);
+
+    writeJar(jar, "com/foo/Foo.gwt.xml", "com/bar/Bar.gwt.xml");
+    jar.setLastModified(jar.lastModified() - 10000);
+    assertEquals(Arrays.asList("com/foo/Foo.gwt.xml", "com/bar/Bar.gwt.xml"),
+        catalog.getModulePaths(jar));
+    assertEquals(2, catalog.getScanCount());
+  }
+
+  public void testGetModulePaths() {
+    JarModuleCatalog catalog = new JarModuleCatalog(catalogFile);
+    assertEquals(Arrays.asList("com/foo/Foo.gwt.xml"),
+        catalog.getModulePaths(jar));
+    assertEquals(1, catalog.getScanCount());
+
+    // An unchanged jar is not scanned again
+    catalog.getModulePaths(jar);
+    assertEquals(1, catalog.getScanCount());
+  }
+
+  public void testRefreshScansStaleJars() throws IOException {
+    File otherJar = new File(directory, "other.jar");
+    writeJar(otherJar, "com/other/Other.gwt.xml");
+
+    JarModuleCatalog catalog = new JarModuleCatalog(catalogFile);
+    catalog.getModulePaths(jar);
+    catalog.refresh(Arrays.asList(jar, otherJar));
+    assertEquals(2, catalog.getScanCount());
+
+    assertEquals(Arrays.asList("com/other/Other.gwt.xml"),
+        catalog.getModulePaths(otherJar));
+    assertEquals(2, catalog.getScanCount());
+  }
+
+  public void testSaveAndReload() {
+    JarModuleCatalog catalog = new JarModuleCatalog(catalogFile);
+    catalog.getModulePaths(jar);
+    catalog.saveCatalog();
+    assertTrue(catalogFile.exists());
+
+    catalog = new JarModuleCatalog(catalogFile);
+    assertEquals(Arrays.asList("com/foo/Foo.gwt.xml"),
+        catalog.getModulePaths(jar));
+    assertEquals(0, catalog.getScanCount());
+  }
+
+  public void testSaveDropsDeletedJars() {
+    JarModuleCatalog catalog = new JarModuleCatalog(catalogFile);
+    catalog.getModulePaths(jar);
+    jar.delete();
+    catalog.saveCatalog();
+
+    catalog = new JarModuleCatalog(catalogFile);
+    assertEquals(Collections.emptyList(), catalog.getModulePaths(jar));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("jarModuleCatalog", "");
+    directory.delete();
+    directory.mkdir();
+
+    catalogFile = new File(directory, "jarModules.catalog");
+    jar = new File(directory, "modules.jar");
+
+    // Module XMLs at the root of the jar are not in a package
+    writeJar(jar, "com/foo/Foo.gwt.xml", "com/foo/Foo.java", "Root.gwt.xml");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  private void writeJar(File file, String... entryNames) throws IOException {
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      for (String entryName : entryNames) {
+        out.putNextEntry(new ZipEntry(entryName));
+        out.write("<module/>".getBytes("UTF-8"));
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.modules;
+
+import com.google.gdt.eclipse.core.jobs.JobsUtilities;
+import com.google.gwt.eclipse.core.test.AbstractGWTPluginTestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jdt.core.IJavaProject;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Tests the {@link ModuleRegistry} class.
+ */
+public class ModuleRegistryTest extends AbstractGWTPluginTestCase {
+
+  private static final String MODULE_NAME = TEST_PROJECT_MODULE_PACKAGE + "."
+      + TEST_PROJECT_ENTRY_POINT;
+
+  private static final String OTHER_MODULE_NAME = TEST_PROJECT_MODULE_PACKAGE
+      + ".Other";
+
+  private IJavaProject javaProject;
+
+  public void testFindModule() {
+    IModule module = ModuleUtils.findModule(javaProject, MODULE_NAME, false);
+    assertNotNull(module);
+    assertEquals(MODULE_NAME, module.getQualifiedName());
+
+    // The module is found through the registry's cached scan
+    assertSame(module, ModuleUtils.findModule(javaProject, MODULE_NAME, false));
+    assertNull(ModuleUtils.findModule(javaProject, OTHER_MODULE_NAME, false));
+  }
+
+  public void testModuleAddedChangedAndRemoved() throws Exception {
+    IFile file = javaProject.getProject().getFile(
+        "src/com/hello/Other.gwt.xml");
+    file.create(new ByteArrayInputStream(
+        "<module><inherits name='com.hello.Hello'/></module>".getBytes()),
+        true, null);
+    JobsUtilities.waitForIdle();
+
+    IModule module = ModuleUtils.findModule(javaProject, OTHER_MODULE_NAME,
+        false);
+    assertNotNull(module);
+    assertEquals(OTHER_MODULE_NAME, module.getCompiledName());
+    assertEquals(1, module.getInheritedModules(javaProject).size());
+
+    file.setContents(new ByteArrayInputStream(
+        "<module rename-to='other'></module>".getBytes()), true, false, null);
+    JobsUtilities.waitForIdle();
+    assertEquals("other", module.getCompiledName());
+    assertTrue(module.getInheritedModules(javaProject).isEmpty());
+
+    file.delete(true, null);
+    JobsUtilities.waitForIdle();
+    assertNull(ModuleUtils.findModule(javaProject, OTHER_MODULE_NAME, false));
+  }
+
+  @Override
+  protected boolean requiresTestProject() {
+    return true;
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    javaProject = getTestProject();
+  }
+
+}
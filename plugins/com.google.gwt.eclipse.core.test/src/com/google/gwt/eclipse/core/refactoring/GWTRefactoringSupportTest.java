@@ -14,6 +14,8 @@
  *******************************************************************************/
 package com.google.gwt.eclipse.core.refactoring;
 
+import com.google.gwt.eclipse.core.platformproxy.refactoring.JsniReferenceChangeFactory;
+import com.google.gwt.eclipse.core.preferences.GWTPreferences;
 import com.google.gwt.eclipse.core.validators.java.JsniJavaRef;
 import com.google.gwt.eclipse.core.search.IIndexedJavaRef;
 import com.google.gwt.eclipse.core.search.IndexedJsniJavaRef;
@@ -22,6 +24,7 @@ import com.google.gwt.eclipse.core.test.AbstractGWTPluginTestCase;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.IJavaElement;
@@ -124,6 +127,74 @@ public class GWTRefactoringSupportTest extends AbstractRefactoringTestImpl {
     assertEquals(2, changeEdit.getChildrenSize());
   }
 
+  public void testCreateChangePreparesJsniReferenceEdits()
+      throws CoreException {
+    GWTRefactoringSupport support = new DummyGWTRefactoringSupport();
+    support.setUpdateReferences(true);
+
+    // Have all of the refs resolve to the refactored element
+    IType refactorTestType = refactorTestClass.getCompilationUnit().findPrimaryType();
+    support.setOldElement(refactorTestType);
+    support.setNewElement(refactorTestType);
+
+    RefactoringParticipant participant = new DummyRefactoringParticipant();
+    IRefactoringChangeFactory changeFactory = new JsniReferenceChangeFactory(
+        support);
+    CompositeChange change = support.createChange(participant, changeFactory);
+    TextChange childChange = (TextChange) change.getChildren()[0];
+    assertEquals(2, childChange.getEdit().getChildrenSize());
+
+    // Performing the change replaces its edits with the ones prepared for its
+    // compilation unit
+    childChange.perform(new NullProgressMonitor());
+    assertEquals(2, childChange.getEdit().getChildrenSize());
+  }
+
+  public void testCreateChangePreparesJsniReferenceEditsInParallel()
+      throws Exception {
+    // Add several compilation units referencing RefactorTest from JSNI
+    int unitCount = 6;
+    for (int i = 0; i < unitCount; i++) {
+      new TestClass(new String[] {
+          "package com.hello.client;", "",
+          "public class RefactorTestUser" + i + " {",
+          "  public static native void jsniMethod()/*-{",
+          "    var num = obj.@com.hello.client.RefactorTest::getNumber(I)(2);",
+          "    num += obj.@com.hello.client.RefactorTest::counter;", "  }-*/;",
+          "}"}, "RefactorTestUser" + i).addToTestProject();
+    }
+    rebuildTestProject();
+
+    int parallelism = GWTPreferences.getBatchValidationParallelism();
+    GWTPreferences.setBatchValidationParallelism(4);
+    try {
+      GWTRefactoringSupport support = new DummyGWTRefactoringSupport();
+      support.setUpdateReferences(true);
+      IType refactorTestType = refactorTestClass.getCompilationUnit().findPrimaryType();
+      support.setOldElement(refactorTestType);
+      support.setNewElement(refactorTestType);
+
+      RefactoringParticipant participant = new DummyRefactoringParticipant();
+      IRefactoringChangeFactory changeFactory = new JsniReferenceChangeFactory(
+          support);
+      CompositeChange change = support.createChange(participant,
+          changeFactory);
+
+      // One change for RefactorTest itself and one for each of the others
+      Change[] changeChildren = change.getChildren();
+      assertEquals(unitCount + 1, changeChildren.length);
+
+      // The first change to be performed prepares the edits of all of them
+      for (Change childChange : changeChildren) {
+        ((TextChange) childChange).perform(new NullProgressMonitor());
+        assertEquals(2,
+            ((TextChange) childChange).getEdit().getChildrenSize());
+      }
+    } finally {
+      GWTPreferences.setBatchValidationParallelism(parallelism);
+    }
+  }
+
   public void testCreateChangeWithoutEdits() throws JavaModelException {
     GWTRefactoringSupport support = new DummyGWTRefactoringSupport();
     support.setUpdateReferences(true);
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.search;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Test cases for the {@link ElementKeyIndex} class.
+ */
+public class ElementKeyIndexTest extends TestCase {
+
+  private static final String[] KEYS = new String[] {
+      "com.hello.Hello", "com.hello.Hello.Inner", "com.hello.Greeter",
+      "::sayHi()", "::sayHello()", "::SayHowdy()", "::field1", "::Hello()"};
+
+  private ElementKeyIndex index;
+
+  public void testExactMatch() {
+    assertMatches(index.findMatches("::sayHi()", false, true), "::sayHi()");
+    assertMatches(index.findMatches("::sayhi()", false, true));
+    assertMatches(index.findMatches("::SAYHI()", false, false), "::sayHi()");
+  }
+
+  public void testPrefixMatch() {
+    assertMatches(index.findMatches("::sayH*", false, true), "::sayHi()",
+        "::sayHello()");
+    assertMatches(index.findMatches("::sayH*", false, false), "::sayHi()",
+        "::sayHello()", "::SayHowdy()");
+    assertMatches(index.findMatches("::sayH?()", false, true), "::sayHi()");
+    assertMatches(index.findMatches("com.hello.*", false, true),
+        "com.hello.Hello", "com.hello.Hello.Inner", "com.hello.Greeter");
+  }
+
+  public void testLeadingWildcard() {
+    assertMatches(index.findMatches("*.Hello", false, true), "com.hello.Hello");
+    assertMatches(index.findMatches("*Hello*", false, true), "com.hello.Hello",
+        "com.hello.Hello.Inner", "::sayHello()", "::Hello()");
+  }
+
+  public void testSimpleTypeNameMatch() {
+    assertMatches(index.findMatches("hello", true, false), "com.hello.Hello");
+    assertMatches(index.findMatches("In*", true, true), "com.hello.Hello.Inner");
+
+    // Member keys are never matched by type name searches
+    assertMatches(index.findMatches("*", true, true), "com.hello.Hello",
+        "com.hello.Hello.Inner", "com.hello.Greeter");
+  }
+
+  public void testClear() {
+    index.clear();
+    assertMatches(index.findMatches("*", false, true));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    index = new ElementKeyIndex();
+    for (String key : KEYS) {
+      index.add(key);
+    }
+  }
+
+  private void assertMatches(List<String> actual, String... expected) {
+    assertEquals(expected.length, actual.size());
+    assertEquals(new HashSet<String>(Arrays.asList(expected)),
+        new HashSet<String>(actual));
+  }
+
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.search;
+
+import com.google.gwt.eclipse.core.validators.java.JsniJavaRef;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Test cases for the {@link JavaRefIndexStore} class.
+ */
+public class JavaRefIndexStoreTest extends TestCase {
+
+  private static class RecordingHandler implements
+      JavaRefIndexStore.JournalHandler {
+    private final List<String> operations = new ArrayList<String>();
+
+    public void add(IIndexedJavaRef ref) {
+      operations.add("add " + ref);
+    }
+
+    public void add(IPath file, Set<IIndexedJavaRef> refs) {
+      operations.add("add " + file + " " + refs.size());
+    }
+
+    public void clear() {
+      operations.add("clear");
+    }
+
+    public void clear(IPath file) {
+      operations.add("clear " + file);
+    }
+
+    public void clear(String projectName) {
+      operations.add("clear project " + projectName);
+    }
+  }
+
+  private static final IPath FILE_1 = new Path("/ProjectA/src/Hello.java");
+
+  private static final IPath FILE_2 = new Path("/ProjectB/src/Second.java");
+
+  private static IIndexedJavaRef createJavaRef(String refString, IPath file,
+      int offset) {
+    JsniJavaRef ref = JsniJavaRef.parse(refString);
+    ref.setSource(file);
+    ref.setOffset(offset);
+    return new IndexedJsniJavaRef(ref);
+  }
+
+  private File directory;
+
+  public void testCompactAndReadSegments() {
+    Set<IIndexedJavaRef> refs1 = new HashSet<IIndexedJavaRef>();
+    refs1.add(createJavaRef("@com.hello.Hello::sayHi(Ljava/lang/String;)",
+        FILE_1, 10));
+    refs1.add(JsniJavaRefParamType.parse(FILE_1, 30, "Ljava/lang/String;"));
+    Set<IIndexedJavaRef> refs2 = new HashSet<IIndexedJavaRef>();
+    refs2.add(createJavaRef("@com.hello.Greeter::new()", FILE_2, 5));
+
+    JavaRefIndexStore store = new JavaRefIndexStore(directory, "searchIndex");
+    store.open();
+    assertFalse(store.hasIndex());
+    assertTrue(store.compact(createProjects(refs1, refs2)));
+    store.close();
+
+    // Re-open the store; nothing should be decoded until it is requested
+    store = new JavaRefIndexStore(directory, "searchIndex");
+    store.open();
+    assertTrue(store.hasIndex());
+    assertTrue(store.hasPendingSegment("ProjectA"));
+    assertTrue(store.hasPendingSegment("ProjectB"));
+
+    Map<IPath, Set<IIndexedJavaRef>> files = store.readSegment("ProjectA");
+    assertEquals(1, files.size());
+    assertRefsEqual(refs1, files.get(FILE_1));
+    assertFalse(store.hasPendingSegment("ProjectA"));
+    assertTrue(store.hasPendingSegment("ProjectB"));
+
+    // Compacting again must keep the segment we never decoded
+    Map<String, Map<IPath, Set<IIndexedJavaRef>>> loaded = new HashMap<String, Map<IPath, Set<IIndexedJavaRef>>>();
+    loaded.put("ProjectA", files);
+    assertTrue(store.compact(loaded));
+    store.close();
+
+    store = new JavaRefIndexStore(directory, "searchIndex");
+    store.open();
+    assertRefsEqual(refs2, store.readSegment("ProjectB").get(FILE_2));
+    assertRefsEqual(refs1, store.readSegment("ProjectA").get(FILE_1));
+
+    // Only one generation should be left on disk
+    assertEquals(1, directory.list().length);
+  }
+
+  public void testReplayJournal() throws IOException {
+    Set<IIndexedJavaRef> refs = new HashSet<IIndexedJavaRef>();
+    refs.add(createJavaRef("@com.hello.Hello::field1", FILE_1, 10));
+
+    JavaRefIndexStore store = new JavaRefIndexStore(directory, "searchIndex");
+    store.open();
+    store.logAdd(FILE_1, refs);
+    store.logClear(FILE_2);
+    store.logClear("ProjectB");
+    store.logClear();
+    assertEquals(4, store.getJournalRecordCount());
+    store.close();
+
+    // Simulate a crash while a record was being appended
+    FileOutputStream out = new FileOutputStream(new File(directory,
+        "searchIndex.0.journal"), true);
+    out.write(new byte[] {0, 0, 0, 42, 1});
+    out.close();
+
+    store = new JavaRefIndexStore(directory, "searchIndex");
+    store.open();
+    RecordingHandler handler = new RecordingHandler();
+    store.replayJournal(handler);
+    assertEquals(4, handler.operations.size());
+    assertEquals("add " + FILE_1 + " 1", handler.operations.get(0));
+    assertEquals("clear " + FILE_2, handler.operations.get(1));
+    assertEquals("clear project ProjectB", handler.operations.get(2));
+    assertEquals("clear", handler.operations.get(3));
+
+    // Compacting starts a new, empty journal
+    assertTrue(store.compact(new HashMap<String, Map<IPath, Set<IIndexedJavaRef>>>()));
+    assertEquals(0, store.getJournalRecordCount());
+    handler = new RecordingHandler();
+    store.replayJournal(handler);
+    assertEquals(0, handler.operations.size());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("searchIndex", "");
+    directory.delete();
+    directory.mkdir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  /**
+   * Compares refs by their persisted state, since not every IIndexedJavaRef
+   * implements equals.
+   */
+  private void assertRefsEqual(Set<IIndexedJavaRef> expected,
+      Set<IIndexedJavaRef> actual) {
+    assertEquals(toStrings(expected), toStrings(actual));
+  }
+
+  private Map<String, Map<IPath, Set<IIndexedJavaRef>>> createProjects(
+      Set<IIndexedJavaRef> refs1, Set<IIndexedJavaRef> refs2) {
+    Map<String, Map<IPath, Set<IIndexedJavaRef>>> projects = new HashMap<String, Map<IPath, Set<IIndexedJavaRef>>>();
+    Map<IPath, Set<IIndexedJavaRef>> projectA = new HashMap<IPath, Set<IIndexedJavaRef>>();
+    projectA.put(FILE_1, refs1);
+    projects.put("ProjectA", projectA);
+    Map<IPath, Set<IIndexedJavaRef>> projectB = new HashMap<IPath, Set<IIndexedJavaRef>>();
+    projectB.put(FILE_2, refs2);
+    projects.put("ProjectB", projectB);
+    return projects;
+  }
+
+  private Set<String> toStrings(Set<IIndexedJavaRef> refs) {
+    Set<String> strings = new HashSet<String>();
+    for (IIndexedJavaRef ref : refs) {
+      strings.add(ref.getSource() + ":" + ref.getClassOffset() + ":"
+          + ref.rawClassName() + ":" + ref.memberSignature());
+    }
+    return strings;
+  }
+
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.speedtracer;
+
+import com.google.gwt.eclipse.core.test.AbstractGWTPluginTestCase;
+
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests the {@link JarPackageFragmentRootIndex} class.
+ */
+public class JarPackageFragmentRootIndexTest extends AbstractGWTPluginTestCase {
+
+  private JarPackageFragmentRootIndex index;
+
+  private File jar;
+
+  private IJavaProject javaProject;
+
+  private IClasspathEntry[] rawClasspath;
+
+  public void testClasspathChanged() throws Exception {
+    assertNull(index.getPackageFragmentRoot(jar, TEST_PROJECT_NAME));
+    assertTrue(index.isIndexed(TEST_PROJECT_NAME));
+
+    addJarToClasspath();
+    assertFalse(index.isIndexed(TEST_PROJECT_NAME));
+
+    IPackageFragmentRoot root = index.getPackageFragmentRoot(jar, null);
+    assertNotNull(root);
+    assertEquals(javaProject, root.getJavaProject());
+    assertTrue(index.isIndexed(TEST_PROJECT_NAME));
+  }
+
+  public void testGetPackageFragmentRoot() throws Exception {
+    addJarToClasspath();
+
+    IPackageFragmentRoot root = index.getPackageFragmentRoot(jar,
+        TEST_PROJECT_NAME);
+    assertNotNull(root);
+    assertTrue(root.exists());
+    assertEquals(jar, root.getPath().toFile());
+
+    // Unknown preferred projects fall back to any project with the JAR
+    assertEquals(root, index.getPackageFragmentRoot(jar, "NoSuchProject"));
+
+    assertNull(index.getPackageFragmentRoot(new File(jar.getParentFile(),
+        "missing.jar"), TEST_PROJECT_NAME));
+  }
+
+  @Override
+  protected boolean requiresTestProject() {
+    return true;
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    javaProject = getTestProject();
+    rawClasspath = javaProject.getRawClasspath();
+
+    jar = File.createTempFile("jarPackageFragmentRootIndex", ".jar");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    out.putNextEntry(new ZipEntry("com/example/Example.class"));
+    out.closeEntry();
+    out.close();
+
+    index = new JarPackageFragmentRootIndex();
+    index.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    index.stop();
+    javaProject.setRawClasspath(rawClasspath, null);
+    jar.delete();
+
+    super.tearDown();
+  }
+
+  private void addJarToClasspath() throws Exception {
+    IClasspathEntry[] entries = new IClasspathEntry[rawClasspath.length + 1];
+    System.arraycopy(rawClasspath, 0, entries, 0, rawClasspath.length);
+    entries[rawClasspath.length] = JavaCore.newLibraryEntry(new Path(
+        jar.getAbsolutePath()), null, null);
+    javaProject.setRawClasspath(entries, null);
+  }
+
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.speedtracer;
+
+import com.google.gdt.eclipse.core.ResourceUtils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests the {@link SymbolManifestGenerator} class.
+ */
+public class SymbolManifestGeneratorTest extends TestCase {
+
+  private static final String HASH1 = "0123456789ABCDEF0123456789ABCDEF";
+
+  private static final String HASH2 = "FEDCBA9876543210FEDCBA9876543210";
+
+  private static final String MODULE_NAME = "hello";
+
+  private File extraFolder;
+
+  private SymbolManifestGenerator generator;
+
+  private File warOutFolder;
+
+  public void testGenerate() {
+    String manifest = generator.generate();
+
+    assertTrue(manifest.startsWith("{\"" + MODULE_NAME + "/" + HASH1
+        + ".cache.html\":{\"sourceViewerServer\":{\"_paramProject\":\"Hello\""));
+    assertTrue(manifest.contains("\"symbols\":\"symbolsforspeedtracer/"
+        + MODULE_NAME + "/" + HASH1 + ".symbolMap\""));
+    assertTrue(manifest.endsWith(",\"type\":\"gwt\"}}"));
+
+    // The second permutation has no symbol map
+    assertFalse(manifest.contains(HASH2 + ".symbolMap"));
+    assertTrue(manifest.contains("\"" + MODULE_NAME + "/" + HASH2
+        + ".cache.js\":"));
+
+    assertTrue(getDestSymbolMap(HASH1).isFile());
+    assertEquals(1, generator.getCopiedSymbolMapCount());
+  }
+
+  public void testSymbolMapsAreCopiedOnlyWhenChanged() throws IOException {
+    generator.generate();
+    assertEquals(1, generator.getCopiedSymbolMapCount());
+
+    generator.generate();
+    assertEquals(0, generator.getCopiedSymbolMapCount());
+
+    File symbolMap = new File(extraFolder, MODULE_NAME + "/symbolMaps/"
+        + HASH1 + ".symbolMap");
+    ResourceUtils.writeToFile(symbolMap, "# changed symbol map");
+    generator.generate();
+    assertEquals(1, generator.getCopiedSymbolMapCount());
+    assertEquals(symbolMap.length(), getDestSymbolMap(HASH1).length());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    warOutFolder = ResourceUtils.createTempDir("war", "");
+    extraFolder = ResourceUtils.createTempDir("extra", "");
+
+    File moduleFolder = new File(warOutFolder, MODULE_NAME);
+    moduleFolder.mkdir();
+    ResourceUtils.writeToFile(new File(moduleFolder, HASH1 + ".cache.html"),
+        "");
+    ResourceUtils.writeToFile(new File(moduleFolder, HASH2 + ".cache.js"), "");
+    ResourceUtils.writeToFile(new File(moduleFolder, "hello.nocache.js"), "");
+
+    File symbolMapsFolder = new File(extraFolder, MODULE_NAME + "/symbolMaps");
+    symbolMapsFolder.mkdirs();
+    ResourceUtils.writeToFile(new File(symbolMapsFolder, HASH1 + ".symbolMap"),
+        "# symbol map");
+
+    generator = new SymbolManifestGenerator(warOutFolder,
+        Arrays.asList(MODULE_NAME, "missing"), extraFolder, "Hello");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ResourceUtils.deleteFileRecursively(warOutFolder);
+    ResourceUtils.deleteFileRecursively(extraFolder);
+  }
+
+  private File getDestSymbolMap(String hash) {
+    return new File(SymbolManifestGenerator.getSymbolMapsFolder(warOutFolder),
+        MODULE_NAME + "/" + hash + ".symbolMap");
+  }
+
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.uibinder.contentassist;
+
+import com.google.gdt.eclipse.core.jobs.JobsUtilities;
+import com.google.gwt.eclipse.core.test.AbstractGWTPluginTestCase;
+import com.google.gwt.eclipse.core.uibinder.UiBinderConstants;
+import com.google.gwt.eclipse.core.uibinder.contentassist.WidgetTypeIndex.WidgetType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the {@link WidgetTypeIndex} class.
+ */
+public class WidgetTypeIndexTest extends AbstractGWTPluginTestCase {
+
+  public void testGetWidgetTypes() {
+    Map<String, List<WidgetType>> widgetTypes = getIndexedWidgetTypes();
+
+    List<String> gwtWidgets = getElementNames(widgetTypes.get(UiBinderConstants.GWT_USER_LIBRARY_UI_PACKAGE_NAME));
+    assertTrue(gwtWidgets.contains("Button"));
+    assertTrue(gwtWidgets.contains("MenuItem"));
+    assertFalse(gwtWidgets.contains("IsWidget"));
+
+    List<String> testWidgets = getElementNames(widgetTypes.get(TEST_PROJECT_SRC_PACKAGE));
+    assertTrue(testWidgets.contains("CustomWidget"));
+    assertTrue(testWidgets.contains("CustomWidget.Nested"));
+    assertFalse(testWidgets.contains("NotAWidget"));
+  }
+
+  public void testIndexFollowsHierarchyChanges() throws Exception {
+    getIndexedWidgetTypes();
+
+    new TestClass(new String[] {
+        "package " + TEST_PROJECT_SRC_PACKAGE + ";", "",
+        "public class AddedWidget extends com.google.gwt.user.client.ui.Composite {",
+        "}"}, "AddedWidget").addToTestProject();
+
+    List<String> testWidgets = getElementNames(getIndexedWidgetTypes().get(
+        TEST_PROJECT_SRC_PACKAGE));
+    assertTrue(testWidgets.contains("AddedWidget"));
+  }
+
+  @Override
+  protected TestClass[] getTestClasses() {
+    TestClass widgetClass = new TestClass(new String[] {
+        "package " + TEST_PROJECT_SRC_PACKAGE + ";", "",
+        "import com.google.gwt.user.client.ui.Composite;",
+        "import com.google.gwt.user.client.ui.IsWidget;",
+        "import com.google.gwt.user.client.ui.Widget;", "",
+        "public class CustomWidget extends Composite {",
+        "  public static class Nested implements IsWidget {",
+        "    public Widget asWidget() {", "      return null;", "    }",
+        "  }", "}"}, "CustomWidget");
+
+    TestClass otherClass = new TestClass(new String[] {
+        "package " + TEST_PROJECT_SRC_PACKAGE + ";", "",
+        "public class NotAWidget {", "}"}, "NotAWidget");
+
+    return new TestClass[] {widgetClass, otherClass};
+  }
+
+  @Override
+  protected boolean requiresTestProject() {
+    return true;
+  }
+
+  private List<String> getElementNames(List<WidgetType> widgetTypes) {
+    List<String> elementNames = new ArrayList<String>();
+    for (WidgetType widgetType : widgetTypes) {
+      elementNames.add(widgetType.getElementName());
+    }
+    return elementNames;
+  }
+
+  /**
+   * Returns the test project's widget types, waiting for them to be indexed.
+   */
+  private Map<String, List<WidgetType>> getIndexedWidgetTypes() {
+    WidgetTypeIndex.INSTANCE.getWidgetTypes(getTestProject());
+    JobsUtilities.waitForIdle();
+
+    Map<String, List<WidgetType>> widgetTypes = WidgetTypeIndex.INSTANCE.getWidgetTypes(getTestProject());
+    assertNotNull(widgetTypes);
+    return widgetTypes;
+  }
+
+}
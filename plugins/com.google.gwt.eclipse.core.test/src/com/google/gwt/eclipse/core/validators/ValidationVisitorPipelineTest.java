@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the {@link ValidationVisitorPipeline} class.
+ */
+public class ValidationVisitorPipelineTest extends TestCase {
+
+  /**
+   * Records the type and method declarations it visits.
+   */
+  private static class RecordingVisitor extends ASTVisitor {
+    private final List<String> visits;
+
+    private final String name;
+
+    private final String prunedType;
+
+    public RecordingVisitor(String name, List<String> visits) {
+      this(name, visits, null);
+    }
+
+    public RecordingVisitor(String name, List<String> visits, String prunedType) {
+      this.name = name;
+      this.visits = visits;
+      this.prunedType = prunedType;
+    }
+
+    @Override
+    public void endVisit(CompilationUnit node) {
+      visits.add(name + " end cu");
+    }
+
+    @Override
+    public void endVisit(MethodDeclaration node) {
+      visits.add(name + " end " + node.getName());
+    }
+
+    @Override
+    public void endVisit(TypeDeclaration node) {
+      visits.add(name + " end " + node.getName());
+    }
+
+    @Override
+    public boolean visit(CompilationUnit node) {
+      visits.add(name + " cu");
+      return true;
+    }
+
+    @Override
+    public boolean visit(MethodDeclaration node) {
+      visits.add(name + " " + node.getName());
+      return true;
+    }
+
+    @Override
+    public boolean visit(TypeDeclaration node) {
+      visits.add(name + " " + node.getName());
+      return !node.getName().getIdentifier().equals(prunedType);
+    }
+  }
+
+  private static final String SOURCE = "class Outer {\n"
+      + "  void a() {}\n"
+      + "  class Inner {\n"
+      + "    void b() {}\n"
+      + "  }\n"
+      + "}\n";
+
+  private CompilationUnit ast;
+
+  private List<String> visits;
+
+  public void testDeferredVisitorRunsAfterTraversal() {
+    ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+    pipeline.registerDeferred(new RecordingVisitor("2", visits),
+        ASTNode.TYPE_DECLARATION);
+    pipeline.register(new RecordingVisitor("1", visits),
+        ASTNode.TYPE_DECLARATION);
+    pipeline.run(ast);
+
+    assertVisits("1 Outer", "1 Inner", "1 end Inner", "1 end Outer",
+        "2 Outer", "2 Inner", "2 end Inner", "2 end Outer");
+  }
+
+  public void testDispatchesRegisteredNodeTypes() {
+    ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+    pipeline.register(new RecordingVisitor("t", visits),
+        ASTNode.TYPE_DECLARATION);
+    pipeline.register(new RecordingVisitor("m", visits),
+        ASTNode.METHOD_DECLARATION, ASTNode.COMPILATION_UNIT);
+    pipeline.run(ast);
+
+    assertVisits("m cu", "t Outer", "m a", "m end a", "t Inner", "m b",
+        "m end b", "t end Inner", "t end Outer", "m end cu");
+  }
+
+  public void testPrunedVisitorSkipsDescendants() {
+    ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+    pipeline.register(new RecordingVisitor("p", visits, "Outer"),
+        ASTNode.TYPE_DECLARATION, ASTNode.METHOD_DECLARATION);
+    pipeline.register(new RecordingVisitor("t", visits),
+        ASTNode.TYPE_DECLARATION);
+    pipeline.run(ast);
+
+    // The pruned visitor still gets the end visit of the node it pruned at
+    assertVisits("p Outer", "t Outer", "t Inner", "t end Inner", "p end Outer",
+        "t end Outer");
+  }
+
+  public void testUnsupportedNodeType() {
+    try {
+      new ValidationVisitorPipeline().register(new ASTVisitor() {
+      }, ASTNode.FIELD_DECLARATION);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    ASTParser parser = ASTParser.newParser(AST.JLS3);
+    parser.setSource(SOURCE.toCharArray());
+    ast = (CompilationUnit) parser.createAST(null);
+    visits = new ArrayList<String>();
+  }
+
+  private void assertVisits(String... expected) {
+    List<String> expectedVisits = new ArrayList<String>();
+    for (String visit : expected) {
+      expectedVisits.add(visit);
+    }
+    assertEquals(expectedVisits, visits);
+  }
+
+}
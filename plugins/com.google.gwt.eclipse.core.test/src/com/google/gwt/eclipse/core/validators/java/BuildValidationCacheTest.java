@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators.java;
+
+import com.google.gdt.eclipse.core.markers.GdtProblemSeverity;
+import com.google.gwt.eclipse.core.markers.GWTJavaProblem;
+import com.google.gwt.eclipse.core.markers.GWTProblemType;
+import com.google.gwt.eclipse.core.test.AbstractGWTPluginTestCase;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the {@link BuildValidationCache} class.
+ */
+public class BuildValidationCacheTest extends AbstractGWTPluginTestCase {
+
+  private BuildValidationCache cache;
+
+  private ICompilationUnit cu;
+
+  private File directory;
+
+  private byte[] sourceHash;
+
+  private TestClass testClass;
+
+  public void testClear() {
+    cache.put(cu, sourceHash, createResult(true));
+    cache.clear(cu.getJavaProject().getProject());
+    assertNull(cache.lookup(cu, sourceHash));
+  }
+
+  public void testLookup() {
+    assertNull(cache.lookup(cu, sourceHash));
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    cache.put(cu, sourceHash, createResult(true));
+    BuildValidationResult result = cache.lookup(cu, sourceHash);
+    assertNotNull(result);
+    assertEquals(Arrays.asList("java.lang.String"),
+        result.getTypeDependencies());
+    assertEquals(1, result.getProblems().size());
+    assertEquals(1, cache.getHitCount());
+
+    // Changing the source is a miss
+    assertNull(cache.lookup(cu,
+        BuildValidationCache.hashSource("class Changed {}".toCharArray())));
+    assertEquals(2, cache.getMissCount());
+  }
+
+  public void testRemove() {
+    cache.put(cu, sourceHash, createResult(true));
+    cache.remove(cu.getPath());
+    assertNull(cache.lookup(cu, sourceHash));
+
+    // Results which cannot be cached replace the earlier result
+    cache.put(cu, sourceHash, createResult(true));
+    cache.put(cu, sourceHash, createResult(false));
+    assertNull(cache.lookup(cu, sourceHash));
+  }
+
+  public void testSaveAndReload() {
+    BuildValidationResult expected = createResult(true);
+    cache.put(cu, sourceHash, expected);
+    cache.saveCache();
+
+    cache = new BuildValidationCache(directory);
+    BuildValidationResult actual = cache.lookup(cu, sourceHash);
+    assertNotNull(actual);
+    assertEquals(expected.getTypeDependencies(), actual.getTypeDependencies());
+
+    CategorizedProblem expectedProblem = expected.getProblems().get(0);
+    CategorizedProblem actualProblem = actual.getProblems().get(0);
+    assertEquals(expectedProblem.getMarkerType(),
+        actualProblem.getMarkerType());
+    assertEquals(expectedProblem.getID(), actualProblem.getID());
+    assertEquals(expectedProblem.getMessage(), actualProblem.getMessage());
+    assertEquals(expectedProblem.getSourceStart(),
+        actualProblem.getSourceStart());
+    assertEquals(expectedProblem.getSourceEnd(), actualProblem.getSourceEnd());
+    assertEquals(expectedProblem.getSourceLineNumber(),
+        actualProblem.getSourceLineNumber());
+    assertTrue(actualProblem.isError());
+  }
+
+  @Override
+  protected TestClass[] getTestClasses() {
+    testClass = new TestClass(new String[] {
+        "package com.hello.client;", "",
+        "public class BuildValidationCacheTest {",
+        "  public static native String jsni()/*-{",
+        "    return @com.hello.MissingType::field;", "  }-*/;", "}"},
+        "BuildValidationCacheTest");
+    return new TestClass[] {testClass};
+  }
+
+  @Override
+  protected boolean requiresTestProject() {
+    return true;
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    directory = File.createTempFile("buildValidationCache", "");
+    directory.delete();
+    directory.mkdir();
+
+    cache = new BuildValidationCache(directory);
+    cu = testClass.getCompilationUnit();
+    sourceHash = BuildValidationCache.hashSource(testClass.getContents().toCharArray());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+
+    super.tearDown();
+  }
+
+  private BuildValidationResult createResult(boolean cacheable) {
+    List<CategorizedProblem> problems = new ArrayList<CategorizedProblem>();
+    problems.add(GWTJavaProblem.create("BuildValidationCacheTest.java", 100,
+        25, 5, 12, GWTProblemType.JSNI_JAVA_REF_UNRESOLVED_TYPE,
+        GdtProblemSeverity.ERROR, "com.hello.MissingType"));
+
+    List<String> typeDependencies = new ArrayList<String>();
+    typeDependencies.add("java.lang.String");
+
+    return new BuildValidationResult(problems, typeDependencies, cacheable);
+  }
+
+}
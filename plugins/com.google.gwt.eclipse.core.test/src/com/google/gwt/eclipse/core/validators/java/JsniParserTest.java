@@ -23,10 +23,12 @@ import com.google.gwt.eclipse.core.test.AbstractGWTPluginTestCase;
 import com.google.gwt.eclipse.core.test.RegionConverter;
 import com.google.gwt.eclipse.core.validators.java.JsniParser.JavaScriptParseException;
 
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
@@ -35,6 +37,7 @@ import org.eclipse.jface.text.ITextSelection;
 import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.TextSelection;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -141,6 +144,84 @@ public class JsniParserTest extends AbstractGWTPluginTestCase {
     assertEquals(expectedProblemRegion.getOffset(), problem.getSourceStart());
   }
 
+  public void testParseMethodDeclarationReusesParsedJsni() throws Exception {
+    JsniParser.PARSE_CACHE.clear();
+    ICompilationUnit cu = testClass.getCompilationUnit();
+    JavaValidationResult result = JsniParser.parse(getJsniMethods(cu)[0]);
+    int hitCount = JsniParser.PARSE_CACHE.getHitCount();
+
+    // Move the JSNI method by adding a field in front of it
+    String field = "  private int moved;\n";
+    ICompilationUnit workingCopy = cu.getWorkingCopy(null);
+    try {
+      int fieldOffset = testClassSource.indexOf("  private int counter;");
+      workingCopy.getBuffer().replace(fieldOffset, 0, field);
+      workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+
+      JavaValidationResult movedResult = JsniParser.parse(getJsniMethods(workingCopy)[0]);
+      assertEquals(hitCount + 1, JsniParser.PARSE_CACHE.getHitCount());
+
+      // The references and problems should have moved with the method
+      List<JsniJavaRef> refs = result.getJavaRefs();
+      List<JsniJavaRef> movedRefs = movedResult.getJavaRefs();
+      assertEquals(refs, movedRefs);
+      for (int i = 0; i < refs.size(); i++) {
+        assertEquals(refs.get(i).getOffset() + field.length(),
+            movedRefs.get(i).getOffset());
+      }
+      assertEquals(1, movedResult.getProblems().size());
+      assertEquals(result.getProblems().get(0).getSourceStart()
+          + field.length(), movedResult.getProblems().get(0).getSourceStart());
+    } finally {
+      workingCopy.discardWorkingCopy();
+    }
+  }
+
+  public void testParseMethodDeclarationsInLargeClass() throws Exception {
+    final int methodCount = 500;
+
+    // Generate a class of roughly 5000 lines, mostly JSNI
+    List<String> lines = new ArrayList<String>();
+    lines.add("package com.hello.client;");
+    lines.add("");
+    lines.add("public class JsniHeavy {");
+    lines.add("  private int counter;");
+    for (int i = 0; i < methodCount; i++) {
+      lines.add("");
+      lines.add("  public native int jsni" + i + "(JsniHeavy obj)/*-{");
+      lines.add("    var num = obj.@com.hello.client.JsniHeavy::counter;");
+      lines.add("    num += obj.@com.hello.client.JsniHeavy::jsni" + i
+          + "(Lcom/hello/client/JsniHeavy;)(obj);");
+      lines.add("    for (var j = 0; j < num; j++) {");
+      lines.add("      num += j * 2;");
+      lines.add("    }");
+      lines.add("    obj.@com.hello.client.JsniHeavy::counter = num;");
+      lines.add("    return num;");
+      lines.add("  }-*/;");
+    }
+    lines.add("}");
+    TestClass heavyClass = new TestClass(
+        lines.toArray(new String[lines.size()]), "JsniHeavy");
+    heavyClass.addToTestProject();
+
+    MethodDeclaration[] jsniMethods = getJsniMethods(heavyClass.getCompilationUnit());
+    JsniParser.PARSE_CACHE.clear();
+
+    List<JavaValidationResult> results = new ArrayList<JavaValidationResult>();
+    for (MethodDeclaration jsniMethod : jsniMethods) {
+      results.add(JsniParser.parse(jsniMethod));
+    }
+
+    // Reconciling again only reuses the parsed JSNI
+    int hitCount = JsniParser.PARSE_CACHE.getHitCount();
+    for (int i = 0; i < jsniMethods.length; i++) {
+      JavaValidationResult result = JsniParser.parse(jsniMethods[i]);
+      assertEquals(results.get(i).getJavaRefs(), result.getJavaRefs());
+      assertEquals(0, result.getProblems().size());
+    }
+    assertEquals(hitCount + methodCount, JsniParser.PARSE_CACHE.getHitCount());
+  }
+
   public void testParseString() throws Exception {
     String jsniMethod = createString(new String[] {
         "public native void jsniMethod()/*-{",
@@ -206,6 +287,24 @@ public class JsniParserTest extends AbstractGWTPluginTestCase {
     return true;
   }
 
+  private MethodDeclaration[] getJsniMethods(ICompilationUnit cu) {
+    // Have JDT parse the compilation unit
+    ASTParser parser = ASTParser.newParser(AST.JLS3);
+    parser.setProject(getTestProject());
+    parser.setResolveBindings(false);
+    parser.setSource(cu);
+    CompilationUnit root = (CompilationUnit) parser.createAST(null);
+
+    List<MethodDeclaration> jsniMethods = new ArrayList<MethodDeclaration>();
+    TypeDeclaration typeDecl = (TypeDeclaration) root.types().get(0);
+    for (MethodDeclaration method : typeDecl.getMethods()) {
+      if (Modifier.isNative(method.getModifiers())) {
+        jsniMethods.add(method);
+      }
+    }
+    return jsniMethods.toArray(new MethodDeclaration[jsniMethods.size()]);
+  }
+
   private IDocument getTestClassDocument() {
     IDocument document = new Document(testClassSource);
     new GWTDocumentSetupParticipant().setup(document);
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators.java;
+
+import com.google.gwt.eclipse.core.markers.GWTProblemType;
+import com.google.gwt.eclipse.core.test.AbstractGWTPluginTestCase;
+
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the {@link SupertypeHierarchyCache} class.
+ */
+public class SupertypeHierarchyCacheTest extends AbstractGWTPluginTestCase {
+
+  private static final int METHOD_COUNT = 200;
+
+  private static final String TYPE_NAME = TEST_PROJECT_SRC_PACKAGE
+      + ".OverlayTarget";
+
+  private final SupertypeHierarchyCache cache = SupertypeHierarchyCache.INSTANCE;
+
+  private IJavaProject project;
+
+  private TestClass testClass;
+
+  public void testChangeClearsResolutions() throws Exception {
+    JsniJavaRef ref = JsniJavaRef.parse("@" + TYPE_NAME + "::added()");
+    try {
+      ref.resolveJavaElement(project);
+      fail("Expected the reference to be unresolved");
+    } catch (UnresolvedJsniJavaRefException e) {
+      assertEquals(GWTProblemType.JSNI_JAVA_REF_MISSING_METHOD,
+          e.getProblemType());
+    }
+
+    IType type = testClass.getCompilationUnit().getType("OverlayTarget");
+    type.createMethod("public void added() {}", null, true, null);
+
+    IJavaElement element = ref.resolveJavaElement(project);
+    assertEquals("added", element.getElementName());
+  }
+
+  public void testHierarchyIsShared() throws Exception {
+    List<JsniJavaRef> refs = new ArrayList<JsniJavaRef>();
+    for (int i = 0; i < METHOD_COUNT; i++) {
+      refs.add(JsniJavaRef.parse("@" + TYPE_NAME + "::m" + i + "()"));
+    }
+    refs.add(JsniJavaRef.parse("@" + TYPE_NAME + "::baseField"));
+
+    int creationCount = cache.getHierarchyCreationCount();
+    for (JsniJavaRef ref : refs) {
+      assertNotNull(ref.resolveJavaElement(project));
+    }
+    assertEquals(creationCount + 1, cache.getHierarchyCreationCount());
+  }
+
+  public void testResolutionIsMemoized() throws Exception {
+    String refString = "@" + TYPE_NAME + "::m0()";
+    JsniJavaRef ref1 = JsniJavaRef.parse(refString);
+    JsniJavaRef ref2 = JsniJavaRef.parse(refString);
+
+    int hitCount = cache.getResolutionHitCount();
+    IJavaElement element = ref1.resolveJavaElement(project);
+    assertTrue(element instanceof IMethod);
+    assertEquals(element, ref2.resolveJavaElement(project));
+    assertEquals(hitCount + 1, cache.getResolutionHitCount());
+
+    // Unresolved references are memoized too, but report their own location
+    String missingRefString = "@" + TYPE_NAME + "::missingField";
+    JsniJavaRef missingRef1 = JsniJavaRef.parse(missingRefString);
+    JsniJavaRef missingRef2 = JsniJavaRef.parse(missingRefString);
+    missingRef2.setOffset(50);
+    assertUnresolved(missingRef1, GWTProblemType.JSNI_JAVA_REF_MISSING_FIELD);
+    assertUnresolved(missingRef2, GWTProblemType.JSNI_JAVA_REF_MISSING_FIELD);
+    assertEquals(hitCount + 2, cache.getResolutionHitCount());
+  }
+
+  @Override
+  protected TestClass[] getTestClasses() {
+    List<String> lines = new ArrayList<String>();
+    lines.add("package " + TEST_PROJECT_SRC_PACKAGE + ";");
+    lines.add("");
+    lines.add("public class OverlayTarget extends OverlayBase {");
+    for (int i = 0; i < METHOD_COUNT; i++) {
+      lines.add("  public void m" + i + "() {}");
+    }
+    lines.add("}");
+    testClass = new TestClass(lines.toArray(new String[lines.size()]),
+        "OverlayTarget");
+
+    TestClass baseClass = new TestClass(new String[] {
+        "package " + TEST_PROJECT_SRC_PACKAGE + ";", "",
+        "public class OverlayBase {", "  public int baseField;", "}"},
+        "OverlayBase");
+    return new TestClass[] {baseClass, testClass};
+  }
+
+  @Override
+  protected boolean requiresTestProject() {
+    return true;
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    // Start from an empty cache
+    cache.stop();
+    cache.start();
+    project = getTestProject();
+  }
+
+  private void assertUnresolved(JsniJavaRef ref, GWTProblemType problemType) {
+    try {
+      ref.resolveJavaElement(project);
+      fail("Expected " + ref + " to be unresolved");
+    } catch (UnresolvedJsniJavaRefException e) {
+      assertEquals(problemType, e.getProblemType());
+      assertSame(ref, e.getJavaRef());
+    }
+  }
+
+}
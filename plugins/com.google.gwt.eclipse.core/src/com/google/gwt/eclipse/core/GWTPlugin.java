@@ -22,12 +22,17 @@ import com.google.gdt.eclipse.core.sdk.WebInfFolderUpdater;
 import com.google.gwt.eclipse.core.clientbundle.ClientBundleResourceChangeListener;
 import com.google.gwt.eclipse.core.clientbundle.ClientBundleResourceDependencyIndex;
 import com.google.gwt.eclipse.core.launch.SpeedTracerLaunchListener;
+import com.google.gwt.eclipse.core.modules.JarModuleCatalog;
+import com.google.gwt.eclipse.core.modules.ModuleRegistry;
 import com.google.gwt.eclipse.core.resources.GWTImages;
 import com.google.gwt.eclipse.core.runtime.GWTRuntime;
 import com.google.gwt.eclipse.core.sdk.GWTUpdateWebInfFolderCommand;
 import com.google.gwt.eclipse.core.search.JavaRefIndex;
 import com.google.gwt.eclipse.core.speedtracer.SourceViewerServer;
+import com.google.gwt.eclipse.core.uibinder.contentassist.WidgetTypeIndex;
 import com.google.gwt.eclipse.core.uibinder.model.reference.UiBinderReferenceManager;
+import com.google.gwt.eclipse.core.validators.java.BuildValidationCache;
+import com.google.gwt.eclipse.core.validators.java.SupertypeHierarchyCache;
 
 import org.eclipse.debug.core.DebugPlugin;
 import org.eclipse.jdt.core.IJavaProject;
@@ -123,7 +128,10 @@ public class GWTPlugin extends AbstractGooglePlugin {
     }
 
     ClientBundleResourceChangeListener.addToWorkspace();
+    ModuleRegistry.INSTANCE.start();
     UiBinderReferenceManager.INSTANCE.start();
+    WidgetTypeIndex.INSTANCE.start();
+    SupertypeHierarchyCache.INSTANCE.start();
 
     webInfFolderUpdater.start();
   }
@@ -132,9 +140,14 @@ public class GWTPlugin extends AbstractGooglePlugin {
   public void stop(BundleContext context) throws Exception {
     webInfFolderUpdater.stop();
 
+    WidgetTypeIndex.INSTANCE.stop();
+    SupertypeHierarchyCache.INSTANCE.stop();
     UiBinderReferenceManager.INSTANCE.stop();
+    ModuleRegistry.INSTANCE.stop();
+    JarModuleCatalog.save();
     ClientBundleResourceDependencyIndex.save();
     JavaRefIndex.save();
+    BuildValidationCache.save();
     
     removeLaunchListener();
 
@@ -15,6 +15,7 @@
 package com.google.gwt.eclipse.core;
 
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 
 import java.text.MessageFormat;
@@ -24,6 +25,9 @@ import java.text.MessageFormat;
  */
 public class GWTPluginLog {
 
+  private static final boolean TRACING_ENABLED = "true".equals(
+      Platform.getDebugOption(GWTPlugin.PLUGIN_ID + "/debug"));
+
   /**
    * Create a status object representing the specified information.
    * 
@@ -130,6 +134,18 @@ public class GWTPluginLog {
     log(IStatus.INFO, IStatus.OK, message, null);
   }
 
+  /**
+   * Log the specified information, but only if tracing is enabled with the
+   * <code>com.google.gwt.eclipse.core/debug</code> option.
+   * 
+   * @param message a human-readable message, localized to the current locale.
+   */
+  public static void logTrace(String message) {
+    if (TRACING_ENABLED) {
+      logInfo(message);
+    }
+  }
+
   /**
    * Log the specified warning.
    * 
@@ -17,17 +17,13 @@ package com.google.gwt.eclipse.core.modules;
 import com.google.gwt.eclipse.core.GWTPluginLog;
 import com.google.gwt.eclipse.core.util.Util;
 
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.Signature;
-import org.eclipse.wst.xml.core.internal.provisional.document.IDOMDocument;
 import org.eclipse.wst.xml.core.internal.provisional.document.IDOMModel;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -36,7 +32,8 @@ import java.util.List;
 import java.util.Set;
 
 /**
- * Represents a GWT module.
+ * Represents a GWT module. The contents of its module XML are cached by the
+ * {@link ModuleRegistry}.
  */
 @SuppressWarnings("restriction")
 abstract class AbstractModule implements IModule {
@@ -84,39 +81,6 @@ abstract class AbstractModule implements IModule {
 
   protected static final String SOURCE_PATH_TAG_NAME = "source";
 
-  /**
-   * Gets a list of attribute values for a particular type of element.
-   * 
-   * @param doc the XML document
-   * @param elementName the type of element to search
-   * @param attrName the name of the attribute to get the value of
-   * @param defaultValue the default value, if there is no element of the
-   *          specified type (e.g., for <source> elements it is "client")
-   * @return the list of attribute values
-   */
-  private static List<String> getElementsAttributes(Document doc,
-      String elementName, String attrName, String defaultValue) {
-    List<String> attrValues = new ArrayList<String>();
-
-    NodeList elements = doc.getElementsByTagName(elementName);
-
-    if (elements != null && elements.getLength() > 0) {
-      for (int i = 0; i < elements.getLength(); i++) {
-        Element element = (Element) elements.item(i);
-        String attrValue = element.getAttribute(attrName);
-        if (attrValue != null) {
-          attrValues.add(attrValue);
-        }
-      }
-    }
-
-    if (defaultValue != null && attrValues.size() == 0) {
-      attrValues.add(defaultValue);
-    }
-
-    return attrValues;
-  }
-
   protected final IStorage storage;
 
   private String qualifiedName;
@@ -145,60 +109,23 @@ abstract class AbstractModule implements IModule {
   }
 
   public String getCompiledName() {
-    final String[] compiledName = new String[] {getQualifiedName()};
-
-    new ReadModelOperation() {
-      @Override
-      public void readModel(IDOMModel model) {
-        IDOMDocument doc = model.getDocument();
-        Element moduleElement = doc.getDocumentElement();
-
-        String renameTo = moduleElement.getAttribute(RENAME_TO_ATTRIBUTE);
-        if (renameTo != null) {
-          compiledName[0] = renameTo;
-        }
-      }
-    }.run();
-
-    return compiledName[0];
+    String renameTo = getDescriptor().getRenameTo();
+    return (renameTo != null ? renameTo : getQualifiedName());
   }
 
   public List<String> getEntryPoints() {
-    final List<String> ret = new ArrayList<String>();
-
-    new ReadModelOperation() {
-      @Override
-      public void readModel(IDOMModel model) {
-        IDOMDocument doc = model.getDocument();
-
-        // Extract the entry point classes
-        ret.addAll(getElementsAttributes(doc, ENTRY_POINT_TAG_NAME,
-            CLASS_ATTRIBUTE_NAME, null));
-      }
-    }.run();
-
-    return ret;
+    return new ArrayList<String>(getDescriptor().getEntryPoints());
   }
 
-  public Set<IModule> getInheritedModules(final IJavaProject javaProject) {
-    final Set<IModule> modules = new HashSet<IModule>();
-
-    new ReadModelOperation() {
-      @Override
-      protected void readModel(IDOMModel model) {
-        IDOMDocument doc = model.getDocument();
-        for (String moduleName : getElementsAttributes(doc, INHERITS_TAG_NAME,
-            NAME_ATTRIBUTE_NAME, null)) {
-          // don't look up any modules in jar files, because this is slllloow
-          AbstractModule module = (AbstractModule) ModuleUtils.findModule(
-              javaProject, moduleName, false);
-          if (module != null) {
-            modules.add(module);
-          }
-        }
+  public Set<IModule> getInheritedModules(IJavaProject javaProject) {
+    Set<IModule> modules = new HashSet<IModule>();
+    for (String moduleName : getDescriptor().getInheritedModuleNames()) {
+      // don't look up any modules in jar files, because this is slllloow
+      IModule module = ModuleUtils.findModule(javaProject, moduleName, false);
+      if (module != null) {
+        modules.add(module);
       }
-    }.run();
-
+    }
     return modules;
   }
 
@@ -207,26 +134,7 @@ abstract class AbstractModule implements IModule {
   }
 
   public List<IPath> getPublicPaths() {
-    final List<IPath> ret = new ArrayList<IPath>();
-
-    new ReadModelOperation() {
-      @Override
-      public void readModel(IDOMModel model) {
-        IDOMDocument doc = model.getDocument();
-
-        List<String> publicPathNames = getElementsAttributes(doc,
-            PUBLIC_PATH_TAG_NAME, PATH_ATTRIBUTE_NAME, "public");
-
-        // TODO: if no path attribute, default to . (current directory)
-
-        // Convert the public paths to IPath's (relative to the module location)
-        for (String publicPathName : publicPathNames) {
-          ret.add(new Path(publicPathName));
-        }
-      }
-    }.run();
-
-    return ret;
+    return new ArrayList<IPath>(getDescriptor().getPublicPaths());
   }
 
   public String getQualifiedName() {
@@ -248,26 +156,7 @@ abstract class AbstractModule implements IModule {
   }
 
   public List<IPath> getSourcePaths() {
-    final List<IPath> ret = new ArrayList<IPath>();
-
-    new ReadModelOperation() {
-      @Override
-      public void readModel(IDOMModel model) {
-        IDOMDocument doc = model.getDocument();
-
-        List<String> sourcePathNames = getElementsAttributes(doc,
-            SOURCE_PATH_TAG_NAME, PATH_ATTRIBUTE_NAME, "client");
-
-        // TODO: if no path attribute, default to . (current directory)
-
-        // Convert the source paths to IPath's (relative to the module location)
-        for (String sourcePathName : sourcePathNames) {
-          ret.add(new Path(sourcePathName));
-        }
-      }
-    }.run();
-
-    return ret;
+    return new ArrayList<IPath>(getDescriptor().getSourcePaths());
   }
 
   @Override
@@ -275,9 +164,44 @@ abstract class AbstractModule implements IModule {
     return getQualifiedName().hashCode();
   }
 
+  /**
+   * Returns a stamp which changes whenever the contents of the module XML
+   * change, or {@link IResource#NULL_STAMP} if its parsed contents must not be
+   * cached.
+   */
+  protected abstract long doGetContentStamp();
+
   protected abstract IDOMModel doGetModelForRead() throws IOException,
       CoreException;
 
   protected abstract String doGetPackageName();
-  
+
+  /**
+   * Returns a key identifying the module XML, which is the same for every
+   * module instance backed by it.
+   */
+  protected abstract String doGetStorageKey();
+
+  /**
+   * Parses the module XML, or returns {@link ModuleDescriptor#EMPTY} if it
+   * could not be read.
+   */
+  ModuleDescriptor readDescriptor() {
+    final ModuleDescriptor[] descriptor = new ModuleDescriptor[] {
+        ModuleDescriptor.EMPTY};
+
+    new ReadModelOperation() {
+      @Override
+      protected void readModel(IDOMModel model) {
+        descriptor[0] = ModuleDescriptor.create(model.getDocument());
+      }
+    }.run();
+
+    return descriptor[0];
+  }
+
+  private ModuleDescriptor getDescriptor() {
+    return ModuleRegistry.INSTANCE.getDescriptor(this);
+  }
+
 }
@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.modules;
+
+import com.google.gwt.eclipse.core.GWTPlugin;
+import com.google.gwt.eclipse.core.GWTPluginLog;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Records which module XMLs each jar on the workspace's classpaths contains,
+ * so finding the modules in jars does not have to enumerate the package
+ * fragments of every jar through the Java model.
+ * <p>
+ * Jars are identified by their location, and an entry is only trusted while
+ * the jar's timestamp and size are unchanged. New or changed jars are scanned
+ * by reading their zip directory, in parallel when there are several of them.
+ * The catalog is persisted in the plugin's state location on shutdown.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class JarModuleCatalog {
+
+  /**
+   * The module XMLs found in a jar with a given timestamp and size.
+   */
+  private static class CatalogEntry {
+    private final long lastModified;
+
+    private final long length;
+
+    private final List<String> modulePaths;
+
+    public CatalogEntry(long lastModified, long length,
+        List<String> modulePaths) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.modulePaths = Collections.unmodifiableList(modulePaths);
+    }
+
+    public boolean isCurrent(File jar) {
+      return lastModified == jar.lastModified() && length == jar.length();
+    }
+  }
+
+  private static final String CATALOG_FILE = "jarModules.catalog";
+
+  private static JarModuleCatalog INSTANCE;
+
+  private static final int MAGIC = 0x474a4d43; // "GJMC"
+
+  private static final String MODULE_FILE_EXTENSION = ".gwt.xml";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final int VERSION = 1;
+
+  public static synchronized JarModuleCatalog getInstance() {
+    // Lazily create the catalog; it is loaded on first use
+    if (INSTANCE == null) {
+      INSTANCE = new JarModuleCatalog(
+          GWTPlugin.getDefault().getStateLocation().append(CATALOG_FILE).toFile());
+    }
+    return INSTANCE;
+  }
+
+  public static synchronized void save() {
+    if (INSTANCE != null) {
+      INSTANCE.saveCatalog();
+    }
+  }
+
+  /**
+   * Returns the file of an archive package fragment root, or <code>null</code>
+   * if it is not on the local file system.
+   */
+  static File getArchiveFile(IPackageFragmentRoot root) {
+    IResource resource = root.getResource();
+    if (resource == null) {
+      // An external jar
+      return root.getPath().toFile();
+    }
+
+    IPath location = resource.getLocation();
+    return (location != null ? location.toFile() : null);
+  }
+
+  private static String getKey(File jar) {
+    return jar.getAbsolutePath();
+  }
+
+  /**
+   * Reads the jar's zip directory for module XMLs. Module XMLs at the root of
+   * the jar are not in any package, and are skipped like the Java model does.
+   */
+  private static CatalogEntry scan(File jar) throws IOException {
+    // Read the timestamp first, so a concurrent change forces another scan
+    long lastModified = jar.lastModified();
+    long length = jar.length();
+
+    List<String> modulePaths = new ArrayList<String>();
+    ZipFile zipFile = new ZipFile(jar);
+    try {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (!entry.isDirectory() && name.endsWith(MODULE_FILE_EXTENSION)
+            && name.indexOf('/') > 0) {
+          modulePaths.add(name);
+        }
+      }
+    } finally {
+      zipFile.close();
+    }
+
+    return new CatalogEntry(lastModified, length, modulePaths);
+  }
+
+  private boolean dirty;
+
+  private Map<String, CatalogEntry> entries;
+
+  private final File file;
+
+  private int scanCount;
+
+  JarModuleCatalog(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the jar-relative paths of the module XMLs in the jar, scanning it
+   * if it is not in the catalog or has changed.
+   */
+  public List<String> getModulePaths(File jar) {
+    synchronized (this) {
+      CatalogEntry entry = getEntries().get(getKey(jar));
+      if (entry != null && entry.isCurrent(jar)) {
+        return entry.modulePaths;
+      }
+    }
+
+    CatalogEntry entry = scanAndRecord(jar);
+    return (entry != null ? entry.modulePaths
+        : Collections.<String> emptyList());
+  }
+
+  /**
+   * Scans the jars which are not in the catalog or have changed, in parallel.
+   */
+  public void refresh(Collection<File> jars) {
+    final List<File> staleJars = new ArrayList<File>();
+    synchronized (this) {
+      for (File jar : jars) {
+        CatalogEntry entry = getEntries().get(getKey(jar));
+        if (entry == null || !entry.isCurrent(jar)) {
+          staleJars.add(jar);
+        }
+      }
+    }
+
+    int parallelism = Math.min(staleJars.size(),
+        Runtime.getRuntime().availableProcessors());
+    if (parallelism <= 1) {
+      for (File jar : staleJars) {
+        scanAndRecord(jar);
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<CatalogEntry>> futures = new ArrayList<Future<CatalogEntry>>();
+      for (final File jar : staleJars) {
+        futures.add(executor.submit(new Callable<CatalogEntry>() {
+          public CatalogEntry call() {
+            return scanAndRecord(jar);
+          }
+        }));
+      }
+
+      for (Future<CatalogEntry> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      GWTPluginLog.logError(e.getCause(), "Could not scan jars for modules");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  synchronized int getScanCount() {
+    return scanCount;
+  }
+
+  /**
+   * Writes the catalog to a temporary file which then replaces the catalog
+   * file, dropping the jars which no longer exist.
+   */
+  synchronized void saveCatalog() {
+    if (!dirty) {
+      return;
+    }
+
+    for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+      if (!new File(it.next()).exists()) {
+        it.remove();
+      }
+    }
+
+    File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(tempFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, CatalogEntry> mapEntry : entries.entrySet()) {
+          CatalogEntry entry = mapEntry.getValue();
+          out.writeUTF(mapEntry.getKey());
+          out.writeLong(entry.lastModified);
+          out.writeLong(entry.length);
+          out.writeInt(entry.modulePaths.size());
+          for (String modulePath : entry.modulePaths) {
+            out.writeUTF(modulePath);
+          }
+        }
+      } finally {
+        out.close();
+      }
+
+      // File.renameTo will not replace an existing file on all platforms
+      if (file.exists() && !file.delete()) {
+        throw new IOException("Could not replace " + file);
+      }
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Could not rename " + tempFile + " to " + file);
+      }
+      dirty = false;
+    } catch (IOException e) {
+      GWTPluginLog.logError(e, "Could not save the jar module catalog");
+      tempFile.delete();
+    }
+  }
+
+  private Map<String, CatalogEntry> getEntries() {
+    if (entries == null) {
+      entries = readCatalog();
+    }
+    return entries;
+  }
+
+  private Map<String, CatalogEntry> readCatalog() {
+    Map<String, CatalogEntry> catalog = new HashMap<String, CatalogEntry>();
+    if (!file.exists()) {
+      return catalog;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(file)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        // Written by a different version of the plugin; start over
+        return catalog;
+      }
+
+      int entryCount = in.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        String key = in.readUTF();
+        long lastModified = in.readLong();
+        long length = in.readLong();
+
+        List<String> modulePaths = new ArrayList<String>();
+        int modulePathCount = in.readInt();
+        for (int j = 0; j < modulePathCount; j++) {
+          modulePaths.add(in.readUTF());
+        }
+
+        catalog.put(key, new CatalogEntry(lastModified, length, modulePaths));
+      }
+    } catch (IOException e) {
+      // A catalog we cannot read just means the jars are scanned again
+      GWTPluginLog.logWarning(e, "Could not read the jar module catalog");
+      catalog.clear();
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Ignore
+        }
+      }
+    }
+    return catalog;
+  }
+
+  /**
+   * Scans the jar outside of the lock and records the result, or returns
+   * <code>null</code> if the jar could not be read.
+   */
+  private CatalogEntry scanAndRecord(File jar) {
+    CatalogEntry entry;
+    try {
+      entry = scan(jar);
+    } catch (IOException e) {
+      GWTPluginLog.logWarning(e, "Could not scan " + jar + " for modules");
+      return null;
+    }
+
+    synchronized (this) {
+      getEntries().put(getKey(jar), entry);
+      dirty = true;
+      scanCount++;
+    }
+    return entry;
+  }
+
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.modules;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a module XML that {@link AbstractModule} answers questions
+ * about, read in a single pass over its DOM so they can be cached by the
+ * {@link ModuleRegistry}.
+ * <p>
+ * This class is thread-safe due to its immutability.
+ */
+final class ModuleDescriptor {
+
+  /**
+   * The descriptor of a module XML that could not be read.
+   */
+  static final ModuleDescriptor EMPTY = new ModuleDescriptor(null,
+      Collections.<String> emptyList(), Collections.<String> emptyList(),
+      Collections.<IPath> emptyList(), Collections.<IPath> emptyList());
+
+  static ModuleDescriptor create(Document doc) {
+    Element moduleElement = doc.getDocumentElement();
+    String renameTo = (moduleElement != null
+        ? moduleElement.getAttribute(AbstractModule.RENAME_TO_ATTRIBUTE) : null);
+
+    List<String> entryPoints = getElementsAttributes(doc,
+        AbstractModule.ENTRY_POINT_TAG_NAME,
+        AbstractModule.CLASS_ATTRIBUTE_NAME, null);
+
+    List<String> inheritedModuleNames = getElementsAttributes(doc,
+        AbstractModule.INHERITS_TAG_NAME, AbstractModule.NAME_ATTRIBUTE_NAME,
+        null);
+
+    // TODO: if no path attribute, default to . (current directory)
+    List<IPath> publicPaths = toPaths(getElementsAttributes(doc,
+        AbstractModule.PUBLIC_PATH_TAG_NAME,
+        AbstractModule.PATH_ATTRIBUTE_NAME, "public"));
+
+    List<IPath> sourcePaths = toPaths(getElementsAttributes(doc,
+        AbstractModule.SOURCE_PATH_TAG_NAME,
+        AbstractModule.PATH_ATTRIBUTE_NAME, "client"));
+
+    return new ModuleDescriptor(renameTo, entryPoints, inheritedModuleNames,
+        publicPaths, sourcePaths);
+  }
+
+  /**
+   * Gets a list of attribute values for a particular type of element.
+   * 
+   * @param doc the XML document
+   * @param elementName the type of element to search
+   * @param attrName the name of the attribute to get the value of
+   * @param defaultValue the default value, if there is no element of the
+   *          specified type (e.g., for <source> elements it is "client")
+   * @return the list of attribute values
+   */
+  private static List<String> getElementsAttributes(Document doc,
+      String elementName, String attrName, String defaultValue) {
+    List<String> attrValues = new ArrayList<String>();
+
+    NodeList elements = doc.getElementsByTagName(elementName);
+
+    if (elements != null && elements.getLength() > 0) {
+      for (int i = 0; i < elements.getLength(); i++) {
+        Element element = (Element) elements.item(i);
+        String attrValue = element.getAttribute(attrName);
+        if (attrValue != null) {
+          attrValues.add(attrValue);
+        }
+      }
+    }
+
+    if (defaultValue != null && attrValues.size() == 0) {
+      attrValues.add(defaultValue);
+    }
+
+    return attrValues;
+  }
+
+  /**
+   * Converts the paths to IPath's (relative to the module location).
+   */
+  private static List<IPath> toPaths(List<String> pathNames) {
+    List<IPath> paths = new ArrayList<IPath>();
+    for (String pathName : pathNames) {
+      paths.add(new Path(pathName));
+    }
+    return paths;
+  }
+
+  private final List<String> entryPoints;
+
+  private final List<String> inheritedModuleNames;
+
+  private final List<IPath> publicPaths;
+
+  private final String renameTo;
+
+  private final List<IPath> sourcePaths;
+
+  private ModuleDescriptor(String renameTo, List<String> entryPoints,
+      List<String> inheritedModuleNames, List<IPath> publicPaths,
+      List<IPath> sourcePaths) {
+    this.renameTo = renameTo;
+    this.entryPoints = Collections.unmodifiableList(entryPoints);
+    this.inheritedModuleNames = Collections.unmodifiableList(inheritedModuleNames);
+    this.publicPaths = Collections.unmodifiableList(publicPaths);
+    this.sourcePaths = Collections.unmodifiableList(sourcePaths);
+  }
+
+  public List<String> getEntryPoints() {
+    return entryPoints;
+  }
+
+  public List<String> getInheritedModuleNames() {
+    return inheritedModuleNames;
+  }
+
+  public List<IPath> getPublicPaths() {
+    return publicPaths;
+  }
+
+  /**
+   * Returns the value of the module's rename-to attribute, or
+   * <code>null</code> if it has none.
+   */
+  public String getRenameTo() {
+    return renameTo;
+  }
+
+  public List<IPath> getSourcePaths() {
+    return sourcePaths;
+  }
+
+}
@@ -28,6 +28,7 @@ import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.wst.sse.core.StructuredModelManager;
 import org.eclipse.wst.sse.core.internal.provisional.IModelManager;
+import org.eclipse.wst.sse.core.internal.provisional.IStructuredModel;
 import org.eclipse.wst.xml.core.internal.provisional.document.IDOMDocument;
 import org.eclipse.wst.xml.core.internal.provisional.document.IDOMModel;
 import org.eclipse.wst.xml.core.internal.provisional.format.FormatProcessorXML;
@@ -81,6 +82,13 @@ public class ModuleFile extends AbstractModule {
     }
   }
 
+  /**
+   * Returns the storage key of the module backed by the given file.
+   */
+  static String getStorageKey(IResource file) {
+    return file.getFullPath().toString();
+  }
+
   protected ModuleFile(IFile file) {
     super(file);
   }
@@ -224,6 +232,25 @@ public class ModuleFile extends AbstractModule {
     return false;
   }
 
+  @Override
+  protected long doGetContentStamp() {
+    // An editor's unsaved changes are read through its shared model, and are
+    // not reflected in the file's modification stamp
+    IModelManager modelManager = StructuredModelManager.getModelManager();
+    IStructuredModel model = modelManager.getExistingModelForRead(getFile());
+    if (model != null) {
+      try {
+        if (model.isDirty()) {
+          return IResource.NULL_STAMP;
+        }
+      } finally {
+        model.releaseFromRead();
+      }
+    }
+
+    return getFile().getModificationStamp();
+  }
+
   @Override
   protected IDOMModel doGetModelForRead() throws IOException, CoreException {
     IModelManager modelManager = StructuredModelManager.getModelManager();
@@ -245,6 +272,11 @@ public class ModuleFile extends AbstractModule {
     return "";
   }
 
+  @Override
+  protected String doGetStorageKey() {
+    return getStorageKey(getFile());
+  }
+
   private IFolder[] getFolders(List<IPath> paths) {
     List<IFolder> folders = new ArrayList<IFolder>();
     for (IPath path : paths) {
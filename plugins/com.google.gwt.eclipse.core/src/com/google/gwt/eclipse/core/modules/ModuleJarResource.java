@@ -14,6 +14,7 @@
  *******************************************************************************/
 package com.google.gwt.eclipse.core.modules;
 
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.jdt.core.IJarEntryResource;
@@ -21,6 +22,7 @@ import org.eclipse.wst.sse.core.StructuredModelManager;
 import org.eclipse.wst.sse.core.internal.provisional.IModelManager;
 import org.eclipse.wst.xml.core.internal.provisional.document.IDOMModel;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -42,6 +44,19 @@ public class ModuleJarResource extends AbstractModule {
     return true;
   }
 
+  /**
+   * Jars are only ever modified as a whole, so the module is as recent as the
+   * jar containing it.
+   */
+  @Override
+  protected long doGetContentStamp() {
+    File jarFile = getJarFile();
+    if (jarFile == null || !jarFile.exists()) {
+      return IResource.NULL_STAMP;
+    }
+    return jarFile.lastModified();
+  }
+
   @Override
   protected IDOMModel doGetModelForRead() throws IOException, CoreException {
     IModelManager modelManager = StructuredModelManager.getModelManager();
@@ -58,4 +73,15 @@ public class ModuleJarResource extends AbstractModule {
     return modulePckgPath.toString().replace('/', '.');
   }
 
+  @Override
+  protected String doGetStorageKey() {
+    return getJarEntryResource().getPackageFragmentRoot().getPath() + "!"
+        + storage.getFullPath();
+  }
+
+  private File getJarFile() {
+    return JarModuleCatalog.getArchiveFile(
+        getJarEntryResource().getPackageFragmentRoot());
+  }
+
 }
@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.modules;
+
+import com.google.gwt.eclipse.core.GWTPluginLog;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches the GWT modules found on each project's classpath, and the parsed
+ * contents of each module XML, for the whole workspace.
+ * <p>
+ * Modules are found with a single scan of a project's package fragments, after
+ * which looking a module up by its qualified name is a map lookup. The scans
+ * are discarded whenever a module XML is added or removed, or the classpath of
+ * any project changes, since a project sees the modules of the projects and
+ * jars it depends on.
+ * <p>
+ * Parsed module XMLs are cached by the storage they came from, and are
+ * re-parsed once their content stamp changes (see
+ * {@link AbstractModule#doGetContentStamp()}).
+ * <p>
+ * Until the registry is started nothing is cached, since nothing would be
+ * invalidated. This class is thread-safe.
+ */
+public enum ModuleRegistry {
+  INSTANCE;
+
+  /**
+   * A parsed module XML and the content stamp it was parsed at.
+   */
+  private static class DescriptorEntry {
+    private final ModuleDescriptor descriptor;
+
+    private final long stamp;
+
+    public DescriptorEntry(ModuleDescriptor descriptor, long stamp) {
+      this.descriptor = descriptor;
+      this.stamp = stamp;
+    }
+  }
+
+  private static final int CLASSPATH_CHANGED_FLAGS = IJavaElementDelta.F_CLASSPATH_CHANGED
+      | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+      | IJavaElementDelta.F_OPENED | IJavaElementDelta.F_CLOSED;
+
+  private static final int ROOT_CHANGED_FLAGS = IJavaElementDelta.F_ADDED_TO_CLASSPATH
+      | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH
+      | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED;
+
+  private static final String MODULE_FILE_EXTENSION = ".gwt.xml";
+
+  /**
+   * The modules found on each project's classpath, including jars.
+   */
+  private final Map<IJavaProject, Map<String, IModule>> allModules = new HashMap<IJavaProject, Map<String, IModule>>();
+
+  /**
+   * Discards the module scans when a project's classpath changes.
+   */
+  private final IElementChangedListener classpathListener = new IElementChangedListener() {
+    public void elementChanged(ElementChangedEvent event) {
+      // Only look at the projects and package fragment roots; deeper deltas
+      // cannot change which modules are on a classpath
+      for (IJavaElementDelta projectDelta : event.getDelta().getAffectedChildren()) {
+        if (isClasspathChange(projectDelta, CLASSPATH_CHANGED_FLAGS)) {
+          invalidateModules();
+          return;
+        }
+
+        for (IJavaElementDelta rootDelta : projectDelta.getAffectedChildren()) {
+          if (isClasspathChange(rootDelta, ROOT_CHANGED_FLAGS)) {
+            invalidateModules();
+            return;
+          }
+        }
+      }
+    }
+
+    private boolean isClasspathChange(IJavaElementDelta delta, int flags) {
+      return delta.getKind() != IJavaElementDelta.CHANGED
+          || (delta.getFlags() & flags) != 0;
+    }
+  };
+
+  private final Map<String, DescriptorEntry> descriptors = new HashMap<String, DescriptorEntry>();
+
+  /**
+   * Incremented whenever the module scans are discarded, so a scan which
+   * raced with a change is not cached.
+   */
+  private int generation;
+
+  /**
+   * Discards the module scans when a module XML is added or removed.
+   */
+  private final IResourceChangeListener moduleFileListener = new IResourceChangeListener() {
+    private final IResourceDeltaVisitor visitor = new IResourceDeltaVisitor() {
+      public boolean visit(IResourceDelta delta) {
+        IResource resource = delta.getResource();
+        if (resource.getType() != IResource.FILE) {
+          return true;
+        }
+
+        if (resource.getName().endsWith(MODULE_FILE_EXTENSION)
+            && delta.getKind() != IResourceDelta.CHANGED) {
+          if (delta.getKind() == IResourceDelta.REMOVED) {
+            removeDescriptor(ModuleFile.getStorageKey(resource));
+          }
+          invalidateModules();
+        }
+        return false;
+      }
+    };
+
+    public void resourceChanged(IResourceChangeEvent event) {
+      if (event.getDelta() != null) {
+        try {
+          event.getDelta().accept(visitor);
+        } catch (CoreException e) {
+          GWTPluginLog.logError(e);
+        }
+      }
+    }
+  };
+
+  /**
+   * The modules found on each project's classpath, excluding jars.
+   */
+  private final Map<IJavaProject, Map<String, IModule>> sourceModules = new HashMap<IJavaProject, Map<String, IModule>>();
+
+  private volatile boolean started;
+
+  /**
+   * Starts caching modules and listening for the changes which invalidate
+   * them.
+   */
+  public void start() {
+    JavaCore.addElementChangedListener(classpathListener,
+        ElementChangedEvent.POST_CHANGE);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        moduleFileListener, IResourceChangeEvent.POST_CHANGE);
+    started = true;
+  }
+
+  /**
+   * Stops listening for changes and discards everything cached.
+   */
+  public void stop() {
+    started = false;
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+        moduleFileListener);
+    JavaCore.removeElementChangedListener(classpathListener);
+
+    synchronized (this) {
+      invalidateModules();
+      descriptors.clear();
+    }
+  }
+
+  /**
+   * Returns the modules on the project's classpath by qualified name. When a
+   * module name appears more than once, the first module on the classpath
+   * wins.
+   */
+  Map<String, IModule> getModules(IJavaProject javaProject,
+      boolean includeJars) {
+    if (!started) {
+      return ModuleUtils.scanModules(javaProject, includeJars);
+    }
+
+    Map<IJavaProject, Map<String, IModule>> projectModules = (includeJars
+        ? allModules : sourceModules);
+    int scanGeneration;
+    synchronized (this) {
+      Map<String, IModule> modules = projectModules.get(javaProject);
+      if (modules != null) {
+        return modules;
+      }
+      scanGeneration = generation;
+    }
+
+    // Scan outside of the lock, since it can take a while with jars
+    Map<String, IModule> modules = Collections.unmodifiableMap(ModuleUtils.scanModules(
+        javaProject, includeJars));
+
+    synchronized (this) {
+      if (scanGeneration == generation) {
+        projectModules.put(javaProject, modules);
+      }
+    }
+    return modules;
+  }
+
+  /**
+   * Returns the parsed contents of the module's XML, parsing it only if it
+   * has changed since it was last parsed.
+   */
+  ModuleDescriptor getDescriptor(AbstractModule module) {
+    long stamp = module.doGetContentStamp();
+    if (!started || stamp == IResource.NULL_STAMP) {
+      return module.readDescriptor();
+    }
+
+    String key = module.doGetStorageKey();
+    synchronized (this) {
+      DescriptorEntry entry = descriptors.get(key);
+      if (entry != null && entry.stamp == stamp) {
+        return entry.descriptor;
+      }
+    }
+
+    ModuleDescriptor descriptor = module.readDescriptor();
+    if (descriptor != ModuleDescriptor.EMPTY) {
+      synchronized (this) {
+        descriptors.put(key, new DescriptorEntry(descriptor, stamp));
+      }
+    }
+    return descriptor;
+  }
+
+  private synchronized void invalidateModules() {
+    generation++;
+    allModules.clear();
+    sourceModules.clear();
+  }
+
+  private synchronized void removeDescriptor(String key) {
+    descriptors.remove(key);
+  }
+
+}
@@ -35,20 +35,21 @@ import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.Signature;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * Answers questions about the modules available in a GWT project.
+ * Answers questions about the modules available in a GWT project. Lookups go
+ * through the {@link ModuleRegistry}, which caches the modules on each
+ * project's classpath.
  */
 public final class ModuleUtils {
 
-  private interface IPackageFragmentVisitor<T> {
-    T visit(IPackageFragment fragment) throws JavaModelException;
-  }
-
   private static final String FILE_EXTENSION = ".gwt.xml";
 
   /**
@@ -89,28 +90,9 @@ public final class ModuleUtils {
    * @return the list of modules found
    */
   public static IModule[] findAllModules(IJavaProject javaProject,
-      final boolean includeJars) {
-    final Map<String, IModule> modules = new HashMap<String, IModule>();
-
-    // TODO: search super-source also
-    visitFragments(javaProject, includeJars,
-        new IPackageFragmentVisitor<Void>() {
-          public Void visit(IPackageFragment pckg) throws JavaModelException {
-            for (Object resource : pckg.getNonJavaResources()) {
-              IModule module = create(resource, includeJars);
-              if (module != null) {
-                String moduleName = module.getQualifiedName();
-
-                if (!modules.containsKey(moduleName)) {
-                  modules.put(moduleName, module);
-                }
-              }
-            }
-
-            return null;
-          }
-        });
-
+      boolean includeJars) {
+    Map<String, IModule> modules = ModuleRegistry.INSTANCE.getModules(
+        javaProject, includeJars);
     return modules.values().toArray(new IModule[modules.size()]);
   }
 
@@ -153,27 +135,9 @@ public final class ModuleUtils {
    * @return the module, if found; otherwise <code>null</code>
    */
   public static IModule findModule(IJavaProject javaProject,
-      String qualifiedName, final boolean includeJars) {
-    final String modulePckg = Signature.getQualifier(qualifiedName);
-    final String simpleName = Signature.getSimpleName(qualifiedName);
-
-    return visitFragments(javaProject, includeJars,
-        new IPackageFragmentVisitor<IModule>() {
-          public IModule visit(IPackageFragment pckg) throws JavaModelException {
-            // Look for the package fragment matching the module qualifier
-            if (modulePckg.equals(pckg.getElementName())) {
-              for (Object resource : pckg.getNonJavaResources()) {
-                IModule module = create(resource, includeJars);
-                // Now compare the resource name to the module name
-                if (module != null && module.getSimpleName().equals(simpleName)) {
-                  return module;
-                }
-              }
-            }
-
-            return null;
-          }
-        });
+      String qualifiedName, boolean includeJars) {
+    return ModuleRegistry.INSTANCE.getModules(javaProject, includeJars).get(
+        qualifiedName);
   }
 
   /**
@@ -279,32 +243,115 @@ public final class ModuleUtils {
   }
 
   /**
-   * Scans the package fragments (including jars if includeJars is true)
-   * invoking the visitor callback.
-   * 
-   * Stops if the callback returns a non-null result, and passes that result
-   * back to the caller.
+   * Adds the modules in the archive to the map. The module XMLs are looked up
+   * in the {@link JarModuleCatalog}, so only the packages which contain them
+   * are asked for their resources.
    */
-  private static <T> T visitFragments(IJavaProject project, boolean includeJars,
-      IPackageFragmentVisitor<T> visitor) {
+  private static void addJarModules(IPackageFragmentRoot root,
+      Map<String, IModule> modules) throws JavaModelException {
+    File jar = JarModuleCatalog.getArchiveFile(root);
+    if (jar == null) {
+      // Not on the local file system, so let the Java model read it
+      for (IJavaElement elem : root.getChildren()) {
+        addModules(((IPackageFragment) elem).getNonJavaResources(), true,
+            modules);
+      }
+      return;
+    }
+
+    // Group the module XMLs by package
+    Map<String, Set<String>> moduleFileNames = new LinkedHashMap<String, Set<String>>();
+    for (String modulePath : JarModuleCatalog.getInstance().getModulePaths(jar)) {
+      int lastSlash = modulePath.lastIndexOf('/');
+      String packageName = modulePath.substring(0, lastSlash).replace('/', '.');
+      Set<String> fileNames = moduleFileNames.get(packageName);
+      if (fileNames == null) {
+        fileNames = new HashSet<String>();
+        moduleFileNames.put(packageName, fileNames);
+      }
+      fileNames.add(modulePath.substring(lastSlash + 1));
+    }
+
+    for (Map.Entry<String, Set<String>> entry : moduleFileNames.entrySet()) {
+      IPackageFragment pckg = root.getPackageFragment(entry.getKey());
+      if (!pckg.exists()) {
+        continue;
+      }
+
+      List<Object> moduleResources = new ArrayList<Object>();
+      for (Object resource : pckg.getNonJavaResources()) {
+        IJarEntryResource jarResource = AdapterUtilities.getAdapter(resource,
+            IJarEntryResource.class);
+        if (jarResource != null
+            && entry.getValue().contains(jarResource.getName())) {
+          moduleResources.add(jarResource);
+        }
+      }
+      addModules(moduleResources.toArray(), true, modules);
+    }
+  }
+
+  /**
+   * Adds the modules among the resources to the map, unless a module with the
+   * same name is already in it.
+   */
+  private static void addModules(Object[] resources, boolean includeJars,
+      Map<String, IModule> modules) {
+    for (Object resource : resources) {
+      IModule module = create(resource, includeJars);
+      if (module != null) {
+        String moduleName = module.getQualifiedName();
+
+        if (!modules.containsKey(moduleName)) {
+          modules.put(moduleName, module);
+        }
+      }
+    }
+  }
+
+  /**
+   * Scans the package fragments (including jars if includeJars is true) for
+   * modules, which are returned by qualified name in classpath order.
+   */
+  static Map<String, IModule> scanModules(IJavaProject javaProject,
+      boolean includeJars) {
+    Map<String, IModule> modules = new LinkedHashMap<String, IModule>();
+
+    // TODO: search super-source also
     try {
-      for (IPackageFragmentRoot pckgRoot : project.getPackageFragmentRoots()) {
-        if (pckgRoot.isArchive() && !includeJars) {
-          continue;
+      IPackageFragmentRoot[] roots = javaProject.getPackageFragmentRoots();
+      if (includeJars) {
+        // Bring the catalog up to date for all of the jars up front, so the
+        // ones which are new or have changed are scanned in parallel
+        List<File> jars = new ArrayList<File>();
+        for (IPackageFragmentRoot root : roots) {
+          File jar = (root.isArchive() ? JarModuleCatalog.getArchiveFile(root)
+              : null);
+          if (jar != null && jar.isFile()) {
+            jars.add(jar);
+          }
         }
+        JarModuleCatalog.getInstance().refresh(jars);
+      }
 
-        for (IJavaElement elem : pckgRoot.getChildren()) {
-          T result = visitor.visit((IPackageFragment) elem);
-          if (result != null) {
-            return result;
+      for (IPackageFragmentRoot root : roots) {
+        if (root.isArchive()) {
+          if (includeJars) {
+            addJarModules(root, modules);
           }
+          continue;
+        }
+
+        for (IJavaElement elem : root.getChildren()) {
+          addModules(((IPackageFragment) elem).getNonJavaResources(),
+              includeJars, modules);
         }
       }
     } catch (JavaModelException e) {
       GWTPluginLog.logError(e);
     }
 
-    return null;
+    return modules;
   }
 
   private ModuleUtils() {
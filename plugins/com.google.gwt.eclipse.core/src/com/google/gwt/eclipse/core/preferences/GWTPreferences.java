@@ -49,6 +49,24 @@ import java.io.FileNotFoundException;
  */
 public class GWTPreferences {
 
+  /**
+   * The key for storing the number of threads used to validate GWT components
+   * during batch (clean) builds.
+   */
+  private static final String BATCH_VALIDATION_PARALLELISM = "batchValidationParallelism";
+
+  /**
+   * The key for storing the number of entries each development mode log holds
+   * before its oldest entries are dropped.
+   */
+  private static final String DEV_MODE_LOG_CAPACITY = "devModeLogCapacity";
+
+  /**
+   * The key for storing whether entries dropped from development mode logs are
+   * written to disk.
+   */
+  private static final String DEV_MODE_LOG_SPILL_TO_DISK = "devModeLogSpillToDisk";
+
   /**
    * The key for storing the preference for removing terminated launches when a new
    * launch is launched.
@@ -113,11 +131,43 @@ public class GWTPreferences {
     return warOutLocation.append(folderName);
   }
 
+  /**
+   * Returns the number of threads used to parse and validate compilation units
+   * during batch builds. A value of 1 (the default) validates all compilation
+   * units on the build job's thread.
+   * 
+   * @return the degree of parallelism for batch build validation, at least 1
+   */
+  public static int getBatchValidationParallelism() {
+    return Math.max(1, getEclipsePreferences().getInt(
+        BATCH_VALIDATION_PARALLELISM, 1));
+  }
+
   public static GWTRuntime getDefaultRuntime() {
     SdkSet<GWTRuntime> sdkSet = getSdks();
     return sdkSet.getDefault();
   }
 
+  /**
+   * Returns the number of entries each development mode log holds before its
+   * oldest entries are dropped.
+   * 
+   * @return the capacity of a development mode log, at least 1
+   */
+  public static int getDevModeLogCapacity() {
+    return Math.max(1, getEclipsePreferences().getInt(DEV_MODE_LOG_CAPACITY,
+        10000));
+  }
+
+  /**
+   * Returns whether entries dropped from development mode logs are written to
+   * disk.
+   */
+  public static boolean getDevModeLogSpillToDisk() {
+    return getEclipsePreferences().getBoolean(DEV_MODE_LOG_SPILL_TO_DISK,
+        false);
+  }
+
   /**
    * Return true if the JSO detail formatter is configured for the current
    * workspace.
@@ -202,6 +252,51 @@ public class GWTPreferences {
     }
   }
 
+  /**
+   * Sets the number of threads used to validate compilation units during batch
+   * builds.
+   * 
+   * @param parallelism the degree of parallelism; 1 disables parallel
+   *          validation
+   */
+  public static void setBatchValidationParallelism(int parallelism) {
+    IEclipsePreferences workspacePreferences = getEclipsePreferences();
+    workspacePreferences.putInt(BATCH_VALIDATION_PARALLELISM, parallelism);
+    try {
+      workspacePreferences.flush();
+    } catch (BackingStoreException e) {
+      CorePluginLog.logError(e);
+    }
+  }
+
+  /**
+   * Sets the number of entries each development mode log holds before its
+   * oldest entries are dropped. Only applies to logs created afterwards.
+   */
+  public static void setDevModeLogCapacity(int capacity) {
+    IEclipsePreferences workspacePreferences = getEclipsePreferences();
+    workspacePreferences.putInt(DEV_MODE_LOG_CAPACITY, capacity);
+    try {
+      workspacePreferences.flush();
+    } catch (BackingStoreException e) {
+      CorePluginLog.logError(e);
+    }
+  }
+
+  /**
+   * Sets whether entries dropped from development mode logs are written to
+   * disk. Only applies to logs created afterwards.
+   */
+  public static void setDevModeLogSpillToDisk(boolean spillToDisk) {
+    IEclipsePreferences workspacePreferences = getEclipsePreferences();
+    workspacePreferences.putBoolean(DEV_MODE_LOG_SPILL_TO_DISK, spillToDisk);
+    try {
+      workspacePreferences.flush();
+    } catch (BackingStoreException e) {
+      CorePluginLog.logError(e);
+    }
+  }
+
   /**
    * Sets whether terminated launches should be cleared from the devmode view
    * when a new launch is launched
@@ -16,6 +16,7 @@ package com.google.gwt.eclipse.core.refactoring;
 
 import com.google.gwt.eclipse.core.clientbundle.ClientBundleResourceDependencyIndex;
 import com.google.gwt.eclipse.core.search.JavaRefIndex;
+import com.google.gwt.eclipse.core.validators.java.BuildValidationCache;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -57,6 +58,7 @@ public class GWTDeleteCompilationUnitParticipant extends DeleteParticipant {
     public Change perform(IProgressMonitor pm) throws CoreException {
       // Clear the index entries for this compilation unit
       JavaRefIndex.getInstance().clear(deletedCu.getPath());
+      BuildValidationCache.getInstance().remove(deletedCu.getPath());
       ClientBundleResourceDependencyIndex.getInstance().remove(deletedCu);
 
       /*
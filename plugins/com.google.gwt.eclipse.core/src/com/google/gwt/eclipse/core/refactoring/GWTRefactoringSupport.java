@@ -19,7 +19,9 @@ import com.google.gwt.eclipse.core.search.JavaQueryParticipant;
 import com.google.gwt.eclipse.core.util.Util;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.ltk.core.refactoring.CompositeChange;
 import org.eclipse.ltk.core.refactoring.TextChange;
@@ -38,6 +40,9 @@ import java.util.Set;
  */
 public abstract class GWTRefactoringSupport {
 
+  private final JsniReferenceChangeBatch jsniReferenceChangeBatch = new JsniReferenceChangeBatch(
+      this);
+
   private IJavaElement newElement;
 
   private IJavaElement oldElement;
@@ -84,6 +89,12 @@ public abstract class GWTRefactoringSupport {
         change.addTextEditGroup(new TextEditGroup(getEditDescription(), edit));
       }
 
+      // Prepare the JSNI reference changes' edits together when they're
+      // performed
+      if (change instanceof JsniReferenceChange) {
+        jsniReferenceChangeBatch.add(((JsniReferenceChange) change).getCompilationUnit());
+      }
+
       // Lazily initialize the return value
       if (result == null) {
         result = new CompositeChange(participant.getName());
@@ -148,8 +159,27 @@ public abstract class GWTRefactoringSupport {
     this.updateReferences = updateReferences;
   }
 
+  /**
+   * Returns the edits for the JSNI references in a compilation unit whose
+   * change is being performed. The edits for all of the JSNI reference changes
+   * created by {@link #createChange} are prepared together.
+   */
+  Set<TextEdit> takeJsniReferenceEdits(ICompilationUnit cu,
+      JsniReferenceChangeHelper helper) throws CoreException {
+    return jsniReferenceChangeBatch.takeEdits(cu, helper);
+  }
+
   protected abstract TextEdit createEdit(IIndexedJavaRef ref);
 
+  /**
+   * Returns the compilation unit that a change created for the given
+   * compilation unit updates, once the JDT has performed its own changes. By
+   * default this is the compilation unit itself.
+   */
+  protected ICompilationUnit getPerformedCompilationUnit(ICompilationUnit cu) {
+    return cu;
+  }
+
   protected abstract String getEditDescription();
 
 }
@@ -16,6 +16,7 @@ package com.google.gwt.eclipse.core.refactoring;
 
 import com.google.gwt.eclipse.core.search.IIndexedJavaRef;
 
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.text.edits.ReplaceEdit;
 import org.eclipse.text.edits.TextEdit;
@@ -61,4 +62,19 @@ public class GWTTypeRefactoringSupport extends GWTRefactoringSupport {
     return "Update type reference";
   }
 
+  /**
+   * Renaming or moving a top-level type also renames or moves its compilation
+   * unit, so references within it are updated in the new compilation unit.
+   * {@link JsniTypeReferenceChangeHelper} retargets its change with this too.
+   */
+  @Override
+  protected ICompilationUnit getPerformedCompilationUnit(ICompilationUnit cu) {
+    IType oldType = getOldType();
+    if (oldType.getDeclaringType() == null
+        && oldType.getCompilationUnit().getPath().equals(cu.getPath())) {
+      return getNewType().getCompilationUnit();
+    }
+    return cu;
+  }
+
 }
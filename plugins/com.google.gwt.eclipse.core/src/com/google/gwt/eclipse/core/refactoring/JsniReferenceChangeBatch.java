@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.refactoring;
+
+import com.google.gwt.eclipse.core.GWTPlugin;
+import com.google.gwt.eclipse.core.GWTPluginLog;
+import com.google.gwt.eclipse.core.preferences.GWTPreferences;
+import com.google.gwt.eclipse.core.search.IIndexedJavaRef;
+import com.google.gwt.eclipse.core.search.JavaQueryParticipant;
+import com.google.gwt.eclipse.core.validators.java.JavaCompilationParticipant;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
+import org.eclipse.text.edits.TextEdit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Prepares the edits for all of the JSNI reference changes created by a
+ * {@link GWTRefactoringSupport} at once, when the first of them is performed.
+ * By then the JDT has performed its own changes, so the edits computed for the
+ * other compilation units still have the right offsets when their changes are
+ * performed.
+ * 
+ * The compilation units are grouped by project and parsed with one
+ * <code>createASTs</code> call per group. Since the JSNI references are found
+ * without bindings, large groups are split into shards which are parsed and
+ * re-indexed on a bounded pool of worker threads. If any of the compilation
+ * units cannot be parsed and re-indexed, the change being performed fails
+ * rather than applying edits at offsets which were not refreshed.
+ */
+@SuppressWarnings("restriction")
+final class JsniReferenceChangeBatch {
+
+  private static final String[] NO_STRINGS = new String[0];
+
+  private static final ICompilationUnit[] NO_UNITS = new ICompilationUnit[0];
+
+  private static final int SHARDS_PER_PARSING_THREAD = 4;
+
+  /**
+   * The compilation units of the changes which have been created but whose
+   * edits have not been prepared yet.
+   */
+  private final Set<ICompilationUnit> pendingUnits = new LinkedHashSet<ICompilationUnit>();
+
+  /**
+   * The prepared edits, by the path of the compilation unit they apply to.
+   * Entries are removed once the change for the compilation unit takes them.
+   */
+  private final Map<IPath, Set<TextEdit>> preparedEdits = new HashMap<IPath, Set<TextEdit>>();
+
+  private final GWTRefactoringSupport refactoringSupport;
+
+  JsniReferenceChangeBatch(GWTRefactoringSupport refactoringSupport) {
+    this.refactoringSupport = refactoringSupport;
+  }
+
+  /**
+   * Adds the compilation unit of a newly created change to the batch.
+   */
+  synchronized void add(ICompilationUnit cu) {
+    pendingUnits.add(cu);
+  }
+
+  /**
+   * Returns the edits for the JSNI references in a compilation unit, preparing
+   * them along with those of all the pending compilation units if they have
+   * not been prepared yet.
+   * 
+   * @param cu the compilation unit being changed, after the JDT's changes
+   * @param helper the helper of the change being performed
+   * @return the edits for the compilation unit, which may be empty
+   * @throws CoreException if the compilation units could not be parsed and
+   *           re-indexed
+   */
+  synchronized Set<TextEdit> takeEdits(ICompilationUnit cu,
+      JsniReferenceChangeHelper helper) throws CoreException {
+    if (!preparedEdits.containsKey(cu.getPath())) {
+      prepareEdits(cu, helper);
+    }
+
+    Set<TextEdit> edits = preparedEdits.remove(cu.getPath());
+    assert (edits != null);
+    return edits;
+  }
+
+  private ASTParser createParser(IJavaProject javaProject) {
+    ASTParser parser = ASTParser.newParser(AST.JLS3);
+    parser.setResolveBindings(false);
+    parser.setProject(javaProject);
+    parser.setCompilerOptions(
+        RefactoringASTParser.getCompilerOptions(javaProject));
+    return parser;
+  }
+
+  /**
+   * Parses the compilation units and re-validates their ASTs, which puts the
+   * updated positions of their JSNI Java references into the index.
+   * 
+   * @throws CoreException if any of the compilation units could not be parsed
+   *           or re-validated
+   */
+  private void parseAndValidate(
+      Map<IJavaProject, List<ICompilationUnit>> unitsByProject)
+      throws CoreException {
+    int unitCount = 0;
+    for (List<ICompilationUnit> units : unitsByProject.values()) {
+      unitCount += units.size();
+    }
+
+    int parallelism = GWTPreferences.getBatchValidationParallelism();
+    if (parallelism <= 1 || unitCount <= 1) {
+      for (Map.Entry<IJavaProject, List<ICompilationUnit>> entry : unitsByProject.entrySet()) {
+        parseAndValidate(entry.getKey(), entry.getValue().toArray(NO_UNITS));
+      }
+      return;
+    }
+
+    /*
+     * Use more shards than threads so the work is spread evenly even if some
+     * shards take longer than others. A shard never spans projects, since each
+     * createASTs call is made against a single project.
+     */
+    int shardSize = Math.max(1, (unitCount + parallelism
+        * SHARDS_PER_PARSING_THREAD - 1)
+        / (parallelism * SHARDS_PER_PARSING_THREAD));
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    try {
+      for (Map.Entry<IJavaProject, List<ICompilationUnit>> entry : unitsByProject.entrySet()) {
+        final IJavaProject javaProject = entry.getKey();
+        List<ICompilationUnit> units = entry.getValue();
+        for (int start = 0; start < units.size(); start += shardSize) {
+          final ICompilationUnit[] shard = units.subList(start,
+              Math.min(start + shardSize, units.size())).toArray(NO_UNITS);
+          futures.add(executor.submit(new Callable<Object>() {
+            public Object call() throws CoreException {
+              parseAndValidate(javaProject, shard);
+              return null;
+            }
+          }));
+        }
+      }
+
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof CoreException) {
+            throw (CoreException) e.getCause();
+          }
+          throw new CoreException(new Status(IStatus.ERROR,
+              GWTPlugin.PLUGIN_ID,
+              "Unexpected error while preparing JSNI reference changes",
+              e.getCause()));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationCanceledException();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void parseAndValidate(IJavaProject javaProject,
+      ICompilationUnit[] units) throws CoreException {
+    final Set<ICompilationUnit> validatedUnits = new HashSet<ICompilationUnit>();
+    createParser(javaProject).createASTs(units, NO_STRINGS,
+        new ASTRequestor() {
+          @Override
+          public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
+            JavaCompilationParticipant.validateCompilationUnit(ast);
+            validatedUnits.add(source);
+          }
+        }, null);
+
+    // The JDT skips compilation units it cannot read
+    for (ICompilationUnit unit : units) {
+      if (!validatedUnits.contains(unit)) {
+        throw new CoreException(new Status(IStatus.ERROR, GWTPlugin.PLUGIN_ID,
+            "Could not parse " + unit.getPath()
+                + " to update its JSNI references"));
+      }
+    }
+  }
+
+  private void prepareEdits(ICompilationUnit cu,
+      JsniReferenceChangeHelper helper) throws CoreException {
+    // Collect the compilation units as they are after the JDT's changes
+    Map<IPath, ICompilationUnit> units = new LinkedHashMap<IPath, ICompilationUnit>();
+    units.put(cu.getPath(), cu);
+    for (ICompilationUnit pendingUnit : pendingUnits) {
+      ICompilationUnit unit = refactoringSupport.getPerformedCompilationUnit(pendingUnit);
+      if (unit.exists() && !units.containsKey(unit.getPath())
+          && !preparedEdits.containsKey(unit.getPath())) {
+        units.put(unit.getPath(), unit);
+      }
+    }
+    pendingUnits.clear();
+
+    Map<IJavaProject, List<ICompilationUnit>> unitsByProject = new LinkedHashMap<IJavaProject, List<ICompilationUnit>>();
+    for (ICompilationUnit unit : units.values()) {
+      List<ICompilationUnit> projectUnits = unitsByProject.get(unit.getJavaProject());
+      if (projectUnits == null) {
+        projectUnits = new ArrayList<ICompilationUnit>();
+        unitsByProject.put(unit.getJavaProject(), projectUnits);
+      }
+      projectUnits.add(unit);
+    }
+
+    long start = System.currentTimeMillis();
+    parseAndValidate(unitsByProject);
+    long parsed = System.currentTimeMillis();
+
+    // Get the index entries matching the old element by name only (we can't
+    // resolve the references anymore because the old element no longer exists).
+    IJavaElement oldElement = refactoringSupport.getOldElement();
+    Set<IIndexedJavaRef> matches = JavaQueryParticipant.findWorkspaceReferences(
+        oldElement, false);
+
+    Set<IIndexedJavaRef> refs = new HashSet<IIndexedJavaRef>();
+    for (IIndexedJavaRef ref : matches) {
+      // Skip any matches that did not come from the batch's compilation units
+      // or which don't resolve to the refactored Java Element
+      ICompilationUnit unit = units.get(ref.getSource());
+      if (unit != null && helper.resolvesToRefactoredElement(unit, ref)) {
+        refs.add(ref);
+      }
+    }
+    long searched = System.currentTimeMillis();
+
+    // Get the new edits for the references within the compilation units (the
+    // offsets may have changed if the JDT created edits above them).
+    Map<IPath, Set<TextEdit>> edits = refactoringSupport.createEdits(refs);
+    for (IPath unitPath : units.keySet()) {
+      Set<TextEdit> unitEdits = edits.get(unitPath);
+      preparedEdits.put(unitPath, unitEdits != null ? unitEdits
+          : Collections.<TextEdit> emptySet());
+    }
+    long end = System.currentTimeMillis();
+
+    GWTPluginLog.logTrace("Prepared JSNI reference changes in "
+        + units.size() + " compilation units of " + unitsByProject.size()
+        + " projects: parsing took " + (parsed - start)
+        + " ms, searching took " + (searched - parsed)
+        + " ms, and creating edits took " + (end - searched) + " ms");
+  }
+
+}
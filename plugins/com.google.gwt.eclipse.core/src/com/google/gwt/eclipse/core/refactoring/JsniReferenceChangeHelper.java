@@ -18,8 +18,6 @@ import com.google.gwt.eclipse.core.GWTPluginLog;
 import com.google.gwt.eclipse.core.platformproxy.refactoring.IJsniReferenceChange;
 import com.google.gwt.eclipse.core.search.IIndexedJavaRef;
 import com.google.gwt.eclipse.core.search.IndexedJsniJavaRef;
-import com.google.gwt.eclipse.core.search.JavaQueryParticipant;
-import com.google.gwt.eclipse.core.validators.java.JavaCompilationParticipant;
 import com.google.gwt.eclipse.core.validators.java.JsniJavaRef;
 import com.google.gwt.eclipse.core.validators.java.UnresolvedJsniJavaRefException;
 
@@ -30,20 +28,15 @@ import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IMethod;
-import org.eclipse.jdt.core.dom.AST;
-import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
 import org.eclipse.jface.text.Document;
 import org.eclipse.text.edits.TextEdit;
 
-import java.util.Iterator;
 import java.util.Set;
 
 /**
  * Helper class that is used by the version-specific implementations of the
  * <code>JsniReferenceChange</code> class.
  */
-@SuppressWarnings("restriction")
 public class JsniReferenceChangeHelper {
 
   private final IJsniReferenceChange jsniReferenceChange;
@@ -59,37 +52,12 @@ public class JsniReferenceChangeHelper {
     // been shifted by JDT edits that occurred "higher" in the source file
     TextEdit[] oldEdits = rootEdit.removeChildren();
 
-    // Generate a new AST for this compilation unit
-    RefactoringASTParser parser = new RefactoringASTParser(AST.JLS3);
-    CompilationUnit astNode = parser.parse(cu, false);
-
-    // Now re-validate the compilation unit's AST to get the JSNI Java
-    // references' updated positions into the index
-    JavaCompilationParticipant.validateCompilationUnit(astNode);
-
-    // Get the index entries matching the old element by name only (we can't
-    // resolve the references anymore because the old element no longer exists).
-    IJavaElement oldElement = jsniReferenceChange.getRefactoringSupport().getOldElement();
-    Set<IIndexedJavaRef> refs = JavaQueryParticipant.findWorkspaceReferences(
-        oldElement, false);
-
-    for (Iterator<IIndexedJavaRef> iterator = refs.iterator(); iterator.hasNext();) {
-      IIndexedJavaRef ref = iterator.next();
-
-      // Remove any matches that did not come from this compilation unit or
-      // which don't resolve to the refactored Java Element
-      if (!(ref.getSource().equals(cu.getPath()))
-          || (!resolvesToRefactoredElement(cu, ref))) {
-        iterator.remove();
-      }
-    }
-
-    // Get the new edits for the references within this compilation unit (the
-    // offsets may have changed if the JDT created edits above us in the
+    // Get the new edits for the references within this compilation unit,
+    // which are prepared along with those of the refactoring's other changes
+    // (the offsets may have changed if the JDT created edits above us in the
     // compilation unit).
-    Set<TextEdit> newEdits = jsniReferenceChange.getRefactoringSupport().createEdits(
-        refs).get(cu.getPath());
-    assert (newEdits != null);
+    Set<TextEdit> newEdits = jsniReferenceChange.getRefactoringSupport().takeJsniReferenceEdits(
+        cu, this);
     assert (oldEdits.length == newEdits.size());
 
     // Add all those edits back onto this change's root edit
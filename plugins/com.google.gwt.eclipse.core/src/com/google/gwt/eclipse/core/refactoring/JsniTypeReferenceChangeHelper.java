@@ -16,12 +16,12 @@ package com.google.gwt.eclipse.core.refactoring;
 
 import com.google.gwt.eclipse.core.platformproxy.refactoring.IJsniTypeReferenceChange;
 import com.google.gwt.eclipse.core.search.JavaRefIndex;
+import com.google.gwt.eclipse.core.validators.java.BuildValidationCache;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.ICompilationUnit;
-import org.eclipse.jdt.core.IType;
 
 /**
  * Helper class that is used by the version-specific implementations of the
@@ -36,29 +36,23 @@ public class JsniTypeReferenceChangeHelper {
     this.jsniTypeReferenceChange = jsniTypeReferenceChange;
   }
 
-  public ICompilationUnit getNewCompilationUnit() {
-    return jsniTypeReferenceChange.getRefactoringSupport().getNewType().getCompilationUnit();
-  }
-
-  public boolean hasCompilationUnitPathChanged(ICompilationUnit cu) {
-    IType oldType = jsniTypeReferenceChange.getRefactoringSupport().getOldType();
-    return (oldType.getDeclaringType() == null && oldType.getCompilationUnit().getPath().equals(
-        cu.getPath()));
-  }
-
   public void perform(IProgressMonitor pm, ICompilationUnit cu)
       throws CoreException {
     // Clear the index entries for the old compilation unit
-    IPath oldCuPath = jsniTypeReferenceChange.getRefactoringSupport().getOldType().getPath();
+    GWTTypeRefactoringSupport refactoringSupport = jsniTypeReferenceChange.getRefactoringSupport();
+    IPath oldCuPath = refactoringSupport.getOldType().getPath();
     JavaRefIndex.getInstance().clear(oldCuPath);
+    BuildValidationCache.getInstance().remove(oldCuPath);
 
     /*
      * If the compilation unit containing the references is the same one we're
      * renaming we need to update the private fields of this change so the edits
      * will be applied to the *renamed* compilation unit and not the old one.
+     * The support decides which unit that is, so the edits prepared for this
+     * change by its batch are keyed by the same unit.
      */
-    if (hasCompilationUnitPathChanged(cu)) {
-      ICompilationUnit newCu = getNewCompilationUnit();
+    ICompilationUnit newCu = refactoringSupport.getPerformedCompilationUnit(cu);
+    if (newCu != cu) {
       jsniTypeReferenceChange.setCompilationUnit(newCu);
     }
   }
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.search;
+
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.compiler.CharOperation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Sorted secondary index over the keys of the {@link JavaRefIndex} element
+ * index (qualified type names and <code>::member</code> keys).
+ *
+ * Keys are sorted by their lower-case form, so a pattern's literal prefix (the
+ * part before its first wildcard) narrows the candidates to a sub-range of the
+ * index before any pattern matching is done. Type keys are additionally
+ * indexed by their simple name for unqualified type searches.
+ */
+final class ElementKeyIndex {
+
+  private static List<String> findMatches(
+      TreeMap<String, Set<String>> keyMap, String pattern,
+      boolean simpleTypeNameSearch, boolean caseSensitive) {
+    String lowerCasePattern = pattern.toLowerCase();
+    int wildcard = indexOfWildcard(lowerCasePattern);
+
+    Collection<Set<String>> candidates;
+    if (wildcard == -1) {
+      Set<String> keys = keyMap.get(lowerCasePattern);
+      candidates = (keys != null ? Collections.singleton(keys)
+          : Collections.<Set<String>> emptySet());
+    } else if (wildcard == 0) {
+      // Nothing to narrow the search with
+      candidates = keyMap.values();
+    } else {
+      String prefix = lowerCasePattern.substring(0, wildcard);
+      SortedMap<String, Set<String>> range = keyMap.subMap(prefix, prefix
+          + Character.MAX_VALUE);
+      candidates = range.values();
+    }
+
+    /*
+     * Convert the pattern to lower case if we're doing a case-insensitive
+     * search. You would think the CharOperation.matched method called below
+     * would take care of this, since it takes a caseSensitive parameter, but
+     * for some reason it only uses that to convert the characters in the 'name'
+     * parameter to lower case.
+     */
+    char[] patternChars = (caseSensitive ? pattern : lowerCasePattern).toCharArray();
+
+    List<String> matches = new ArrayList<String>();
+    for (Set<String> keys : candidates) {
+      for (String key : keys) {
+        String element = key;
+        if (simpleTypeNameSearch) {
+          // Strip the qualifier off the index element before trying to match
+          element = Signature.getSimpleName(element);
+        }
+
+        if (CharOperation.match(patternChars, element.toCharArray(),
+            caseSensitive)) {
+          matches.add(key);
+        }
+      }
+    }
+    return matches;
+  }
+
+  private static int indexOfWildcard(String pattern) {
+    int star = pattern.indexOf('*');
+    int question = pattern.indexOf('?');
+    if (star == -1) {
+      return question;
+    }
+    return (question == -1 ? star : Math.min(star, question));
+  }
+
+  private static boolean isMemberKey(String key) {
+    return key.startsWith("::");
+  }
+
+  private static void put(TreeMap<String, Set<String>> keyMap,
+      String sortKey, String key) {
+    Set<String> keys = keyMap.get(sortKey);
+    if (keys == null) {
+      keys = new HashSet<String>(2);
+      keyMap.put(sortKey, keys);
+    }
+    keys.add(key);
+  }
+
+  /**
+   * All element keys, by their lower-case form.
+   */
+  private final TreeMap<String, Set<String>> keys = new TreeMap<String, Set<String>>();
+
+  /**
+   * Type keys, by the lower-case form of their simple name.
+   */
+  private final TreeMap<String, Set<String>> typeKeysBySimpleName = new TreeMap<String, Set<String>>();
+
+  public void add(String key) {
+    put(keys, key.toLowerCase(), key);
+    if (!isMemberKey(key)) {
+      put(typeKeysBySimpleName, Signature.getSimpleName(key).toLowerCase(),
+          key);
+    }
+  }
+
+  public void clear() {
+    keys.clear();
+    typeKeysBySimpleName.clear();
+  }
+
+  /**
+   * Returns the element keys matching the given pattern, which may contain
+   * <code>*</code> and <code>?</code> wildcards.
+   *
+   * @param pattern the pattern, which for member searches must already be in
+   *          the form of an element key
+   * @param simpleTypeNameSearch whether the pattern should be matched against
+   *          the simple names of the indexed types
+   * @param caseSensitive whether the match is case sensitive
+   */
+  public List<String> findMatches(String pattern,
+      boolean simpleTypeNameSearch, boolean caseSensitive) {
+    if (simpleTypeNameSearch) {
+      return findMatches(typeKeysBySimpleName, pattern, true, caseSensitive);
+    }
+    return findMatches(keys, pattern, false, caseSensitive);
+  }
+
+}
@@ -43,28 +43,31 @@ public class IndexedJsniJavaRef extends JsniJavaRef implements IIndexedJavaRef {
       return null;
     }
 
-    // Parse the reference string into an actual JsniJavaRef
-    JsniJavaRef ref = JsniJavaRef.parse(refString);
-    if (ref == null) {
-      return null;
-    }
-
     // Set the source property (the file containing the reference)
     String sourceString = memento.getString(TAG_SOURCE);
     if (sourceString == null) {
       return null;
-    } else {
-      ref.setSource(new Path(sourceString));
     }
 
     // Set the offset property (the location within the containing file)
     Integer offset = memento.getInteger(TAG_OFFSET);
     if (offset == null) {
       return null;
-    } else {
-      ref.setOffset(offset.intValue());
     }
 
+    return parse(new Path(sourceString), offset.intValue(), refString);
+  }
+
+  public static IndexedJsniJavaRef parse(IPath source, int offset,
+      String refString) {
+    // Parse the reference string into an actual JsniJavaRef
+    JsniJavaRef ref = JsniJavaRef.parse(refString);
+    if (ref == null) {
+      return null;
+    }
+
+    ref.setSource(source);
+    ref.setOffset(offset);
     return new IndexedJsniJavaRef(ref);
   }
 
@@ -87,6 +90,14 @@ public class IndexedJsniJavaRef extends JsniJavaRef implements IIndexedJavaRef {
     return super.memberSignature();
   }
 
+  /**
+   * Returns the literal text of the Java reference (without the location
+   * information included by {@link #toString()}).
+   */
+  public String getRefString() {
+    return super.toString();
+  }
+
   public String rawClassName() {
     return className();
   }
@@ -113,9 +124,7 @@ public class IndexedJsniJavaRef extends JsniJavaRef implements IIndexedJavaRef {
   }
 
   public void save(IMemento memento) {
-    // We have to make sure to call super.toString() here to use JsniRef's
-    // toString(), which provides the literal text of the Java reference)
-    memento.putTextData(super.toString());
+    memento.putTextData(getRefString());
     memento.putString(TAG_SOURCE, getSource().toString());
     memento.putInteger(TAG_OFFSET, getOffset());
   }
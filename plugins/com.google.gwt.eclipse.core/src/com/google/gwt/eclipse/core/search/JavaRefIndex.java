@@ -20,17 +20,18 @@ import com.google.gwt.eclipse.core.util.Util;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.Signature;
-import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.ui.IMemento;
 import org.eclipse.ui.XMLMemento;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.lang.reflect.Method;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -46,9 +47,26 @@ import java.util.Map.Entry;
 
 /**
  * Stores the workspace references to particular Java elements.
+ *
+ * The index is persisted by a {@link JavaRefIndexStore}: every change is
+ * appended to a journal as it happens, and the journal is periodically
+ * compacted into a binary index file by a background job. Each project's
+ * references are only decoded from the index file the first time they are
+ * needed.
  */
 public final class JavaRefIndex {
 
+  /**
+   * Number of journal records after which the index is compacted.
+   */
+  private static final int COMPACTION_THRESHOLD = 1000;
+
+  /**
+   * Delay (in ms) before compacting, so bursts of changes (e.g. a clean build)
+   * are compacted together.
+   */
+  private static final long COMPACTION_DELAY = 30000;
+
   private static JavaRefIndex INSTANCE;
 
   private static final String JAVA_REF_LOAD_METHOD = "load";
@@ -63,9 +81,7 @@ public final class JavaRefIndex {
 
   private static final String TAG_JAVA_REF_CLASS = "class";
 
-  private static final String TAG_JAVA_REFS = "JavaRefs";
-
-  public static JavaRefIndex getInstance() {
+  public static synchronized JavaRefIndex getInstance() {
     // Lazily load the search index
     if (INSTANCE == null) {
       INSTANCE = new JavaRefIndex();
@@ -73,7 +89,7 @@ public final class JavaRefIndex {
     return INSTANCE;
   }
 
-  public static void save() {
+  public static synchronized void save() {
     if (INSTANCE == null) {
       return;
     }
@@ -98,11 +114,17 @@ public final class JavaRefIndex {
     return MEMBER_KEY_PREFIX + memberSignature;
   }
 
-  private static File getIndexFile() {
-    // The index file will end up in the directory:
+  /**
+   * Returns the XML index file written by earlier versions of the plugin.
+   */
+  private static File getLegacyIndexFile() {
+    return new File(getStateDirectory(), SEARCH_INDEX_FILENAME);
+  }
+
+  private static File getStateDirectory() {
+    // The index files will end up in the directory:
     // <workspace>/.metadata/.plugins/com.google.gwt.eclipse.plugin
-    return GWTPlugin.getDefault().getStateLocation().append(
-        SEARCH_INDEX_FILENAME).toFile();
+    return GWTPlugin.getDefault().getStateLocation().toFile();
   }
 
   /**
@@ -111,72 +133,111 @@ public final class JavaRefIndex {
    */
   private final Map<String, Set<IIndexedJavaRef>> elementIndex = new HashMap<String, Set<IIndexedJavaRef>>();
 
+  /**
+   * Sorted index over the keys of the element index, used for pattern
+   * searches.
+   */
+  private final ElementKeyIndex elementKeys = new ElementKeyIndex();
+
+  /**
+   * The element index keys whose reference sets have been returned (as
+   * unmodifiable views) from a find method. These sets are copied before they
+   * are next modified, so the returned views never change.
+   */
+  private final Set<String> sharedElementKeys = new HashSet<String>();
+
   /**
    * Contains the Java references that are inside a particular file (e.g., .java
    * with JSNI, module XML).
    */
   private final Map<IPath, Set<IIndexedJavaRef>> fileIndex = new HashMap<IPath, Set<IIndexedJavaRef>>();
 
+  private final JavaRefIndexStore store;
+
+  private final Job compactionJob = new Job("Compacting GWT search index") {
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+      compact();
+      return Status.OK_STATUS;
+    }
+  };
+
   private JavaRefIndex() {
-    loadIndex();
-  }
+    compactionJob.setSystem(true);
 
-  // TODO: deep copy the added ref so it can't be modified from the outside?
-  public void add(IIndexedJavaRef ref) {
-    addToElementIndex(ref);
-    addToFileIndex(ref);
-  }
+    store = new JavaRefIndexStore(getStateDirectory(), SEARCH_INDEX_FILENAME);
+    store.open();
 
-  // TODO: deep copy the added ref so it can't be modified from the outside?
-  public void add(IPath file, Set<IIndexedJavaRef> refs) {
-    /*
-     * Update the file index by clearing the original entry and then adding a
-     * new one. However, we only add an entry if the file actually contains Java
-     * references. This prevents the file index from being polluted with a bunch
-     * of keys (one per file in the project) that map to an empty set.
-     */
-    clear(file);
-    if (refs.size() > 0) {
-      fileIndex.put(file, refs);
+    // Migrate the XML index from earlier versions of the plugin
+    boolean migrateLegacyIndex = !store.hasIndex()
+        && getLegacyIndexFile().exists();
+    if (migrateLegacyIndex) {
+      loadIndex();
     }
 
-    // Update the Java element index
-    for (IIndexedJavaRef ref : refs) {
-      addToElementIndex(ref);
+    store.replayJournal(new JavaRefIndexStore.JournalHandler() {
+      public void add(IIndexedJavaRef ref) {
+        doAdd(ref);
+      }
+
+      public void add(IPath file, Set<IIndexedJavaRef> refs) {
+        doAdd(file, refs);
+      }
+
+      public void clear() {
+        doClear();
+      }
+
+      public void clear(IPath file) {
+        doClear(file);
+      }
+
+      public void clear(String projectName) {
+        doClear(projectName);
+      }
+    });
+
+    if (migrateLegacyIndex && compact()) {
+      getLegacyIndexFile().delete();
     }
   }
 
-  public void clear() {
-    elementIndex.clear();
-    fileIndex.clear();
+  // TODO: deep copy the added ref so it can't be modified from the outside?
+  public synchronized void add(IIndexedJavaRef ref) {
+    doAdd(ref);
+    store.logAdd(ref);
+    journalChanged();
   }
 
-  public void clear(IPath file) {
-    if (fileIndex.containsKey(file)) {
-      // Get the Java refs in this file
-      Set<IIndexedJavaRef> fileRefs = fileIndex.get(file);
+  // TODO: deep copy the added ref so it can't be modified from the outside?
+  public synchronized void add(IPath file, Set<IIndexedJavaRef> refs) {
+    doAdd(file, refs);
+    store.logAdd(file, refs);
+    journalChanged();
+  }
 
-      // Remove all this file's refs from the element index
-      for (IIndexedJavaRef fileRef : fileRefs) {
-        removeRefsFromElementIndex(fileRef, file);
-      }
+  public synchronized void clear() {
+    doClear();
+    store.logClear();
+    journalChanged();
+  }
 
-      // Finally, remove the file's refs from the file index
-      fileRefs.clear();
-    }
+  public synchronized void clear(IPath file) {
+    doClear(file);
+    store.logClear(file);
+    journalChanged();
   }
 
-  public void clear(IProject project) {
-    for (IPath file : fileIndex.keySet()) {
-      if (project.getName().equals(file.segment(0))) {
-        // Remove the file's refs from the index
-        clear(file);
-      }
-    }
+  public synchronized void clear(IProject project) {
+    doClear(project.getName());
+    store.logClear(project.getName());
+    journalChanged();
   }
 
-  public Set<IIndexedJavaRef> findElementReferences(String pattern,
-      int elementType, boolean caseSensitive) {
+  public synchronized Set<IIndexedJavaRef> findElementReferences(
+      String pattern, int elementType, boolean caseSensitive) {
+    ensureAllLoaded();
+
     boolean simpleTypeNameSearch = false;
 
     // Type matches can be found for either fully-qualified or simple type names
@@ -226,66 +287,39 @@ public final class JavaRefIndex {
       return findElementReferences(pattern);
     }
 
-    // Scan all the element index entries sequentially, since we need to do
-    // pattern matching on each one to see if it's a match
-    Set<IIndexedJavaRef> refs = new HashSet<IIndexedJavaRef>();
-    for (String key : elementIndex.keySet()) {
-      String element = key;
-      if (simpleTypeNameSearch) {
-        // Strip the qualifier off the index element before trying to match
-        element = Signature.getSimpleName(element);
-      }
-
-      char[] patternChars = pattern.toCharArray();
-
-      if (!caseSensitive) {
-        /*
-         * Convert the pattern to lower case if we're doing a case-insensitive
-         * search. You would think the CharOperation.matched method called below
-         * would take care of this, since it takes a caseSensitive parameter,
-         * but for some reason it only uses that to convert the characters in
-         * the 'name' parameter to lower case.
-         */
-        patternChars = CharOperation.toLowerCase(patternChars);
-      }
+    // Only match the pattern against the range of keys sharing its prefix
+    List<String> keys = elementKeys.findMatches(pattern, simpleTypeNameSearch,
+        caseSensitive);
+    if (keys.size() == 1) {
+      return findElementReferences(keys.get(0));
+    }
 
-      if (CharOperation.match(patternChars, element.toCharArray(),
-          caseSensitive)) {
-        refs.addAll(elementIndex.get(key));
-      }
+    Set<IIndexedJavaRef> refs = new HashSet<IIndexedJavaRef>();
+    for (String key : keys) {
+      refs.addAll(elementIndex.get(key));
     }
 
-    return refs;
+    return Collections.unmodifiableSet(refs);
   }
 
-  public Set<IIndexedJavaRef> findFieldReferences(String fieldName) {
+  public synchronized Set<IIndexedJavaRef> findFieldReferences(
+      String fieldName) {
     fieldName = MEMBER_KEY_PREFIX + fieldName;
     return findElementReferences(fieldName);
   }
 
-  public Set<IIndexedJavaRef> findMethodReferences(String methodName) {
+  public synchronized Set<IIndexedJavaRef> findMethodReferences(
+      String methodName) {
     methodName = MEMBER_KEY_PREFIX + methodName + METHOD_KEY_SUFFIX;
     return findElementReferences(methodName);
   }
 
-  public Set<IIndexedJavaRef> findTypeReferences(String qualifiedTypeName) {
+  public synchronized Set<IIndexedJavaRef> findTypeReferences(
+      String qualifiedTypeName) {
     // Normalize type name using dots as the enclosing type separator
     qualifiedTypeName = qualifiedTypeName.replace('$', '.');
 
-    Set<IIndexedJavaRef> refs = elementIndex.get(qualifiedTypeName);
-    if (refs != null) {
-      /*
-       * Return a copy of the set instead of the original. This ensures that the
-       * return value doesn't react to later changes to the index. The
-       * individual references should also be stable because the IIndexedJavaRef
-       * interface doesn't define any setters.
-       */
-      Set<IIndexedJavaRef> copy = new HashSet<IIndexedJavaRef>();
-      copy.addAll(refs);
-      return copy;
-    }
-
-    return Collections.emptySet();
+    return findElementReferences(qualifiedTypeName);
   }
 
   /**
@@ -293,7 +327,9 @@ public final class JavaRefIndex {
    * 
    * @return the number of unique IIndexedJavaRef's in the index
    */
-  public int size() {
+  public synchronized int size() {
+    ensureAllLoaded();
+
     int size = 0;
     for (Entry<IPath, Set<IIndexedJavaRef>> fileIndexEntry : fileIndex.entrySet()) {
       String projectName = fileIndexEntry.getKey().segment(0);
@@ -310,7 +346,9 @@ public final class JavaRefIndex {
    * For debugging purposes only.
    */
   @Override
-  public String toString() {
+  public synchronized String toString() {
+    ensureAllLoaded();
+
     StringBuffer sb = new StringBuffer(2048);
     sb.append("File Index (" + fileIndex.size() + " entries):\n");
     for (Entry<IPath, Set<IIndexedJavaRef>> fileIndexEntry : fileIndex.entrySet()) {
@@ -350,12 +388,13 @@ public final class JavaRefIndex {
   private void addToElementIndex(String elementKey, IIndexedJavaRef ref) {
     // If the element is already indexed, just add this location to the list
     if (elementIndex.containsKey(elementKey)) {
-      elementIndex.get(elementKey).add(ref);
+      getModifiableElementRefs(elementKey).add(ref);
     } else {
       // Otherwise, create a new entry for this Java element key
       HashSet<IIndexedJavaRef> refs = new HashSet<IIndexedJavaRef>();
       refs.add(ref);
       elementIndex.put(elementKey, refs);
+      elementKeys.add(elementKey);
     }
   }
 
@@ -372,18 +411,126 @@ public final class JavaRefIndex {
     }
   }
 
+  /**
+   * Writes the whole index to a new index file and truncates the journal.
+   *
+   * @return <code>true</code> if the index was written successfully
+   */
+  private synchronized boolean compact() {
+    // Group the loaded refs by project; unloaded projects are copied as-is
+    Map<String, Map<IPath, Set<IIndexedJavaRef>>> projects = new HashMap<String, Map<IPath, Set<IIndexedJavaRef>>>();
+    for (Entry<IPath, Set<IIndexedJavaRef>> fileEntry : fileIndex.entrySet()) {
+      String projectName = fileEntry.getKey().segment(0);
+      Map<IPath, Set<IIndexedJavaRef>> projectFiles = projects.get(projectName);
+      if (projectFiles == null) {
+        projectFiles = new HashMap<IPath, Set<IIndexedJavaRef>>();
+        projects.put(projectName, projectFiles);
+      }
+      projectFiles.put(fileEntry.getKey(), fileEntry.getValue());
+    }
+
+    return store.compact(projects);
+  }
+
+  private void doAdd(IIndexedJavaRef ref) {
+    ensureLoaded(ref.getSource().segment(0));
+    addToElementIndex(ref);
+    addToFileIndex(ref);
+  }
+
+  private void doAdd(IPath file, Set<IIndexedJavaRef> refs) {
+    /*
+     * Update the file index by clearing the original entry and then adding a
+     * new one. However, we only add an entry if the file actually contains Java
+     * references. This prevents the file index from being polluted with a bunch
+     * of keys (one per file in the project) that map to an empty set.
+     */
+    doClear(file);
+    if (refs.size() > 0) {
+      fileIndex.put(file, refs);
+    }
+
+    // Update the Java element index
+    for (IIndexedJavaRef ref : refs) {
+      addToElementIndex(ref);
+    }
+  }
+
+  private void doClear() {
+    store.discardSegments();
+    elementIndex.clear();
+    elementKeys.clear();
+    sharedElementKeys.clear();
+    fileIndex.clear();
+  }
+
+  private void doClear(IPath file) {
+    ensureLoaded(file.segment(0));
+
+    if (fileIndex.containsKey(file)) {
+      // Get the Java refs in this file
+      Set<IIndexedJavaRef> fileRefs = fileIndex.get(file);
+
+      // Remove all this file's refs from the element index
+      for (IIndexedJavaRef fileRef : fileRefs) {
+        removeRefsFromElementIndex(fileRef, file);
+      }
+
+      // Finally, remove the file's refs from the file index
+      fileRefs.clear();
+    }
+  }
+
+  private void doClear(String projectName) {
+    // The project's refs are going away, so there's no need to decode them
+    store.discardSegment(projectName);
+
+    for (IPath file : fileIndex.keySet()) {
+      if (projectName.equals(file.segment(0))) {
+        // Remove the file's refs from the index
+        doClear(file);
+      }
+    }
+  }
+
+  /**
+   * Decodes the refs of every project which has not been loaded yet.
+   */
+  private void ensureAllLoaded() {
+    for (String projectName : store.getPendingProjects()) {
+      ensureLoaded(projectName);
+    }
+  }
+
+  /**
+   * Decodes the given project's refs from the index file, if they have not
+   * been loaded yet.
+   */
+  private void ensureLoaded(String projectName) {
+    if (projectName == null || !store.hasPendingSegment(projectName)) {
+      return;
+    }
+
+    Map<IPath, Set<IIndexedJavaRef>> files = store.readSegment(projectName);
+    for (Entry<IPath, Set<IIndexedJavaRef>> file : files.entrySet()) {
+      doAdd(file.getKey(), file.getValue());
+    }
+  }
+
   private Set<IIndexedJavaRef> findElementReferences(String elementKey) {
+    ensureAllLoaded();
+
     Set<IIndexedJavaRef> refs = elementIndex.get(elementKey);
     if (refs != null) {
       /*
-       * Return a copy of the set instead of the original. This ensures that the
-       * return value doesn't react to later changes to the index. The
-       * individual references should also be stable because the IIndexedJavaRef
-       * interface doesn't define any setters.
+       * Return a read-only view of the set instead of a copy. The set is
+       * copied the next time the index modifies it, so the returned value
+       * doesn't react to later changes to the index. The individual references
+       * should also be stable because the IIndexedJavaRef interface doesn't
+       * define any setters.
        */
-      Set<IIndexedJavaRef> copy = new HashSet<IIndexedJavaRef>();
-      copy.addAll(refs);
-      return copy;
+      sharedElementKeys.add(elementKey);
+      return Collections.unmodifiableSet(refs);
     }
 
     return Collections.emptySet();
@@ -417,11 +564,36 @@ public final class JavaRefIndex {
     return classNames.toArray(new String[0]);
   }
 
+  /**
+   * Returns the element index's set of references for the given key, first
+   * replacing it with a copy if it has been handed out by a find method.
+   */
+  private Set<IIndexedJavaRef> getModifiableElementRefs(String elementKey) {
+    Set<IIndexedJavaRef> refs = elementIndex.get(elementKey);
+    if (sharedElementKeys.remove(elementKey)) {
+      refs = new HashSet<IIndexedJavaRef>(refs);
+      elementIndex.put(elementKey, refs);
+    }
+    return refs;
+  }
+
+  /**
+   * Schedules a compaction once enough changes have accumulated in the journal.
+   */
+  private void journalChanged() {
+    if (store.getJournalRecordCount() >= COMPACTION_THRESHOLD) {
+      compactionJob.schedule(COMPACTION_DELAY);
+    }
+  }
+
+  /**
+   * Loads the XML index written by earlier versions of the plugin.
+   */
   private void loadIndex() {
     FileReader reader = null;
     try {
       try {
-        reader = new FileReader(getIndexFile());
+        reader = new FileReader(getLegacyIndexFile());
         loadIndex(XMLMemento.createReadRoot(reader));
       } finally {
         if (reader != null) {
@@ -441,7 +613,7 @@ public final class JavaRefIndex {
       if (ref != null) {
         // If we are able to re-instantiate the Java reference object, add it to
         // both of the search indices
-        add(ref);
+        doAdd(ref);
       }
     }
   }
@@ -508,7 +680,7 @@ public final class JavaRefIndex {
 
   private void removeRefsFromElementIndex(String elementKey, IPath file) {
     assert (elementIndex.containsKey(elementKey));
-    Set<IIndexedJavaRef> elementRefs = elementIndex.get(elementKey);
+    Set<IIndexedJavaRef> elementRefs = getModifiableElementRefs(elementKey);
 
     for (Iterator<IIndexedJavaRef> i = elementRefs.iterator(); i.hasNext();) {
       if (i.next().getSource().equals(file)) {
@@ -518,43 +690,14 @@ public final class JavaRefIndex {
     }
   }
 
-  private void saveIndex() {
-    XMLMemento memento = XMLMemento.createWriteRoot(TAG_JAVA_REFS);
-    saveIndex(memento);
-
-    FileWriter writer = null;
-    try {
-      try {
-        writer = new FileWriter(getIndexFile());
-        memento.save(writer);
-      } finally {
-        if (writer != null) {
-          writer.close();
-        }
-      }
-    } catch (IOException e) {
-      GWTPluginLog.logError(e, "Error saving search index");
-    }
-  }
-
-  private void saveIndex(XMLMemento memento) {
-    for (Entry<IPath, Set<IIndexedJavaRef>> fileEntry : fileIndex.entrySet()) {
-      for (IIndexedJavaRef ref : fileEntry.getValue()) {
-        IMemento refNode = memento.createChild(TAG_JAVA_REF);
-        /*
-         * Embed the Java reference class name into the index. This ends up
-         * making the resulting index file larger than it really needs to be
-         * (around 100 KB for the index containing gwt-user, gwt-lang, and all
-         * the gwt-dev projects), but it still loads in around 50 ms on average
-         * on my system, so it doesn't seem to be a bottleneck.
-         */
-        String refClassName = ref.getClass().getName();
-        refNode.putString(TAG_JAVA_REF_CLASS, refClassName);
-
-        // The implementation of IIndexedJavaRef serializes itself
-        ref.save(refNode);
-      }
-    }
+  private synchronized void saveIndex() {
+    /*
+     * Every change has already been written to the journal, so all we need to
+     * do on shutdown is to flush it. Compaction is left to the background job
+     * (or to the next session), which keeps shutdown fast.
+     */
+    compactionJob.cancel();
+    store.close();
   }
 
 }
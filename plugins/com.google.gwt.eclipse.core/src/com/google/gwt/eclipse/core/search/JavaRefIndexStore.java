@@ -0,0 +1,677 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.search;
+
+import com.google.gwt.eclipse.core.GWTPluginLog;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+
+/**
+ * Binary, incrementally-persisted storage for the {@link JavaRefIndex}.
+ *
+ * The index is stored as a generation-numbered file containing one segment per
+ * project, each with its own string table so that a project's references can
+ * be decoded independently of the others. The file is memory-mapped when the
+ * store is opened, and segments are only decoded when
+ * {@link #readSegment(String)} is called for them.
+ *
+ * Changes made after the index file was written are appended to a journal
+ * that belongs to the same generation. Compacting the store writes the next
+ * generation of the index and starts an empty journal; the previous generation
+ * is only deleted once the new one has been completely written, so a crash at
+ * any point leaves a consistent index + journal pair on disk.
+ */
+final class JavaRefIndexStore {
+
+  /**
+   * Receives the changes recorded in the journal when it is replayed.
+   */
+  interface JournalHandler {
+    void add(IIndexedJavaRef ref);
+
+    void add(IPath file, Set<IIndexedJavaRef> refs);
+
+    void clear();
+
+    void clear(IPath file);
+
+    void clear(String projectName);
+  }
+
+  private static final String INDEX_SUFFIX = ".bin";
+
+  private static final String JOURNAL_SUFFIX = ".journal";
+
+  private static final int MAGIC = 0x4A524958; // "JRIX"
+
+  private static final int FOOTER_MAGIC = 0x58495245; // "XIRE"
+
+  private static final int VERSION = 1;
+
+  private static final byte KIND_JSNI_REF = 1;
+
+  private static final byte KIND_JSNI_PARAM_TYPE = 2;
+
+  private static final byte OP_ADD_REF = 1;
+
+  private static final byte OP_ADD_FILE = 2;
+
+  private static final byte OP_CLEAR_ALL = 3;
+
+  private static final byte OP_CLEAR_FILE = 4;
+
+  private static final byte OP_CLEAR_PROJECT = 5;
+
+  /**
+   * Creates an indexed reference of the given kind, or returns
+   * <code>null</code> if the kind is unknown or the text could not be parsed.
+   */
+  static IIndexedJavaRef createRef(byte kind, IPath source, int offset,
+      String text) {
+    switch (kind) {
+      case KIND_JSNI_REF:
+        return IndexedJsniJavaRef.parse(source, offset, text);
+      case KIND_JSNI_PARAM_TYPE:
+        return JsniJavaRefParamType.parse(source, offset, text);
+      default:
+        return null;
+    }
+  }
+
+  private static byte getKind(IIndexedJavaRef ref) {
+    if (ref instanceof IndexedJsniJavaRef) {
+      return KIND_JSNI_REF;
+    } else if (ref instanceof JsniJavaRefParamType) {
+      return KIND_JSNI_PARAM_TYPE;
+    }
+    return 0;
+  }
+
+  private static int getOffset(IIndexedJavaRef ref) {
+    if (ref instanceof IndexedJsniJavaRef) {
+      return ((IndexedJsniJavaRef) ref).getOffset();
+    }
+    return ((JsniJavaRefParamType) ref).getOffset();
+  }
+
+  private static String getText(IIndexedJavaRef ref) {
+    if (ref instanceof IndexedJsniJavaRef) {
+      return ((IndexedJsniJavaRef) ref).getRefString();
+    }
+    return ((JsniJavaRefParamType) ref).getParamTypeString();
+  }
+
+  private static int intern(String s, Map<String, Integer> stringIds,
+      List<String> strings) {
+    Integer id = stringIds.get(s);
+    if (id == null) {
+      id = strings.size();
+      strings.add(s);
+      stringIds.put(s, id);
+    }
+    return id.intValue();
+  }
+
+  private static void writeRef(DataOutputStream out, IIndexedJavaRef ref)
+      throws IOException {
+    out.writeByte(getKind(ref));
+    out.writeUTF(getText(ref));
+    out.writeInt(getOffset(ref));
+  }
+
+  private final File directory;
+
+  private final String baseName;
+
+  /**
+   * The generation of the index file currently in use; 0 means there is no
+   * index file yet.
+   */
+  private int generation;
+
+  private MappedByteBuffer buffer;
+
+  /**
+   * Offsets (into the mapped buffer) of the project segments which have not
+   * yet been decoded.
+   */
+  private final Map<String, int[]> pendingSegments = new HashMap<String, int[]>();
+
+  private DataOutputStream journal;
+
+  private int journalRecordCount;
+
+  JavaRefIndexStore(File directory, String baseName) {
+    this.directory = directory;
+    this.baseName = baseName;
+  }
+
+  /**
+   * Closes the journal. It will be re-opened if another change is recorded.
+   */
+  void close() {
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        GWTPluginLog.logError(e, "Error closing search index journal");
+      }
+      journal = null;
+    }
+  }
+
+  /**
+   * Writes the next generation of the index, consisting of the given
+   * (already-loaded) projects plus every segment which has not been decoded
+   * yet, and starts a new, empty journal.
+   *
+   * @return <code>true</code> if the new generation was written successfully
+   */
+  boolean compact(Map<String, Map<IPath, Set<IIndexedJavaRef>>> loadedProjects) {
+    int newGeneration = generation + 1;
+    File newIndexFile = getIndexFile(newGeneration);
+
+    try {
+      writeIndex(newIndexFile, loadedProjects);
+    } catch (IOException e) {
+      GWTPluginLog.logError(e, "Error saving search index");
+      newIndexFile.delete();
+      return false;
+    }
+
+    // The new generation is complete, so we can switch over to it
+    close();
+    getJournalFile(newGeneration).delete();
+    int oldGeneration = generation;
+    generation = newGeneration;
+    journalRecordCount = 0;
+    pendingSegments.clear();
+    buffer = null;
+    try {
+      mapIndex(newIndexFile);
+      // Projects which were already decoded stay in memory
+      pendingSegments.keySet().removeAll(loadedProjects.keySet());
+    } catch (IOException e) {
+      GWTPluginLog.logError(e, "Error loading search index");
+    }
+
+    deleteGeneration(oldGeneration);
+    return true;
+  }
+
+  /**
+   * Drops all segments which have not been decoded yet.
+   */
+  void discardSegments() {
+    pendingSegments.clear();
+  }
+
+  /**
+   * Drops the segment for the given project without decoding it.
+   */
+  void discardSegment(String projectName) {
+    pendingSegments.remove(projectName);
+  }
+
+  int getJournalRecordCount() {
+    return journalRecordCount;
+  }
+
+  Set<String> getPendingProjects() {
+    return new HashSet<String>(pendingSegments.keySet());
+  }
+
+  boolean hasIndex() {
+    return generation > 0;
+  }
+
+  boolean hasPendingSegment(String projectName) {
+    return pendingSegments.containsKey(projectName);
+  }
+
+  void logAdd(IIndexedJavaRef ref) {
+    if (getKind(ref) == 0) {
+      return;
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeByte(OP_ADD_REF);
+      out.writeUTF(ref.getSource().toString());
+      writeRef(out, ref);
+      appendToJournal(bytes.toByteArray());
+    } catch (IOException e) {
+      GWTPluginLog.logError(e, "Error writing search index journal");
+    }
+  }
+
+  void logAdd(IPath file, Set<IIndexedJavaRef> refs) {
+    List<IIndexedJavaRef> persistableRefs = new ArrayList<IIndexedJavaRef>(
+        refs.size());
+    for (IIndexedJavaRef ref : refs) {
+      if (getKind(ref) != 0) {
+        persistableRefs.add(ref);
+      }
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeByte(OP_ADD_FILE);
+      out.writeUTF(file.toString());
+      out.writeInt(persistableRefs.size());
+      for (IIndexedJavaRef ref : persistableRefs) {
+        writeRef(out, ref);
+      }
+      appendToJournal(bytes.toByteArray());
+    } catch (IOException e) {
+      GWTPluginLog.logError(e, "Error writing search index journal");
+    }
+  }
+
+  void logClear() {
+    logOperation(OP_CLEAR_ALL, null);
+  }
+
+  void logClear(IPath file) {
+    logOperation(OP_CLEAR_FILE, file.toString());
+  }
+
+  void logClear(String projectName) {
+    logOperation(OP_CLEAR_PROJECT, projectName);
+  }
+
+  /**
+   * Maps the most recent complete generation of the index into memory and
+   * reads its table of contents. Older or incomplete generations are deleted.
+   */
+  void open() {
+    List<Integer> generations = findGenerations();
+    int newest = 0;
+    for (int i = generations.size() - 1; i >= 0 && newest == 0; i--) {
+      int candidate = generations.get(i).intValue();
+      try {
+        mapIndex(getIndexFile(candidate));
+        newest = candidate;
+      } catch (IOException e) {
+        // Most likely a generation we crashed while writing; try the previous
+        pendingSegments.clear();
+        buffer = null;
+      }
+    }
+
+    generation = newest;
+    for (Integer other : generations) {
+      if (other.intValue() != newest) {
+        deleteGeneration(other.intValue());
+      }
+    }
+  }
+
+  /**
+   * Decodes the segment for the given project. Once read, the segment is no
+   * longer pending.
+   *
+   * @return the project's file index, or <code>null</code> if the project has
+   *         no pending segment
+   */
+  Map<IPath, Set<IIndexedJavaRef>> readSegment(String projectName) {
+    int[] location = pendingSegments.remove(projectName);
+    if (location == null || buffer == null) {
+      return null;
+    }
+
+    byte[] segment = new byte[location[1]];
+    ByteBuffer view = buffer.duplicate();
+    view.position(location[0]);
+    view.get(segment);
+
+    Map<IPath, Set<IIndexedJavaRef>> files = new LinkedHashMap<IPath, Set<IIndexedJavaRef>>();
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(segment));
+    try {
+      String[] strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = in.readUTF();
+      }
+
+      int fileCount = in.readInt();
+      for (int i = 0; i < fileCount; i++) {
+        IPath file = new Path(strings[in.readInt()]);
+        int refCount = in.readInt();
+        Set<IIndexedJavaRef> refs = new HashSet<IIndexedJavaRef>(refCount);
+        for (int j = 0; j < refCount; j++) {
+          byte kind = in.readByte();
+          String text = strings[in.readInt()];
+          int offset = in.readInt();
+          IIndexedJavaRef ref = createRef(kind, file, offset, text);
+          if (ref != null) {
+            refs.add(ref);
+          }
+        }
+        files.put(file, refs);
+      }
+    } catch (IOException e) {
+      GWTPluginLog.logError(e, "Error loading search index for project {0}",
+          projectName);
+    }
+    return files;
+  }
+
+  /**
+   * Replays the changes recorded in the journal of the current generation. A
+   * truncated trailing record (e.g. from a crash while writing it) is ignored.
+   */
+  void replayJournal(JournalHandler handler) {
+    File journalFile = getJournalFile(generation);
+    if (!journalFile.exists()) {
+      return;
+    }
+
+    DataInputStream in = null;
+    try {
+      try {
+        in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(journalFile)));
+        while (true) {
+          byte[] record;
+          try {
+            record = new byte[in.readInt()];
+            in.readFully(record);
+          } catch (EOFException e) {
+            break;
+          }
+          replayRecord(record, handler);
+          journalRecordCount++;
+        }
+      } finally {
+        if (in != null) {
+          in.close();
+        }
+      }
+    } catch (IOException e) {
+      GWTPluginLog.logError(e, "Error loading search index journal");
+    }
+  }
+
+  private void appendToJournal(byte[] record) throws IOException {
+    if (journal == null) {
+      journal = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(getJournalFile(generation), true)));
+    }
+
+    journal.writeInt(record.length);
+    journal.write(record);
+    journal.flush();
+    journalRecordCount++;
+  }
+
+  private void deleteGeneration(int gen) {
+    if (gen > 0) {
+      /*
+       * This may fail on some platforms while the old file is still mapped;
+       * stale generations are cleaned up again the next time the store is
+       * opened.
+       */
+      getIndexFile(gen).delete();
+    }
+    getJournalFile(gen).delete();
+  }
+
+  private List<Integer> findGenerations() {
+    List<Integer> generations = new ArrayList<Integer>();
+    String[] names = directory.list();
+    if (names == null) {
+      return generations;
+    }
+
+    String prefix = baseName + ".";
+    for (String name : names) {
+      if (name.startsWith(prefix) && name.endsWith(INDEX_SUFFIX)) {
+        try {
+          generations.add(Integer.valueOf(name.substring(prefix.length(),
+              name.length() - INDEX_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // Not one of ours
+        }
+      }
+    }
+
+    Collections.sort(generations);
+    return generations;
+  }
+
+  private File getIndexFile(int gen) {
+    return new File(directory, baseName + "." + gen + INDEX_SUFFIX);
+  }
+
+  private File getJournalFile(int gen) {
+    return new File(directory, baseName + "." + gen + JOURNAL_SUFFIX);
+  }
+
+  private void logOperation(byte op, String argument) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeByte(op);
+      if (argument != null) {
+        out.writeUTF(argument);
+      }
+      appendToJournal(bytes.toByteArray());
+    } catch (IOException e) {
+      GWTPluginLog.logError(e, "Error writing search index journal");
+    }
+  }
+
+  private void mapIndex(File indexFile) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      // The mapping remains valid after the channel is closed
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size());
+
+      int size = mapped.limit();
+      if (size < 16 || mapped.getInt(0) != MAGIC
+          || mapped.getInt(4) != VERSION
+          || mapped.getInt(size - 4) != FOOTER_MAGIC) {
+        throw new IOException("Incomplete or incompatible search index "
+            + indexFile);
+      }
+
+      // The table of contents is at the end of the file
+      ByteBuffer toc = mapped.duplicate();
+      toc.position(mapped.getInt(size - 8));
+      byte[] tocBytes = new byte[size - 8 - toc.position()];
+      toc.get(tocBytes);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+          tocBytes));
+      int projectCount = in.readInt();
+      for (int i = 0; i < projectCount; i++) {
+        String projectName = in.readUTF();
+        int offset = in.readInt();
+        int length = in.readInt();
+        pendingSegments.put(projectName, new int[] {offset, length});
+      }
+
+      buffer = mapped;
+    } finally {
+      raf.close();
+    }
+  }
+
+  private void replayRecord(byte[] record, JournalHandler handler)
+      throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    switch (in.readByte()) {
+      case OP_ADD_REF: {
+        IPath source = new Path(in.readUTF());
+        IIndexedJavaRef ref = createRef(in.readByte(), source, in.readInt(),
+            in.readUTF());
+        if (ref != null) {
+          handler.add(ref);
+        }
+        break;
+      }
+      case OP_ADD_FILE: {
+        IPath file = new Path(in.readUTF());
+        int count = in.readInt();
+        Set<IIndexedJavaRef> refs = new HashSet<IIndexedJavaRef>(count);
+        for (int i = 0; i < count; i++) {
+          byte kind = in.readByte();
+          String text = in.readUTF();
+          IIndexedJavaRef ref = createRef(kind, file, in.readInt(), text);
+          if (ref != null) {
+            refs.add(ref);
+          }
+        }
+        handler.add(file, refs);
+        break;
+      }
+      case OP_CLEAR_ALL:
+        handler.clear();
+        break;
+      case OP_CLEAR_FILE:
+        handler.clear(new Path(in.readUTF()));
+        break;
+      case OP_CLEAR_PROJECT:
+        handler.clear(in.readUTF());
+        break;
+      default:
+        throw new IOException("Unknown search index journal record");
+    }
+  }
+
+  private void writeIndex(File indexFile,
+      Map<String, Map<IPath, Set<IIndexedJavaRef>>> loadedProjects)
+      throws IOException {
+    FileOutputStream fileOut = new FileOutputStream(indexFile);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          fileOut));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      Map<String, int[]> toc = new LinkedHashMap<String, int[]>();
+
+      for (Entry<String, Map<IPath, Set<IIndexedJavaRef>>> project : loadedProjects.entrySet()) {
+        byte[] segment = writeSegment(project.getValue());
+        toc.put(project.getKey(), new int[] {out.size(), segment.length});
+        out.write(segment);
+      }
+
+      // Copy the segments we never decoded straight from the old generation
+      for (Entry<String, int[]> pending : pendingSegments.entrySet()) {
+        if (loadedProjects.containsKey(pending.getKey())) {
+          continue;
+        }
+        byte[] segment = new byte[pending.getValue()[1]];
+        ByteBuffer view = buffer.duplicate();
+        view.position(pending.getValue()[0]);
+        view.get(segment);
+        toc.put(pending.getKey(), new int[] {out.size(), segment.length});
+        out.write(segment);
+      }
+
+      int tocOffset = out.size();
+      out.writeInt(toc.size());
+      for (Entry<String, int[]> entry : toc.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue()[0]);
+        out.writeInt(entry.getValue()[1]);
+      }
+
+      // Written last, so an interrupted write is detected on the next open
+      out.writeInt(tocOffset);
+      out.writeInt(FOOTER_MAGIC);
+      out.flush();
+      fileOut.getFD().sync();
+    } finally {
+      fileOut.close();
+    }
+  }
+
+  private byte[] writeSegment(Map<IPath, Set<IIndexedJavaRef>> files)
+      throws IOException {
+    Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    List<String> strings = new ArrayList<String>();
+
+    ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+    DataOutputStream entries = new DataOutputStream(entryBytes);
+    int fileCount = 0;
+    for (Entry<IPath, Set<IIndexedJavaRef>> file : files.entrySet()) {
+      // Skip files whose references have all been cleared
+      if (file.getValue().isEmpty()) {
+        continue;
+      }
+
+      List<IIndexedJavaRef> persistableRefs = new ArrayList<IIndexedJavaRef>();
+      for (IIndexedJavaRef ref : file.getValue()) {
+        if (getKind(ref) != 0) {
+          persistableRefs.add(ref);
+        }
+      }
+
+      entries.writeInt(intern(file.getKey().toString(), stringIds, strings));
+      entries.writeInt(persistableRefs.size());
+      for (IIndexedJavaRef ref : persistableRefs) {
+        entries.writeByte(getKind(ref));
+        entries.writeInt(intern(getText(ref), stringIds, strings));
+        entries.writeInt(getOffset(ref));
+      }
+      fileCount++;
+    }
+    entries.flush();
+
+    ByteArrayOutputStream segmentBytes = new ByteArrayOutputStream(
+        entryBytes.size() + strings.size() * 32);
+    DataOutputStream segment = new DataOutputStream(segmentBytes);
+    segment.writeInt(strings.size());
+    for (String s : strings) {
+      segment.writeUTF(s);
+    }
+    segment.writeInt(fileCount);
+    entryBytes.writeTo(segment);
+    segment.flush();
+    return segmentBytes.toByteArray();
+  }
+
+}
@@ -118,6 +118,10 @@ public class JsniJavaRefParamType implements IIndexedJavaRef {
     return source;
   }
 
+  public String getParamTypeString() {
+    return paramTypeString;
+  }
+
   public String memberName() {
     return null;
   }
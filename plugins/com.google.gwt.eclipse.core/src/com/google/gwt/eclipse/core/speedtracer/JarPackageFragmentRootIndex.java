@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.speedtracer;
+
+import com.google.gdt.eclipse.core.java.ClasspathChangedListener;
+import com.google.gwt.eclipse.core.GWTPluginLog;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the external JARs on the classpaths of the workspace's Java projects to
+ * their package fragment roots. A project's classpath is resolved the first
+ * time a JAR is looked up after the project was opened, created, or had its
+ * classpath changed, rather than resolving every classpath on every lookup.
+ */
+final class JarPackageFragmentRootIndex {
+
+  private final ClasspathChangedListener classpathChangedListener = new ClasspathChangedListener() {
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+      for (IJavaElementDelta delta : event.getDelta().getAffectedChildren()) {
+        IJavaElement element = delta.getElement();
+        if (element.getElementType() != IJavaElement.JAVA_PROJECT) {
+          continue;
+        }
+
+        if (delta.getKind() == IJavaElementDelta.REMOVED
+            || (delta.getFlags() & IJavaElementDelta.F_CLOSED) != 0) {
+          removeProject(element.getElementName());
+        }
+      }
+
+      super.elementChanged(event);
+    }
+
+    @Override
+    protected void classpathChanged(IJavaProject javaProject) {
+      removeProject(javaProject.getElementName());
+    }
+  };
+
+  /**
+   * The package fragment roots of each JAR, by the name of the project whose
+   * classpath contains it.
+   */
+  private final Map<File, Map<String, IPackageFragmentRoot>> rootsByJar = new HashMap<File, Map<String, IPackageFragmentRoot>>();
+
+  /**
+   * The JARs on the classpath of each indexed project.
+   */
+  private final Map<String, Set<File>> jarsByProject = new HashMap<String, Set<File>>();
+
+  /**
+   * Incremented whenever projects are removed from the index, so classpaths
+   * resolved while that happened are not published.
+   */
+  private int generation;
+
+  private final Object lock = new Object();
+
+  /**
+   * Returns the package fragment root of the external JAR, or
+   * <code>null</code> if it is not on the classpath of any Java project.
+   * 
+   * @param jarFile the JAR file
+   * @param preferredProjectName the project whose package fragment root should
+   *          be returned if several projects have the JAR on their classpath,
+   *          or <code>null</code>
+   */
+  public IPackageFragmentRoot getPackageFragmentRoot(File jarFile,
+      String preferredProjectName) {
+    indexProjects();
+
+    synchronized (lock) {
+      Map<String, IPackageFragmentRoot> roots = rootsByJar.get(jarFile);
+      if (roots == null) {
+        return null;
+      }
+
+      IPackageFragmentRoot root = (preferredProjectName != null
+          ? roots.get(preferredProjectName) : null);
+      return (root != null ? root : roots.values().iterator().next());
+    }
+  }
+
+  /**
+   * Starts listening for changes to the Java projects.
+   */
+  public void start() {
+    JavaCore.addElementChangedListener(classpathChangedListener);
+  }
+
+  /**
+   * Stops listening for changes, and forgets the indexed projects.
+   */
+  public void stop() {
+    JavaCore.removeElementChangedListener(classpathChangedListener);
+
+    synchronized (lock) {
+      generation++;
+      rootsByJar.clear();
+      jarsByProject.clear();
+    }
+  }
+
+  /**
+   * Returns whether the project's classpath is in the index.
+   */
+  boolean isIndexed(String projectName) {
+    synchronized (lock) {
+      return jarsByProject.containsKey(projectName);
+    }
+  }
+
+  /**
+   * Resolves the classpaths of the Java projects which are not in the index,
+   * and adds them to it. Resolving a classpath may run classpath container
+   * initializers which need workspace or JDT locks, so it is done without
+   * holding {@link #lock}: the classpath listener may hold those locks while
+   * it waits for this one.
+   */
+  private void indexProjects() {
+    IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+    while (true) {
+      List<IProject> unindexedProjects = new ArrayList<IProject>();
+      int resolvedGeneration;
+      synchronized (lock) {
+        for (IProject project : root.getProjects()) {
+          if (!jarsByProject.containsKey(project.getName())) {
+            unindexedProjects.add(project);
+          }
+        }
+        resolvedGeneration = generation;
+      }
+
+      if (unindexedProjects.isEmpty()) {
+        return;
+      }
+
+      Map<String, Map<File, IPackageFragmentRoot>> resolvedProjects =
+          new HashMap<String, Map<File, IPackageFragmentRoot>>();
+      for (IProject project : unindexedProjects) {
+        Map<File, IPackageFragmentRoot> jarRoots = resolveJars(project);
+        if (jarRoots != null) {
+          resolvedProjects.put(project.getName(), jarRoots);
+        }
+      }
+
+      synchronized (lock) {
+        if (generation != resolvedGeneration) {
+          // A classpath changed while they were resolved; resolve them again
+          continue;
+        }
+
+        for (String projectName : resolvedProjects.keySet()) {
+          if (!jarsByProject.containsKey(projectName)) {
+            addProject(projectName, resolvedProjects.get(projectName));
+          }
+        }
+        return;
+      }
+    }
+  }
+
+  private void addProject(String projectName,
+      Map<File, IPackageFragmentRoot> jarRoots) {
+    assert Thread.holdsLock(lock);
+
+    for (Map.Entry<File, IPackageFragmentRoot> entry : jarRoots.entrySet()) {
+      Map<String, IPackageFragmentRoot> roots = rootsByJar.get(entry.getKey());
+      if (roots == null) {
+        roots = new LinkedHashMap<String, IPackageFragmentRoot>();
+        rootsByJar.put(entry.getKey(), roots);
+      }
+      roots.put(projectName, entry.getValue());
+    }
+    jarsByProject.put(projectName, new HashSet<File>(jarRoots.keySet()));
+  }
+
+  /**
+   * Returns the package fragment roots of the external JARs on the project's
+   * classpath, or <code>null</code> if the project should be left out of the
+   * index.
+   */
+  private Map<File, IPackageFragmentRoot> resolveJars(IProject project) {
+    IJavaProject javaProject = JavaCore.create(project);
+    if (!javaProject.exists()) {
+      return null;
+    }
+
+    IClasspathEntry[] classpathEntries;
+    try {
+      classpathEntries = javaProject.getResolvedClasspath(true);
+    } catch (JavaModelException e) {
+      // Left out of the index, so it is tried again on the next lookup
+      GWTPluginLog.logWarning(e, "Could not check " + project.getName()
+          + " for JAR files");
+      return null;
+    }
+
+    Map<File, IPackageFragmentRoot> jarRoots = new HashMap<File, IPackageFragmentRoot>();
+    for (IClasspathEntry classpathEntry : classpathEntries) {
+      if (classpathEntry.getEntryKind() != IClasspathEntry.CPE_LIBRARY) {
+        continue;
+      }
+
+      IPath path = classpathEntry.getPath();
+      jarRoots.put(path.toFile(),
+          javaProject.getPackageFragmentRoot(path.toOSString()));
+    }
+    return jarRoots;
+  }
+
+  private void removeProject(String projectName) {
+    synchronized (lock) {
+      generation++;
+      Set<File> jars = jarsByProject.remove(projectName);
+
+      if (jars == null) {
+        return;
+      }
+
+      for (File jar : jars) {
+        Map<String, IPackageFragmentRoot> roots = rootsByJar.get(jar);
+        roots.remove(projectName);
+        if (roots.isEmpty()) {
+          rootsByJar.remove(jar);
+        }
+      }
+    }
+  }
+
+}
@@ -26,16 +26,30 @@ public class SourceViewerServer extends JettyServer {
 
   public static final SourceViewerServer INSTANCE = new SourceViewerServer();
 
+  private final JarPackageFragmentRootIndex jarIndex = new JarPackageFragmentRootIndex();
+
   public SourceViewerServer() {
     super(SourceViewerServer.class.getClassLoader());
 
     int port = GWTPreferences.getSourceViewerServerPort();
     setPort(port);
-    addServlet(VIEW_SOURCE_SERVLET_PATH, new ViewSourceServlet());
+    addServlet(VIEW_SOURCE_SERVLET_PATH, new ViewSourceServlet(jarIndex));
   }
 
   public String getViewSourceUrl() {
     return "http://localhost:" + getPort() + VIEW_SOURCE_SERVLET_PATH;
   }
 
+  @Override
+  public void start() throws Exception {
+    jarIndex.start();
+    super.start();
+  }
+
+  @Override
+  public void stop() throws Exception {
+    super.stop();
+    jarIndex.stop();
+  }
+
 }
@@ -15,7 +15,6 @@
 package com.google.gwt.eclipse.core.speedtracer;
 
 import com.google.gdt.eclipse.core.ResourceUtils;
-import com.google.gdt.eclipse.platform.jetty.JSON;
 import com.google.gwt.eclipse.core.GWTPluginLog;
 
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -24,10 +23,17 @@ import org.eclipse.core.runtime.Path;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Generates the symbol manifest file required by Speed Tracer to show Java
@@ -44,6 +50,12 @@ public class SymbolManifestGenerator {
     public final String hash;
     public final String moduleName;
 
+    /**
+     * The WAR-relative path of the resource's symbol map, or null if it could
+     * not be copied into the WAR.
+     */
+    public String symbolsPath;
+
     public Resource(String rootRelativePath, String hash, String moduleName) {
       this.rootRelativePath = rootRelativePath;
       this.hash = hash;
@@ -64,6 +76,16 @@ public class SymbolManifestGenerator {
     }
   };
 
+  /**
+   * Orders the resources like the keys of the manifest have always been, so
+   * the generated JSON is easy to read.
+   */
+  private static final Comparator<Resource> RESOURCE_COMPARATOR = new Comparator<Resource>() {
+    public int compare(Resource resource1, Resource resource2) {
+      return resource1.rootRelativePath.compareTo(resource2.rootRelativePath);
+    }
+  };
+
   /**
    * @param warOutFolder the WAR out folder
    * @return the symbol manifest location as a {@link File} object (no existence
@@ -77,6 +99,54 @@ public class SymbolManifestGenerator {
     return new File(warOutFolder, SYMBOLS_FOLDER_NAME);
   }
 
+  /**
+   * Returns whether the destination already holds the source's contents. The
+   * symbol maps are named by the hash of the permutation they describe, so a
+   * destination of the same length which is no older than the source is the
+   * same symbol map.
+   */
+  static boolean isCopyCurrent(File sourceFile, File destFile) {
+    return destFile.isFile() && destFile.length() == sourceFile.length()
+        && destFile.lastModified() >= sourceFile.lastModified();
+  }
+
+  private static void writeJsonString(Writer out, String value)
+      throws IOException {
+    if (value == null) {
+      out.write("null");
+      return;
+    }
+
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.write("\\\"");
+          break;
+        case '\\':
+          out.write("\\\\");
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          if (c < ' ') {
+            out.write(String.format("\\u%04x", (int) c));
+          } else {
+            out.write(c);
+          }
+      }
+    }
+    out.write('"');
+  }
+
   private final List<String> moduleNames;
 
   private final File extraFolder;
@@ -85,6 +155,8 @@ public class SymbolManifestGenerator {
 
   private final File warOutFolder;
 
+  private int copiedSymbolMapCount;
+
   /**
    * @param warOutFolder the WAR output directory (also assumed to be the folder
    *          holding a directory for each module's compiled output)
@@ -105,29 +177,64 @@ public class SymbolManifestGenerator {
    * @throws OperationCanceledException
    */
   public String generate() throws OperationCanceledException {
-    // TreeMap so generated JSON is easier to read since ordering is maintained
-    Map<String, Object> rootJsonMap = new TreeMap<String, Object>();
+    StringWriter out = new StringWriter();
+    try {
+      generate(out);
+    } catch (IOException e) {
+      // Not thrown by a StringWriter
+      throw new RuntimeException(e);
+    }
+    return out.toString();
+  }
 
+  /**
+   * Copies the symbol maps into the WAR folder, and writes the symbol manifest
+   * to the writer as it goes. Symbol maps which are already in the WAR folder
+   * are not copied again.
+   * 
+   * @throws IOException if the manifest could not be written
+   * @throws OperationCanceledException if interrupted while copying the symbol
+   *           maps
+   */
+  public void generate(Writer out) throws IOException,
+      OperationCanceledException {
     List<Resource> resources = collectResources();
-    for (Resource resource : resources) {
-      Map<String, Object> resourceJsonMap = new TreeMap<String, Object>();
-      rootJsonMap.put(resource.rootRelativePath, resourceJsonMap);
-
-      addSymbolsForResourceToResourceJsonMap(resource, resourceJsonMap);
-      resourceJsonMap.put("type", "gwt");
-
-      Map<String, Object> sourceViewerServerMap = new TreeMap<String, Object>();
-      resourceJsonMap.put("sourceViewerServer", sourceViewerServerMap);
-      sourceViewerServerMap.put("url",
-          SourceViewerServer.INSTANCE.getViewSourceUrl());
-      sourceViewerServerMap.put(PROJECT_KEY, projectName);
+    copySymbolMaps(resources);
+    Collections.sort(resources, RESOURCE_COMPARATOR);
+
+    String viewSourceUrl = SourceViewerServer.INSTANCE.getViewSourceUrl();
+    out.write('{');
+    for (int i = 0; i < resources.size(); i++) {
+      Resource resource = resources.get(i);
+      if (i > 0) {
+        out.write(',');
+      }
+      writeJsonString(out, resource.rootRelativePath);
+      out.write(":{\"sourceViewerServer\":{");
+      writeJsonString(out, PROJECT_KEY);
+      out.write(':');
+      writeJsonString(out, projectName);
+      out.write(",\"url\":");
+      writeJsonString(out, viewSourceUrl);
+      out.write('}');
+      if (resource.symbolsPath != null) {
+        out.write(",\"symbols\":");
+        writeJsonString(out, resource.symbolsPath);
+      }
+      out.write(",\"type\":\"gwt\"}");
     }
+    out.write('}');
+  }
 
-    return JSON.toString(rootJsonMap);
+  /**
+   * Returns the number of symbol maps copied into the WAR folder by the last
+   * generation.
+   */
+  synchronized int getCopiedSymbolMapCount() {
+    return copiedSymbolMapCount;
   }
 
-  private void addSymbolsForResourceToResourceJsonMap(Resource resource,
-      Map<String, Object> resourceJsonMap) {
+  private void addSymbolsForResource(Resource resource) {
     File symbolMapFile = findValidSymbolMapFile(resource);
     if (symbolMapFile == null) {
       GWTPluginLog.logWarning("Could not find a symbol map file for "
@@ -140,15 +247,21 @@ public class SymbolManifestGenerator {
         + "/" + resource.hash + ".symbolMap");
     File destSymbolMapFile = new File(warOutFolder,
         destSymbolMapRelativePath.toOSString());
-    try {
-      ResourceUtils.copyFile(symbolMapFile, destSymbolMapFile);
-    } catch (IOException e) {
-      GWTPluginLog.logError(e, "Could not copy the symbol map from "
-          + symbolMapFile.getPath() + " to " + destSymbolMapFile.getPath());
-      return;
+    if (!isCopyCurrent(symbolMapFile, destSymbolMapFile)) {
+      try {
+        ResourceUtils.copyFile(symbolMapFile, destSymbolMapFile);
+      } catch (IOException e) {
+        GWTPluginLog.logError(e, "Could not copy the symbol map from "
+            + symbolMapFile.getPath() + " to " + destSymbolMapFile.getPath());
+        return;
+      }
+
+      synchronized (this) {
+        copiedSymbolMapCount++;
+      }
     }
 
-    resourceJsonMap.put("symbols", destSymbolMapRelativePath.toString());
+    resource.symbolsPath = destSymbolMapRelativePath.toString();
   }
 
   private File[] collectResourceFilesForModule(File moduleFolder) {
@@ -180,6 +293,50 @@ public class SymbolManifestGenerator {
     return resources;
   }
 
+  /**
+   * Copies the symbol maps of the resources, across modules and permutations,
+   * in parallel.
+   */
+  private void copySymbolMaps(List<Resource> resources)
+      throws OperationCanceledException {
+    synchronized (this) {
+      copiedSymbolMapCount = 0;
+    }
+
+    int parallelism = Math.min(resources.size(),
+        Runtime.getRuntime().availableProcessors());
+    if (parallelism <= 1) {
+      for (Resource resource : resources) {
+        addSymbolsForResource(resource);
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (final Resource resource : resources) {
+        futures.add(executor.submit(new Callable<Void>() {
+          public Void call() {
+            addSymbolsForResource(resource);
+            return null;
+          }
+        }));
+      }
+
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationCanceledException();
+    } catch (ExecutionException e) {
+      GWTPluginLog.logError(e.getCause(), "Could not copy the symbol maps");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private File findValidSymbolMapFile(Resource resource) {
     /*
      * TODO: require less knowledge of the layout of the "extra" folder. One way
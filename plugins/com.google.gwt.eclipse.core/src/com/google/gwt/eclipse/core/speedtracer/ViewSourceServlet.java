@@ -22,18 +22,13 @@ import com.google.gdt.eclipse.core.java.Pair;
 import com.google.gwt.eclipse.core.GWTPluginLog;
 
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.jdt.core.IClasspathEntry;
-import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IClassFile;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.internal.ui.javaeditor.EditorUtility;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.text.BadLocationException;
@@ -52,9 +47,8 @@ import org.eclipse.ui.texteditor.ITextEditor;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -71,12 +65,35 @@ public class ViewSourceServlet extends HttpServlet {
 
   private static final String MAX_SUPPORTED_API_VERSION = API_VERSION_1;
 
+  /**
+   * The number of recently viewed class files in JARs to remember.
+   */
+  private static final int RECENT_CLASS_FILES_CAPACITY = 32;
+
   private static Pair<Integer, String> logWarningAndReturnStatus(
       Integer statusCode, String message) {
     return new Pair<Integer, String>(statusCode, "{'message': '" + message
         + "'}");
   }
 
+  private final JarPackageFragmentRootIndex jarIndex;
+
+  /**
+   * The recently viewed class files, by the JAR, the file in the JAR and the
+   * preferred project, least recently viewed first.
+   */
+  private final Map<String, IClassFile> recentClassFiles = new LinkedHashMap<String, IClassFile>(
+      RECENT_CLASS_FILES_CAPACITY, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, IClassFile> eldest) {
+      return size() > RECENT_CLASS_FILES_CAPACITY;
+    }
+  };
+
+  ViewSourceServlet(JarPackageFragmentRootIndex jarIndex) {
+    this.jarIndex = jarIndex;
+  }
+
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
@@ -127,8 +144,7 @@ public class ViewSourceServlet extends HttpServlet {
   }
 
   private IPackageFragmentRoot getPackageFragmentRoot(String jarPathString,
-      String preferredProjectName)
-      throws IOException {
+      String preferredProjectName) {
     try {
       IFile jarIFile = getFile(jarPathString);
 
@@ -138,43 +154,9 @@ public class ViewSourceServlet extends HttpServlet {
       // JAR must not be in the workspace (or is not a file), continue..
     }
 
-    File jarFile = new File(jarPathString);
-
-    // Iterate projects to find the external JAR
-    IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-    List<IProject> projects = new ArrayList<IProject>(
-        Arrays.asList(root.getProjects()));
-    IProject preferredProject = preferredProjectName != null
-        ? root.getProject(preferredProjectName) : null;
-    if (preferredProject != null && preferredProject.exists()) {
-      // Search the preferred project first
-      projects.remove(preferredProject);
-      projects.add(0, preferredProject);
-    }
-
-    for (IProject project : projects) {
-      IJavaProject javaProject = JavaCore.create(project);
-      if (!javaProject.exists()) {
-        continue;
-      }
-
-      try {
-        IClasspathEntry[] classpathEntries = javaProject.getResolvedClasspath(true);
-        for (IClasspathEntry classpathEntry : classpathEntries) {
-          IPath path = classpathEntry.getPath();
-          if (jarFile.equals(path.toFile())) {
-            return javaProject.getPackageFragmentRoot(path.toOSString());
-          }
-        }
-
-      } catch (JavaModelException e) {
-        GWTPluginLog.logWarning(e, "Could not check " + project.getName()
-            + " for JAR file");
-        continue;
-      }
-    }
-
-    return null;
+    // The JAR is external, so look it up among the projects' classpaths
+    return jarIndex.getPackageFragmentRoot(new File(jarPathString),
+        preferredProjectName);
   }
 
   /*
@@ -356,17 +338,24 @@ public class ViewSourceServlet extends HttpServlet {
     return part[0];
   }
 
-  private IEditorPart openEditorForFileInJar(String jarPathString,
+  /**
+   * Returns the class file for the file in the JAR, or <code>null</code> if it
+   * cannot be found. Recently viewed class files are remembered, so returning
+   * to them does not look up the JAR again.
+   */
+  private IClassFile getClassFile(String jarPathString,
       String classpathRelativeFilePathString, String preferredProjectName) {
-    IPackageFragmentRoot jarPackageFragmentRoot;
-    try {
-      jarPackageFragmentRoot = getPackageFragmentRoot(jarPathString,
-          preferredProjectName);
-    } catch (IOException e) {
-      GWTPluginLog.logError(e);
-      return null;
+    String key = jarPathString + "!" + classpathRelativeFilePathString + "@"
+        + preferredProjectName;
+    synchronized (recentClassFiles) {
+      IClassFile classFile = recentClassFiles.get(key);
+      if (classFile != null && classFile.exists()) {
+        return classFile;
+      }
     }
 
+    IPackageFragmentRoot jarPackageFragmentRoot = getPackageFragmentRoot(
+        jarPathString, preferredProjectName);
     if (jarPackageFragmentRoot == null || !jarPackageFragmentRoot.exists()) {
       GWTPluginLog.logError("Could not view source because the file at \""
           + jarPathString
@@ -399,26 +388,32 @@ public class ViewSourceServlet extends HttpServlet {
       return null;
     }
 
-    try {
-      final IPackageFragment pf = packageFragment;
-      final String finalClassFileName = classFileName;
-      final IEditorPart[] part = new IEditorPart[1];
-      Display.getDefault().syncExec(new Runnable() {
-        public void run() {
-          try {
-            part[0] = EditorUtility.openInEditor(
-                pf.getClassFile(finalClassFileName), true);
-          } catch (Throwable e) {
-            GWTPluginLog.logError(e, "Could not open java editor");
-          }
-        }
-      });
-      return part[0];
-    } catch (Throwable e) {
-      GWTPluginLog.logError(e, "Could not get files from the package "
-          + packageFragment);
+    IClassFile classFile = packageFragment.getClassFile(classFileName);
+    synchronized (recentClassFiles) {
+      recentClassFiles.put(key, classFile);
+    }
+    return classFile;
+  }
+
+  private IEditorPart openEditorForFileInJar(String jarPathString,
+      String classpathRelativeFilePathString, String preferredProjectName) {
+    final IClassFile classFile = getClassFile(jarPathString,
+        classpathRelativeFilePathString, preferredProjectName);
+    if (classFile == null) {
       return null;
     }
+
+    final IEditorPart[] part = new IEditorPart[1];
+    Display.getDefault().syncExec(new Runnable() {
+      public void run() {
+        try {
+          part[0] = EditorUtility.openInEditor(classFile, true);
+        } catch (Throwable e) {
+          GWTPluginLog.logError(e, "Could not open java editor");
+        }
+      }
+    });
+    return part[0];
   }
 
   private void showErrorDialog(final String message) {
@@ -25,6 +25,10 @@ public final class UiBinderConstants {
 
   public static final String GWT_USER_LIBRARY_UI_PACKAGE_NAME = "com.google.gwt.user.client.ui";
 
+  public static final String GWT_USER_LIBRARY_IS_WIDGET_INTERFACE_NAME = "IsWidget";
+
+  public static final String GWT_USER_LIBRARY_UI_OBJECT_CLASS_NAME = "UIObject";
+
   public static final String GWT_USER_LIBRARY_WIDGET_CLASS_NAME = "Widget";
 
   // Disabled due to: 
@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.uibinder.contentassist;
+
+import com.google.gdt.eclipse.core.StatusUtilities;
+import com.google.gdt.eclipse.core.java.ClasspathChangedListener;
+import com.google.gdt.eclipse.core.java.JavaModelSearch;
+import com.google.gwt.eclipse.core.GWTPluginLog;
+import com.google.gwt.eclipse.core.uibinder.UiBinderConstants;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.ITypeHierarchyChangedListener;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Indexes the types which can be used as elements in a UiBinder template (the
+ * subtypes of <code>UIObject</code> and <code>IsWidget</code>) on each
+ * project's classpath, grouped by package.
+ * <p>
+ * A project is indexed in the background the first time it is asked for, and
+ * until then {@link #getWidgetTypes(IJavaProject)} returns <code>null</code>
+ * so callers can fall back to JDT. The index is kept current by the type
+ * hierarchies it was built from: when JDT reports that one of them has
+ * changed, the project is re-indexed in the background, and the previous
+ * index is served in the meantime. A project whose classpath changes is
+ * re-indexed from scratch, so one which did not have GWT on its classpath when
+ * it was first indexed is picked up once it does, and projects which are
+ * closed or deleted are forgotten.
+ * <p>
+ * Until the index is started nothing is indexed. This class is thread-safe.
+ */
+public enum WidgetTypeIndex {
+  INSTANCE;
+
+  /**
+   * A type which can be used as an element in a UiBinder template.
+   */
+  public static final class WidgetType implements Comparable<WidgetType> {
+
+    private final String elementName;
+
+    private final String packageName;
+
+    private WidgetType(IType type) {
+      elementName = type.getTypeQualifiedName('.');
+      packageName = type.getPackageFragment().getElementName();
+    }
+
+    public int compareTo(WidgetType other) {
+      int c = elementName.compareTo(other.elementName);
+      return (c != 0 ? c : packageName.compareTo(other.packageName));
+    }
+
+    /**
+     * Returns the name of the element for the type, which is its simple name
+     * qualified by any enclosing types (e.g. <code>Outer.Inner</code>).
+     */
+    public String getElementName() {
+      return elementName;
+    }
+
+    public String getPackageName() {
+      return packageName;
+    }
+  }
+
+  /**
+   * The widget types on a project's classpath, and the hierarchies they were
+   * found in.
+   */
+  private class ProjectIndex implements ITypeHierarchyChangedListener {
+
+    private final List<ITypeHierarchy> hierarchies = new ArrayList<ITypeHierarchy>();
+
+    /**
+     * Whether the project's classpath has changed since its hierarchies were
+     * created, so they must be created again.
+     */
+    private volatile boolean classpathChanged;
+
+    private final IJavaProject javaProject;
+
+    /**
+     * The widget types by package name, or <code>null</code> until the project
+     * has been indexed, or if GWT's widget types are not on its classpath.
+     */
+    private volatile Map<String, List<WidgetType>> widgetTypes;
+
+    public ProjectIndex(IJavaProject javaProject) {
+      this.javaProject = javaProject;
+    }
+
+    public void typeHierarchyChanged(ITypeHierarchy typeHierarchy) {
+      scheduleIndexing(this);
+    }
+
+    /**
+     * Creates the hierarchies if this is the first time the project is indexed
+     * or its classpath has changed, and otherwise refreshes them.
+     */
+    private void index(IProgressMonitor monitor) throws JavaModelException {
+      if (classpathChanged) {
+        classpathChanged = false;
+        dispose();
+      }
+
+      if (hierarchies.isEmpty()) {
+        createHierarchy(UiBinderConstants.GWT_USER_LIBRARY_UI_OBJECT_CLASS_NAME,
+            monitor);
+        createHierarchy(
+            UiBinderConstants.GWT_USER_LIBRARY_IS_WIDGET_INTERFACE_NAME,
+            monitor);
+        if (hierarchies.isEmpty()) {
+          // GWT is not on the classpath; try again once the classpath changes
+          widgetTypes = null;
+          return;
+        }
+      } else {
+        for (ITypeHierarchy hierarchy : hierarchies) {
+          hierarchy.refresh(monitor);
+        }
+      }
+
+      Set<IType> types = new LinkedHashSet<IType>();
+      for (ITypeHierarchy hierarchy : hierarchies) {
+        IType baseType = hierarchy.getType();
+        types.add(baseType);
+        Collections.addAll(types, hierarchy.getAllSubtypes(baseType));
+      }
+
+      Map<String, List<WidgetType>> newWidgetTypes = new TreeMap<String, List<WidgetType>>();
+      for (IType type : types) {
+        if (!isWidgetType(type)) {
+          continue;
+        }
+
+        WidgetType widgetType = new WidgetType(type);
+        List<WidgetType> packageTypes = newWidgetTypes.get(widgetType.getPackageName());
+        if (packageTypes == null) {
+          packageTypes = new ArrayList<WidgetType>();
+          newWidgetTypes.put(widgetType.getPackageName(), packageTypes);
+        }
+        packageTypes.add(widgetType);
+      }
+
+      for (List<WidgetType> packageTypes : newWidgetTypes.values()) {
+        Collections.sort(packageTypes);
+      }
+      widgetTypes = Collections.unmodifiableMap(newWidgetTypes);
+    }
+
+    private void createHierarchy(String simpleTypeName,
+        IProgressMonitor monitor) throws JavaModelException {
+      IType baseType = JavaModelSearch.findType(javaProject,
+          UiBinderConstants.GWT_USER_LIBRARY_UI_PACKAGE_NAME + "."
+              + simpleTypeName);
+      if (baseType != null) {
+        ITypeHierarchy hierarchy = baseType.newTypeHierarchy(javaProject,
+            monitor);
+        hierarchy.addTypeHierarchyChangedListener(this);
+        hierarchies.add(hierarchy);
+      }
+    }
+
+    private void dispose() {
+      for (ITypeHierarchy hierarchy : hierarchies) {
+        hierarchy.removeTypeHierarchyChangedListener(this);
+      }
+      hierarchies.clear();
+    }
+  }
+
+  /**
+   * Returns whether the type can be instantiated by UiBinder, which excludes
+   * interfaces and types that are not visible to the generated code.
+   */
+  private static boolean isWidgetType(IType type) {
+    try {
+      if (!type.isClass() || type.isAnonymous() || type.isLocal()) {
+        return false;
+      }
+
+      int flags = type.getFlags();
+      if (!Flags.isPublic(flags)) {
+        return false;
+      }
+
+      return type.getDeclaringType() == null || Flags.isStatic(flags);
+    } catch (JavaModelException e) {
+      // The type is gone or unreadable, so it cannot be proposed anyway
+      return false;
+    }
+  }
+
+  /**
+   * Re-indexes projects whose classpath changes, and forgets the ones which are
+   * closed or deleted.
+   */
+  private final ClasspathChangedListener classpathChangedListener = new ClasspathChangedListener() {
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+      for (IJavaElementDelta delta : event.getDelta().getAffectedChildren()) {
+        IJavaElement element = delta.getElement();
+        if (element.getElementType() != IJavaElement.JAVA_PROJECT) {
+          continue;
+        }
+
+        int flags = delta.getFlags();
+        if (delta.getKind() == IJavaElementDelta.REMOVED
+            || (flags & IJavaElementDelta.F_CLOSED) != 0) {
+          evictProject((IJavaProject) element);
+        } else if ((flags & IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED) != 0
+            && (flags & IJavaElementDelta.F_CLASSPATH_CHANGED) == 0) {
+          // A classpath container was resolved differently
+          classpathChanged((IJavaProject) element);
+        }
+      }
+
+      super.elementChanged(event);
+    }
+
+    @Override
+    protected void classpathChanged(IJavaProject javaProject) {
+      ProjectIndex projectIndex;
+      synchronized (WidgetTypeIndex.this) {
+        projectIndex = projects.get(javaProject);
+      }
+      if (projectIndex != null) {
+        projectIndex.classpathChanged = true;
+        scheduleIndexing(projectIndex);
+      }
+    }
+  };
+
+  /**
+   * Indexes the projects which are waiting to be (re-)indexed, and disposes of
+   * the ones which have been evicted.
+   */
+  private final Job indexingJob = new Job("Indexing GWT widgets") {
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+      ProjectIndex projectIndex;
+      while ((projectIndex = nextPendingProject()) != null) {
+        if (monitor.isCanceled()) {
+          return Status.CANCEL_STATUS;
+        }
+
+        if (!isIndexed(projectIndex) || !projectIndex.javaProject.exists()) {
+          removeProject(projectIndex);
+          continue;
+        }
+
+        try {
+          projectIndex.index(monitor);
+        } catch (JavaModelException e) {
+          GWTPluginLog.logError(e, "Could not index the widgets in "
+              + projectIndex.javaProject.getElementName());
+          removeProject(projectIndex);
+        }
+      }
+      return StatusUtilities.OK_STATUS;
+    }
+  };
+
+  /**
+   * The projects waiting to be (re-)indexed, in the order they were asked for.
+   */
+  private final Set<ProjectIndex> pendingProjects = new LinkedHashSet<ProjectIndex>();
+
+  private final Map<IJavaProject, ProjectIndex> projects = new HashMap<IJavaProject, ProjectIndex>();
+
+  private volatile boolean started;
+
+  private WidgetTypeIndex() {
+    indexingJob.setSystem(true);
+  }
+
+  /**
+   * Returns the widget types on the project's classpath by package name, with
+   * the types of each package sorted by element name.
+   * 
+   * @return the widget types, or <code>null</code> if the project has not been
+   *         indexed yet (in which case it will be), or GWT's widget types are
+   *         not on its classpath
+   */
+  public Map<String, List<WidgetType>> getWidgetTypes(IJavaProject javaProject) {
+    if (!started) {
+      return null;
+    }
+
+    ProjectIndex projectIndex;
+    synchronized (this) {
+      projectIndex = projects.get(javaProject);
+      if (projectIndex == null) {
+        projectIndex = new ProjectIndex(javaProject);
+        projects.put(javaProject, projectIndex);
+        scheduleIndexing(projectIndex);
+      }
+    }
+    return projectIndex.widgetTypes;
+  }
+
+  /**
+   * Starts indexing projects as they are asked for.
+   */
+  public void start() {
+    JavaCore.addElementChangedListener(classpathChangedListener,
+        ElementChangedEvent.POST_CHANGE);
+    started = true;
+  }
+
+  /**
+   * Stops indexing and discards the indexed projects.
+   */
+  public void stop() {
+    started = false;
+    JavaCore.removeElementChangedListener(classpathChangedListener);
+    indexingJob.cancel();
+    try {
+      indexingJob.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized (this) {
+      for (ProjectIndex projectIndex : projects.values()) {
+        projectIndex.dispose();
+      }
+      // Evicted projects which were waiting to be disposed of
+      for (ProjectIndex projectIndex : pendingProjects) {
+        projectIndex.dispose();
+      }
+      projects.clear();
+      pendingProjects.clear();
+    }
+  }
+
+  /**
+   * Forgets a project which has been closed or deleted. Its hierarchies are
+   * disposed of by the indexing job, which may still be using them.
+   */
+  private synchronized void evictProject(IJavaProject javaProject) {
+    ProjectIndex projectIndex = projects.remove(javaProject);
+    if (projectIndex != null && started) {
+      pendingProjects.add(projectIndex);
+      indexingJob.schedule();
+    }
+  }
+
+  private synchronized boolean isIndexed(ProjectIndex projectIndex) {
+    return projects.get(projectIndex.javaProject) == projectIndex;
+  }
+
+  private synchronized ProjectIndex nextPendingProject() {
+    if (!started || pendingProjects.isEmpty()) {
+      return null;
+    }
+
+    ProjectIndex projectIndex = pendingProjects.iterator().next();
+    pendingProjects.remove(projectIndex);
+    return projectIndex;
+  }
+
+  private synchronized void removeProject(ProjectIndex projectIndex) {
+    projectIndex.dispose();
+    if (projects.get(projectIndex.javaProject) == projectIndex) {
+      projects.remove(projectIndex.javaProject);
+    }
+  }
+
+  private synchronized void scheduleIndexing(ProjectIndex projectIndex) {
+    if (started && projects.get(projectIndex.javaProject) == projectIndex) {
+      pendingProjects.add(projectIndex);
+      indexingJob.schedule();
+    }
+  }
+}
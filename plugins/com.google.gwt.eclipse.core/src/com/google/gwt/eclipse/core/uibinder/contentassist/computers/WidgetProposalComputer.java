@@ -21,12 +21,17 @@ import com.google.gwt.eclipse.core.GWTPluginLog;
 import com.google.gwt.eclipse.core.uibinder.PackageBasedNamespaceManager;
 import com.google.gwt.eclipse.core.uibinder.UiBinderException;
 import com.google.gwt.eclipse.core.uibinder.contentassist.AbstractCompletionProposal;
+import com.google.gwt.eclipse.core.uibinder.contentassist.WidgetTypeIndex;
+import com.google.gwt.eclipse.core.uibinder.contentassist.WidgetTypeIndex.WidgetType;
 
 import org.eclipse.jdt.core.CompletionProposal;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.eval.IEvaluationContext;
+import org.eclipse.jdt.ui.ISharedImages;
+import org.eclipse.jdt.ui.JavaUI;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.ITextViewer;
@@ -51,7 +56,10 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Computes a set of content proposals for subclasses of GWT's
@@ -360,7 +368,6 @@ public class WidgetProposalComputer extends AbstractJavaProposalComputer {
       return;
     }
 
-    IEvaluationContext evalContext = createEvaluationContext();
     String packageName = null;
     String prefix = XmlUtilities.getPrefix(enteredText);
     if (prefix != null) {
@@ -372,11 +379,20 @@ public class WidgetProposalComputer extends AbstractJavaProposalComputer {
       }
     }
 
+    String unprefixedEnteredText = XmlUtilities.getUnprefixed(enteredText);
+
+    Map<String, List<WidgetType>> widgetTypes = WidgetTypeIndex.INSTANCE.getWidgetTypes(getJavaProject());
+    if (widgetTypes != null) {
+      computeIndexedProposals(widgetTypes, packageName,
+          unprefixedEnteredText.trim(), proposals);
+      return;
+    }
+
+    // The project's widgets are still being indexed, so ask JDT instead
+    IEvaluationContext evalContext = createEvaluationContext();
     ProposalGeneratingCompletionRequestor requestor = new WidgetCompletionRequestor(
         packageName);
 
-    String unprefixedEnteredText = XmlUtilities.getUnprefixed(enteredText);
-
     try {
       if (unprefixedEnteredText.trim().length() > 0) {
         evalContext.codeComplete(enteredText, enteredText.length(), requestor);
@@ -393,6 +409,46 @@ public class WidgetProposalComputer extends AbstractJavaProposalComputer {
     }
   }
 
+  /**
+   * Proposes the indexed widget types in the package (or in any package, if it
+   * is <code>null</code>) whose names match the entered text.
+   */
+  private void computeIndexedProposals(
+      Map<String, List<WidgetType>> widgetTypes, String packageName,
+      String unprefixedEnteredText, List<ICompletionProposal> proposals) {
+    List<WidgetType> candidates = new ArrayList<WidgetType>();
+    if (packageName != null) {
+      List<WidgetType> packageTypes = widgetTypes.get(packageName);
+      if (packageTypes != null) {
+        candidates.addAll(packageTypes);
+      }
+    } else {
+      for (List<WidgetType> packageTypes : widgetTypes.values()) {
+        candidates.addAll(packageTypes);
+      }
+      Collections.sort(candidates);
+    }
+
+    char[] pattern = unprefixedEnteredText.toCharArray();
+    Image image = JavaUI.getSharedImages().getImage(
+        ISharedImages.IMG_OBJS_CLASS);
+    for (WidgetType widgetType : candidates) {
+      char[] name = widgetType.getElementName().toCharArray();
+      if (pattern.length > 0
+          && !CharOperation.prefixEquals(pattern, name, false)
+          && !CharOperation.camelCaseMatch(pattern, name)) {
+        continue;
+      }
+
+      // Display it the way JDT would
+      String displayString = widgetType.getElementName() + " - "
+          + widgetType.getPackageName();
+      proposals.add(new WidgetProposal(widgetType.getElementName(),
+          widgetType.getPackageName(), null, displayString, image,
+          getReplaceOffset(), getReplaceLength(), packageManager));
+    }
+  }
+
   private boolean isWidgetAllowed() {
     if (parentElement == null) {
       // No parent element, widget not allowed
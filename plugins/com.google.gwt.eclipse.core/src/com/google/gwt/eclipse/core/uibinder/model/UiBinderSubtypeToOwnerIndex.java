@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.Map.Entry;
 
 /**
@@ -38,6 +39,10 @@ import java.util.Map.Entry;
  * to automatically re-validate all dependent UiBinder owner classes when a
  * UiBinder subtype changes.
  * <p>
+ * An overlay of an index (see {@link #createOverlay}) reads through to it, but
+ * keeps its own modifications to itself, so a reconcile can update it without
+ * copying the index. The copy constructor takes a snapshot instead.
+ * <p>
  * This class is fully thread-safe.
  */
 public class UiBinderSubtypeToOwnerIndex {
@@ -138,6 +143,15 @@ public class UiBinderSubtypeToOwnerIndex {
 
   private static final String KEY_UIBINDER_SUBTYPE_AND_OWNER_ENTRY = "entry";
 
+  /**
+   * Returns an overlay of the index, which reads through to it but keeps its
+   * own modifications to itself. Creating one does not copy the index.
+   */
+  public static UiBinderSubtypeToOwnerIndex createOverlay(
+      UiBinderSubtypeToOwnerIndex base) {
+    return new UiBinderSubtypeToOwnerIndex(base, new HashMap<IType, String>());
+  }
+
   public static UiBinderSubtypeToOwnerIndex load(IMemento memento)
       throws PersistenceException {
     UiBinderSubtypeToOwnerIndex index = new UiBinderSubtypeToOwnerIndex();
@@ -164,34 +178,42 @@ public class UiBinderSubtypeToOwnerIndex {
     return index;
   }
 
+  /**
+   * The index this is an overlay of, or <code>null</code>.
+   */
+  private final UiBinderSubtypeToOwnerIndex base;
+
   /**
    * Synchronized via {@link Collections#synchronizedMap(Map)}, ensure to follow
-   * the contract specified by that method.
+   * the contract specified by that method. In an overlay, this only contains
+   * the UiBinder subtypes which have been modified, and the ones which have
+   * been removed map to <code>null</code>.
    */
   private final Map<IType, String> uiBinderToOwnerClass;
 
+  /**
+   * Incremented each time the index is modified.
+   */
+  private final AtomicLong modificationCount = new AtomicLong();
+
   public UiBinderSubtypeToOwnerIndex() {
-    this.uiBinderToOwnerClass = Collections.synchronizedMap(new HashMap<IType, String>());
+    this(null, new HashMap<IType, String>());
   }
 
   public UiBinderSubtypeToOwnerIndex(UiBinderSubtypeToOwnerIndex original) {
-    synchronized (original.uiBinderToOwnerClass) {
-      // Lock on the original since the ctor will iterate over the
-      // original's elements
-      this.uiBinderToOwnerClass = Collections.synchronizedMap(new HashMap<IType, String>(
-          original.uiBinderToOwnerClass));
-    }
+    this(null, original.copyEntries());
+  }
+
+  private UiBinderSubtypeToOwnerIndex(UiBinderSubtypeToOwnerIndex base,
+      Map<IType, String> uiBinderToOwnerClass) {
+    this.base = base;
+    this.uiBinderToOwnerClass = Collections.synchronizedMap(uiBinderToOwnerClass);
   }
 
   public void clear(IProject project) {
     // Copy the set so we don't get a ConcurrentModificationException as we
     // remove
-    Set<IType> uiBinderTypes;
-    synchronized (uiBinderToOwnerClass) {
-      // The ctor for HashSet will iterate over the given key set, so
-      // lock
-      uiBinderTypes = new HashSet<IType>(uiBinderToOwnerClass.keySet());
-    }
+    Set<IType> uiBinderTypes = getAllUiBinderTypes();
 
     for (IType uiBinderType : uiBinderTypes) {
       if (uiBinderType.getJavaProject().getProject().equals(project)) {
@@ -201,38 +223,26 @@ public class UiBinderSubtypeToOwnerIndex {
   }
 
   public boolean containsOwnerType(String typeName) {
-    return uiBinderToOwnerClass.containsValue(typeName);
+    return isOwnerType(typeName);
   }
 
   public boolean containsUiBinderType(IType type) {
-    return uiBinderToOwnerClass.containsKey(type);
+    return getOwnerTypeName(type) != null;
   }
 
   /**
    * Returns a new set containing all of the owner qualified type names.
    */
   public Set<String> getAllOwnerTypeNames() {
-    synchronized (uiBinderToOwnerClass) {
-      // The ctor for HashSet will iterate over the given values, so
-      // lock
-      return Collections.unmodifiableSet(new HashSet<String>(
-          uiBinderToOwnerClass.values()));
-    }
+    return Collections.unmodifiableSet(new HashSet<String>(
+        copyEntries().values()));
   }
 
   /**
    * Returns a new set containing all of the UiBinder subtypes.
    */
   public Set<IType> getAllUiBinderTypes() {
-    synchronized (uiBinderToOwnerClass) {
-      /*
-       * Need to wrap in a new HashSet since Collections.unmodifiableSet returns
-       * a view of the original set, and we do not want to leak out the original
-       * key set since iterating over it needs to be synchronized.
-       */
-      return Collections.unmodifiableSet(new HashSet<IType>(
-          uiBinderToOwnerClass.keySet()));
-    }
+    return Collections.unmodifiableSet(copyEntries().keySet());
   }
 
   /**
@@ -240,17 +250,27 @@ public class UiBinderSubtypeToOwnerIndex {
    */
   public Set<UiBinderSubtypeAndOwner> getAllUiBinderTypesAndOwners() {
     Set<UiBinderSubtypeAndOwner> entries = new HashSet<UiBinderSubtypeAndOwner>();
-    synchronized (uiBinderToOwnerClass) {
-      for (Entry<IType, String> mapEntry : uiBinderToOwnerClass.entrySet()) {
-        entries.add(new UiBinderSubtypeAndOwner(mapEntry.getKey(),
-            mapEntry.getValue()));
-      }
+    for (Entry<IType, String> mapEntry : copyEntries().entrySet()) {
+      entries.add(new UiBinderSubtypeAndOwner(mapEntry.getKey(),
+          mapEntry.getValue()));
     }
     return entries;
   }
 
+  /**
+   * Returns a number which changes whenever the index is modified.
+   */
+  public long getModificationCount() {
+    return modificationCount.get();
+  }
+
   public String getOwnerTypeName(IType uiBinderType) {
-    return uiBinderToOwnerClass.get(uiBinderType);
+    synchronized (uiBinderToOwnerClass) {
+      if (base == null || uiBinderToOwnerClass.containsKey(uiBinderType)) {
+        return uiBinderToOwnerClass.get(uiBinderType);
+      }
+    }
+    return base.getOwnerTypeName(uiBinderType);
   }
 
   /**
@@ -260,11 +280,15 @@ public class UiBinderSubtypeToOwnerIndex {
    * @param ownerType the qualified owner type
    */
   public Set<IType> getUiBinderTypes(String ownerType) {
-    Set<IType> uiBinderTypes = new HashSet<IType>();
+    Set<IType> uiBinderTypes = (base != null
+        ? base.getUiBinderTypes(ownerType) : new HashSet<IType>());
     synchronized (uiBinderToOwnerClass) {
-      for (IType uiBinderType : uiBinderToOwnerClass.keySet()) {
-        if (uiBinderToOwnerClass.get(uiBinderType).equals(ownerType)) {
-          uiBinderTypes.add(uiBinderType);
+      for (Entry<IType, String> mapEntry : uiBinderToOwnerClass.entrySet()) {
+        if (ownerType.equals(mapEntry.getValue())) {
+          uiBinderTypes.add(mapEntry.getKey());
+        } else {
+          // Modified in the overlay to have another owner, or removed
+          uiBinderTypes.remove(mapEntry.getKey());
         }
       }
     }
@@ -272,7 +296,10 @@ public class UiBinderSubtypeToOwnerIndex {
   }
 
   public boolean isOwnerType(String type) {
-    return uiBinderToOwnerClass.containsValue(type);
+    if (base == null) {
+      return uiBinderToOwnerClass.containsValue(type);
+    }
+    return !getUiBinderTypes(type).isEmpty();
   }
 
   public void persist(IMemento memento) {
@@ -282,11 +309,29 @@ public class UiBinderSubtypeToOwnerIndex {
   }
 
   public void removeUiBinderType(IType uiBinderType) {
-    uiBinderToOwnerClass.remove(uiBinderType);
+    if (base == null) {
+      if (uiBinderToOwnerClass.remove(uiBinderType) != null) {
+        modificationCount.incrementAndGet();
+      }
+      return;
+    }
+
+    synchronized (uiBinderToOwnerClass) {
+      if (getOwnerTypeName(uiBinderType) != null) {
+        // Hide the subtype in the underlying index
+        uiBinderToOwnerClass.put(uiBinderType, null);
+        modificationCount.incrementAndGet();
+      }
+    }
   }
 
   public void setOwnerType(IType uiBinderType, String ownerType) {
-    uiBinderToOwnerClass.put(uiBinderType, ownerType);
+    synchronized (uiBinderToOwnerClass) {
+      if (!ownerType.equals(getOwnerTypeName(uiBinderType))) {
+        uiBinderToOwnerClass.put(uiBinderType, ownerType);
+        modificationCount.incrementAndGet();
+      }
+    }
   }
 
   @Override
@@ -301,6 +346,24 @@ public class UiBinderSubtypeToOwnerIndex {
     return sb.toString();
   }
 
+  /**
+   * Returns a new map containing the owner of each UiBinder subtype.
+   */
+  private Map<IType, String> copyEntries() {
+    Map<IType, String> entries = (base != null ? base.copyEntries()
+        : new HashMap<IType, String>());
+    synchronized (uiBinderToOwnerClass) {
+      for (Entry<IType, String> mapEntry : uiBinderToOwnerClass.entrySet()) {
+        if (mapEntry.getValue() != null) {
+          entries.put(mapEntry.getKey(), mapEntry.getValue());
+        } else {
+          entries.remove(mapEntry.getKey());
+        }
+      }
+    }
+    return entries;
+  }
+
   private void setOwnerType(UiBinderSubtypeAndOwner pair) {
     setOwnerType(pair.getUiBinderType(), pair.getOwnerTypeName());
   }
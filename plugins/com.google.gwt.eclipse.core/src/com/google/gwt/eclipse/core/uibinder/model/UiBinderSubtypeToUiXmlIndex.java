@@ -28,6 +28,7 @@ import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.ui.IMemento;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*
  * Synchronize on the instance when atomic operations are required.
@@ -49,6 +50,16 @@ public class UiBinderSubtypeToUiXmlIndex {
 
   private static final String KEY_UIBINDER_SUBTYPE_AND_UI_XML_ENTRY = "entry";
 
+  /**
+   * Returns an overlay of the index, which reads through to it but keeps its
+   * own modifications to itself. Creating one does not copy the index.
+   */
+  public static UiBinderSubtypeToUiXmlIndex createOverlay(
+      UiBinderSubtypeToUiXmlIndex base) {
+    return new UiBinderSubtypeToUiXmlIndex(
+        OneToManyIndex.createOverlay(base.uiXmlPathToOwnerTypes));
+  }
+
   public static UiBinderSubtypeToUiXmlIndex load(IMemento memento)
       throws PersistenceException {
     UiBinderSubtypeToUiXmlIndex index = new UiBinderSubtypeToUiXmlIndex();
@@ -109,15 +120,20 @@ public class UiBinderSubtypeToUiXmlIndex {
     index.setUiXmlPath((IType) javaElement, new Path(uiXmlPath));
   }
 
+  /**
+   * Incremented each time the index is modified.
+   */
+  private final AtomicLong modificationCount = new AtomicLong();
+
   private final OneToManyIndex<IPath, IType> uiXmlPathToOwnerTypes;
 
   public UiBinderSubtypeToUiXmlIndex() {
     this.uiXmlPathToOwnerTypes = new OneToManyIndex<IPath, IType>();
   }
 
-  public UiBinderSubtypeToUiXmlIndex(UiBinderSubtypeToUiXmlIndex original) {
-    this.uiXmlPathToOwnerTypes = new OneToManyIndex<IPath, IType>(
-        original.uiXmlPathToOwnerTypes);
+  private UiBinderSubtypeToUiXmlIndex(
+      OneToManyIndex<IPath, IType> uiXmlPathToOwnerTypes) {
+    this.uiXmlPathToOwnerTypes = uiXmlPathToOwnerTypes;
   }
 
   public void clear(IProject project) {
@@ -130,6 +146,13 @@ public class UiBinderSubtypeToUiXmlIndex {
     }
   }
 
+  /**
+   * Returns a number which changes whenever the index is modified.
+   */
+  public long getModificationCount() {
+    return modificationCount.get();
+  }
+
   /**
    * Returns UiBinder subtypes which are linked to the given ui.xml file.
    */
@@ -161,12 +184,14 @@ public class UiBinderSubtypeToUiXmlIndex {
 
   public void removeUiBinderSubtype(IType uiBinderSubtype) {
     uiXmlPathToOwnerTypes.removeElement(uiBinderSubtype);
+    modificationCount.incrementAndGet();
   }
 
   public void setUiXmlPath(IType uiBinderSubtype, IPath uiXmlPath) {
     synchronized (this) {
       uiXmlPathToOwnerTypes.removeElement(uiBinderSubtype);
       uiXmlPathToOwnerTypes.addElement(uiXmlPath, uiBinderSubtype);
+      modificationCount.incrementAndGet();
     }
   }
 
@@ -26,6 +26,7 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.ui.IMemento;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*
  * Synchronize on the instance when atomic operations are required.
@@ -88,6 +89,11 @@ public final class UiXmlReferencedFieldIndex {
    */
   private final OneToManyIndex<IPath, String> referencedFields = new OneToManyIndex<IPath, String>();
 
+  /**
+   * Incremented each time the index is modified.
+   */
+  private final AtomicLong modificationCount = new AtomicLong();
+
   public void clear(IJavaProject javaProject) {
     synchronized (this) {
       for (IPath uiXmlPath : referencedFields.keys()) {
@@ -102,6 +108,13 @@ public final class UiXmlReferencedFieldIndex {
     }
   }
 
+  /**
+   * Returns a number which changes whenever the index is modified.
+   */
+  public long getModificationCount() {
+    return modificationCount.get();
+  }
+
   public boolean hasUiXml(IPath uiXmlPath) {
     return referencedFields.hasKey(uiXmlPath);
   }
@@ -121,14 +134,17 @@ public final class UiXmlReferencedFieldIndex {
 
   public void putFieldReferencesForUiXml(IPath uiXmlPath, Set<String> fieldNames) {
     referencedFields.putElements(uiXmlPath, fieldNames);
+    modificationCount.incrementAndGet();
   }
 
   public void remove(IPath uiXmlPath) {
     referencedFields.removeKey(uiXmlPath);
+    modificationCount.incrementAndGet();
   }
 
   private void addFieldReference(IPath uiXmlPath, String fieldName) {
     referencedFields.addElement(uiXmlPath, fieldName);
+    modificationCount.incrementAndGet();
   }
 
   private Set<IPath> getAllUiXmlPaths() {
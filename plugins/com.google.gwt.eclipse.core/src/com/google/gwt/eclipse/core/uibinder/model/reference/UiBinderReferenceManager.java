@@ -18,10 +18,12 @@ import com.google.gdt.eclipse.core.MarkerUtilities;
 import com.google.gdt.eclipse.core.StatusUtilities;
 import com.google.gdt.eclipse.core.java.JavaModelSearch;
 import com.google.gdt.eclipse.core.java.JavaModelSearch.IJavaElementDeltaVisitor;
+import com.google.gdt.eclipse.core.reference.BinaryMemento;
 import com.google.gdt.eclipse.core.reference.IReference;
 import com.google.gdt.eclipse.core.reference.PersistenceException;
 import com.google.gdt.eclipse.core.reference.ReferenceManager;
 import com.google.gdt.eclipse.core.reference.ReferenceManager.ReferenceChangeListener;
+import com.google.gdt.eclipse.core.reference.ReferenceManagerPersister;
 import com.google.gdt.eclipse.core.reference.location.ReferenceLocationType;
 import com.google.gwt.eclipse.core.GWTPlugin;
 import com.google.gwt.eclipse.core.GWTPluginLog;
@@ -45,6 +47,7 @@ import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IElementChangedListener;
@@ -56,11 +59,15 @@ import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.ui.IMemento;
 import org.eclipse.ui.XMLMemento;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Map;
@@ -68,6 +75,11 @@ import java.util.Set;
 
 /**
  * Tracks references within the UiBinder domain.
+ * <p>
+ * The references and indices are persisted as a {@link BinaryMemento}. They
+ * are loaded lazily, the first time they are accessed after startup, and saved
+ * periodically in the background when they have changed, so that neither
+ * startup nor shutdown has to pay for all of it.
  */
 public enum UiBinderReferenceManager {
   INSTANCE;
@@ -82,6 +94,17 @@ public enum UiBinderReferenceManager {
 
   private static final String KEY_UIBINDER_SUBTYPE_UI_XML = "uiBinderSubtypeToUiXml";
 
+  /**
+   * The file name of the XML mementos written by earlier versions.
+   */
+  private static final String LEGACY_PERSISTENCE_FILE_NAME = "uiBinderReferences";
+
+  private static final String PERSISTENCE_FILE_NAME = "uiBinderReferences.bin";
+
+  private static final long SNAPSHOT_INTERVAL_MS = 5 * 60 * 1000;
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
   private static IMemento getChild(IMemento parentMemento,
       String childMementoType) throws PersistenceException {
     IMemento childMemento = parentMemento.getChild(childMementoType);
@@ -93,12 +116,53 @@ public enum UiBinderReferenceManager {
     return childMemento;
   }
 
-  private static File getPersistenceFile() {
+  private static File getPersistenceFile(String fileName) {
     // <workspace>/.metadata/.plugins/com.google.gwt.eclipse.core
-    return GWTPlugin.getDefault().getStateLocation().append(
-        "uiBinderReferences").toFile();
+    return GWTPlugin.getDefault().getStateLocation().append(fileName).toFile();
   }
 
+  /**
+   * Writes the memento to a temporary file which then replaces the persistence
+   * file, so a crash while writing never leaves a partial file behind.
+   */
+  private static void write(BinaryMemento memento) throws IOException {
+    File file = getPersistenceFile(PERSISTENCE_FILE_NAME);
+    File tempFile = getPersistenceFile(PERSISTENCE_FILE_NAME
+        + TEMP_FILE_SUFFIX);
+
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+    try {
+      memento.save(out);
+    } finally {
+      out.close();
+    }
+
+    // File.renameTo will not replace an existing file on all platforms
+    if (file.exists() && !file.delete()) {
+      tempFile.delete();
+      throw new IOException("Could not replace " + file);
+    }
+    if (!tempFile.renameTo(file)) {
+      throw new IOException("Could not rename " + tempFile + " to " + file);
+    }
+  }
+
+  /**
+   * Whether the persisted references and indices have been loaded.
+   */
+  private volatile boolean loaded;
+
+  /**
+   * Guards loading and persisting.
+   */
+  private final Object persistenceLock = new Object();
+
+  /**
+   * The modification count of the references and indices when they were last
+   * loaded or persisted.
+   */
+  private long persistedModificationCount;
+
   /**
    * The listener for referenced resource changes.
    */
@@ -167,24 +231,57 @@ public enum UiBinderReferenceManager {
   };
 
   /**
-   * The {@link ReferenceManager} used to track UiBinder references.
+   * The {@link ReferenceManager} used to track UiBinder references. Its own
+   * change listeners query it directly, so the queries load the persisted
+   * references first.
    */
-  private ReferenceManager referenceManager;
+  private final ReferenceManager referenceManager = new ReferenceManager() {
+    @Override
+    public Set<IReference> getReferencesWithMatchingJavaElement(
+        IJavaElement element, EnumSet<ReferenceLocationType> locationTypes) {
+      ensureLoaded();
+      return super.getReferencesWithMatchingJavaElement(element, locationTypes);
+    }
+
+    @Override
+    public Set<IReference> getReferencesWithMatchingResource(
+        IResource resource, EnumSet<ReferenceLocationType> locationTypes) {
+      ensureLoaded();
+      return super.getReferencesWithMatchingResource(resource, locationTypes);
+    }
+  };
 
   /**
    * Knows how to refresh references.
    */
-  private ReferenceRefresher referenceRefresher;
+  private final ReferenceRefresher referenceRefresher = new ReferenceRefresher(
+      referenceManager);
+
+  /**
+   * Periodically persists the references and indices if they have changed.
+   */
+  private final Job snapshotJob = new Job("Saving UiBinder references") {
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+      persist();
+      if (started) {
+        schedule(SNAPSHOT_INTERVAL_MS);
+      }
+      return StatusUtilities.OK_STATUS;
+    }
+  };
+
+  private volatile boolean started;
 
   /**
    * UiBinder subtype to owner class index.
    */
-  private UiBinderSubtypeToOwnerIndex subtypeToOwnerIndex;
+  private volatile UiBinderSubtypeToOwnerIndex subtypeToOwnerIndex;
 
   /**
    * UiBinder subtype to ui.xml file index.
    */
-  private UiBinderSubtypeToUiXmlIndex subtypeToUiXmlIndex;
+  private volatile UiBinderSubtypeToUiXmlIndex subtypeToUiXmlIndex;
 
   /**
    * When a UiBinder subtype is removed, this element changed listener purges it
@@ -245,6 +342,7 @@ public enum UiBinderReferenceManager {
     };
 
     public void elementChanged(ElementChangedEvent event) {
+      ensureLoaded();
       JavaModelSearch.visitJavaElementDelta(event.getDelta(), visitor);
     }
   };
@@ -274,6 +372,7 @@ public enum UiBinderReferenceManager {
 
     public void resourceChanged(IResourceChangeEvent event) {
       if (event.getDelta() != null) {
+        ensureLoaded();
         try {
           event.getDelta().accept(visitor);
         } catch (CoreException e) {
@@ -286,17 +385,19 @@ public enum UiBinderReferenceManager {
   /**
    * Stores the ui:field references for ui.xml files.
    */
-  private UiXmlReferencedFieldIndex uiXmlReferencedFieldIndex;
+  private volatile UiXmlReferencedFieldIndex uiXmlReferencedFieldIndex;
 
   private UiBinderReferenceManager() {
-    referenceManager = new ReferenceManager();
     subtypeToOwnerIndex = new UiBinderSubtypeToOwnerIndex();
     subtypeToUiXmlIndex = new UiBinderSubtypeToUiXmlIndex();
     uiXmlReferencedFieldIndex = new UiXmlReferencedFieldIndex();
-    referenceRefresher = new ReferenceRefresher(referenceManager);
+
+    snapshotJob.setSystem(true);
+    snapshotJob.setPriority(Job.DECORATE);
   }
 
   public ReferenceManager getReferenceManager() {
+    ensureLoaded();
     return referenceManager;
   }
 
@@ -304,6 +405,7 @@ public enum UiBinderReferenceManager {
    * Returns the UiBinder subtype to owner class index.
    */
   public UiBinderSubtypeToOwnerIndex getSubtypeToOwnerIndex() {
+    ensureLoaded();
     return subtypeToOwnerIndex;
   }
 
@@ -311,6 +413,7 @@ public enum UiBinderReferenceManager {
    * Returns the UiBinder subtype to ui.xml file index.
    */
   public UiBinderSubtypeToUiXmlIndex getSubtypeToUiXmlIndex() {
+    ensureLoaded();
     return subtypeToUiXmlIndex;
   }
 
@@ -318,30 +421,38 @@ public enum UiBinderReferenceManager {
    * Returns an index storing the ui:field references for each ui.xml file.
    */
   public UiXmlReferencedFieldIndex getUiXmlReferencedFieldIndex() {
+    ensureLoaded();
     return uiXmlReferencedFieldIndex;
   }
 
+  /**
+   * Persists the references and indices, unless they have not changed since
+   * they were loaded or last persisted.
+   */
   public void persist() {
-    XMLMemento memento = XMLMemento.createWriteRoot(KEY_ROOT);
-    persist(memento);
+    synchronized (persistenceLock) {
+      if (!loaded) {
+        // The persisted state is still current
+        return;
+      }
 
-    File file = getPersistenceFile();
-    FileWriter writer = null;
-    try {
-      try {
-        writer = new FileWriter(file);
-        memento.save(writer);
-      } finally {
-        if (writer != null) {
-          writer.close();
-        }
+      long modificationCount = getModificationCount();
+      if (modificationCount == persistedModificationCount) {
+        return;
       }
-    } catch (IOException e) {
-      GWTPluginLog.logError(e, "Error persisting UiBinder references");
 
-      // Make sure we remove any partially-written file
-      if (file.exists()) {
-        file.delete();
+      BinaryMemento memento = BinaryMemento.createWriteRoot(KEY_ROOT);
+      persist(memento);
+
+      try {
+        write(memento);
+        persistedModificationCount = modificationCount;
+
+        // The binary file supersedes any XML written by earlier versions
+        getPersistenceFile(LEGACY_PERSISTENCE_FILE_NAME).delete();
+      } catch (IOException e) {
+        GWTPluginLog.logError(e, "Error persisting UiBinder references");
+        getPersistenceFile(PERSISTENCE_FILE_NAME + TEMP_FILE_SUFFIX).delete();
       }
     }
   }
@@ -351,8 +462,6 @@ public enum UiBinderReferenceManager {
    */
   public void start() {
     if (UiBinderConstants.UI_BINDER_ENABLED) {
-      load();
-
       referenceManager.addReferencedResourceChangeListener(referenceChangeListener);
       referenceManager.start();
 
@@ -360,6 +469,9 @@ public enum UiBinderReferenceManager {
           ElementChangedEvent.POST_CHANGE);
       ResourcesPlugin.getWorkspace().addResourceChangeListener(resourcePurger,
           IResourceChangeEvent.POST_CHANGE);
+
+      started = true;
+      snapshotJob.schedule(SNAPSHOT_INTERVAL_MS);
     }
   }
 
@@ -368,6 +480,9 @@ public enum UiBinderReferenceManager {
    */
   public void stop() {
     if (UiBinderConstants.UI_BINDER_ENABLED) {
+      started = false;
+      snapshotJob.cancel();
+
       ResourcesPlugin.getWorkspace().removeResourceChangeListener(
           resourcePurger);
       JavaCore.removeElementChangedListener(uiBinderSubtypePurger);
@@ -379,19 +494,50 @@ public enum UiBinderReferenceManager {
     }
   }
 
+  /**
+   * Loads the persisted references and indices, if that has not been done yet.
+   */
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+
+    synchronized (persistenceLock) {
+      if (!loaded) {
+        load();
+        persistedModificationCount = getModificationCount();
+        loaded = true;
+      }
+    }
+  }
+
+  private long getModificationCount() {
+    return referenceManager.getModificationCount()
+        + subtypeToOwnerIndex.getModificationCount()
+        + subtypeToUiXmlIndex.getModificationCount()
+        + uiXmlReferencedFieldIndex.getModificationCount();
+  }
+
   private void load() {
-    FileReader reader = null;
     try {
-      try {
-        reader = new FileReader(getPersistenceFile());
-        load(XMLMemento.createReadRoot(reader));
-      } finally {
-        if (reader != null) {
+      File file = getPersistenceFile(PERSISTENCE_FILE_NAME);
+      File legacyFile = getPersistenceFile(LEGACY_PERSISTENCE_FILE_NAME);
+      if (file.exists()) {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+          load(BinaryMemento.createReadRoot(in));
+        } finally {
+          in.close();
+        }
+      } else if (legacyFile.exists()) {
+        FileReader reader = new FileReader(legacyFile);
+        try {
+          load(XMLMemento.createReadRoot(reader));
+        } finally {
           reader.close();
         }
       }
-    } catch (FileNotFoundException e) {
-      // Ignore this exception, which occurs when index does not yet exist
+      // Otherwise the index does not exist yet
     } catch (Throwable e) {
       GWTPluginLog.logError(e, "Could not load UiBinder indices.");
 
@@ -420,9 +566,12 @@ public enum UiBinderReferenceManager {
   }
 
   private void load(IMemento memento) throws PersistenceException {
+    // Listeners are registered with the reference manager, so load into it
     IMemento refManagerMemento = getChild(memento, KEY_REFERENCE_MANAGER);
-    referenceManager = ReferenceManager.load(refManagerMemento);
-    referenceRefresher = new ReferenceRefresher(referenceManager);
+    Set<IReference> references = ReferenceManagerPersister.load(refManagerMemento);
+    for (IReference reference : references) {
+      referenceManager.addReference(reference);
+    }
 
     IMemento subtypeToOwnerMemento = getChild(memento,
         KEY_UIBINDER_SUBTYPE_OWNER);
@@ -36,6 +36,8 @@ import com.google.gwt.eclipse.core.uibinder.model.reference.UiBinderXmlParser.Pa
 import com.google.gwt.eclipse.core.uibinder.problems.MarkerPlacementStrategy;
 import com.google.gwt.eclipse.core.uibinder.problems.UiBinderProblemMarkerManager;
 import com.google.gwt.eclipse.core.uibinder.problems.java.UiBinderJavaProblem;
+import com.google.gwt.eclipse.core.validators.TypeBindingCache;
+import com.google.gwt.eclipse.core.validators.ValidationVisitorPipeline;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IStorage;
@@ -92,7 +94,8 @@ public class UiBinderJavaValidator {
         return true;
       }
 
-      for (IType uiBinderType : uiBinderToOwner.getUiBinderTypes(typeDecl.resolveBinding().getQualifiedName())) {
+      validatedTypes = true;
+      for (IType uiBinderType : uiBinderToOwner.getUiBinderTypes(typeBindings.resolveBinding(typeDecl).getQualifiedName())) {
         result.addTypeDependency(uiBinderType.getFullyQualifiedName());
       }
 
@@ -115,7 +118,7 @@ public class UiBinderJavaValidator {
         TypeDeclaration ownerTypeDecl) {
       Set<IPath> paths = new HashSet<IPath>();
 
-      String ownerTypeName = ownerTypeDecl.resolveBinding().getQualifiedName();
+      String ownerTypeName = typeBindings.resolveBinding(ownerTypeDecl).getQualifiedName();
       for (IType uiBinderSubtype : uiBinderToOwner.getUiBinderTypes(ownerTypeName)) {
         IPath uiXmlClasspathRelativePath = ownerToUiXml.getUiXmlPath(uiBinderSubtype);
         try {
@@ -150,7 +153,7 @@ public class UiBinderJavaValidator {
         return false;
       }
 
-      if (typeDecl.resolveBinding() == null) {
+      if (typeBindings.resolveBinding(typeDecl) == null) {
         GWTPluginLog.logWarning("Could not resolve binding for "
             + typeDecl.getName().getFullyQualifiedName());
         return false;
@@ -250,6 +253,7 @@ public class UiBinderJavaValidator {
         return true;
       }
 
+      validatedTypes = true;
       validateUiXmlExistence(typeDecl);
       validateTypeVisibility(typeDecl);
 
@@ -332,7 +336,7 @@ public class UiBinderJavaValidator {
         return false;
       }
 
-      ITypeBinding typeBinding = typeDecl.resolveBinding();
+      ITypeBinding typeBinding = typeBindings.resolveBinding(typeDecl);
       if (typeBinding == null) {
         return false;
       }
@@ -392,7 +396,7 @@ public class UiBinderJavaValidator {
     }
 
     private void validateUiXmlExistence(TypeDeclaration uiBinderSubtypeDecl) {
-      ITypeBinding typeBinding = uiBinderSubtypeDecl.resolveBinding();
+      ITypeBinding typeBinding = typeBindings.resolveBinding(uiBinderSubtypeDecl);
 
       Annotation annotation = JavaASTUtils.findAnnotation(uiBinderSubtypeDecl,
           UiBinderConstants.UI_TEMPLATE_ANNOTATION_NAME);
@@ -418,7 +422,7 @@ public class UiBinderJavaValidator {
       } else {
         TypeDeclaration enclosingType = JavaASTUtils.getEnclosingType(uiBinderSubtypeDecl);
         if (enclosingType != null) {
-          typeBinding = enclosingType.resolveBinding();
+          typeBinding = typeBindings.resolveBinding(enclosingType);
         }
         String uiXmlFileName = typeBinding.getName()
             + UiBinderConstants.UI_BINDER_XML_EXTENSION;
@@ -431,43 +435,6 @@ public class UiBinderJavaValidator {
     }
   }
 
-  @SuppressWarnings("unchecked")
-  private static ITypeBinding getOwnerTypeBinding(
-      TypeDeclaration uiBinderSubtype) {
-    List<Type> superInterfaces = uiBinderSubtype.superInterfaceTypes();
-    for (Type superInterface : superInterfaces) {
-      ITypeBinding binding = superInterface.resolveBinding();
-      if (binding != null) {
-        if (binding.getErasure().getQualifiedName().equals(
-            UiBinderConstants.UI_BINDER_TYPE_NAME)) {
-          if (superInterface instanceof ParameterizedType) {
-            ParameterizedType uiBinderType = (ParameterizedType) superInterface;
-            List<Type> typeArgs = uiBinderType.typeArguments();
-            if (typeArgs.size() == 2) {
-              Type ownerType = typeArgs.get(1);
-              return ownerType.resolveBinding();
-            }
-          }
-        }
-      }
-    }
-    return null;
-  }
-
-  private static IType getType(TypeDeclaration typeDecl) {
-    if (typeDecl == null) {
-      return null;
-    }
-
-    ITypeBinding typeBinding = typeDecl.resolveBinding();
-    if (typeBinding == null) {
-      return null;
-    }
-
-    IJavaElement javaElement = typeBinding.getJavaElement();
-    return (javaElement instanceof IType ? (IType) javaElement : null);
-  }
-
   private static boolean isUiBinder(ITypeBinding typeBinding) {
     for (ITypeBinding superInterface : typeBinding.getInterfaces()) {
       if (superInterface.getErasure().getQualifiedName().equals(
@@ -488,10 +455,14 @@ public class UiBinderJavaValidator {
 
   private ValidationResult result;
 
+  private TypeBindingCache typeBindings;
+
   private final UiBinderSubtypeToOwnerIndex uiBinderToOwner;
 
   private final UiXmlReferencedFieldIndex uiXmlFieldRefs;
 
+  private boolean validatedTypes;
+
   public UiBinderJavaValidator(CompilationUnit cu,
       UiBinderSubtypeToOwnerIndex uiBinderToOwner,
       UiBinderSubtypeToUiXmlIndex ownerToUiXml,
@@ -506,20 +477,86 @@ public class UiBinderJavaValidator {
   }
 
   /**
-   * Validation entry point.
+   * Returns the result of the validation, once the pipeline this validator was
+   * registered with has been run.
    */
-  public ValidationResult validate() {
+  public ValidationResult getValidationResult() {
+    return result;
+  }
+
+  /**
+   * Returns whether the compilation unit contained any UiBinder subtypes or
+   * owner classes, once the pipeline this validator was registered with has
+   * been run.
+   */
+  public boolean hasValidatedTypes() {
+    return validatedTypes;
+  }
+
+  /**
+   * Registers this validator with a pipeline which will run it over its
+   * compilation unit.
+   */
+  public void register(ValidationVisitorPipeline pipeline) {
     result = new ValidationResult();
+    typeBindings = pipeline.getTypeBindings();
+    validatedTypes = false;
 
     /*
-     * The subtype visitor must go first, so it can populate the index we use to
-     * identify owner classes (which can only be identified via a type argument
-     * in the UiBinder subtype declaration).
+     * The subtype visitor must see the whole compilation unit first, so it can
+     * populate the index we use to identify owner classes (which can only be
+     * identified via a type argument in the UiBinder subtype declaration).
      */
-    cu.accept(new UiBinderSubtypeVisitor());
-    cu.accept(new UiBinderOwnerVisitor());
+    pipeline.register(new UiBinderSubtypeVisitor(), ASTNode.TYPE_DECLARATION);
+    pipeline.registerDeferred(new UiBinderOwnerVisitor(),
+        ASTNode.TYPE_DECLARATION);
+  }
 
+  /**
+   * Validation entry point.
+   */
+  public ValidationResult validate() {
+    ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+    register(pipeline);
+    pipeline.run(cu);
     return result;
   }
 
+  @SuppressWarnings("unchecked")
+  private ITypeBinding getOwnerTypeBinding(
+      TypeDeclaration uiBinderSubtype) {
+    List<Type> superInterfaces = uiBinderSubtype.superInterfaceTypes();
+    for (Type superInterface : superInterfaces) {
+      ITypeBinding binding = typeBindings.resolveBinding(superInterface);
+      if (binding != null) {
+        if (binding.getErasure().getQualifiedName().equals(
+            UiBinderConstants.UI_BINDER_TYPE_NAME)) {
+          if (superInterface instanceof ParameterizedType) {
+            ParameterizedType uiBinderType = (ParameterizedType) superInterface;
+            List<Type> typeArgs = uiBinderType.typeArguments();
+            if (typeArgs.size() == 2) {
+              Type ownerType = typeArgs.get(1);
+              return typeBindings.resolveBinding(ownerType);
+            }
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  private IType getType(TypeDeclaration typeDecl) {
+    if (typeDecl == null) {
+      return null;
+    }
+
+    ITypeBinding typeBinding = typeBindings.resolveBinding(typeDecl);
+    if (typeBinding == null) {
+      return null;
+    }
+
+    IJavaElement javaElement = typeBinding.getJavaElement();
+    return (javaElement instanceof IType ? (IType) javaElement : null);
+  }
+
 }
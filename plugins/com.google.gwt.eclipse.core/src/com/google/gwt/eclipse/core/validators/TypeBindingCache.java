@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.Type;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Memoizes the type bindings resolved while validating a single AST, so the
+ * validators sharing a {@link ValidationVisitorPipeline} only ask JDT to
+ * resolve each declaration or type reference once.
+ *
+ * Nodes are keyed by identity, so a cache must not outlive the AST it was
+ * created for. Unresolvable bindings (<code>null</code>) are cached as well.
+ */
+public class TypeBindingCache {
+
+  private final Map<ASTNode, ITypeBinding> bindings = new IdentityHashMap<ASTNode, ITypeBinding>();
+
+  public ITypeBinding resolveBinding(AbstractTypeDeclaration typeDecl) {
+    if (bindings.containsKey(typeDecl)) {
+      return bindings.get(typeDecl);
+    }
+
+    ITypeBinding binding = typeDecl.resolveBinding();
+    bindings.put(typeDecl, binding);
+    return binding;
+  }
+
+  public ITypeBinding resolveBinding(Type type) {
+    if (bindings.containsKey(type)) {
+      return bindings.get(type);
+    }
+
+    ITypeBinding binding = type.resolveBinding();
+    bindings.put(type, binding);
+    return binding;
+  }
+
+  public int size() {
+    return bindings.size();
+  }
+
+}
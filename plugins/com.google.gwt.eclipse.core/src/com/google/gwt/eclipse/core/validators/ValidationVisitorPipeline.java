@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the visitors of several validators over a compilation unit in a single
+ * traversal of its AST.
+ *
+ * Each visitor registers the node types it is interested in, and only has
+ * those nodes dispatched to it. Visitors keep their usual {@link ASTVisitor}
+ * semantics: returning <code>false</code> from a <code>visit</code> method
+ * hides the node's descendants from that visitor only.
+ *
+ * A visitor which depends on state computed by the others over the whole AST
+ * can be registered with {@link #registerDeferred(ASTVisitor, int...)}. Its
+ * nodes are recorded during the traversal and dispatched to it, in traversal
+ * order, once the traversal has finished.
+ *
+ * The pipeline also owns a {@link TypeBindingCache} that its visitors can share
+ * so bindings are resolved at most once per run.
+ */
+public class ValidationVisitorPipeline extends ASTVisitor {
+
+  /**
+   * A visit or end visit of a node, recorded for the deferred visitors.
+   */
+  private static class NodeEvent {
+    private final boolean end;
+
+    private final ASTNode node;
+
+    public NodeEvent(ASTNode node, boolean end) {
+      this.node = node;
+      this.end = end;
+    }
+  }
+
+  /**
+   * The visitors of one stage of the pipeline, by the node types they have
+   * registered for.
+   */
+  private static class Stage {
+    /**
+     * The node at which each visitor stopped descending, if it is currently
+     * not visiting the descendants of a node.
+     */
+    private final Map<ASTVisitor, ASTNode> prunedAt = new IdentityHashMap<ASTVisitor, ASTNode>();
+
+    private final Map<Integer, List<ASTVisitor>> visitors = new HashMap<Integer, List<ASTVisitor>>();
+
+    public void dispatch(ASTNode node, boolean end) {
+      List<ASTVisitor> nodeVisitors = visitors.get(node.getNodeType());
+      if (nodeVisitors == null) {
+        return;
+      }
+
+      for (ASTVisitor visitor : nodeVisitors) {
+        ASTNode prunedNode = prunedAt.get(visitor);
+        if (prunedNode != null && prunedNode != node) {
+          // We're below a node this visitor did not want to descend into
+          continue;
+        }
+
+        if (!end) {
+          if (!visit(visitor, node)) {
+            prunedAt.put(visitor, node);
+          }
+        } else {
+          prunedAt.remove(visitor);
+          endVisit(visitor, node);
+        }
+      }
+    }
+
+    public boolean isEmpty() {
+      return visitors.isEmpty();
+    }
+
+    public boolean isRegistered(int nodeType) {
+      return visitors.containsKey(nodeType);
+    }
+
+    public void register(ASTVisitor visitor, int... nodeTypes) {
+      for (int nodeType : nodeTypes) {
+        if (!isSupported(nodeType)) {
+          throw new IllegalArgumentException("Unsupported node type: "
+              + ASTNode.nodeClassForType(nodeType).getName());
+        }
+
+        List<ASTVisitor> nodeVisitors = visitors.get(nodeType);
+        if (nodeVisitors == null) {
+          nodeVisitors = new ArrayList<ASTVisitor>();
+          visitors.put(nodeType, nodeVisitors);
+        }
+        if (!nodeVisitors.contains(visitor)) {
+          nodeVisitors.add(visitor);
+        }
+      }
+    }
+  }
+
+  private static void endVisit(ASTVisitor visitor, ASTNode node) {
+    switch (node.getNodeType()) {
+      case ASTNode.COMPILATION_UNIT:
+        visitor.endVisit((CompilationUnit) node);
+        break;
+      case ASTNode.METHOD_DECLARATION:
+        visitor.endVisit((MethodDeclaration) node);
+        break;
+      case ASTNode.TYPE_DECLARATION:
+        visitor.endVisit((TypeDeclaration) node);
+        break;
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  /**
+   * Returns whether visitors can register for the given node type. Only the
+   * node types the GWT validators are interested in are dispatched.
+   */
+  private static boolean isSupported(int nodeType) {
+    return nodeType == ASTNode.COMPILATION_UNIT
+        || nodeType == ASTNode.METHOD_DECLARATION
+        || nodeType == ASTNode.TYPE_DECLARATION;
+  }
+
+  private static boolean visit(ASTVisitor visitor, ASTNode node) {
+    switch (node.getNodeType()) {
+      case ASTNode.COMPILATION_UNIT:
+        return visitor.visit((CompilationUnit) node);
+      case ASTNode.METHOD_DECLARATION:
+        return visitor.visit((MethodDeclaration) node);
+      case ASTNode.TYPE_DECLARATION:
+        return visitor.visit((TypeDeclaration) node);
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  private final Stage deferredStage = new Stage();
+
+  private final List<NodeEvent> deferredEvents = new ArrayList<NodeEvent>();
+
+  private final Stage stage = new Stage();
+
+  private final TypeBindingCache typeBindings = new TypeBindingCache();
+
+  @Override
+  public void endVisit(CompilationUnit node) {
+    dispatch(node, true);
+  }
+
+  @Override
+  public void endVisit(MethodDeclaration node) {
+    dispatch(node, true);
+  }
+
+  @Override
+  public void endVisit(TypeDeclaration node) {
+    dispatch(node, true);
+  }
+
+  public TypeBindingCache getTypeBindings() {
+    return typeBindings;
+  }
+
+  /**
+   * Registers a visitor to be called for the given node types as the AST is
+   * traversed. Visitors registered for the same node type are called in the
+   * order they were registered.
+   *
+   * @param nodeTypes the node types, which must be
+   *          {@link ASTNode#COMPILATION_UNIT},
+   *          {@link ASTNode#METHOD_DECLARATION} or
+   *          {@link ASTNode#TYPE_DECLARATION}
+   */
+  public void register(ASTVisitor visitor, int... nodeTypes) {
+    stage.register(visitor, nodeTypes);
+  }
+
+  /**
+   * Registers a visitor to be called for the given node types after the AST
+   * has been traversed, once every visitor registered with
+   * {@link #register(ASTVisitor, int...)} has seen the whole AST.
+   */
+  public void registerDeferred(ASTVisitor visitor, int... nodeTypes) {
+    deferredStage.register(visitor, nodeTypes);
+  }
+
+  /**
+   * Traverses the AST once, dispatching its nodes to the registered visitors.
+   */
+  public void run(ASTNode ast) {
+    deferredEvents.clear();
+    ast.accept(this);
+
+    for (NodeEvent event : deferredEvents) {
+      deferredStage.dispatch(event.node, event.end);
+    }
+    deferredEvents.clear();
+  }
+
+  @Override
+  public boolean visit(CompilationUnit node) {
+    dispatch(node, false);
+    return true;
+  }
+
+  @Override
+  public boolean visit(MethodDeclaration node) {
+    dispatch(node, false);
+    return true;
+  }
+
+  @Override
+  public boolean visit(TypeDeclaration node) {
+    dispatch(node, false);
+    return true;
+  }
+
+  private void dispatch(ASTNode node, boolean end) {
+    stage.dispatch(node, end);
+
+    if (!deferredStage.isEmpty()
+        && deferredStage.isRegistered(node.getNodeType())) {
+      deferredEvents.add(new NodeEvent(node, end));
+    }
+  }
+
+}
@@ -23,6 +23,8 @@ import com.google.gwt.eclipse.core.GWTPluginLog;
 import com.google.gwt.eclipse.core.clientbundle.ClientBundleResourceDependencyIndex;
 import com.google.gwt.eclipse.core.clientbundle.ClientBundleUtilities;
 import com.google.gwt.eclipse.core.markers.ClientBundleProblem;
+import com.google.gwt.eclipse.core.validators.TypeBindingCache;
+import com.google.gwt.eclipse.core.validators.ValidationVisitorPipeline;
 import com.google.gwt.eclipse.platform.clientbundle.ResourceTypeDefaultExtensions;
 
 import org.eclipse.core.runtime.IPath;
@@ -122,15 +124,6 @@ public class ClientBundleValidator {
       return new Path(pckg.getElementName().replace('.', '/'));
     }
 
-    private static ITypeBinding getReturnTypeBinding(
-        MethodDeclaration methodDecl) {
-      Type returnType = methodDecl.getReturnType2();
-      if (returnType != null) {
-        return returnType.resolveBinding();
-      }
-      return null;
-    }
-
     private static boolean isSourceAnnotation(ASTNode node) {
       if (node instanceof Annotation) {
         Annotation annotation = (Annotation) node;
@@ -150,12 +143,48 @@ public class ClientBundleValidator {
       return false;
     }
 
-    private static boolean shouldValidateType(TypeDeclaration type) {
+    private final IJavaProject javaProject;
+
+    private final ClientBundleValidationResult result = new ClientBundleValidationResult();
+
+    private final TypeBindingCache typeBindings;
+
+    private boolean validatedTypes;
+
+    public ClientBundleValidationVisitor(IJavaProject javaProject,
+        TypeBindingCache typeBindings) {
+      this.javaProject = javaProject;
+      this.typeBindings = typeBindings;
+    }
+
+    /**
+     * Indexes the resource files the compilation unit depends on, once all of
+     * its ClientBundle types have been validated.
+     */
+    @Override
+    public void endVisit(CompilationUnit cu) {
+      ClientBundleResourceDependencyIndex.getInstance().putResourcesForCompilationUnit(
+          JavaASTUtils.getCompilationUnit(cu), result.getPossibleResourcePaths());
+    }
+
+    public ClientBundleValidationResult getResult() {
+      return result;
+    }
+
+    private ITypeBinding getReturnTypeBinding(MethodDeclaration methodDecl) {
+      Type returnType = methodDecl.getReturnType2();
+      if (returnType != null) {
+        return typeBindings.resolveBinding(returnType);
+      }
+      return null;
+    }
+
+    private boolean shouldValidateType(TypeDeclaration type) {
       if (!type.isInterface()) {
         return false;
       }
 
-      ITypeBinding typeBinding = type.resolveBinding();
+      ITypeBinding typeBinding = typeBindings.resolveBinding(type);
       if (typeBinding == null) {
         return false;
       }
@@ -176,24 +205,13 @@ public class ClientBundleValidator {
       return true;
     }
 
-    private final IJavaProject javaProject;
-
-    private final ClientBundleValidationResult result = new ClientBundleValidationResult();
-
-    public ClientBundleValidationVisitor(IJavaProject javaProject) {
-      this.javaProject = javaProject;
-    }
-
-    public ClientBundleValidationResult getResult() {
-      return result;
-    }
-
     @Override
     public boolean visit(TypeDeclaration type) {
       if (!shouldValidateType(type)) {
         return true;
       }
 
+      validatedTypes = true;
       CompilationUnit cu = (CompilationUnit) type.getRoot();
       for (MethodDeclaration methodDecl : type.getMethods()) {
         if (JavaASTUtils.hasErrors(methodDecl, cu.getProblems())) {
@@ -373,20 +391,44 @@ public class ClientBundleValidator {
     }
   }
 
+  private ClientBundleValidationVisitor visitor;
+
   /**
-   * Validation entry point.
+   * Returns the result of the validation, once the pipeline this validator was
+   * registered with has been run.
    */
-  public ValidationResult validate(CompilationUnit cu) {
-    ICompilationUnit icu = JavaASTUtils.getCompilationUnit(cu);
-    ClientBundleValidationVisitor visitor = new ClientBundleValidationVisitor(
-        icu.getJavaProject());
-    cu.accept(visitor);
-    ClientBundleValidationResult result = visitor.getResult();
+  public ValidationResult getValidationResult() {
+    return visitor.getResult();
+  }
 
-    ClientBundleResourceDependencyIndex.getInstance().putResourcesForCompilationUnit(
-        icu, result.getPossibleResourcePaths());
+  /**
+   * Returns whether the compilation unit contained any ClientBundle types, once
+   * the pipeline this validator was registered with has been run.
+   */
+  public boolean hasValidatedTypes() {
+    return visitor.validatedTypes;
+  }
+
+  /**
+   * Registers this validator with a pipeline which will run it over the given
+   * compilation unit.
+   */
+  public void register(ValidationVisitorPipeline pipeline, CompilationUnit cu) {
+    ICompilationUnit icu = JavaASTUtils.getCompilationUnit(cu);
+    visitor = new ClientBundleValidationVisitor(icu.getJavaProject(),
+        pipeline.getTypeBindings());
+    pipeline.register(visitor, ASTNode.TYPE_DECLARATION,
+        ASTNode.COMPILATION_UNIT);
+  }
 
-    return result;
+  /**
+   * Validation entry point.
+   */
+  public ValidationResult validate(CompilationUnit cu) {
+    ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+    register(pipeline, cu);
+    pipeline.run(cu);
+    return getValidationResult();
   }
 
 }
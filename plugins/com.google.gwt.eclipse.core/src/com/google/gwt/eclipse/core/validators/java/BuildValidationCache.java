@@ -0,0 +1,633 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators.java;
+
+import com.google.gdt.eclipse.core.markers.GdtJavaProblem;
+import com.google.gdt.eclipse.core.markers.GdtProblemSeverities;
+import com.google.gwt.eclipse.core.GWTPlugin;
+import com.google.gwt.eclipse.core.GWTPluginLog;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+
+/**
+ * Remembers the outcome of validating compilation units during builds, so a
+ * batch build can skip the units that have not changed since they were last
+ * validated.
+ *
+ * An entry is keyed by a hash of the unit's source, and is only used if the
+ * types the unit recorded as dependencies (the same ones JDT uses to decide
+ * what to rebuild incrementally) are also unchanged. A hit restores the
+ * problems and dependencies recorded by the earlier validation without
+ * creating an AST.
+ *
+ * Validation also populates the JSNI reference index, so the cache is only
+ * saved when the plugin stops, alongside that index, and must be invalidated
+ * whenever the index entries for a unit are cleared outside of a build.
+ */
+public final class BuildValidationCache {
+
+  /**
+   * A problem restored from the cache. It carries everything JDT reads when it
+   * creates a marker for a problem.
+   */
+  static final class CachedProblem extends CategorizedProblem {
+
+    private static final byte SEVERITY_WARNING = 0;
+
+    private static final byte SEVERITY_ERROR = 1;
+
+    private static CachedProblem read(DataInputStream in) throws IOException {
+      String markerType = in.readUTF();
+      int id = in.readInt();
+      int categoryId = in.readInt();
+      String message = readNullableUTF(in);
+      String[] arguments = null;
+      int argumentCount = in.readInt();
+      if (argumentCount >= 0) {
+        arguments = new String[argumentCount];
+        for (int i = 0; i < arguments.length; i++) {
+          arguments[i] = readNullableUTF(in);
+        }
+      }
+      boolean error = (in.readByte() == SEVERITY_ERROR);
+      int start = in.readInt();
+      int end = in.readInt();
+      int line = in.readInt();
+      int column = in.readInt();
+      String filename = readNullableUTF(in);
+      return new CachedProblem(markerType, id, categoryId, message, arguments,
+          error, start, end, line, column, filename);
+    }
+
+    /**
+     * Reads a string written by {@link #writeNullableUTF}.
+     */
+    private static String readNullableUTF(DataInputStream in)
+        throws IOException {
+      return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Returns the source column of a problem, which {@link CategorizedProblem}
+     * does not expose.
+     */
+    private static int getColumn(CategorizedProblem problem) {
+      if (problem instanceof GdtJavaProblem<?>) {
+        return ((GdtJavaProblem<?>) problem).getSourceColumnNumber();
+      } else if (problem instanceof CachedProblem) {
+        return ((CachedProblem) problem).getSourceColumnNumber();
+      }
+      return 0;
+    }
+
+    private static void write(DataOutputStream out, CategorizedProblem problem)
+        throws IOException {
+      out.writeUTF(problem.getMarkerType());
+      out.writeInt(problem.getID());
+      out.writeInt(problem.getCategoryID());
+      writeNullableUTF(out, problem.getMessage());
+      String[] arguments = problem.getArguments();
+      if (arguments == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(arguments.length);
+        for (String argument : arguments) {
+          writeNullableUTF(out, argument);
+        }
+      }
+      out.writeByte(problem.isError() ? SEVERITY_ERROR : SEVERITY_WARNING);
+      out.writeInt(problem.getSourceStart());
+      out.writeInt(problem.getSourceEnd());
+      out.writeInt(problem.getSourceLineNumber());
+      out.writeInt(getColumn(problem));
+      char[] filename = problem.getOriginatingFileName();
+      writeNullableUTF(out, filename != null ? new String(filename) : null);
+    }
+
+    /**
+     * Writes a string which may be null, since problems do not always carry a
+     * message, arguments or an originating file.
+     */
+    private static void writeNullableUTF(DataOutputStream out, String value)
+        throws IOException {
+      out.writeBoolean(value != null);
+      if (value != null) {
+        out.writeUTF(value);
+      }
+    }
+
+    private final String[] arguments;
+
+    private final int categoryId;
+
+    private final int column;
+
+    private final boolean error;
+
+    private final String filename;
+
+    private final int id;
+
+    private final String markerType;
+
+    private final String message;
+
+    private int start, end, line;
+
+    private CachedProblem(String markerType, int id, int categoryId,
+        String message, String[] arguments, boolean error, int start, int end,
+        int line, int column, String filename) {
+      this.markerType = markerType;
+      this.id = id;
+      this.categoryId = categoryId;
+      this.message = message;
+      this.arguments = arguments;
+      this.error = error;
+      this.start = start;
+      this.end = end;
+      this.line = line;
+      this.column = column;
+      this.filename = filename;
+    }
+
+    public String[] getArguments() {
+      return arguments;
+    }
+
+    @Override
+    public int getCategoryID() {
+      return categoryId;
+    }
+
+    public int getID() {
+      return id;
+    }
+
+    @Override
+    public String getMarkerType() {
+      return markerType;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    public char[] getOriginatingFileName() {
+      return filename != null ? filename.toCharArray() : null;
+    }
+
+    public int getSourceColumnNumber() {
+      return column;
+    }
+
+    public int getSourceEnd() {
+      return end;
+    }
+
+    public int getSourceLineNumber() {
+      return line;
+    }
+
+    public int getSourceStart() {
+      return start;
+    }
+
+    public boolean isError() {
+      return error;
+    }
+
+    public boolean isWarning() {
+      return !error;
+    }
+
+    public void setSourceEnd(int sourceEnd) {
+      this.end = sourceEnd;
+    }
+
+    public void setSourceLineNumber(int lineNumber) {
+      this.line = lineNumber;
+    }
+
+    public void setSourceStart(int sourceStart) {
+      this.start = sourceStart;
+    }
+  }
+
+  /**
+   * The cached outcome of validating a single compilation unit.
+   */
+  private static class CacheEntry {
+    private final byte[] dependencySignature;
+
+    private final List<CategorizedProblem> problems;
+
+    private final byte[] sourceHash;
+
+    private final List<String> typeDependencies;
+
+    public CacheEntry(byte[] sourceHash, byte[] dependencySignature,
+        List<CategorizedProblem> problems, List<String> typeDependencies) {
+      this.sourceHash = sourceHash;
+      this.dependencySignature = dependencySignature;
+      this.problems = problems;
+      this.typeDependencies = typeDependencies;
+    }
+  }
+
+  private static final String CACHE_DIRECTORY = "buildValidationCache";
+
+  private static final String CACHE_FILE_SUFFIX = ".cache";
+
+  private static final String DIGEST_ALGORITHM = "MD5";
+
+  private static BuildValidationCache INSTANCE;
+
+  private static final int MAGIC = 0x47425643; // "GBVC"
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final int VERSION = 2;
+
+  public static synchronized BuildValidationCache getInstance() {
+    // Lazily create the cache; each project is loaded on first use
+    if (INSTANCE == null) {
+      INSTANCE = new BuildValidationCache(
+          GWTPlugin.getDefault().getStateLocation().append(CACHE_DIRECTORY).toFile());
+    }
+    return INSTANCE;
+  }
+
+  /**
+   * Returns a hash of a compilation unit's source.
+   */
+  public static byte[] hashSource(char[] contents) {
+    MessageDigest digest = createDigest();
+    digest.update(getBytes(new String(contents)));
+    return digest.digest();
+  }
+
+  public static synchronized void save() {
+    if (INSTANCE != null) {
+      INSTANCE.saveCache();
+    }
+  }
+
+  /**
+   * Computes a signature of the current state of a compilation unit's
+   * dependencies: where each dependency is defined and when that definition
+   * was last modified. The workspace problem severities and whether the unit
+   * is on the build classpath are included too, since they also affect the
+   * outcome of validation.
+   */
+  static byte[] computeDependencySignature(ICompilationUnit cu,
+      List<String> typeDependencies) throws JavaModelException {
+    MessageDigest digest = createDigest();
+    IJavaProject javaProject = cu.getJavaProject();
+    digest.update(getBytes(GdtProblemSeverities.getInstance().toPreferenceString()));
+    digest.update((byte) (javaProject.isOnClasspath(cu) ? 1 : 0));
+
+    for (String typeName : typeDependencies) {
+      digest.update(getBytes(typeName));
+      digest.update((byte) 0);
+
+      IType type = javaProject.findType(typeName);
+      if (type == null) {
+        // Unresolved dependencies are part of the signature, too
+        digest.update((byte) 0);
+        continue;
+      }
+
+      IResource resource = type.getResource();
+      long modificationStamp;
+      IPath definitionPath;
+      if (resource != null) {
+        definitionPath = resource.getFullPath();
+        modificationStamp = resource.getModificationStamp();
+      } else {
+        // Types in external archives
+        definitionPath = type.getPath();
+        modificationStamp = definitionPath.toFile().lastModified();
+      }
+      digest.update((byte) 1);
+      digest.update(getBytes(definitionPath.toString()));
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        digest.update((byte) (modificationStamp >>> shift));
+      }
+    }
+
+    return digest.digest();
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support MD5
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] getBytes(String string) {
+    try {
+      return string.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      // Every Java platform is required to support UTF-8
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] readHash(DataInputStream in) throws IOException {
+    byte[] hash = new byte[in.readUnsignedByte()];
+    in.readFully(hash);
+    return hash;
+  }
+
+  private static void writeHash(DataOutputStream out, byte[] hash)
+      throws IOException {
+    out.writeByte(hash.length);
+    out.write(hash);
+  }
+
+  private final File directory;
+
+  private final Set<String> dirtyProjects = new HashSet<String>();
+
+  private int hitCount;
+
+  private int missCount;
+
+  /**
+   * The entries of each loaded project, by compilation unit path.
+   */
+  private final Map<String, Map<IPath, CacheEntry>> projects = new HashMap<String, Map<IPath, CacheEntry>>();
+
+  BuildValidationCache(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Discards the cached validation results for all of a project's compilation
+   * units.
+   */
+  public synchronized void clear(IProject project) {
+    String projectName = project.getName();
+    projects.put(projectName, new HashMap<IPath, CacheEntry>());
+    dirtyProjects.remove(projectName);
+    getCacheFile(projectName).delete();
+  }
+
+  /**
+   * Returns the number of lookups which found an up-to-date validation result.
+   */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of lookups which found no up-to-date validation result.
+   */
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Discards the cached validation result for a compilation unit.
+   */
+  public synchronized void remove(IPath cuPath) {
+    Map<IPath, CacheEntry> entries = getEntries(cuPath.segment(0));
+    if (entries.remove(cuPath) != null) {
+      dirtyProjects.add(cuPath.segment(0));
+    }
+  }
+
+  /**
+   * Returns the result of the last validation of a compilation unit, if its
+   * source and dependencies have not changed since.
+   *
+   * @return the cached result, or <code>null</code> on a cache miss
+   */
+  BuildValidationResult lookup(ICompilationUnit cu, byte[] sourceHash) {
+    IPath cuPath = cu.getPath();
+    CacheEntry entry;
+    synchronized (this) {
+      entry = getEntries(cuPath.segment(0)).get(cuPath);
+    }
+
+    boolean hit = false;
+    if (entry != null && Arrays.equals(entry.sourceHash, sourceHash)) {
+      try {
+        hit = Arrays.equals(entry.dependencySignature,
+            computeDependencySignature(cu, entry.typeDependencies));
+      } catch (JavaModelException e) {
+        GWTPluginLog.logError(e);
+      }
+    }
+
+    synchronized (this) {
+      if (hit) {
+        hitCount++;
+        return new BuildValidationResult(entry.problems,
+            entry.typeDependencies, true);
+      }
+      missCount++;
+      return null;
+    }
+  }
+
+  /**
+   * Caches the result of validating a compilation unit, replacing any earlier
+   * result. Results which cannot be cached just discard the earlier one.
+   */
+  void put(ICompilationUnit cu, byte[] sourceHash, BuildValidationResult result) {
+    if (!result.isCacheable()) {
+      remove(cu.getPath());
+      return;
+    }
+
+    CacheEntry entry;
+    try {
+      entry = new CacheEntry(sourceHash, computeDependencySignature(cu,
+          result.getTypeDependencies()), result.getProblems(),
+          result.getTypeDependencies());
+    } catch (JavaModelException e) {
+      GWTPluginLog.logError(e);
+      remove(cu.getPath());
+      return;
+    }
+
+    synchronized (this) {
+      String projectName = cu.getPath().segment(0);
+      getEntries(projectName).put(cu.getPath(), entry);
+      dirtyProjects.add(projectName);
+    }
+  }
+
+  synchronized void saveCache() {
+    for (String projectName : dirtyProjects) {
+      try {
+        writeProject(projectName, projects.get(projectName));
+      } catch (IOException e) {
+        GWTPluginLog.logError(e,
+            "Could not save the GWT validation cache for {0}", projectName);
+      }
+    }
+    dirtyProjects.clear();
+  }
+
+  private File getCacheFile(String projectName) {
+    return new File(directory, projectName + CACHE_FILE_SUFFIX);
+  }
+
+  private Map<IPath, CacheEntry> getEntries(String projectName) {
+    Map<IPath, CacheEntry> entries = projects.get(projectName);
+    if (entries == null) {
+      entries = readProject(projectName);
+      projects.put(projectName, entries);
+    }
+    return entries;
+  }
+
+  private Map<IPath, CacheEntry> readProject(String projectName) {
+    Map<IPath, CacheEntry> entries = new HashMap<IPath, CacheEntry>();
+    File cacheFile = getCacheFile(projectName);
+    if (!cacheFile.exists()) {
+      return entries;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+          cacheFile)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        // Written by a different version of the plugin; start over
+        return entries;
+      }
+
+      int entryCount = in.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        IPath cuPath = new Path(in.readUTF());
+        byte[] sourceHash = readHash(in);
+        byte[] dependencySignature = readHash(in);
+
+        List<String> typeDependencies = new ArrayList<String>();
+        int dependencyCount = in.readInt();
+        for (int j = 0; j < dependencyCount; j++) {
+          typeDependencies.add(in.readUTF());
+        }
+
+        List<CategorizedProblem> problems = new ArrayList<CategorizedProblem>();
+        int problemCount = in.readInt();
+        for (int j = 0; j < problemCount; j++) {
+          problems.add(CachedProblem.read(in));
+        }
+
+        entries.put(cuPath, new CacheEntry(sourceHash, dependencySignature,
+            problems, typeDependencies));
+      }
+    } catch (IOException e) {
+      // A cache we cannot read is just a cold cache
+      GWTPluginLog.logWarning(e, "Could not read the GWT validation cache for "
+          + projectName);
+      entries.clear();
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Ignore
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Writes a project's entries to a temporary file which then replaces the
+   * cache file, so an interrupted write never leaves a partial cache behind.
+   */
+  private void writeProject(String projectName, Map<IPath, CacheEntry> entries)
+      throws IOException {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+
+    File cacheFile = getCacheFile(projectName);
+    File tempFile = new File(directory, projectName + TEMP_FILE_SUFFIX);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(tempFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+      for (Entry<IPath, CacheEntry> mapEntry : entries.entrySet()) {
+        CacheEntry entry = mapEntry.getValue();
+        out.writeUTF(mapEntry.getKey().toString());
+        writeHash(out, entry.sourceHash);
+        writeHash(out, entry.dependencySignature);
+
+        out.writeInt(entry.typeDependencies.size());
+        for (String typeDependency : entry.typeDependencies) {
+          out.writeUTF(typeDependency);
+        }
+
+        out.writeInt(entry.problems.size());
+        for (CategorizedProblem problem : entry.problems) {
+          CachedProblem.write(out, problem);
+        }
+      }
+    } finally {
+      out.close();
+    }
+
+    // File.renameTo will not replace an existing file on all platforms
+    if (cacheFile.exists() && !cacheFile.delete()) {
+      tempFile.delete();
+      throw new IOException("Could not replace " + cacheFile);
+    }
+    if (!tempFile.renameTo(cacheFile)) {
+      throw new IOException("Could not rename " + tempFile + " to "
+          + cacheFile);
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators.java;
+
+import com.google.gwt.dev.util.Empty;
+
+import org.eclipse.jdt.core.compiler.BuildContext;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+
+import java.util.List;
+
+/**
+ * The problems and type dependencies found by validating a compilation unit
+ * during a build.
+ */
+class BuildValidationResult {
+
+  private static final CategorizedProblem[] EMPTY_PROBLEMS = new CategorizedProblem[0];
+
+  private final boolean cacheable;
+
+  private final List<CategorizedProblem> problems;
+
+  private final List<String> typeDependencies;
+
+  /**
+   * @param cacheable whether the result only depends on the compilation unit's
+   *          source and type dependencies, so it can be reused by later builds
+   *          while those are unchanged
+   */
+  public BuildValidationResult(List<CategorizedProblem> problems,
+      List<String> typeDependencies, boolean cacheable) {
+    this.problems = problems;
+    this.typeDependencies = typeDependencies;
+    this.cacheable = cacheable;
+  }
+
+  public List<CategorizedProblem> getProblems() {
+    return problems;
+  }
+
+  public List<String> getTypeDependencies() {
+    return typeDependencies;
+  }
+
+  public boolean isCacheable() {
+    return cacheable;
+  }
+
+  public void record(BuildContext buildContext) {
+    // Record the problems
+    buildContext.recordNewProblems(problems.toArray(EMPTY_PROBLEMS));
+
+    // Record the JSNI dependencies so that changing any referenced types
+    // will automatically trigger a rebuild of this file
+    buildContext.recordDependencies(typeDependencies.toArray(Empty.STRINGS));
+  }
+
+}
@@ -17,12 +17,12 @@ package com.google.gwt.eclipse.core.validators.java;
 import com.google.gdt.eclipse.core.BuilderUtilities;
 import com.google.gdt.eclipse.core.JavaASTUtils;
 import com.google.gdt.eclipse.core.validation.ValidationResult;
-import com.google.gwt.dev.util.Empty;
 import com.google.gwt.eclipse.core.GWTPluginLog;
 import com.google.gwt.eclipse.core.clientbundle.ClientBundleResourceDependencyIndex;
 import com.google.gwt.eclipse.core.markers.ClientBundleProblem;
 import com.google.gwt.eclipse.core.markers.GWTJavaProblem;
 import com.google.gwt.eclipse.core.nature.GWTNature;
+import com.google.gwt.eclipse.core.preferences.GWTPreferences;
 import com.google.gwt.eclipse.core.search.IIndexedJavaRef;
 import com.google.gwt.eclipse.core.search.IndexedJsniJavaRef;
 import com.google.gwt.eclipse.core.search.JavaRefIndex;
@@ -34,17 +34,18 @@ import com.google.gwt.eclipse.core.uibinder.model.UiBinderSubtypeToUiXmlIndex;
 import com.google.gwt.eclipse.core.uibinder.model.reference.UiBinderReferenceManager;
 import com.google.gwt.eclipse.core.uibinder.problems.java.UiBinderJavaProblem;
 import com.google.gwt.eclipse.core.uibinder.validators.UiBinderJavaValidator;
+import com.google.gwt.eclipse.core.validators.ValidationVisitorPipeline;
 import com.google.gwt.eclipse.core.validators.clientbundle.ClientBundleValidator;
 import com.google.gwt.eclipse.core.validators.rpc.RemoteServiceProblem;
 import com.google.gwt.eclipse.core.validators.rpc.RemoteServiceValidator;
 
 import org.eclipse.core.internal.jobs.JobStatus;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
@@ -71,6 +72,12 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Integrates into the JDT reconcile and build process to flag GWT-specific
@@ -78,6 +85,30 @@ import java.util.Set;
  */
 public class JavaCompilationParticipant extends CompilationParticipant {
 
+  /**
+   * Progress monitor passed to the AST parser, which only forwards
+   * cancellation requests. This lets a canceled validation job stop creating
+   * ASTs, while leaving progress reporting to the job's thread (progress
+   * monitors are not thread-safe).
+   */
+  private static class CancellationMonitor extends NullProgressMonitor {
+    private final IProgressMonitor monitor;
+
+    public CancellationMonitor(IProgressMonitor monitor) {
+      this.monitor = monitor;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return monitor.isCanceled();
+    }
+  }
+
+  /**
+   * Number of shards per thread when validating a batch build in parallel.
+   */
+  private static final int SHARDS_PER_VALIDATION_THREAD = 4;
+
   private static final String[] NO_STRINGS = new String[0];
 
   private static final CategorizedProblem[] EMPTY_PROBLEMS = new CategorizedProblem[0];
@@ -104,23 +135,38 @@ public class JavaCompilationParticipant extends CompilationParticipant {
       UiBinderReferenceManager.INSTANCE.getSubtypeToUiXmlIndex().clear(project);
       UiBinderReferenceManager.INSTANCE.getUiXmlReferencedFieldIndex().clear(
           JavaCore.create(project));
+
+      // The cached validation results relied on the entries cleared above
+      BuildValidationCache.getInstance().clear(project);
     } catch (CoreException e) {
       GWTPluginLog.logError(e);
     }
   }
 
   public static JavaValidationResult validateCompilationUnit(ASTNode ast) {
-    ICompilationUnit cu = JavaASTUtils.getCompilationUnit(ast);
+    ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+    JavaValidationVisitor visitor = registerJavaValidationVisitor(pipeline, ast);
+    pipeline.run(ast);
+    return getJavaValidationResult(ast, visitor);
+  }
 
-    // If the compilation unit is not on the build classpath, return an empty
-    // list of problems/JSNI Java references.
-    if (!cu.getJavaProject().isOnClasspath(cu)) {
+  private static IProgressMonitor createCancellationMonitor(
+      IProgressMonitor monitor) {
+    return (monitor != null ? new CancellationMonitor(monitor) : null);
+  }
+
+  /**
+   * Returns the problems and JSNI Java references found by a visitor created by
+   * {@link #registerJavaValidationVisitor(ValidationVisitorPipeline, ASTNode)},
+   * and indexes the references.
+   */
+  private static JavaValidationResult getJavaValidationResult(ASTNode ast,
+      JavaValidationVisitor visitor) {
+    if (visitor == null) {
       return new JavaValidationResult();
     }
 
-    // Walk the Java AST to find problems and Java references in JSNI blocks
-    JavaValidationVisitor visitor = new JavaValidationVisitor();
-    ast.accept(visitor);
+    ICompilationUnit cu = JavaASTUtils.getCompilationUnit(ast);
 
     /*
      * Index the Java references in the compilation unit, but only if we're
@@ -167,6 +213,32 @@ public class JavaCompilationParticipant extends CompilationParticipant {
 
     // Add all the Java references to the index
     JavaRefIndex.getInstance().add(cu.getPath(), indexRefs);
+
+    /*
+     * A cached build validation result is only valid while the index holds the
+     * references found by that validation, so drop it. Builds which validate
+     * the compilation unit cache their result again afterwards.
+     */
+    BuildValidationCache.getInstance().remove(cu.getPath());
+  }
+
+  /**
+   * Registers a visitor which finds problems and Java references in JSNI
+   * blocks.
+   *
+   * @return the visitor, or <code>null</code> if the compilation unit is not on
+   *         the build classpath, in which case there is nothing to find
+   */
+  private static JavaValidationVisitor registerJavaValidationVisitor(
+      ValidationVisitorPipeline pipeline, ASTNode ast) {
+    ICompilationUnit cu = JavaASTUtils.getCompilationUnit(ast);
+    if (!cu.getJavaProject().isOnClasspath(cu)) {
+      return null;
+    }
+
+    JavaValidationVisitor visitor = new JavaValidationVisitor();
+    pipeline.register(visitor, ASTNode.METHOD_DECLARATION);
+    return visitor;
   }
 
   @Override
@@ -188,8 +260,13 @@ public class JavaCompilationParticipant extends CompilationParticipant {
           protected IStatus run(IProgressMonitor monitor) {
 
             monitor.beginTask("validating", files.length);
-            handleBuildStarting(files, monitor);
-            monitor.done();
+            try {
+              handleBuildStarting(files, monitor);
+            } catch (OperationCanceledException e) {
+              return Status.CANCEL_STATUS;
+            } finally {
+              monitor.done();
+            }
 
             return new JobStatus(Status.OK, this, "done");
           }
@@ -247,9 +324,45 @@ public class JavaCompilationParticipant extends CompilationParticipant {
 
       // TODO: Merge this code with that of buildStarting
 
+      /*
+       * Register all of the validators with a single pipeline, so the AST is
+       * only traversed (and its bindings only resolved) once.
+       */
+      ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+      JavaValidationVisitor visitor = registerJavaValidationVisitor(pipeline,
+          ast);
+
+      RemoteServiceValidator rsv = new RemoteServiceValidator();
+      rsv.register(pipeline, ast);
+
+      ClientBundleValidator cbv = new ClientBundleValidator();
+      cbv.register(pipeline, ast);
+
+      UiBinderJavaValidator uiv = null;
+      if (UiBinderConstants.UI_BINDER_ENABLED) {
+        /*
+         * Set up the UiBinder validator. Note that we're passing in overlays of
+         * the subtype-to-owner and subtype-to-xml indices instead of using the
+         * "real" indices (i.e. the one that we update during builds). This
+         * ensures that any updates the validator makes during a reconcile are
+         * only used by that reconcile pass, and are not persisted, without
+         * copying the indices on every reconcile.
+         */
+        uiv = new UiBinderJavaValidator(ast,
+            UiBinderSubtypeToOwnerIndex.createOverlay(
+                UiBinderReferenceManager.INSTANCE.getSubtypeToOwnerIndex()),
+            UiBinderSubtypeToUiXmlIndex.createOverlay(
+                UiBinderReferenceManager.INSTANCE.getSubtypeToUiXmlIndex()),
+            UiBinderReferenceManager.INSTANCE.getUiXmlReferencedFieldIndex(),
+            null);
+        uiv.register(pipeline);
+      }
+
+      pipeline.run(ast);
+
       CategorizedProblem[] currentProblems = context.getProblems(GWTJavaProblem.MARKER_ID);
       // GWT-validation and error reporting
-      JavaValidationResult result = validateCompilationUnit(ast);
+      JavaValidationResult result = getJavaValidationResult(ast, visitor);
       List<GWTJavaProblem> gwtCoreProblems = result.getProblems();
       ArrayList<CategorizedProblem> finalProblemSet = new ArrayList<CategorizedProblem>();
       if (currentProblems != null) {
@@ -259,36 +372,20 @@ public class JavaCompilationParticipant extends CompilationParticipant {
       context.putProblems(GWTJavaProblem.MARKER_ID, (finalProblemSet.size() > 0
           ? finalProblemSet.toArray(EMPTY_PROBLEMS) : null));
 
-      // GWT RPC validation and error reporting
-      RemoteServiceValidator rsv = new RemoteServiceValidator();
-      ValidationResult validationResult = rsv.validate(ast);
+      // GWT RPC error reporting
+      ValidationResult validationResult = rsv.getValidationResult();
       List<CategorizedProblem> rpcProblems = validationResult.getProblems();
       context.putProblems(RemoteServiceProblem.MARKER_ID,
           (rpcProblems.size() > 0 ? rpcProblems.toArray(EMPTY_PROBLEMS) : null));
 
-      // ClientBundle validation
-      ClientBundleValidator cbv = new ClientBundleValidator();
-      ValidationResult cbvResult = cbv.validate(ast);
+      // ClientBundle error reporting
+      ValidationResult cbvResult = cbv.getValidationResult();
       List<CategorizedProblem> cbProblems = cbvResult.getProblems();
       context.putProblems(ClientBundleProblem.MARKER_ID, (cbProblems.size() > 0
           ? cbProblems.toArray(EMPTY_PROBLEMS) : null));
 
-      if (UiBinderConstants.UI_BINDER_ENABLED) {
-        /*
-         * Set up the UiBinder validator. Note that we're passing in copies of
-         * the subtype-to-owner and subtype-to-xml indices instead of using the
-         * "real" indices (i.e. the one that we update during builds). This
-         * ensures that any updates the validator makes during a reconcile are
-         * only used by that reconcile pass, and are not persisted.
-         */
-        UiBinderJavaValidator uiv = new UiBinderJavaValidator(ast,
-            new UiBinderSubtypeToOwnerIndex(
-                UiBinderReferenceManager.INSTANCE.getSubtypeToOwnerIndex()),
-            new UiBinderSubtypeToUiXmlIndex(
-                UiBinderReferenceManager.INSTANCE.getSubtypeToUiXmlIndex()),
-            UiBinderReferenceManager.INSTANCE.getUiXmlReferencedFieldIndex(),
-            null);
-        ValidationResult uivResult = uiv.validate();
+      if (uiv != null) {
+        ValidationResult uivResult = uiv.getValidationResult();
         List<CategorizedProblem> uivProblems = uivResult.getProblems();
         context.putProblems(UiBinderJavaProblem.MARKER_ID,
             (uivProblems.size() > 0 ? uivProblems.toArray(EMPTY_PROBLEMS)
@@ -309,124 +406,86 @@ public class JavaCompilationParticipant extends CompilationParticipant {
     UiBinderSubtypeToOwnerIndex prebuildOwnerIndex = new UiBinderSubtypeToOwnerIndex(
         UiBinderReferenceManager.INSTANCE.getSubtypeToOwnerIndex());
     final LinkedHashMap<ICompilationUnit, BuildContext> compilationUnitToBuildContext = new LinkedHashMap<ICompilationUnit, BuildContext>();
+    final Map<ICompilationUnit, byte[]> sourceHashes = new HashMap<ICompilationUnit, byte[]>();
 
+    BuildValidationCache cache = BuildValidationCache.getInstance();
+    int hitCount = 0;
     for (BuildContext buildContext : files) {
       ICompilationUnit cu = JavaCore.createCompilationUnitFrom(buildContext.getFile());
+
+      /*
+       * Batch builds reuse the results of earlier validations for units whose
+       * source and dependencies have not changed, without creating their ASTs.
+       * Incremental builds only contain units which need validating anyway, so
+       * they neither hash the source nor cache their results.
+       */
+      byte[] sourceHash = null;
+      if (monitor != null) {
+        sourceHash = BuildValidationCache.hashSource(buildContext.getContents());
+        BuildValidationResult cachedResult = cache.lookup(cu, sourceHash);
+        if (cachedResult != null) {
+          cachedResult.record(buildContext);
+          monitor.worked(1);
+          hitCount++;
+          continue;
+        }
+      }
+
       compilationUnitToBuildContext.put(cu, buildContext);
+      sourceHashes.put(cu, sourceHash);
+    }
+
+    if (monitor != null) {
+      GWTPluginLog.logTrace("GWT validation of "
+          + files[0].getFile().getProject().getName() + " reused " + hitCount
+          + " cached results and validated "
+          + compilationUnitToBuildContext.size() + " compilation units");
     }
 
     final Set<ICompilationUnit> validatedCompilationUnits = new HashSet<ICompilationUnit>();
 
     /*
-     * ASTBatchParser processes the ICompilationUnits in batches based on the
-     * available memory in the system. Note that we never cache the ASTs they
-     * are only live for the duration of the callback below. Empirically, trying
-     * to cache all ASTs for gwt-user project results in an OOM.
+     * Only batch builds (which have a progress monitor) are validated in
+     * parallel; incremental builds are small and run on the builder's thread.
      */
-    new ASTBatchParser().createASTs(
-        compilationUnitToBuildContext.keySet().toArray(NO_UNITS), NO_STRINGS,
-        new ASTRequestor() {
-          @Override
-          public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
-            BuildContext buildContext = compilationUnitToBuildContext.get(source);
-            IFile file = buildContext.getFile();
-
-            if (monitor != null) {
-              // Return early if this is a canceled job. Note that the AST is
-              // still being built as there is no way to signal an abort.
-              if (monitor.isCanceled()) {
-                return;
-              }
-
-              // Update the progress monitor.
-              monitor.subTask(source.getElementName());
-              monitor.worked(1);
-            }
-
-            try {
-              ICompilationUnit cu = source;
-
-              validatedCompilationUnits.add(cu);
-
-              try {
-                /*
-                 * Generally, the compilation unit will be consistent (the Java
-                 * Model matches the .java file on disk). However, in certain
-                 * cases, such as when the user undos a member rename
-                 * refactoring, the two are out of sync when the build starts.
-                 * In these cases, we have to explicitly reconcile the
-                 * compilation unit with its underlying resource and use the AST
-                 * we get back for validation.
-                 */
-                if (!cu.isConsistent()) {
-                  ast = cu.reconcile(AST.JLS3, true, null, null);
-                  assert (cu.isConsistent());
+    int parallelism = GWTPreferences.getBatchValidationParallelism();
+    if (monitor != null && parallelism > 1
+        && compilationUnitToBuildContext.size() > 1) {
+      validateInParallel(compilationUnitToBuildContext, sourceHashes,
+          validatedCompilationUnits, monitor, parallelism);
+    } else if (!compilationUnitToBuildContext.isEmpty()) {
+      /*
+       * ASTBatchParser processes the ICompilationUnits in batches based on the
+       * available memory in the system. Note that we never cache the ASTs they
+       * are only live for the duration of the callback below. Empirically,
+       * trying to cache all ASTs for gwt-user project results in an OOM.
+       */
+      new ASTBatchParser().createASTs(
+          compilationUnitToBuildContext.keySet().toArray(NO_UNITS),
+          NO_STRINGS, new ASTRequestor() {
+            @Override
+            public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
+              if (monitor != null) {
+                // Return early if this is a canceled job
+                if (monitor.isCanceled()) {
+                  return;
                 }
-              } catch (JavaModelException e) {
-                GWTPluginLog.logError(e);
-                return;
-              }
-
-              // TODO: Merge this code with that of reconcile
-
-              // Validate the Java AST and record any GWT problems we find
-              JavaValidationResult result = validateCompilationUnit(ast);
-              List<CategorizedProblem> problems = new ArrayList<CategorizedProblem>(
-                  result.getProblems());
-
-              RemoteServiceValidator rsv = new RemoteServiceValidator();
-              ValidationResult validationResult = rsv.validate(ast);
-              problems.addAll(validationResult.getProblems());
-
-              ClientBundleValidator cbv = new ClientBundleValidator();
-              ValidationResult cbvResult = cbv.validate((CompilationUnit) ast);
-              problems.addAll(cbvResult.getProblems());
-
-              ValidationResult uivResult;
-              if (UiBinderConstants.UI_BINDER_ENABLED) {
-                UiBinderJavaValidator uiv = new UiBinderJavaValidator(
-                    (CompilationUnit) ast,
-                    UiBinderReferenceManager.INSTANCE.getSubtypeToOwnerIndex(),
-                    UiBinderReferenceManager.INSTANCE.getSubtypeToUiXmlIndex(),
-                    UiBinderReferenceManager.INSTANCE.getUiXmlReferencedFieldIndex(),
-                    UiBinderReferenceManager.INSTANCE.getReferenceManager());
-                uivResult = uiv.validate();
-                problems.addAll(uivResult.getProblems());
-              }
 
-              // Record the problems
-              buildContext.recordNewProblems(problems.toArray(EMPTY_PROBLEMS));
-
-              // Get all Java types references from JSNI blocks in this file
-              List<String> typeDependencies = new ArrayList<String>();
-              for (JsniJavaRef javaRef : result.getJavaRefs()) {
-                if (!typeDependencies.contains(javaRef.dottedClassName())) {
-                  typeDependencies.add(javaRef.dottedClassName());
-                }
+                // Update the progress monitor.
+                monitor.subTask(source.getElementName());
+                monitor.worked(1);
               }
 
-              // Add the RPC dependencies
-              typeDependencies.addAll(validationResult.getTypeDependencies());
+              validatedCompilationUnits.add(source);
 
-              if (UiBinderConstants.UI_BINDER_ENABLED) {
-                // Add the UiBinder dependencies
-                typeDependencies.addAll(uivResult.getTypeDependencies());
+              BuildValidationResult result = validateForBuild(source, ast,
+                  sourceHashes.get(source));
+              if (result != null) {
+                result.record(compilationUnitToBuildContext.get(source));
               }
-
-              // Record the JSNI dependencies so that changing any referenced
-              // types
-              // will automatically trigger a rebuild of this file
-              buildContext.recordDependencies(typeDependencies.toArray(Empty.STRINGS));
-            } catch (OperationCanceledException e) {
-              // Thrown by Eclipse to abort long-running processes
-              throw e;
-            } catch (Exception e) {
-              // Don't want to allow any unexpected exceptions to escape
-              GWTPluginLog.logError(e, "Unexpected error while validating {0}",
-                  file.getName());
             }
-          }
-        }, null);
+          }, createCancellationMonitor(monitor));
+    }
 
     if (UiBinderConstants.UI_BINDER_ENABLED) {
       revalidateOwnerTypes(prebuildOwnerIndex, validatedCompilationUnits);
@@ -478,4 +537,204 @@ public class JavaCompilationParticipant extends CompilationParticipant {
     }
   }
 
+  /**
+   * Validates a compilation unit as part of a build, and caches the result for
+   * later batch builds.
+   * 
+   * @param sourceHash the hash of the source the build is compiling
+   * @return the problems and type dependencies to record for the compilation
+   *         unit, or <code>null</code> if it could not be validated
+   */
+  private BuildValidationResult validateForBuild(ICompilationUnit cu,
+      CompilationUnit ast, byte[] sourceHash) {
+    try {
+      try {
+        /*
+         * Generally, the compilation unit will be consistent (the Java Model
+         * matches the .java file on disk). However, in certain cases, such as
+         * when the user undos a member rename refactoring, the two are out of
+         * sync when the build starts. In these cases, we have to explicitly
+         * reconcile the compilation unit with its underlying resource and use
+         * the AST we get back for validation.
+         */
+        if (!cu.isConsistent()) {
+          ast = cu.reconcile(AST.JLS3, true, null, null);
+          assert (cu.isConsistent());
+
+          // The AST no longer matches the source we hashed
+          sourceHash = null;
+        }
+      } catch (JavaModelException e) {
+        GWTPluginLog.logError(e);
+        return null;
+      }
+
+      // TODO: Merge this code with that of reconcile
+
+      // Run all of the validators over the Java AST in a single pass
+      ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+      JavaValidationVisitor visitor = registerJavaValidationVisitor(pipeline,
+          ast);
+
+      RemoteServiceValidator rsv = new RemoteServiceValidator();
+      rsv.register(pipeline, ast);
+
+      ClientBundleValidator cbv = new ClientBundleValidator();
+      cbv.register(pipeline, ast);
+
+      UiBinderJavaValidator uiv = null;
+      if (UiBinderConstants.UI_BINDER_ENABLED) {
+        uiv = new UiBinderJavaValidator(ast,
+            UiBinderReferenceManager.INSTANCE.getSubtypeToOwnerIndex(),
+            UiBinderReferenceManager.INSTANCE.getSubtypeToUiXmlIndex(),
+            UiBinderReferenceManager.INSTANCE.getUiXmlReferencedFieldIndex(),
+            UiBinderReferenceManager.INSTANCE.getReferenceManager());
+        uiv.register(pipeline);
+      }
+
+      pipeline.run(ast);
+
+      // Record any GWT problems we found
+      JavaValidationResult result = getJavaValidationResult(ast, visitor);
+      List<CategorizedProblem> problems = new ArrayList<CategorizedProblem>(
+          result.getProblems());
+
+      ValidationResult validationResult = rsv.getValidationResult();
+      problems.addAll(validationResult.getProblems());
+
+      ValidationResult cbvResult = cbv.getValidationResult();
+      problems.addAll(cbvResult.getProblems());
+
+      ValidationResult uivResult = null;
+      if (uiv != null) {
+        uivResult = uiv.getValidationResult();
+        problems.addAll(uivResult.getProblems());
+      }
+
+      // Get all Java types references from JSNI blocks in this file
+      List<String> typeDependencies = new ArrayList<String>();
+      for (JsniJavaRef javaRef : result.getJavaRefs()) {
+        if (!typeDependencies.contains(javaRef.dottedClassName())) {
+          typeDependencies.add(javaRef.dottedClassName());
+        }
+      }
+
+      // Add the RPC dependencies
+      typeDependencies.addAll(validationResult.getTypeDependencies());
+
+      if (uivResult != null) {
+        // Add the UiBinder dependencies
+        typeDependencies.addAll(uivResult.getTypeDependencies());
+      }
+
+      /*
+       * ClientBundle and UiBinder validation also depend on resource files and
+       * on indices shared with other compilation units, so only cache results
+       * which did not involve them.
+       */
+      boolean cacheable = sourceHash != null && !cbv.hasValidatedTypes()
+          && (uiv == null || !uiv.hasValidatedTypes());
+      BuildValidationResult buildResult = new BuildValidationResult(problems,
+          typeDependencies, cacheable);
+      BuildValidationCache.getInstance().put(cu, sourceHash, buildResult);
+      return buildResult;
+    } catch (OperationCanceledException e) {
+      // Thrown by Eclipse to abort long-running processes
+      throw e;
+    } catch (Exception e) {
+      // Don't want to allow any unexpected exceptions to escape
+      GWTPluginLog.logError(e, "Unexpected error while validating {0}",
+          cu.getElementName());
+      return null;
+    }
+  }
+
+  /**
+   * Partitions the compilation units into shards and parses and validates the
+   * shards on a bounded pool of worker threads. The results are recorded on
+   * the build contexts afterwards, on the calling thread and in the original
+   * compilation unit order, so the outcome does not depend on the order in
+   * which the shards complete.
+   */
+  private void validateInParallel(
+      LinkedHashMap<ICompilationUnit, BuildContext> compilationUnitToBuildContext,
+      final Map<ICompilationUnit, byte[]> sourceHashes,
+      Set<ICompilationUnit> validatedCompilationUnits,
+      IProgressMonitor monitor, int parallelism) {
+    ICompilationUnit[] units = compilationUnitToBuildContext.keySet().toArray(
+        NO_UNITS);
+    final IProgressMonitor cancellationMonitor = createCancellationMonitor(monitor);
+
+    /*
+     * Use more shards than threads so the work is spread evenly even if some
+     * shards take longer than others. Each shard goes through its own
+     * ASTBatchParser, which keeps the number of live ASTs per thread bounded.
+     */
+    int shardCount = Math.min(units.length, parallelism
+        * SHARDS_PER_VALIDATION_THREAD);
+    int shardSize = (units.length + shardCount - 1) / shardCount;
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    List<Future<Map<ICompilationUnit, BuildValidationResult>>> futures = new ArrayList<Future<Map<ICompilationUnit, BuildValidationResult>>>();
+    List<Integer> shardSizes = new ArrayList<Integer>();
+    try {
+      for (int start = 0; start < units.length; start += shardSize) {
+        final ICompilationUnit[] shard = new ICompilationUnit[Math.min(
+            shardSize, units.length - start)];
+        System.arraycopy(units, start, shard, 0, shard.length);
+        shardSizes.add(shard.length);
+
+        futures.add(executor.submit(new Callable<Map<ICompilationUnit, BuildValidationResult>>() {
+          public Map<ICompilationUnit, BuildValidationResult> call() {
+            final Map<ICompilationUnit, BuildValidationResult> results = new HashMap<ICompilationUnit, BuildValidationResult>();
+            new ASTBatchParser().createASTs(shard, NO_STRINGS,
+                new ASTRequestor() {
+                  @Override
+                  public void acceptAST(ICompilationUnit source,
+                      CompilationUnit ast) {
+                    if (cancellationMonitor.isCanceled()) {
+                      throw new OperationCanceledException();
+                    }
+                    results.put(source, validateForBuild(source, ast,
+                        sourceHashes.get(source)));
+                  }
+                }, cancellationMonitor);
+            return results;
+          }
+        }));
+      }
+
+      Map<ICompilationUnit, BuildValidationResult> results = new HashMap<ICompilationUnit, BuildValidationResult>();
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.putAll(futures.get(i).get());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof OperationCanceledException) {
+            throw (OperationCanceledException) e.getCause();
+          }
+          GWTPluginLog.logError(e.getCause(),
+              "Unexpected error while validating GWT components");
+        }
+        monitor.worked(shardSizes.get(i));
+      }
+
+      // Record the results in the order of the original build contexts
+      for (Entry<ICompilationUnit, BuildContext> entry : compilationUnitToBuildContext.entrySet()) {
+        if (!results.containsKey(entry.getKey())) {
+          continue;
+        }
+        validatedCompilationUnits.add(entry.getKey());
+        BuildValidationResult result = results.get(entry.getKey());
+        if (result != null) {
+          result.record(entry.getValue());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationCanceledException();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
 }
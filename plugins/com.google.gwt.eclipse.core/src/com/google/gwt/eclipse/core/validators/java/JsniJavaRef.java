@@ -252,8 +252,31 @@ public class JsniJavaRef extends JsniRef {
     return sig;
   }
 
+  /**
+   * Resolves the reference against the project's classpath. The outcome is
+   * memoized by the {@link SupertypeHierarchyCache} until the next Java element
+   * change, so resolving the same reference again is cheap.
+   */
   public IJavaElement resolveJavaElement(IJavaProject project)
       throws UnresolvedJsniJavaRefException {
+    return SupertypeHierarchyCache.INSTANCE.resolve(this, project);
+  }
+
+  public void setOffset(int offset) {
+    this.offset = offset;
+  }
+
+  public void setSource(IPath source) {
+    this.source = source;
+  }
+
+  public String simpleClassName() {
+    String[] classParts = dottedClassName().split("\\.");
+    return classParts[classParts.length - 1];
+  }
+
+  IJavaElement doResolveJavaElement(IJavaProject project)
+      throws UnresolvedJsniJavaRefException {
     IJavaElement element = null;
 
     // 0. Ignore the magic null reference
@@ -286,11 +309,11 @@ public class JsniJavaRef extends JsniRef {
       }
     }
 
-    // 2. Create a super-type hierarchy for the type, which we'll use for
+    // 2. Get the super-type hierarchy for the type, which we'll use for
     // finding its super classes and implemented interfaces
     ITypeHierarchy hierarchy;
     try {
-      hierarchy = type.newSupertypeHierarchy(null);
+      hierarchy = SupertypeHierarchyCache.INSTANCE.getSupertypeHierarchy(type);
     } catch (JavaModelException e) {
       GWTPluginLog.logError(e, "Error creating type hierarchy for "
           + className());
@@ -413,17 +436,4 @@ public class JsniJavaRef extends JsniRef {
     assert (element != null);
     return element;
   }
-
-  public void setOffset(int offset) {
-    this.offset = offset;
-  }
-
-  public void setSource(IPath source) {
-    this.source = source;
-  }
-
-  public String simpleClassName() {
-    String[] classParts = dottedClassName().split("\\.");
-    return classParts[classParts.length - 1];
-  }
 }
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators.java;
+
+import com.google.gwt.eclipse.core.validators.java.JsniParser.JavaScriptParseException;
+
+import org.eclipse.core.runtime.IPath;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers what parsing the JSNI methods of each compilation unit found, so
+ * a reconcile only parses the JSNI methods whose source has changed.
+ * <p>
+ * Entries are keyed by the source of the method declaration, which is all
+ * the outcome depends on, and record offsets relative to the start of the
+ * method. Reusing an entry rebases them on the method's current position, so
+ * edits elsewhere in the unit do not invalidate it. Entries are grouped by
+ * compilation unit, and the least recently used ones (and units) are dropped
+ * once there are too many.
+ * <p>
+ * This class is thread-safe.
+ */
+final class JsniParseCache {
+
+  /**
+   * The Java references found in a JSNI method, or the JavaScript syntax error
+   * which prevented finding them.
+   */
+  static final class ParsedJsni {
+
+    private final String errorMessage;
+
+    private final int errorOffset;
+
+    private final int[] refOffsets;
+
+    private final String[] refs;
+
+    /**
+     * Creates the outcome of a successful parse.
+     * 
+     * @param refs the text of each Java reference
+     * @param refOffsets the offset of each Java reference relative to the
+     *          start of the method
+     */
+    ParsedJsni(List<String> refs, List<Integer> refOffsets) {
+      this.refs = refs.toArray(new String[refs.size()]);
+      this.refOffsets = new int[refOffsets.size()];
+      for (int i = 0; i < this.refOffsets.length; i++) {
+        this.refOffsets[i] = refOffsets.get(i);
+      }
+      this.errorMessage = null;
+      this.errorOffset = -1;
+    }
+
+    /**
+     * Creates the outcome of a parse which failed with the given error, whose
+     * offset is relative to the start of the method.
+     */
+    ParsedJsni(JavaScriptParseException e) {
+      this.refs = null;
+      this.refOffsets = null;
+      this.errorMessage = e.getMessage();
+      this.errorOffset = e.getOffset();
+    }
+
+    /**
+     * Returns new Java references located in the given source file, with the
+     * method starting at the given position.
+     * 
+     * @throws JavaScriptParseException if the method has a syntax error, at
+     *           an offset relative to the start of the method
+     */
+    List<JsniJavaRef> createJavaRefs(IPath source, int startPosition)
+        throws JavaScriptParseException {
+      if (refs == null) {
+        throw new JavaScriptParseException(errorMessage, errorOffset);
+      }
+
+      List<JsniJavaRef> javaRefs = new ArrayList<JsniJavaRef>(refs.length);
+      for (int i = 0; i < refs.length; i++) {
+        JsniJavaRef javaRef = JsniJavaRef.parse(refs[i]);
+        javaRef.setSource(source);
+        javaRef.setOffset(refOffsets[i] + startPosition);
+        javaRefs.add(javaRef);
+      }
+      return javaRefs;
+    }
+  }
+
+  private static final int MAX_METHODS_PER_UNIT = 1000;
+
+  private static final int MAX_UNITS = 50;
+
+  private int hitCount;
+
+  private int missCount;
+
+  /**
+   * The parsed JSNI methods of each compilation unit by method source, in
+   * access order.
+   */
+  private final LinkedHashMap<IPath, LinkedHashMap<String, ParsedJsni>> units = new LinkedHashMap<IPath, LinkedHashMap<String, ParsedJsni>>(
+      16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(
+        Map.Entry<IPath, LinkedHashMap<String, ParsedJsni>> eldest) {
+      return size() > MAX_UNITS;
+    }
+  };
+
+  public synchronized void clear() {
+    units.clear();
+  }
+
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns what parsing the method found, or <code>null</code> if it has not
+   * been parsed.
+   * 
+   * @param unitPath the path of the compilation unit containing the method
+   * @param methodSource the source of the method declaration
+   */
+  public synchronized ParsedJsni lookup(IPath unitPath, String methodSource) {
+    Map<String, ParsedJsni> methods = units.get(unitPath);
+    ParsedJsni parsed = (methods != null ? methods.get(methodSource) : null);
+    if (parsed != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return parsed;
+  }
+
+  public synchronized void put(IPath unitPath, String methodSource,
+      ParsedJsni parsed) {
+    LinkedHashMap<String, ParsedJsni> methods = units.get(unitPath);
+    if (methods == null) {
+      methods = new LinkedHashMap<String, ParsedJsni>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<String, ParsedJsni> eldest) {
+          return size() > MAX_METHODS_PER_UNIT;
+        }
+      };
+      units.put(unitPath, methods);
+    }
+    methods.put(methodSource, parsed);
+  }
+}
@@ -34,6 +34,7 @@ import com.google.gwt.eclipse.core.GWTPluginLog;
 import com.google.gwt.eclipse.core.editors.java.GWTPartitions;
 import com.google.gwt.eclipse.core.markers.GWTJavaProblem;
 import com.google.gwt.eclipse.core.markers.GWTProblemType;
+import com.google.gwt.eclipse.core.validators.java.JsniParseCache.ParsedJsni;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.jdt.core.ICompilationUnit;
@@ -143,6 +144,11 @@ public final class JsniParser {
 
   public static final String JSNI_BLOCK_START = "/*-{";
 
+  /**
+   * The Java references found in recently parsed JSNI methods.
+   */
+  static final JsniParseCache PARSE_CACHE = new JsniParseCache();
+
   private static final String JS_FUNCTION_FOOTER = "}";
 
   private static final String JS_FUNCTION_HEADER = "function(){";
@@ -263,15 +269,22 @@ public final class JsniParser {
     }
   }
 
-  private static List<JsniJavaRef> findJavaRefs(
-      final MethodDeclaration jsniMethod) throws IOException,
-      JavaScriptParseException, BadLocationException {
-    final String jsniSource = JavaASTUtils.getSource(jsniMethod);
-    ICompilationUnit cu = JavaASTUtils.getCompilationUnit(jsniMethod);
-    final IPath cuPath = cu.getResource().getFullPath();
-    final List<JsniJavaRef> javaRefs = new ArrayList<JsniJavaRef>();
+  /**
+   * Parses the JSNI method and records the text of each Java reference, with
+   * its offset relative to the start of the method.
+   */
+  static ParsedJsni parseJavaRefs(final String jsniSource) throws IOException,
+      BadLocationException {
+    final List<String> refs = new ArrayList<String>();
+    final List<Integer> refOffsets = new ArrayList<Integer>();
+
+    JsBlock js;
+    try {
+      js = JsniParser.parse(jsniSource);
+    } catch (JavaScriptParseException e) {
+      return new ParsedJsni(e);
+    }
 
-    JsBlock js = JsniParser.parse(jsniSource);
     if (js != null) {
       // Visit the JavaScript AST to find all Java references
       new JsVisitor() {
@@ -279,35 +292,44 @@ public final class JsniParser {
         @Override
         public void endVisit(JsNameRef x, JsContext ctx) {
           String ident = x.getIdent();
-          if (ident.indexOf("@") != -1) {
-            JsniJavaRef javaRef = JsniJavaRef.parse(ident);
-            if (javaRef != null) {
-              // Set the reference's Java source file
-              javaRef.setSource(cuPath);
-
-              // To get the Java reference offset, we have to do an indexOf on
-              // its identifier. To make sure we catch multiple references to
-              // the same Java element, we need to start at the index one past
-              // the start of the last Java reference we found (if any)
-              int fromIndex = 0;
-              if (javaRefs.size() > 0) {
-                fromIndex = javaRefs.get(javaRefs.size() - 1).getOffset()
-                    - jsniMethod.getStartPosition() + 1;
-              }
-              int offset = jsniSource.indexOf(ident, fromIndex)
-                  + jsniMethod.getStartPosition();
-
-              // Set the reference's offset within the Java source file
-              javaRef.setOffset(offset);
-
-              javaRefs.add(javaRef);
+          if (ident.indexOf("@") != -1 && JsniJavaRef.parse(ident) != null) {
+            // To get the Java reference offset, we have to do an indexOf on
+            // its identifier. To make sure we catch multiple references to
+            // the same Java element, we need to start at the index one past
+            // the start of the last Java reference we found (if any)
+            int fromIndex = 0;
+            if (refOffsets.size() > 0) {
+              fromIndex = refOffsets.get(refOffsets.size() - 1) + 1;
             }
+
+            refs.add(ident);
+            refOffsets.add(jsniSource.indexOf(ident, fromIndex));
           }
         }
       }.accept(js);
     }
 
-    return javaRefs;
+    return new ParsedJsni(refs, refOffsets);
+  }
+
+  /**
+   * Finds the Java references in the JSNI method. Methods whose source has not
+   * changed since they were last parsed are not parsed again.
+   */
+  private static List<JsniJavaRef> findJavaRefs(MethodDeclaration jsniMethod)
+      throws IOException, JavaScriptParseException, BadLocationException {
+    String jsniSource = JavaASTUtils.getSource(jsniMethod);
+    ICompilationUnit cu = JavaASTUtils.getCompilationUnit(jsniMethod);
+    IPath cuPath = cu.getResource().getFullPath();
+
+    ParsedJsni parsed = PARSE_CACHE.lookup(cuPath, jsniSource);
+    if (parsed == null) {
+      parsed = parseJavaRefs(jsniSource);
+      PARSE_CACHE.put(cuPath, jsniSource, parsed);
+    }
+
+    // Set each reference's Java source file and its offset within it
+    return parsed.createJavaRefs(cuPath, jsniMethod.getStartPosition());
   }
 
   @SuppressWarnings("serial")
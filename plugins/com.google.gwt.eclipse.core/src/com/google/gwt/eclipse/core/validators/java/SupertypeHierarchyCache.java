@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.core.validators.java;
+
+import com.google.gwt.eclipse.core.markers.GWTProblemType;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.ITypeHierarchyChangedListener;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shares the work of resolving JSNI Java references between the references in
+ * a validation pass and the editor actions which resolve them again.
+ * <p>
+ * Super-type hierarchies are cached by the handle of their focus type, so the
+ * many JSNI references to an overlay type build its hierarchy once. A
+ * hierarchy is dropped as soon as JDT reports that it has changed, and the
+ * least recently used ones are dropped once there are more than
+ * {@link #MAX_HIERARCHIES} of them, since JDT keeps every hierarchy with a
+ * change listener up to date.
+ * <p>
+ * The outcome of resolving each reference is memoized by its project and
+ * reference text. Any Java element change can change an outcome, so the memo
+ * is cleared on every change (including reconciles), and in practice lasts for
+ * one reconcile or build.
+ * <p>
+ * Until the cache is started nothing is cached, since nothing would be
+ * invalidated. This class is thread-safe.
+ */
+public enum SupertypeHierarchyCache {
+  INSTANCE;
+
+  /**
+   * The outcome of resolving a JSNI Java reference: either the element it
+   * refers to, or the problem (possibly <code>null</code>) it was reported
+   * with.
+   */
+  static final class Resolution {
+    private final IJavaElement element;
+
+    private final GWTProblemType problemType;
+
+    Resolution(IJavaElement element) {
+      this.element = element;
+      this.problemType = null;
+    }
+
+    Resolution(UnresolvedJsniJavaRefException e) {
+      this.element = null;
+      this.problemType = e.getProblemType();
+    }
+
+    /**
+     * Returns the element, or throws the exception the reference was
+     * originally unresolved with, rebuilt for the given reference (which has
+     * its own source location).
+     */
+    IJavaElement getElement(JsniJavaRef ref)
+        throws UnresolvedJsniJavaRefException {
+      if (element == null) {
+        throw new UnresolvedJsniJavaRefException(problemType, ref);
+      }
+      return element;
+    }
+  }
+
+  static final int MAX_HIERARCHIES = 200;
+
+  /**
+   * Bounds the memo during long builds, which do not report changes until
+   * they are done.
+   */
+  private static final int MAX_RESOLUTIONS = 10000;
+
+  /**
+   * Incremented whenever the memo is cleared, so a resolution which raced with
+   * a change is not memoized.
+   */
+  private int generation;
+
+  private int hierarchyCreationCount;
+
+  /**
+   * Drops a hierarchy once it no longer reflects the workspace.
+   */
+  private final ITypeHierarchyChangedListener hierarchyListener = new ITypeHierarchyChangedListener() {
+    public void typeHierarchyChanged(ITypeHierarchy typeHierarchy) {
+      removeHierarchy(typeHierarchy);
+    }
+  };
+
+  /**
+   * Super-type hierarchies by the handle identifier of their focus type, in
+   * access order.
+   */
+  private final LinkedHashMap<String, ITypeHierarchy> hierarchies = new LinkedHashMap<String, ITypeHierarchy>(
+      16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, ITypeHierarchy> eldest) {
+      if (size() > MAX_HIERARCHIES) {
+        eldest.getValue().removeTypeHierarchyChangedListener(hierarchyListener);
+        return true;
+      }
+      return false;
+    }
+  };
+
+  private int resolutionHitCount;
+
+  private final IElementChangedListener resolutionPurger = new IElementChangedListener() {
+    public void elementChanged(ElementChangedEvent event) {
+      clearResolutions();
+    }
+  };
+
+  /**
+   * Memoized resolutions by project name and reference text.
+   */
+  private final Map<String, Resolution> resolutions = new HashMap<String, Resolution>();
+
+  private volatile boolean started;
+
+  /**
+   * Returns the super-type hierarchy of the type, creating it if it is not
+   * cached.
+   */
+  public ITypeHierarchy getSupertypeHierarchy(IType type)
+      throws JavaModelException {
+    String key = type.getHandleIdentifier();
+    synchronized (this) {
+      ITypeHierarchy hierarchy = hierarchies.get(key);
+      if (hierarchy != null) {
+        return hierarchy;
+      }
+      hierarchyCreationCount++;
+    }
+
+    // Build outside the lock, since this is the expensive part
+    ITypeHierarchy hierarchy = type.newSupertypeHierarchy(null);
+    if (!started) {
+      return hierarchy;
+    }
+
+    synchronized (this) {
+      ITypeHierarchy existing = hierarchies.get(key);
+      if (existing != null) {
+        // Another thread got here first
+        return existing;
+      }
+      hierarchy.addTypeHierarchyChangedListener(hierarchyListener);
+      hierarchies.put(key, hierarchy);
+    }
+    return hierarchy;
+  }
+
+  /**
+   * Starts caching and listening for the changes which invalidate the cache.
+   */
+  public void start() {
+    JavaCore.addElementChangedListener(resolutionPurger,
+        ElementChangedEvent.POST_CHANGE | ElementChangedEvent.POST_RECONCILE);
+    started = true;
+  }
+
+  /**
+   * Stops listening for changes and discards everything cached.
+   */
+  public void stop() {
+    started = false;
+    JavaCore.removeElementChangedListener(resolutionPurger);
+
+    synchronized (this) {
+      for (ITypeHierarchy hierarchy : hierarchies.values()) {
+        hierarchy.removeTypeHierarchyChangedListener(hierarchyListener);
+      }
+      hierarchies.clear();
+    }
+    clearResolutions();
+  }
+
+  /**
+   * Returns the number of hierarchies which had to be created; for tests.
+   */
+  synchronized int getHierarchyCreationCount() {
+    return hierarchyCreationCount;
+  }
+
+  /**
+   * Returns the number of resolutions served from the memo; for tests.
+   */
+  synchronized int getResolutionHitCount() {
+    return resolutionHitCount;
+  }
+
+  /**
+   * Resolves the reference, or returns its memoized resolution.
+   */
+  IJavaElement resolve(JsniJavaRef ref, IJavaProject project)
+      throws UnresolvedJsniJavaRefException {
+    String key = project.getElementName() + ":" + getRefKey(ref);
+    int resolveGeneration;
+    synchronized (this) {
+      Resolution resolution = resolutions.get(key);
+      if (resolution != null) {
+        resolutionHitCount++;
+        return resolution.getElement(ref);
+      }
+      resolveGeneration = generation;
+    }
+
+    Resolution resolution;
+    try {
+      resolution = new Resolution(ref.doResolveJavaElement(project));
+    } catch (UnresolvedJsniJavaRefException e) {
+      resolution = new Resolution(e);
+    }
+
+    if (started) {
+      synchronized (this) {
+        if (resolveGeneration == generation) {
+          if (resolutions.size() >= MAX_RESOLUTIONS) {
+            resolutions.clear();
+          }
+          resolutions.put(key, resolution);
+        }
+      }
+    }
+    return resolution.getElement(ref);
+  }
+
+  private synchronized void clearResolutions() {
+    resolutions.clear();
+    generation++;
+  }
+
+  /**
+   * Returns the reference text without its source location (which subclasses
+   * may add to {@link JsniJavaRef#toString()}).
+   */
+  private String getRefKey(JsniJavaRef ref) {
+    String key = ref.className() + "::" + ref.memberName();
+    if (ref.isMethod()) {
+      key += "(" + ref.paramTypesString() + ")";
+    }
+    return key;
+  }
+
+  private void removeHierarchy(ITypeHierarchy typeHierarchy) {
+    typeHierarchy.removeTypeHierarchyChangedListener(hierarchyListener);
+    IType type = typeHierarchy.getType();
+    if (type == null) {
+      return;
+    }
+
+    synchronized (this) {
+      String key = type.getHandleIdentifier();
+      if (hierarchies.get(key) == typeHierarchy) {
+        hierarchies.remove(key);
+      }
+    }
+  }
+}
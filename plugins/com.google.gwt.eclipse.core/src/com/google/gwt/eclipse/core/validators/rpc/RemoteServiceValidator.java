@@ -16,6 +16,8 @@ package com.google.gwt.eclipse.core.validators.rpc;
 
 import com.google.gdt.eclipse.core.JavaASTUtils;
 import com.google.gdt.eclipse.core.validation.ValidationResult;
+import com.google.gwt.eclipse.core.validators.TypeBindingCache;
+import com.google.gwt.eclipse.core.validators.ValidationVisitorPipeline;
 
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.compiler.CategorizedProblem;
@@ -42,8 +44,12 @@ public class RemoteServiceValidator {
 
     private final PairedInterfaceValidator synchronousInterfaceValidator = new SynchronousInterfaceValidator();
 
-    public RemoteServiceValidationVisitor(IJavaProject javaProject) {
+    private final TypeBindingCache typeBindings;
+
+    public RemoteServiceValidationVisitor(IJavaProject javaProject,
+        TypeBindingCache typeBindings) {
       this.javaProject = javaProject;
+      this.typeBindings = typeBindings;
     }
 
     @Override
@@ -52,7 +58,7 @@ public class RemoteServiceValidator {
         return true;
       }
 
-      ITypeBinding typeBinding = changedType.resolveBinding();
+      ITypeBinding typeBinding = typeBindings.resolveBinding(changedType);
       if (typeBinding == null) {
         return true;
       }
@@ -94,16 +100,34 @@ public class RemoteServiceValidator {
     }
   }
 
+  private RemoteServiceValidationVisitor visitor;
+
+  /**
+   * Returns the result of the validation, once the pipeline this validator was
+   * registered with has been run.
+   */
+  public ValidationResult getValidationResult() {
+    return new ValidationResult(visitor.problems, visitor.dependentTypes);
+  }
+
+  /**
+   * Registers this validator with a pipeline which will run it over the given
+   * compilation unit.
+   */
+  public void register(ValidationVisitorPipeline pipeline,
+      CompilationUnit compilationUnit) {
+    IJavaProject javaProject = compilationUnit.getJavaElement().getJavaProject();
+    visitor = new RemoteServiceValidationVisitor(javaProject,
+        pipeline.getTypeBindings());
+    pipeline.register(visitor, ASTNode.TYPE_DECLARATION);
+  }
+
   public ValidationResult validate(ASTNode ast) {
     // TODO: Just pass in a CompilationUnit
     assert (ast.getNodeType() == ASTNode.COMPILATION_UNIT);
-    CompilationUnit compilationUnit = (CompilationUnit) ast;
-    IJavaProject javaProject = compilationUnit.getJavaElement().getJavaProject();
-
-    RemoteServiceValidationVisitor remoteServiceValidationVisitor = new RemoteServiceValidationVisitor(
-        javaProject);
-    ast.accept(remoteServiceValidationVisitor);
-    return new ValidationResult(remoteServiceValidationVisitor.problems,
-        remoteServiceValidationVisitor.dependentTypes);
+    ValidationVisitorPipeline pipeline = new ValidationVisitorPipeline();
+    register(pipeline, (CompilationUnit) ast);
+    pipeline.run(ast);
+    return getValidationResult();
   }
-}
\ No newline at end of file
+}
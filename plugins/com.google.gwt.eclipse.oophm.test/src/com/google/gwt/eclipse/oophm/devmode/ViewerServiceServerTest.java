@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.oophm.devmode;
+
+import com.google.gdt.eclipse.core.test.launch.MockILaunch;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request.ViewerRequest;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request.ViewerRequest.AddLog;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request.ViewerRequest.AddLogEntry;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request.ViewerRequest.LogData;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Request.ViewerRequest.RequestType;
+import com.google.gwt.dev.shell.remoteui.RemoteMessageProto.Message.Response;
+import com.google.gwt.eclipse.oophm.model.BrowserTab;
+import com.google.gwt.eclipse.oophm.model.LaunchConfiguration;
+import com.google.gwt.eclipse.oophm.model.Log;
+import com.google.gwt.eclipse.oophm.model.LogContentProvider;
+import com.google.gwt.eclipse.oophm.model.LogLabelProvider;
+import com.google.gwt.eclipse.oophm.model.WebAppDebugModelTest;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+/**
+ * Tests the {@link ViewerServiceServer} class.
+ */
+public class ViewerServiceServerTest extends TestCase {
+
+  private static final int ENTRY_COUNT = 100000;
+
+  private static final long TIMEOUT_MS = 60000;
+
+  private LaunchConfiguration launchConfiguration;
+
+  private ViewerServiceServer server;
+
+  /**
+   * Pushes many log entries through the server while a viewer shows the log.
+   * The server must not wait on the viewer, which catches up in a few batches.
+   */
+  public void testAddManyLogEntries() throws Exception {
+    Response response = server.execute(newAddModuleLogRequest());
+    int logHandle = response.getViewerResponse().getAddLog().getLogHandle();
+    BrowserTab tab = launchConfiguration.getBrowserTabs().get(0);
+    Log<BrowserTab> log = tab.getLog();
+
+    Shell shell = new Shell();
+    try {
+      TreeViewer viewer = new TreeViewer(shell);
+      LogContentProvider<BrowserTab> contentProvider = new LogContentProvider<BrowserTab>();
+      viewer.setContentProvider(contentProvider);
+      viewer.setLabelProvider(new LogLabelProvider<BrowserTab>());
+      viewer.setInput(log.getRootLogEntry());
+
+      for (int i = 0; i < ENTRY_COUNT; i++) {
+        server.execute(newAddLogEntryRequest(logHandle, i));
+      }
+
+      // Let the viewer catch up
+      Display display = shell.getDisplay();
+      long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+      while (contentProvider.getQueuedEventCount() > 0
+          && System.currentTimeMillis() < deadline) {
+        if (!display.readAndDispatch()) {
+          display.sleep();
+        }
+      }
+
+      assertEquals(0, contentProvider.getQueuedEventCount());
+      assertTrue(contentProvider.getMaxQueuedEventCount() > 0);
+      assertTrue(contentProvider.getAppliedBatchCount() < ENTRY_COUNT);
+
+      int entryCount = log.getRootLogEntry().getAllChildren().size();
+      assertEquals(ENTRY_COUNT, entryCount + log.getDroppedEntryCount());
+      assertEquals(entryCount, viewer.getTree().getItemCount());
+    } finally {
+      shell.dispose();
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    launchConfiguration = WebAppDebugModelTest.newWebAppDebugModel().addOrReturnExistingLaunchConfiguration(
+        new MockILaunch(), "launch", null);
+    server = new ViewerServiceServer();
+    server.setLaunchConfiguration(launchConfiguration);
+  }
+
+  private Request newAddLogEntryRequest(int logHandle, int index) {
+    LogData.Builder logData = LogData.newBuilder();
+    logData.setSummary("Log entry " + index);
+    logData.setLevel("INFO");
+
+    AddLogEntry.Builder addLogEntry = AddLogEntry.newBuilder();
+    addLogEntry.setLogHandle(logHandle);
+    addLogEntry.setIndexInLog(index);
+    addLogEntry.setLogData(logData.buildPartial());
+
+    ViewerRequest.Builder viewerRequest = ViewerRequest.newBuilder();
+    viewerRequest.setRequestType(RequestType.ADD_LOG_ENTRY);
+    viewerRequest.setAddLogEntry(addLogEntry.buildPartial());
+    return newRequest(viewerRequest);
+  }
+
+  private Request newAddModuleLogRequest() {
+    AddLog.ModuleLog.Builder moduleLog = AddLog.ModuleLog.newBuilder();
+    moduleLog.setName("com.example.Module");
+    moduleLog.setSessionKey("sessionKey");
+    moduleLog.setTabKey("tabKey");
+    moduleLog.setUserAgent("userAgent");
+    moduleLog.setUrl("http://localhost:8888/");
+    moduleLog.setRemoteHost("localhost");
+
+    AddLog.Builder addLog = AddLog.newBuilder();
+    addLog.setType(AddLog.LogType.MODULE);
+    addLog.setModuleLog(moduleLog.buildPartial());
+
+    ViewerRequest.Builder viewerRequest = ViewerRequest.newBuilder();
+    viewerRequest.setRequestType(RequestType.ADD_LOG);
+    viewerRequest.setAddLog(addLog.buildPartial());
+    return newRequest(viewerRequest);
+  }
+
+  private Request newRequest(ViewerRequest.Builder viewerRequest) {
+    return Request.newBuilder().setServiceType(Request.ServiceType.VIEWER).setViewerRequest(
+        viewerRequest.buildPartial()).buildPartial();
+  }
+
+}
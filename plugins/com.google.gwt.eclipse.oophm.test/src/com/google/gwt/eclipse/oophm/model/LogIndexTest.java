@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.oophm.model;
+
+import com.google.gdt.eclipse.core.test.launch.MockILaunch;
+import com.google.gwt.eclipse.oophm.model.BrowserTab.ModuleHandle;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+
+/**
+ * Tests the {@link LogIndex} class.
+ */
+public class LogIndexTest extends TestCase {
+
+  private LogEntry<Server> branch;
+
+  private LogEntry<Server> error;
+
+  private LogEntry<Server> info;
+
+  private Log<Server> log;
+
+  private final ModuleHandle moduleHandle = new ModuleHandle(
+      "com.example.Hello", "sessionKey");
+
+  private final ModuleHandle otherModuleHandle = new ModuleHandle(
+      "com.example.Other", "sessionKey");
+
+  private LogEntry<Server> warning;
+
+  public void testDroppedEntriesAreRemoved() {
+    log.setCapacity(1);
+    log.getRootLogEntry().addChild(newEntry("Compiling", "INFO", 2,
+        moduleHandle, 0));
+
+    assertEquals(0, search("nullpointerexception").getMatchCount());
+    assertEquals(1, search("compiling").getMatchCount());
+  }
+
+  public void testEntriesAddedAfterSearch() {
+    LogIndex.Result<Server> result = search("timeout");
+    LogEntry<Server> timeout = newEntry("Request timeout", "WARN", 2,
+        moduleHandle, 0);
+    log.getRootLogEntry().addChild(timeout);
+
+    assertTrue(result.isVisible(timeout));
+    assertFalse(result.isVisible(info));
+  }
+
+  public void testEntriesAddedAfterSearchShowTheirAncestors() {
+    LogIndex.Result<Server> result = search("timeout");
+    assertFalse(result.isVisible(branch));
+
+    // The branch was in the log before the search, but now has a match
+    LogEntry<Server> timeout = newEntry("Request timeout", "WARN", 10,
+        moduleHandle, 2);
+    branch.addChild(timeout);
+
+    assertTrue(result.isVisible(timeout));
+    assertTrue(result.isVisible(branch));
+    assertFalse(result.isVisible(warning));
+  }
+
+  public void testLevelFacet() {
+    LogIndex.Result<Server> result = search("level:warn");
+    assertEquals(2, result.getMatchCount());
+    assertTrue(result.isVisible(warning));
+    assertTrue(result.isVisible(error));
+    assertFalse(result.isVisible(info));
+  }
+
+  public void testModuleFacet() {
+    LogIndex.Result<Server> result = search("module:OTHER");
+    assertEquals(1, result.getMatchCount());
+    assertTrue(result.isVisible(info));
+  }
+
+  public void testParse() {
+    assertTrue(LogIndex.Query.parse("").isEmpty());
+    assertTrue(LogIndex.Query.parse(null).isEmpty());
+    assertTrue(LogIndex.Query.parse("after:25:00").isEmpty());
+    assertFalse(LogIndex.Query.parse("after:12:30").isEmpty());
+  }
+
+  public void testTimeFacets() {
+    assertEquals(3, search("after:10:00 before:11:00").getMatchCount());
+    assertEquals(1, search("after:11:00").getMatchCount());
+  }
+
+  public void testWordsMatchPrefixesOfLabelAndDetails() {
+    LogIndex.Result<Server> result = search("NullPointer");
+    assertEquals(1, result.getMatchCount());
+    assertTrue(result.isVisible(error));
+
+    // The ancestors of a match are visible, so it can be shown in the tree
+    assertTrue(result.isVisible(branch));
+    assertFalse(result.isVisible(warning));
+
+    // Every word must match
+    assertEquals(1, search("java.lang failed").getMatchCount());
+    assertEquals(0, search("java.lang deferred").getMatchCount());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    LaunchConfiguration launchConfiguration = new WebAppDebugModel().addOrReturnExistingLaunchConfiguration(
+        new MockILaunch(), "launch", null);
+    Server server = new Server(launchConfiguration, "server", null);
+    log = new Log<Server>(server, Integer.MAX_VALUE, false);
+
+    branch = newEntry("Loading module", "INFO", 10, moduleHandle, 0);
+    log.getRootLogEntry().addChild(branch);
+    warning = newEntry("Deferred binding is slow", "WARN", 10, moduleHandle, 0);
+    branch.addChild(warning);
+    error = new LogEntry<Server>(new LogEntry.Data("Module failed",
+        "java.lang.NullPointerException\n\tat com.example.Hello.onModuleLoad",
+        "ERROR", null, null, getTime(10, 30), false), 1, moduleHandle);
+    branch.addChild(error);
+    info = newEntry("Started", "INFO", 11, otherModuleHandle, 0);
+    log.getRootLogEntry().addChild(info);
+  }
+
+  private long getTime(int hours, int minutes) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.set(Calendar.HOUR_OF_DAY, hours);
+    calendar.set(Calendar.MINUTE, minutes);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    return calendar.getTimeInMillis();
+  }
+
+  private LogEntry<Server> newEntry(String label, String level, int hour,
+      ModuleHandle module, int index) {
+    return new LogEntry<Server>(new LogEntry.Data(label, null, level, null,
+        null, getTime(hour, 0), false), index, module);
+  }
+
+  private LogIndex.Result<Server> search(String text) {
+    return log.getIndex().search(LogIndex.Query.parse(text));
+  }
+
+}
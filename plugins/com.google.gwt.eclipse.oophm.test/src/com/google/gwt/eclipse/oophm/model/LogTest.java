@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.oophm.model;
+
+import com.google.gdt.eclipse.core.test.launch.MockILaunch;
+import com.google.gwt.eclipse.oophm.model.BrowserTab.ModuleHandle;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the bounding of {@link Log} and concurrent access to its entries.
+ */
+public class LogTest extends TestCase {
+
+  private final ModuleHandle moduleHandle = new ModuleHandle("module",
+      "sessionKey");
+
+  private Server server;
+
+  /**
+   * Several modules log into the same log while a reader keeps reading the
+   * children, like the log viewer does. Neither the producers nor the reader
+   * may fail, and afterwards each module's branch must hold all of its entries
+   * in order, even though they were added out of order.
+   */
+  public void testConcurrentProducers() throws Exception {
+    final int producerCount = 4;
+    final int entriesPerProducer = 25000;
+    final Log<Server> log = new Log<Server>(server, Integer.MAX_VALUE, false);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicBoolean producing = new AtomicBoolean(true);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    List<Thread> producers = new ArrayList<Thread>();
+    for (int i = 0; i < producerCount; i++) {
+      final ModuleHandle producerModule = new ModuleHandle("module" + i,
+          "sessionKey" + i);
+      producers.add(new Thread(new Runnable() {
+        public void run() {
+          try {
+            start.await();
+            LogEntry<Server> branch = new LogEntry<Server>(newData("branch"),
+                0, producerModule);
+            log.getRootLogEntry().addChild(branch);
+
+            // Add the children in reverse pairs to exercise ordered insertion
+            for (int j = 0; j < entriesPerProducer; j += 2) {
+              branch.addChild(new LogEntry<Server>(newData("child"), j + 1,
+                  producerModule));
+              branch.addChild(new LogEntry<Server>(newData("child"), j,
+                  producerModule));
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      }));
+    }
+
+    Thread reader = new Thread(new Runnable() {
+      public void run() {
+        try {
+          start.await();
+          while (producing.get()) {
+            for (LogEntry<Server> branch : log.getRootLogEntry().getDisclosedChildren()) {
+              branch.getDisclosedChildren().size();
+            }
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    });
+
+    for (Thread producer : producers) {
+      producer.start();
+    }
+    reader.start();
+
+    start.countDown();
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    producing.set(false);
+    reader.join();
+
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+
+    List<LogEntry<Server>> branches = log.getRootLogEntry().getAllChildren();
+    assertEquals(producerCount, branches.size());
+    for (LogEntry<Server> branch : branches) {
+      List<LogEntry<Server>> children = branch.getAllChildren();
+      assertEquals(entriesPerProducer, children.size());
+      for (int i = 1; i < children.size(); i++) {
+        assertTrue(LogEntry.compareSiblings(children.get(i - 1),
+            children.get(i)) < 0);
+      }
+    }
+  }
+
+  public void testDropsOldestEntries() {
+    Log<Server> log = new Log<Server>(server, 3, false);
+    LogEntry<Server> root = log.getRootLogEntry();
+    for (int i = 0; i < 5; i++) {
+      root.addChild(newEntry("entry" + i, i));
+    }
+
+    assertEquals(3, root.getAllChildren().size());
+    assertEquals("entry2",
+        root.getAllChildren().get(0).getLogData().getLabel());
+    assertEquals(2, log.getDroppedEntryCount());
+    assertNull(log.getSpillFile());
+  }
+
+  public void testDropsParentsLeftWithoutChildren() {
+    Log<Server> log = new Log<Server>(server, 3, false);
+    LogEntry<Server> root = log.getRootLogEntry();
+
+    LogEntry<Server> parent = newEntry("parent", 0);
+    root.addChild(parent);
+    parent.addChild(newEntry("child", 0));
+    root.addChild(newEntry("entry1", 1));
+
+    // Dropping the only child also drops its parent
+    root.addChild(newEntry("entry2", 2));
+    assertEquals(labels("entry1", "entry2"), getLabels(root.getAllChildren()));
+    assertEquals(2, log.getDroppedEntryCount());
+  }
+
+  public void testDropsUndisclosedEntriesFirst() {
+    Log<Server> log = new Log<Server>(server, 3, false);
+    LogEntry<Server> root = log.getRootLogEntry();
+    root.addChild(newEntry("entry0", 0));
+    root.addChild(newEntry("entry1", 1));
+    log.undiscloseAllLogEntries();
+
+    root.addChild(newEntry("entry2", 2));
+    root.getAllChildren().get(0).setDisclosed(true);
+    root.addChild(newEntry("entry3", 3));
+
+    // entry0 was disclosed again, so entry1 goes first
+    assertEquals(labels("entry0", "entry2", "entry3"),
+        getLabels(root.getAllChildren()));
+  }
+
+  public void testListenersAreToldOfDroppedEntries() {
+    Log<Server> log = new Log<Server>(server, 1, false);
+    final List<LogEntry<Server>> removedEntries = new ArrayList<LogEntry<Server>>();
+    log.addLogListener(new ILogListener<Server>() {
+      public void logEntriesRemoved(LogEntriesRemovedEvent<Server> e) {
+        removedEntries.addAll(e.getLogEntriesRemoved());
+      }
+
+      public void newLogEntry(LogEntryAddedEvent<Server> e) {
+      }
+    });
+
+    LogEntry<Server> first = newEntry("entry0", 0);
+    log.getRootLogEntry().addChild(first);
+    log.getRootLogEntry().addChild(newEntry("entry1", 1));
+    assertEquals(1, removedEntries.size());
+    assertSame(first, removedEntries.get(0));
+  }
+
+  public void testReattachesDroppedParentWhenAddedTo() {
+    Log<Server> log = new Log<Server>(server, 2, false);
+    LogEntry<Server> root = log.getRootLogEntry();
+
+    // Dropping child0 also drops its parent, which a logger still holds on to
+    LogEntry<Server> parent = newEntry("parent", 0);
+    root.addChild(parent);
+    parent.addChild(newEntry("child0", 0));
+    root.addChild(newEntry("entry1", 1));
+    root.addChild(newEntry("entry2", 2));
+    assertEquals(labels("entry1", "entry2"), getLabels(root.getAllChildren()));
+    assertEquals(2, log.getDroppedEntryCount());
+
+    // Adding to the dropped parent puts it back, making room for both
+    parent.addChild(newEntry("child1", 1));
+    assertEquals(labels("parent"), getLabels(root.getAllChildren()));
+    assertEquals(labels("child1"), getLabels(parent.getAllChildren()));
+    assertEquals(4, log.getDroppedEntryCount());
+  }
+
+  public void testStaysWithinCapacityWhenAddingUndisclosedEntry() {
+    Log<Server> log = new Log<Server>(server, 2, false);
+    LogEntry<Server> root = log.getRootLogEntry();
+    root.addChild(newEntry("entry0", 0));
+    root.addChild(newEntry("entry1", 1));
+
+    // The new entry is the only undisclosed one, but is not the one dropped
+    LogEntry<Server> undisclosed = newEntry("entry2", 2);
+    undisclosed.setDisclosed(false);
+    root.addChild(undisclosed);
+    assertEquals(labels("entry1", "entry2"), getLabels(root.getAllChildren()));
+    assertEquals(1, log.getDroppedEntryCount());
+  }
+
+  public void testSpillsDroppedEntries() {
+    Log<Server> log = new Log<Server>(server, 1, true);
+    log.getRootLogEntry().addChild(newEntry("entry0", 0));
+    log.getRootLogEntry().addChild(newEntry("entry1", 1));
+
+    File spillFile = log.getSpillFile();
+    assertNotNull(spillFile);
+    try {
+      assertTrue(spillFile.length() > 0);
+    } finally {
+      spillFile.delete();
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    LaunchConfiguration launchConfiguration = new WebAppDebugModel().addOrReturnExistingLaunchConfiguration(
+        new MockILaunch(), "launch", null);
+    server = new Server(launchConfiguration, "server", null);
+  }
+
+  private List<String> getLabels(List<LogEntry<Server>> entries) {
+    List<String> labels = new ArrayList<String>();
+    for (LogEntry<Server> entry : entries) {
+      labels.add(entry.getLogData().getLabel());
+    }
+    return labels;
+  }
+
+  private List<String> labels(String... labels) {
+    List<String> list = new ArrayList<String>();
+    for (String label : labels) {
+      list.add(label);
+    }
+    return list;
+  }
+
+  private LogEntry.Data newData(String label) {
+    return new LogEntry.Data(label, null, "INFO", null, null,
+        System.currentTimeMillis(), false);
+  }
+
+  private LogEntry<Server> newEntry(String label, int index) {
+    return new LogEntry<Server>(newData(label), index, moduleHandle);
+  }
+
+}
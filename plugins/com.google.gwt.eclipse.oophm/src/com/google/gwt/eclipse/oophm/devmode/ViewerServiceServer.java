@@ -467,7 +467,7 @@ public class ViewerServiceServer implements RequestProcessor {
     return buildResponse(null);
   }
 
-  private void setLaunchConfiguration(LaunchConfiguration lc) {
+  void setLaunchConfiguration(LaunchConfiguration lc) {
     synchronized (privateInstanceLock) {
       this.launchConfiguration = lc;
     }
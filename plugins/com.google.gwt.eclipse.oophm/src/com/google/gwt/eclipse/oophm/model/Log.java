@@ -15,16 +15,33 @@
 package com.google.gwt.eclipse.oophm.model;
 
 import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.eclipse.core.GWTPluginLog;
+import com.google.gwt.eclipse.core.preferences.GWTPreferences;
 import com.google.gwt.eclipse.oophm.LogSniffer;
 import com.google.gwt.eclipse.oophm.model.BrowserTab.ModuleHandle;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 /**
  * A log, for either a {@link BrowserTab} or a {@link Server}. A log consists of
  * a list of log entries.
  * 
+ * A log holds a bounded number of entries. Once it is full, adding an entry
+ * first drops the oldest leaf entry, preferring those which have been
+ * undisclosed, along with any parent entry that is left without children. A
+ * dropped parent which is added to again is put back into the log. Dropped entries
+ * are counted, and can optionally be appended to a file on disk.
+ * 
  * This class is thread-safe.
  * 
  * @param <T>
@@ -32,18 +49,52 @@ import java.util.List;
 public class Log<T extends IModelNode> {
 
   final Object instanceLock = new Object();
+  private int capacity;
+
+  /**
+   * The leaf entries which are disclosed, oldest first.
+   */
+  private final LinkedHashSet<LogEntry<T>> disclosedLeaves = new LinkedHashSet<LogEntry<T>>();
+  private long droppedEntryCount;
   private final T entity;
+  private int entryCount;
+  private final LogIndex<T> index = new LogIndex<T>();
   private final List<ILogListener<T>> logListeners = new ArrayList<ILogListener<T>>();
   private final LogEntry<T> rootLogEntry;
+  private File spillFile;
+  private final Object spillLock = new Object();
+  private volatile boolean spillToDisk;
 
   /**
-   * Create a new instance of a log.
+   * The leaf entries which are undisclosed, oldest first.
+   */
+  private final LinkedHashSet<LogEntry<T>> undisclosedLeaves = new LinkedHashSet<LogEntry<T>>();
+
+  /**
+   * Create a new instance of a log, whose capacity and spilling behavior are
+   * taken from the preferences.
    * 
    * @param entity The entity associated with this log (i.e. a browser tab or a
    *          server)
    */
   public Log(T entity) {
+    this(entity, GWTPreferences.getDevModeLogCapacity(),
+        GWTPreferences.getDevModeLogSpillToDisk());
+  }
+
+  /**
+   * Create a new instance of a log.
+   * 
+   * @param entity The entity associated with this log (i.e. a browser tab or a
+   *          server)
+   * @param capacity the number of entries the log holds before dropping the
+   *          oldest ones
+   * @param spillToDisk whether dropped entries are written to a file
+   */
+  Log(T entity, int capacity, boolean spillToDisk) {
     this.entity = entity;
+    this.capacity = Math.max(1, capacity);
+    this.spillToDisk = spillToDisk;
     rootLogEntry = new LogEntry<T>(null, 0, new ModuleHandle(
         "Hidden Root Module", "Hidden Root Module Session Key"));
     rootLogEntry.setLog(this);
@@ -61,6 +112,26 @@ public class Log<T extends IModelNode> {
     }
   }
 
+  /**
+   * Returns the number of entries the log holds before dropping the oldest
+   * ones.
+   */
+  public int getCapacity() {
+    synchronized (instanceLock) {
+      return capacity;
+    }
+  }
+
+  /**
+   * Returns the number of entries which have been dropped from this log to
+   * keep it within its capacity.
+   */
+  public long getDroppedEntryCount() {
+    synchronized (instanceLock) {
+      return droppedEntryCount;
+    }
+  }
+
   /**
    * Get the entity associated with this log.
    */
@@ -78,6 +149,14 @@ public class Log<T extends IModelNode> {
     }
   }
 
+  /**
+   * Returns the index over the entries of this log, which can be used to search
+   * the log without walking its tree.
+   */
+  public LogIndex<T> getIndex() {
+    return index;
+  }
+
   /**
    * Returns a list of the {@link ILogListener} instances that are registered
    * with the log.
@@ -98,6 +177,16 @@ public class Log<T extends IModelNode> {
     return rootLogEntry;
   }
 
+  /**
+   * Returns the file that dropped entries have been written to, or
+   * <code>null</code> if none have been.
+   */
+  public File getSpillFile() {
+    synchronized (spillLock) {
+      return spillFile;
+    }
+  }
+
   /**
    * Returns <code>true</code> if there are any child {@link LogEntry
    * LogEntries} that are disclosed.
@@ -125,6 +214,16 @@ public class Log<T extends IModelNode> {
     }
   }
 
+  /**
+   * Sets the number of entries the log holds. If the log holds more entries,
+   * the oldest ones are dropped when the next entry is added.
+   */
+  public void setCapacity(int capacity) {
+    synchronized (instanceLock) {
+      this.capacity = Math.max(1, capacity);
+    }
+  }
+
   /**
    * Marks all entries in this log as undisclosed. Fires an event to all
    * listeners of this log.
@@ -143,6 +242,83 @@ public class Log<T extends IModelNode> {
     fireEntriesRemoved(undisclosedLogEntries);
   }
 
+  /**
+   * Keeps track of the disclosure state of a leaf entry, so undisclosed
+   * entries are dropped first.
+   * 
+   * The log's instance lock should be held for the duration of this method.
+   */
+  void disclosureChanged(LogEntry<T> entry) {
+    if (entry.isDisclosed()) {
+      if (undisclosedLeaves.remove(entry)) {
+        disclosedLeaves.add(entry);
+      }
+    } else if (disclosedLeaves.remove(entry)) {
+      undisclosedLeaves.add(entry);
+    }
+  }
+
+  /**
+   * Fires events for, and optionally writes to disk, entries which were
+   * dropped by {@link #entryAdded(LogEntry)}.
+   * 
+   * NOTE: This method fires events, so no locks should be held.
+   */
+  void entriesDropped(List<LogEntry<T>> droppedEntries) {
+    if (droppedEntries.isEmpty()) {
+      return;
+    }
+
+    fireEntriesRemoved(droppedEntries);
+
+    if (spillToDisk) {
+      spill(droppedEntries);
+    }
+  }
+
+  /**
+   * Accounts for an entry which was just added to the log. Room for it should
+   * have been made by {@link #makeRoom(LogEntry)} beforehand.
+   * 
+   * The log's instance lock should be held for the duration of this method.
+   */
+  void entryAdded(LogEntry<T> entry) {
+    // The entry's parent is no longer a leaf
+    LogEntry<T> parent = entry.getParent();
+    disclosedLeaves.remove(parent);
+    undisclosedLeaves.remove(parent);
+
+    (entry.isDisclosed() ? disclosedLeaves : undisclosedLeaves).add(entry);
+    entryCount++;
+    index.add(entry);
+  }
+
+  /**
+   * Drops the oldest entries until there is room for one more entry under the
+   * given parent. The parent itself is never dropped.
+   * 
+   * The log's instance lock should be held for the duration of this method.
+   * 
+   * @return the dropped entries, which should be passed to
+   *         {@link #entriesDropped(List)} once the lock has been released
+   */
+  List<LogEntry<T>> makeRoom(LogEntry<T> parent) {
+    if (entryCount < capacity) {
+      return Collections.emptyList();
+    }
+
+    List<LogEntry<T>> droppedEntries = new ArrayList<LogEntry<T>>();
+    while (entryCount >= capacity) {
+      LogEntry<T> oldestLeaf = getOldestLeaf(parent);
+      if (oldestLeaf == null) {
+        break;
+      }
+      drop(oldestLeaf, parent, droppedEntries);
+    }
+
+    return droppedEntries;
+  }
+
   void fireNewEntryAdded(int insertionIndex, LogEntry<T> newEntry,
       boolean needsAttention, boolean parentsChanged) {
     LogEntryAddedEvent<T> e = new LogEntryAddedEvent<T>(insertionIndex,
@@ -160,6 +336,32 @@ public class Log<T extends IModelNode> {
     }
   }
 
+  /**
+   * Drops a leaf entry, and the parents which are left without children other
+   * than the one which is kept.
+   */
+  private void drop(LogEntry<T> leaf, LogEntry<T> keptParent,
+      List<LogEntry<T>> droppedEntries) {
+    LogEntry<T> entry = leaf;
+    while (true) {
+      LogEntry<T> parent = entry.getParent();
+      parent.removeChild(entry);
+      entry.setDropped(true);
+      disclosedLeaves.remove(entry);
+      undisclosedLeaves.remove(entry);
+      index.remove(entry);
+      entryCount--;
+      droppedEntryCount++;
+      droppedEntries.add(entry);
+
+      if (parent == rootLogEntry || parent == keptParent
+          || parent.hasChildren()) {
+        break;
+      }
+      entry = parent;
+    }
+  }
+
   private LogEntry<T> getFirstDeeplyNestedChildWithMaxAttnRecurse(
       List<LogEntry<T>> logEntries) {
 
@@ -215,6 +417,28 @@ public class Log<T extends IModelNode> {
     return childOfMaxEntryNeedsAttn;
   }
 
+  /**
+   * Returns the oldest leaf other than the excluded entry, preferring those
+   * which are undisclosed.
+   */
+  private LogEntry<T> getOldestLeaf(LogEntry<T> excluded) {
+    LogEntry<T> oldestLeaf = getOldestLeaf(undisclosedLeaves, excluded);
+    return (oldestLeaf != null ? oldestLeaf : getOldestLeaf(disclosedLeaves,
+        excluded));
+  }
+
+  private LogEntry<T> getOldestLeaf(LinkedHashSet<LogEntry<T>> leaves,
+      LogEntry<T> excluded) {
+    Iterator<LogEntry<T>> it = leaves.iterator();
+    while (it.hasNext()) {
+      LogEntry<T> leaf = it.next();
+      if (leaf != excluded) {
+        return leaf;
+      }
+    }
+    return null;
+  }
+
   private List<LogEntry<T>> setUndisclosed(LogEntry<T> logEntry) {
     List<LogEntry<T>> logEntriesRemoved = new ArrayList<LogEntry<T>>();
     setUndisclosedRecursive(logEntry, logEntriesRemoved);
@@ -234,4 +458,39 @@ public class Log<T extends IModelNode> {
       logEntry.setDisclosed(false);
     }
   }
+
+  /**
+   * Appends the dropped entries to the spill file, creating it on first use.
+   */
+  private void spill(List<LogEntry<T>> droppedEntries) {
+    synchronized (spillLock) {
+      try {
+        if (spillFile == null) {
+          spillFile = File.createTempFile("devModeLog", ".txt");
+          spillFile.deleteOnExit();
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(spillFile,
+            true), "UTF-8");
+        try {
+          for (LogEntry<T> droppedEntry : droppedEntries) {
+            LogEntry.Data data = droppedEntry.getLogData();
+            writer.write(String.format("%1$tT.%1$tL [%2$s] [%3$s] %4$s%n",
+                new Date(data.getTimestamp()), data.getLogLevel(),
+                droppedEntry.getModuleHandle().getName(), data.getLabel()));
+            if (data.getDetails().length() > 0) {
+              writer.write(data.getDetails());
+              writer.write(String.format("%n"));
+            }
+          }
+        } finally {
+          writer.close();
+        }
+      } catch (IOException e) {
+        // Keep the log usable, but stop trying to write to disk
+        GWTPluginLog.logError(e, "Could not write dropped log entries to disk");
+        spillToDisk = false;
+      }
+    }
+  }
 }
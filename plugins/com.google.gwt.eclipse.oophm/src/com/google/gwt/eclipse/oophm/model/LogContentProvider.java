@@ -20,26 +20,75 @@ import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A content provider for the viewer used by the
  * {@link com.google.gwt.eclipse.oophm.views.hierarchical.LogContent} panel.
  * 
+ * Changes to the log are queued rather than applied to the viewer one at a
+ * time, so the threads adding entries to the log never wait on the UI thread.
+ * The queued changes are applied in a batch on the UI thread every
+ * {@value #UPDATE_INTERVAL_MS} ms, adding all of the new children of an entry
+ * at once.
+ * 
  * @param <T> the entity associated with the log ({@link BrowserTab} or
  *          {@link Server})
  */
 public class LogContentProvider<T extends IModelNode> implements
     ITreeContentProvider, ILogListener<T> {
 
+  /**
+   * The interval, in milliseconds, over which changes to the log are collected
+   * before they are applied to the viewer.
+   */
+  private static final int UPDATE_INTERVAL_MS = 100;
+
   private static final Object[] NO_ELEMENTS = new Object[0];
+
+  private long appliedBatchCount;
+
+  private final Runnable applyQueuedEventsRunnable = new Runnable() {
+    public void run() {
+      applyQueuedEvents();
+    }
+  };
+
+  private int maxQueuedEventCount;
+
+  /**
+   * The {@link LogEntryAddedEvent}s and {@link LogEntriesRemovedEvent}s which
+   * have not been applied to the viewer yet, in the order they were fired.
+   */
+  private final List<Object> queuedEvents = new ArrayList<Object>();
+
+  private final Object queueLock = new Object();
+
+  private boolean updateScheduled;
+
   private TreeViewer viewer;
 
   public void dispose() {
   }
 
+  /**
+   * Returns the number of batches of changes that have been applied to the
+   * viewer.
+   */
+  public long getAppliedBatchCount() {
+    synchronized (queueLock) {
+      return appliedBatchCount;
+    }
+  }
+
   public Object[] getChildren(Object parentElement) {
     if (parentElement != null) {
       assert (parentElement instanceof LogEntry<?>);
@@ -54,6 +103,17 @@ public class LogContentProvider<T extends IModelNode> implements
     return getChildren(inputElement);
   }
 
+  /**
+   * Returns the largest number of changes that have been waiting to be applied
+   * to the viewer at once, which measures how far the viewer has fallen behind
+   * the log.
+   */
+  public int getMaxQueuedEventCount() {
+    synchronized (queueLock) {
+      return maxQueuedEventCount;
+    }
+  }
+
   public Object getParent(Object element) {
     if (element != null) {
       assert (element instanceof LogEntry<?>);
@@ -64,6 +124,15 @@ public class LogContentProvider<T extends IModelNode> implements
     return null;
   }
 
+  /**
+   * Returns the number of changes waiting to be applied to the viewer.
+   */
+  public int getQueuedEventCount() {
+    synchronized (queueLock) {
+      return queuedEvents.size();
+    }
+  }
+
   public boolean hasChildren(Object element) {
     return getChildren(element).length > 0;
   }
@@ -81,6 +150,11 @@ public class LogContentProvider<T extends IModelNode> implements
       oldRootLogEntry.getLog().removeLogListener(this);
     }
 
+    // The viewer reads the new input from scratch
+    synchronized (queueLock) {
+      queuedEvents.clear();
+    }
+
     if (newInput != null) {
       LogEntry<T> newRootLogEntry = (LogEntry<T>) newInput;
       newRootLogEntry.getLog().addLogListener(this);
@@ -88,54 +162,144 @@ public class LogContentProvider<T extends IModelNode> implements
   }
 
   public void logEntriesRemoved(LogEntriesRemovedEvent<T> e) {
-    final List<LogEntry<T>> logEntriesRemoved = e.getLogEntriesRemoved();
-    Display.getDefault().syncExec(new Runnable() {
-      public void run() {
-        viewer.remove(logEntriesRemoved.toArray());
-      }
-    });
+    enqueue(e);
   }
 
-  public void newLogEntry(final LogEntryAddedEvent<T> e) {
-    Display.getDefault().syncExec(new Runnable() {
-      public void run() {
-        LogEntry<T> logEntry = e.getLogEntry();
+  public void newLogEntry(LogEntryAddedEvent<T> e) {
+    enqueue(e);
+  }
 
-        LogEntry<T> parent = logEntry.getParent();
-        assert (parent != null);
+  /**
+   * Applies the queued changes to the viewer. Must be called on the UI thread.
+   * 
+   * Entries which were both added and removed since the last batch never reach
+   * the viewer. The remaining removals are applied before the additions, which
+   * are made with one call per parent entry.
+   */
+  @SuppressWarnings("unchecked")
+  private void applyQueuedEvents() {
+    List<Object> events;
+    synchronized (queueLock) {
+      events = new ArrayList<Object>(queuedEvents);
+      queuedEvents.clear();
+      updateScheduled = false;
+      if (!events.isEmpty()) {
+        appliedBatchCount++;
+      }
+    }
 
-        LogSniffer.log("{0}.viewer.add({1})",
-            LogContentProvider.this.toString(),
-            logEntry.getLogData().getLabel());
+    if (events.isEmpty() || viewer == null
+        || viewer.getControl().isDisposed()) {
+      return;
+    }
 
-        /*
-         * Insertion will happen in the right place, because we've defined a
-         * sorter on this viewer.
-         */
-        viewer.add(parent, logEntry);
+    LogSniffer.log("{0}.applyQueuedEvents({1,number,#})", toString(),
+        events.size());
 
-        if (e.parentsChanged()) {
+    Map<LogEntry<T>, Set<LogEntry<T>>> addedEntries = new LinkedHashMap<LogEntry<T>, Set<LogEntry<T>>>();
+    List<LogEntry<T>> removedEntries = new ArrayList<LogEntry<T>>();
+    Set<LogEntry<T>> changedParents = new LinkedHashSet<LogEntry<T>>();
+    LogEntry<T> entryNeedingAttention = null;
 
-          while (parent != null) {
-            // Could specify more specific changes here
-            viewer.update(parent, null);
-            parent = parent.getParent();
+    for (Object event : events) {
+      if (event instanceof LogEntriesRemovedEvent<?>) {
+        for (LogEntry<T> logEntry : ((LogEntriesRemovedEvent<T>) event).getLogEntriesRemoved()) {
+          Set<LogEntry<T>> siblings = addedEntries.get(logEntry.getParent());
+          if (siblings == null || !siblings.remove(logEntry)) {
+            removedEntries.add(logEntry);
+          }
+          if (logEntry == entryNeedingAttention) {
+            entryNeedingAttention = null;
           }
         }
+        continue;
+      }
 
-        if (e.needsAttention()) {
-          viewer.reveal(logEntry);
+      LogEntryAddedEvent<T> e = (LogEntryAddedEvent<T>) event;
+      LogEntry<T> logEntry = e.getLogEntry();
 
-          // Set selection to the item that needs attention
-          LogEntry<T> firstDeeplyNestedChildWithHighestNeedsAttention = e.getLogEntry().getLog().getFirstDeeplyNestedChildWithMaxAttn();
-          if (firstDeeplyNestedChildWithHighestNeedsAttention != null) {
-            viewer.setSelection(new StructuredSelection(
-                firstDeeplyNestedChildWithHighestNeedsAttention));
-          } else {
-            // This should never happen
-          }
+      LogEntry<T> parent = logEntry.getParent();
+      assert (parent != null);
+
+      Set<LogEntry<T>> children = addedEntries.get(parent);
+      if (children == null) {
+        children = new LinkedHashSet<LogEntry<T>>();
+        addedEntries.put(parent, children);
+      }
+      children.add(logEntry);
+
+      if (e.parentsChanged()) {
+        while (parent != null) {
+          changedParents.add(parent);
+          parent = parent.getParent();
+        }
+      }
+
+      if (e.needsAttention()) {
+        entryNeedingAttention = logEntry;
+      }
+    }
+
+    Control control = viewer.getControl();
+    control.setRedraw(false);
+    try {
+      if (!removedEntries.isEmpty()) {
+        viewer.remove(removedEntries.toArray());
+      }
+
+      for (Map.Entry<LogEntry<T>, Set<LogEntry<T>>> entry : addedEntries.entrySet()) {
+        if (!entry.getValue().isEmpty()) {
+          /*
+           * Insertion will happen in the right place, because we've defined a
+           * sorter on this viewer.
+           */
+          viewer.add(entry.getKey(), entry.getValue().toArray());
         }
       }
-    });
+
+      if (!changedParents.isEmpty()) {
+        // Could specify more specific changes here
+        viewer.update(changedParents.toArray(), null);
+      }
+
+      if (entryNeedingAttention != null) {
+        viewer.reveal(entryNeedingAttention);
+
+        // Set selection to the item that needs attention
+        LogEntry<T> firstDeeplyNestedChildWithHighestNeedsAttention = entryNeedingAttention.getLog().getFirstDeeplyNestedChildWithMaxAttn();
+        if (firstDeeplyNestedChildWithHighestNeedsAttention != null) {
+          viewer.setSelection(new StructuredSelection(
+              firstDeeplyNestedChildWithHighestNeedsAttention));
+        } else {
+          // This should never happen
+        }
+      }
+    } finally {
+      control.setRedraw(true);
+    }
+  }
+
+  /**
+   * Queues a change to the log, scheduling the queue to be applied to the
+   * viewer if it is not already.
+   */
+  private void enqueue(Object event) {
+    boolean scheduleUpdate;
+    synchronized (queueLock) {
+      queuedEvents.add(event);
+      maxQueuedEventCount = Math.max(maxQueuedEventCount, queuedEvents.size());
+      scheduleUpdate = !updateScheduled;
+      updateScheduled = true;
+    }
+
+    if (scheduleUpdate) {
+      final Display display = Display.getDefault();
+      display.asyncExec(new Runnable() {
+        public void run() {
+          // Give more changes a chance to arrive before applying them
+          display.timerExec(UPDATE_INTERVAL_MS, applyQueuedEventsRunnable);
+        }
+      });
+    }
   }
 }
@@ -26,6 +26,12 @@ import java.util.List;
 /**
  * A log entry. Log entries can be nested.
  * 
+ * Changes to the tree of entries are made under the log's instance lock. Reads
+ * of an entry's children are served from immutable snapshots which are built
+ * on demand and discarded when the children change, so readers such as the
+ * viewers only take the lock when the children have changed since the last
+ * read.
+ * 
  * This class is thread-safe.
  * 
  * @param <T> the entity associated with the log entry({@link BrowserTab} or
@@ -178,6 +184,23 @@ public class LogEntry<T extends IModelNode> {
     }
   };
 
+  /**
+   * Compares two entries with the same parent by their position among the
+   * parent's children.
+   */
+  public static int compareSiblings(LogEntry<?> entry1, LogEntry<?> entry2) {
+    assert (entry1.getParent() == entry2.getParent());
+
+    if (entry1.getModuleHandle() == entry2.getModuleHandle()) {
+      // The children from one module logger are kept in index order
+      return (entry1.index < entry2.index ? -1
+          : (entry1.index == entry2.index ? 0 : 1));
+    }
+
+    List<?> siblings = entry1.getParent().getAllChildren();
+    return (siblings.indexOf(entry1) - siblings.indexOf(entry2));
+  }
+
   /**
    * Returns the {@link TreeLogger.Type} enum value corresponding to the
    * <code>treeLoggerTypeName</code> or null if there isn't one.
@@ -193,9 +216,25 @@ public class LogEntry<T extends IModelNode> {
     return null;
   }
 
+  /**
+   * Snapshot of the children, or <code>null</code> if the children have
+   * changed since it was built.
+   */
+  private volatile List<LogEntry<T>> allChildrenSnapshot;
   private final List<LogEntry<T>> children = new ArrayList<LogEntry<T>>();
+
+  /**
+   * Snapshot of the disclosed children, or <code>null</code> if the children
+   * or their disclosure have changed since it was built.
+   */
+  private volatile List<LogEntry<T>> disclosedChildrenSnapshot;
   private final ModuleHandle moduleHandle;
-  private boolean disclosed = true;
+  private volatile boolean disclosed = true;
+
+  /**
+   * Whether the entry was dropped from the log to keep it within its capacity.
+   */
+  private boolean dropped;
   private final int index;
   private Log<T> log = null;
   private final Data logData;
@@ -223,16 +262,31 @@ public class LogEntry<T extends IModelNode> {
    * {@link INeedsAttention#setNeedsAttentionLevel(String)}.
    */
   public void addChild(LogEntry<T> child) {
+    // A logger may still hold on to a branch which was dropped to keep the log
+    // within its capacity, so put the branch back before adding to it
+    reattachIfDropped();
+
     boolean shouldUpdateParents = false;
     boolean childNeedsAttention = false;
 
     int insertionIndex;
+    List<LogEntry<T>> droppedEntries;
 
     // Only fires the event once the lock has been released. Holding on to
     // the lock while firing the event may lead to deadlock.
     synchronized (log.instanceLock) {
+      if (dropped) {
+        // Dropped again before the child could be added, which can only happen
+        // if the log's capacity is tiny
+        return;
+      }
+
+      // Make room for the child first, so the log never exceeds its capacity
+      droppedEntries = log.makeRoom(this);
+
       child.setLog(log);
       child.setParent(this);
+      child.setDropped(false);
 
       if (getLog().getRootLogEntry() != this) {
         insertionIndex = insertIntoNonRootEntry(child);
@@ -240,42 +294,51 @@ public class LogEntry<T extends IModelNode> {
         insertionIndex = insertIntoRootEntry(child);
       }
 
-      LogSniffer.log("inserted at index {0,number,#}", insertionIndex);
-
-      if (insertionIndex == -1) {
-        return;
-      }
+      if (insertionIndex != -1) {
+        childrenChanged();
 
-      Data childLogData = child.getLogData();
-      childNeedsAttention = childLogData.getNeedsAttention();
-      LogEntry<T> parent = this;
+        Data childLogData = child.getLogData();
+        childNeedsAttention = childLogData.getNeedsAttention();
+        LogEntry<T> parent = this;
 
-      while (parent != null) {
-        if (!parent.isDisclosed()) {
-          // Force the parent to be disclosed since it received a new child
-          parent.setDisclosed(true);
-          shouldUpdateParents = true;
-        }
+        while (parent != null) {
+          if (!parent.isDisclosed()) {
+            // Force the parent to be disclosed since it received a new child
+            parent.setDisclosed(true);
+            shouldUpdateParents = true;
+          }
 
-        if (childNeedsAttention) {
-          shouldUpdateParents = true;
+          if (childNeedsAttention) {
+            shouldUpdateParents = true;
 
-          Data parentLogData = parent.getLogData();
-          if (parentLogData != null) {
-            if (shouldPropageLogLevelToParent(parentLogData, childLogData)) {
-              parentLogData.setAttentionLevel(childLogData.getLogLevel());
+            Data parentLogData = parent.getLogData();
+            if (parentLogData != null) {
+              if (shouldPropageLogLevelToParent(parentLogData, childLogData)) {
+                parentLogData.setAttentionLevel(childLogData.getLogLevel());
+              }
+            } else {
+              // Looking at the root
             }
-          } else {
-            // Looking at the root
           }
+
+          parent = parent.getParent();
         }
 
-        parent = parent.getParent();
+        log.entryAdded(child);
       }
     }
 
+    if (insertionIndex == -1) {
+      LogSniffer.log("inserted at index {0,number,#}", insertionIndex);
+      log.entriesDropped(droppedEntries);
+      return;
+    }
+
+    LogSniffer.log("inserted at index {0,number,#}", insertionIndex);
+
     log.fireNewEntryAdded(insertionIndex, child, childNeedsAttention,
         shouldUpdateParents);
+    log.entriesDropped(droppedEntries);
 
     if (childNeedsAttention) {
       // TODO: Improve type safety
@@ -287,17 +350,39 @@ public class LogEntry<T extends IModelNode> {
   }
 
   /**
-   * Returns all children of this node including undisclosed entries.
+   * Returns all children of this node including undisclosed entries, as an
+   * unmodifiable snapshot.
    */
   public List<LogEntry<T>> getAllChildren() {
-    return getFilteredChildren(DisclosureFilter.NONE);
+    List<LogEntry<T>> snapshot = allChildrenSnapshot;
+    if (snapshot == null) {
+      synchronized (log.instanceLock) {
+        snapshot = allChildrenSnapshot;
+        if (snapshot == null) {
+          snapshot = getFilteredChildren(DisclosureFilter.NONE);
+          allChildrenSnapshot = snapshot;
+        }
+      }
+    }
+    return snapshot;
   }
 
   /**
-   * Returns children that are disclosed by the model.
+   * Returns children that are disclosed by the model, as an unmodifiable
+   * snapshot.
    */
   public List<LogEntry<T>> getDisclosedChildren() {
-    return getFilteredChildren(DisclosureFilter.DISCLOSED);
+    List<LogEntry<T>> snapshot = disclosedChildrenSnapshot;
+    if (snapshot == null) {
+      synchronized (log.instanceLock) {
+        snapshot = disclosedChildrenSnapshot;
+        if (snapshot == null) {
+          snapshot = getFilteredChildren(DisclosureFilter.DISCLOSED);
+          disclosedChildrenSnapshot = snapshot;
+        }
+      }
+    }
+    return snapshot;
   }
 
   /**
@@ -341,7 +426,21 @@ public class LogEntry<T extends IModelNode> {
    * Sets the disclosure state of this element.
    */
   public void setDisclosed(boolean disclosed) {
-    this.disclosed = disclosed;
+    if (log == null) {
+      this.disclosed = disclosed;
+      return;
+    }
+
+    synchronized (log.instanceLock) {
+      if (this.disclosed != disclosed) {
+        this.disclosed = disclosed;
+        log.disclosureChanged(this);
+
+        if (parent != null) {
+          parent.disclosedChildrenSnapshot = null;
+        }
+      }
+    }
   }
 
   @Override
@@ -361,6 +460,37 @@ public class LogEntry<T extends IModelNode> {
         moduleHandle.getName());
   }
 
+  /**
+   * Returns whether this entry has any children.
+   * 
+   * The log's instance lock should be held for the duration of this method.
+   */
+  boolean hasChildren() {
+    return !children.isEmpty();
+  }
+
+  /**
+   * Removes a child of this entry.
+   * 
+   * The log's instance lock should be held for the duration of this method.
+   */
+  void removeChild(LogEntry<T> child) {
+    if (getLog().getRootLogEntry() != this) {
+      int index = Collections.binarySearch(children, child,
+          NON_ROOT_LOG_ENTRY_COMPARATOR);
+      if (index >= 0) {
+        children.remove(index);
+      }
+    } else {
+      children.remove(child);
+    }
+    childrenChanged();
+  }
+
+  void setDropped(boolean dropped) {
+    this.dropped = dropped;
+  }
+
   void setLog(Log<T> log) {
     this.log = log;
   }
@@ -370,8 +500,32 @@ public class LogEntry<T extends IModelNode> {
   }
 
   /**
-   * Returns a list of children excluding the elements according to the
-   * {@link DisclosureFilter}.
+   * Adds this entry back to its parent if it was dropped from the log.
+   */
+  private void reattachIfDropped() {
+    LogEntry<T> droppedParent;
+    synchronized (log.instanceLock) {
+      if (!dropped) {
+        return;
+      }
+      droppedParent = parent;
+    }
+    droppedParent.addChild(this);
+  }
+
+  /**
+   * Discards the snapshots of the children.
+   * 
+   * The log's instance lock should be held for the duration of this method.
+   */
+  private void childrenChanged() {
+    allChildrenSnapshot = null;
+    disclosedChildrenSnapshot = null;
+  }
+
+  /**
+   * Returns an unmodifiable list of children excluding the elements according
+   * to the {@link DisclosureFilter}.
    */
   private List<LogEntry<T>> getFilteredChildren(
       DisclosureFilter disclosureFilter) {
@@ -383,7 +537,7 @@ public class LogEntry<T extends IModelNode> {
         }
       }
 
-      return filteredChildren;
+      return Collections.unmodifiableList(filteredChildren);
     }
   }
 
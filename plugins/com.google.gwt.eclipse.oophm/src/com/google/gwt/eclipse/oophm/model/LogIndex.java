@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.oophm.model;
+
+import com.google.gwt.core.ext.TreeLogger;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An inverted index over the label, details and level of the entries in a
+ * {@link Log}. It is updated as entries are added to and dropped from the log,
+ * so the log can be searched without walking its tree.
+ * 
+ * This class is thread-safe.
+ * 
+ * @param <T> the entity associated with the log ({@link BrowserTab} or
+ *          {@link Server})
+ */
+public class LogIndex<T extends IModelNode> {
+
+  /**
+   * A search of the log. The text of a query is a list of words, each of which
+   * must start a word of an entry's label, details or level, and of facets:
+   * <ul>
+   * <li><code>level:WARN</code> finds entries logged at that level or a more
+   * important one</li>
+   * <li><code>module:name</code> finds entries logged by modules whose name
+   * contains the given text</li>
+   * <li><code>after:HH:mm[:ss]</code> and <code>before:HH:mm[:ss]</code> find
+   * entries logged at or after, or before, that time of day</li>
+   * </ul>
+   * Words and facets are not case sensitive.
+   */
+  public static class Query {
+
+    private static final Pattern FACET_PATTERN = Pattern.compile(
+        "(level|module|after|before):(.+)", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern TIME_PATTERN = Pattern.compile("(\\d{1,2}):(\\d{2})(?::(\\d{2}))?");
+
+    /**
+     * Parses the text of a query. Facets whose value cannot be parsed are
+     * ignored.
+     */
+    public static Query parse(String text) {
+      Query query = new Query();
+      if (text == null) {
+        return query;
+      }
+
+      for (String part : text.trim().split("\\s+")) {
+        Matcher facetMatcher = FACET_PATTERN.matcher(part);
+        if (!facetMatcher.matches()) {
+          query.words.addAll(tokenize(part));
+          continue;
+        }
+
+        String facet = facetMatcher.group(1).toLowerCase();
+        String value = facetMatcher.group(2);
+        if (facet.equals("level")) {
+          query.minimumLevel = LogEntry.toTreeLoggerType(value.toUpperCase());
+        } else if (facet.equals("module")) {
+          query.module = value.toLowerCase();
+        } else if (facet.equals("after")) {
+          query.after = parseTimeOfDay(value);
+        } else {
+          query.before = parseTimeOfDay(value);
+        }
+      }
+
+      return query;
+    }
+
+    private static long getTimeOfDay(long timestamp) {
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(timestamp);
+      return ((calendar.get(Calendar.HOUR_OF_DAY) * 60L
+          + calendar.get(Calendar.MINUTE)) * 60L
+          + calendar.get(Calendar.SECOND)) * 1000L
+          + calendar.get(Calendar.MILLISECOND);
+    }
+
+    /**
+     * Returns the milliseconds since midnight of a time of day, or -1 if it
+     * cannot be parsed.
+     */
+    private static long parseTimeOfDay(String value) {
+      Matcher matcher = TIME_PATTERN.matcher(value);
+      if (!matcher.matches()) {
+        return -1;
+      }
+
+      int hours = Integer.parseInt(matcher.group(1));
+      int minutes = Integer.parseInt(matcher.group(2));
+      int seconds = (matcher.group(3) != null
+          ? Integer.parseInt(matcher.group(3)) : 0);
+      if (hours > 23 || minutes > 59 || seconds > 59) {
+        return -1;
+      }
+
+      return ((hours * 60L + minutes) * 60L + seconds) * 1000L;
+    }
+
+    private long after = -1;
+
+    private long before = -1;
+
+    private TreeLogger.Type minimumLevel;
+
+    private String module;
+
+    private final List<String> words = new ArrayList<String>();
+
+    private Query() {
+    }
+
+    /**
+     * Returns whether the query has no words or facets, and so matches every
+     * entry.
+     */
+    public boolean isEmpty() {
+      return words.isEmpty() && minimumLevel == null && module == null
+          && after == -1 && before == -1;
+    }
+
+    /**
+     * Returns whether the entry matches the query, without using the index.
+     */
+    public boolean matches(LogEntry<?> entry) {
+      if (entry.getLogData() == null || !matchesFacets(entry)) {
+        return false;
+      }
+
+      Set<String> tokens = tokenize(entry.getLogData());
+      for (String word : words) {
+        if (!startsAnyToken(word, tokens)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean matchesFacets(LogEntry<?> entry) {
+      LogEntry.Data data = entry.getLogData();
+
+      if (minimumLevel != null) {
+        TreeLogger.Type level = LogEntry.toTreeLoggerType(data.getLogLevel());
+        if (level == null || level.isLowerPriorityThan(minimumLevel)) {
+          return false;
+        }
+      }
+
+      if (module != null
+          && !entry.getModuleHandle().getName().toLowerCase().contains(module)) {
+        return false;
+      }
+
+      if (after != -1 || before != -1) {
+        long timeOfDay = getTimeOfDay(data.getTimestamp());
+        if ((after != -1 && timeOfDay < after)
+            || (before != -1 && timeOfDay >= before)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private boolean startsAnyToken(String word, Set<String> tokens) {
+      for (String token : tokens) {
+        if (token.startsWith(word)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The entries matching a query, along with their ancestors so the matches
+   * can be shown in the tree. The result is kept up to date as entries are
+   * added to and dropped from the log.
+   * 
+   * @param <T> the entity associated with the log
+   */
+  public static class Result<T extends IModelNode> {
+
+    private final int matchCount;
+
+    private final Query query;
+
+    private final Set<LogEntry<T>> visibleEntries;
+
+    private Result(Query query, Set<LogEntry<T>> visibleEntries,
+        int matchCount) {
+      this.query = query;
+      this.visibleEntries = visibleEntries;
+      this.matchCount = matchCount;
+    }
+
+    /**
+     * Returns the number of entries which matched the query when it was run.
+     */
+    public int getMatchCount() {
+      return matchCount;
+    }
+
+    /**
+     * Returns whether the entry matches the query or has a descendant which
+     * does.
+     */
+    public synchronized boolean isVisible(Object element) {
+      return visibleEntries.contains(element);
+    }
+
+    /**
+     * Shows an entry added since the query was run if it matches, along with
+     * its ancestors, which may have been in the log before it.
+     */
+    synchronized void entryAdded(LogEntry<T> entry) {
+      if (query.matches(entry)) {
+        addWithAncestors(visibleEntries, entry);
+      }
+    }
+
+    synchronized void entryRemoved(LogEntry<T> entry) {
+      visibleEntries.remove(entry);
+    }
+  }
+
+  private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  /**
+   * Splits the text into lower case words. Qualified names and stack frames are
+   * split into their parts.
+   */
+  static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<String>();
+    for (String token : TOKEN_SEPARATOR.split(text.toLowerCase())) {
+      if (token.length() > 0) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+
+  private static Set<String> tokenize(LogEntry.Data data) {
+    Set<String> tokens = new LinkedHashSet<String>();
+    tokens.addAll(tokenize(data.getLabel()));
+    tokens.addAll(tokenize(data.getDetails()));
+    tokens.addAll(tokenize(data.getLogLevel()));
+    return tokens;
+  }
+
+  /**
+   * Adds the entry and its ancestors which are not in the set yet.
+   */
+  private static <E extends IModelNode> void addWithAncestors(
+      Set<LogEntry<E>> entries, LogEntry<E> entry) {
+    for (; entry != null && entries.add(entry); entry = entry.getParent()) {
+      // Show the ancestors of the match
+    }
+  }
+
+  private static <E> void addPosting(Map<String, Set<E>> postings, String key,
+      E entry) {
+    Set<E> entries = postings.get(key);
+    if (entries == null) {
+      entries = new HashSet<E>();
+      postings.put(key, entries);
+    }
+    entries.add(entry);
+  }
+
+  private static <E> void removePosting(Map<String, Set<E>> postings,
+      String key, E entry) {
+    Set<E> entries = postings.get(key);
+    if (entries != null) {
+      entries.remove(entry);
+      if (entries.isEmpty()) {
+        postings.remove(key);
+      }
+    }
+  }
+
+  private final Map<String, Set<LogEntry<T>>> entriesByLevel = new HashMap<String, Set<LogEntry<T>>>();
+
+  private final Map<String, Set<LogEntry<T>>> entriesByModule = new HashMap<String, Set<LogEntry<T>>>();
+
+  private final TreeMap<String, Set<LogEntry<T>>> entriesByToken = new TreeMap<String, Set<LogEntry<T>>>();
+
+  /**
+   * The results of searches which are still in use, which are updated as
+   * entries are added and dropped.
+   */
+  private final Map<Result<T>, Boolean> liveResults = new WeakHashMap<Result<T>, Boolean>();
+
+  /**
+   * Finds the entries matching the query. The words of the query are looked up
+   * in the index, and only the entries they find are checked against the
+   * facets.
+   */
+  public synchronized Result<T> search(Query query) {
+    Set<LogEntry<T>> candidates = null;
+    for (String word : query.words) {
+      // The word may be the start of several indexed words
+      Set<LogEntry<T>> wordEntries = new HashSet<LogEntry<T>>();
+      for (Set<LogEntry<T>> entries : entriesByToken.subMap(word,
+          word + Character.MAX_VALUE).values()) {
+        wordEntries.addAll(entries);
+      }
+
+      if (candidates == null || wordEntries.size() < candidates.size()) {
+        if (candidates != null) {
+          wordEntries.retainAll(candidates);
+        }
+        candidates = wordEntries;
+      } else {
+        candidates.retainAll(wordEntries);
+      }
+
+      if (candidates.isEmpty()) {
+        break;
+      }
+    }
+
+    if (candidates == null) {
+      candidates = getFacetCandidates(query);
+    }
+
+    Set<LogEntry<T>> visibleEntries = new HashSet<LogEntry<T>>();
+    int matchCount = 0;
+    for (LogEntry<T> candidate : candidates) {
+      if (!query.matchesFacets(candidate)) {
+        continue;
+      }
+
+      matchCount++;
+      addWithAncestors(visibleEntries, candidate);
+    }
+
+    Result<T> result = new Result<T>(query, visibleEntries, matchCount);
+    liveResults.put(result, Boolean.TRUE);
+    return result;
+  }
+
+  synchronized void add(LogEntry<T> entry) {
+    LogEntry.Data data = entry.getLogData();
+
+    for (String token : tokenize(data)) {
+      addPosting(entriesByToken, token, entry);
+    }
+    addPosting(entriesByLevel, data.getLogLevel(), entry);
+    addPosting(entriesByModule, entry.getModuleHandle().getName(), entry);
+
+    for (Result<T> result : liveResults.keySet()) {
+      result.entryAdded(entry);
+    }
+  }
+
+  synchronized void remove(LogEntry<T> entry) {
+    LogEntry.Data data = entry.getLogData();
+
+    for (String token : tokenize(data)) {
+      removePosting(entriesByToken, token, entry);
+    }
+    removePosting(entriesByLevel, data.getLogLevel(), entry);
+    removePosting(entriesByModule, entry.getModuleHandle().getName(), entry);
+
+    for (Result<T> result : liveResults.keySet()) {
+      result.entryRemoved(entry);
+    }
+  }
+
+  /**
+   * Returns the entries which can match a query without words, found by module
+   * or else by level.
+   */
+  private Set<LogEntry<T>> getFacetCandidates(Query query) {
+    Set<LogEntry<T>> candidates = new HashSet<LogEntry<T>>();
+    if (query.module != null) {
+      for (Map.Entry<String, Set<LogEntry<T>>> entry : entriesByModule.entrySet()) {
+        if (entry.getKey().toLowerCase().contains(query.module)) {
+          candidates.addAll(entry.getValue());
+        }
+      }
+      return candidates;
+    }
+
+    // Every entry is indexed by its level
+    for (Map.Entry<String, Set<LogEntry<T>>> entry : entriesByLevel.entrySet()) {
+      TreeLogger.Type level = LogEntry.toTreeLoggerType(entry.getKey());
+      if (query.minimumLevel == null
+          || (level != null && !level.isLowerPriorityThan(query.minimumLevel))) {
+        candidates.addAll(entry.getValue());
+      }
+    }
+    return candidates;
+  }
+}
@@ -16,11 +16,14 @@ package com.google.gwt.eclipse.oophm.views.hierarchical;
 
 import com.google.gdt.eclipse.core.browser.BrowserUtilities;
 import com.google.gwt.eclipse.oophm.model.BrowserTab;
+import com.google.gwt.eclipse.oophm.model.ILogListener;
 import com.google.gwt.eclipse.oophm.model.IModelNode;
 import com.google.gwt.eclipse.oophm.model.LaunchConfiguration;
 import com.google.gwt.eclipse.oophm.model.Log;
 import com.google.gwt.eclipse.oophm.model.LogContentProvider;
+import com.google.gwt.eclipse.oophm.model.LogEntriesRemovedEvent;
 import com.google.gwt.eclipse.oophm.model.LogEntry;
+import com.google.gwt.eclipse.oophm.model.LogEntryAddedEvent;
 import com.google.gwt.eclipse.oophm.model.LogLabelProvider;
 import com.google.gwt.eclipse.oophm.model.LogEntry.Data;
 
@@ -50,24 +53,29 @@ import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.dnd.Clipboard;
 import org.eclipse.swt.dnd.TextTransfer;
 import org.eclipse.swt.dnd.Transfer;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.KeyAdapter;
 import org.eclipse.swt.events.KeyEvent;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.ui.console.IConsole;
 import org.eclipse.ui.console.TextConsole;
 import org.eclipse.ui.dialogs.FilteredTree;
-import org.eclipse.ui.dialogs.PatternFilter;
 import org.eclipse.ui.forms.events.HyperlinkEvent;
 import org.eclipse.ui.forms.events.IHyperlinkListener;
 import org.eclipse.ui.forms.widgets.FormText;
 import org.eclipse.ui.forms.widgets.ScrolledFormText;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
@@ -76,6 +84,7 @@ import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -256,6 +265,38 @@ public class LogContent<T extends IModelNode> extends Composite {
     }
   }
 
+  private Label droppedEntriesLabel;
+
+  /**
+   * Whether an update of the count of dropped entries is waiting to run, so a
+   * log at capacity, which drops an entry for each one it adds, does not queue
+   * an update for each of them.
+   */
+  private final AtomicBoolean droppedEntriesUpdateScheduled = new AtomicBoolean();
+
+  /**
+   * Updates the count of dropped entries when entries are dropped from the
+   * log.
+   */
+  private final ILogListener<T> droppedEntriesListener = new ILogListener<T>() {
+    public void logEntriesRemoved(LogEntriesRemovedEvent<T> e) {
+      if (!droppedEntriesUpdateScheduled.compareAndSet(false, true)) {
+        return;
+      }
+
+      Display.getDefault().asyncExec(new Runnable() {
+        public void run() {
+          // Entries dropped from now on schedule another update
+          droppedEntriesUpdateScheduled.set(false);
+          updateDroppedEntriesLabel();
+        }
+      });
+    }
+
+    public void newLogEntry(LogEntryAddedEvent<T> e) {
+    }
+  };
+
   private final Log<T> log;
 
   private FilteredTree logEntries;
@@ -271,14 +312,21 @@ public class LogContent<T extends IModelNode> extends Composite {
 
     this.log = log;
 
-    setLayout(new FillLayout());
+    GridLayout layout = new GridLayout();
+    layout.marginWidth = 0;
+    layout.marginHeight = 0;
+    setLayout(layout);
+
     SashForm sashForm = new SashForm(this, SWT.VERTICAL);
+    sashForm.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
 
     createViewer(sashForm);
     createDetailsPane(sashForm, treeViewer.getTree().getBackground());
 
     sashForm.setWeights(new int[] {70, 30});
 
+    createDroppedEntriesLabel();
+
     revealChildrenThatNeedAttention(treeViewer, log.getRootLogEntry());
 
     LogEntry<T> entryToSelect = log.getFirstDeeplyNestedChildWithMaxAttn();
@@ -412,6 +460,20 @@ public class LogContent<T extends IModelNode> extends Composite {
     });
   }
 
+  private void createDroppedEntriesLabel() {
+    droppedEntriesLabel = new Label(this, SWT.WRAP);
+    droppedEntriesLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true,
+        false));
+    updateDroppedEntriesLabel();
+
+    log.addLogListener(droppedEntriesListener);
+    addDisposeListener(new DisposeListener() {
+      public void widgetDisposed(DisposeEvent e) {
+        log.removeLogListener(droppedEntriesListener);
+      }
+    });
+  }
+
   private String createTabString(int n) {
     if (n == 0) {
       return "";
@@ -427,7 +489,9 @@ public class LogContent<T extends IModelNode> extends Composite {
   private void createViewer(Composite parent) {
 
     logEntries = new FilteredTree(parent, SWT.MULTI | SWT.H_SCROLL
-        | SWT.V_SCROLL | SWT.BORDER, new PatternFilter());
+        | SWT.V_SCROLL | SWT.BORDER, new LogIndexFilter(log));
+    logEntries.setInitialText(
+        "type filter text, e.g. exception level:WARN module:name after:12:30");
 
     treeViewer = logEntries.getViewer();
     treeViewer.setComparator(new ViewerComparator() {
@@ -439,9 +503,7 @@ public class LogContent<T extends IModelNode> extends Composite {
         LogEntry<?> entry1 = (LogEntry<?>) e1;
         LogEntry<?> entry2 = (LogEntry<?>) e2;
 
-        assert (entry2.getParent() == entry1.getParent());
-        List<?> siblings = entry1.getParent().getAllChildren();
-        return (siblings.indexOf(entry1) - siblings.indexOf(entry2));
+        return LogEntry.compareSiblings(entry1, entry2);
       }
     });
 
@@ -565,6 +627,40 @@ public class LogContent<T extends IModelNode> extends Composite {
     }
   }
 
+  /**
+   * Shows how many entries have been dropped from the log, and hides the label
+   * if none have been.
+   */
+  private void updateDroppedEntriesLabel() {
+    if (droppedEntriesLabel.isDisposed()) {
+      return;
+    }
+
+    long droppedEntryCount = log.getDroppedEntryCount();
+    boolean visible = droppedEntryCount > 0;
+    if (visible) {
+      StringBuilder text = new StringBuilder();
+      text.append(droppedEntryCount);
+      text.append(" older entries were dropped to keep the log under ");
+      text.append(log.getCapacity());
+      text.append(" entries.");
+
+      File spillFile = log.getSpillFile();
+      if (spillFile != null) {
+        text.append(" They were saved to ");
+        text.append(spillFile.getAbsolutePath());
+        text.append(".");
+      }
+      droppedEntriesLabel.setText(text.toString());
+    }
+
+    if (droppedEntriesLabel.getVisible() != visible) {
+      droppedEntriesLabel.setVisible(visible);
+      ((GridData) droppedEntriesLabel.getLayoutData()).exclude = !visible;
+      layout();
+    }
+  }
+
   private void updateDetailsPane(SelectionChangedEvent event) {
     StructuredSelection structuredSelection = (StructuredSelection) event.getSelection();
     if (structuredSelection == null || structuredSelection.isEmpty()) {
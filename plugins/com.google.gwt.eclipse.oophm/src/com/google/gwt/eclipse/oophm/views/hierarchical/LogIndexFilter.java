@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.google.gwt.eclipse.oophm.views.hierarchical;
+
+import com.google.gwt.eclipse.oophm.model.Log;
+import com.google.gwt.eclipse.oophm.model.LogIndex;
+
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.ui.dialogs.PatternFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filters the log viewer with the results of searching the log's
+ * {@link LogIndex}, rather than by matching the label of every entry in the
+ * tree. The filter text is a {@link LogIndex.Query}.
+ */
+class LogIndexFilter extends PatternFilter {
+
+  private final Log<?> log;
+
+  /**
+   * The result of searching for the current filter text, or <code>null</code>
+   * if there is no filter.
+   */
+  private LogIndex.Result<?> result;
+
+  LogIndexFilter(Log<?> log) {
+    this.log = log;
+  }
+
+  /**
+   * Filters the elements one by one. The superclass can cache its results per
+   * parent element, which would hide the entries added to the log since.
+   */
+  @Override
+  public Object[] filter(Viewer viewer, Object parent, Object[] elements) {
+    if (result == null) {
+      return elements;
+    }
+
+    List<Object> filteredElements = new ArrayList<Object>(elements.length);
+    for (Object element : elements) {
+      if (result.isVisible(element)) {
+        filteredElements.add(element);
+      }
+    }
+    return filteredElements.toArray();
+  }
+
+  @Override
+  public boolean isElementVisible(Viewer viewer, Object element) {
+    return (result == null || result.isVisible(element));
+  }
+
+  @Override
+  public void setPattern(String patternString) {
+    super.setPattern(patternString);
+
+    LogIndex.Query query = LogIndex.Query.parse(patternString);
+    result = (query.isEmpty() ? null : log.getIndex().search(query));
+  }
+}